@@ -14,6 +14,8 @@ public abstract class FaultClassification {
 	protected String heuristic;
 	protected Requirement.Type requirementType;
 	protected Long timeSpent;
+	protected Integer testsUsed;
+	protected String stopReason;
 
 	/**
 	 * Return a 'flat' list of {@link SuspiciousElement}.
@@ -59,6 +61,31 @@ public abstract class FaultClassification {
 		this.timeSpent = timeSpent;
 	}
 
+	/**
+	 * @return the number of tests the classification was calculated from, or
+	 *         null if every test was used
+	 */
+	@XmlAttribute
+	public Integer getTestsUsed() {
+		return testsUsed;
+	}
+
+	public void setTestsUsed(Integer testsUsed) {
+		this.testsUsed = testsUsed;
+	}
+
+	/**
+	 * @return why the tests stopped, or null if every test was used
+	 */
+	@XmlAttribute
+	public String getStopReason() {
+		return stopReason;
+	}
+
+	public void setStopReason(String stopReason) {
+		this.stopReason = stopReason;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -67,6 +94,8 @@ public abstract class FaultClassification {
 		result = prime * result + ((project == null) ? 0 : project.hashCode());
 		result = prime * result + ((requirementType == null) ? 0 : requirementType.hashCode());
 		result = prime * result + ((timeSpent == null) ? 0 : timeSpent.hashCode());
+		result = prime * result + ((testsUsed == null) ? 0 : testsUsed.hashCode());
+		result = prime * result + ((stopReason == null) ? 0 : stopReason.hashCode());
 		return result;
 	}
 
@@ -96,13 +125,23 @@ public abstract class FaultClassification {
 				return false;
 		} else if (!timeSpent.equals(other.timeSpent))
 			return false;
+		if (testsUsed == null) {
+			if (other.testsUsed != null)
+				return false;
+		} else if (!testsUsed.equals(other.testsUsed))
+			return false;
+		if (stopReason == null) {
+			if (other.stopReason != null)
+				return false;
+		} else if (!stopReason.equals(other.stopReason))
+			return false;
 		return true;
 	}
 
 	@Override
 	public String toString() {
 		return "FaultClassification [project=" + project + ", heuristic=" + heuristic + ", requirementType=" + requirementType
-				+ ", timeSpent=" + timeSpent + "]";
+				+ ", timeSpent=" + timeSpent + ", testsUsed=" + testsUsed + ", stopReason=" + stopReason + "]";
 	}
 
 }
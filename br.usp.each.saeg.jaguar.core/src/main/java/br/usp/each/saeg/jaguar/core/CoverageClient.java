@@ -0,0 +1,36 @@
+package br.usp.each.saeg.jaguar.core;
+
+import java.io.IOException;
+
+import org.jacoco.core.data.AbstractExecutionDataStore;
+
+/**
+ * Source of the coverage produced by the Jacoco agent after each test.
+ */
+public interface CoverageClient {
+
+	/**
+	 * Prepare the client to read the coverage.
+	 */
+	void connect() throws IOException;
+
+	/**
+	 * Read the coverage accumulated since the last read and reset it.
+	 * 
+	 * @return a new store with the coverage, owned by the caller
+	 */
+	AbstractExecutionDataStore read() throws IOException;
+
+	/**
+	 * Give back a store returned by {@link #read()} once its coverage was
+	 * collected, so the client may reuse it.
+	 * 
+	 * @param executionData
+	 *            the store, not used by the caller anymore
+	 */
+	default void release(AbstractExecutionDataStore executionData) {
+	}
+
+	void close() throws IOException;
+
+}
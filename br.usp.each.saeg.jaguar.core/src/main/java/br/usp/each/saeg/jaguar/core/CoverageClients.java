@@ -0,0 +1,62 @@
+package br.usp.each.saeg.jaguar.core;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Chooses the {@link CoverageClient} used to read the coverage of each test.
+ */
+public final class CoverageClients {
+
+	private final static Logger logger = LoggerFactory.getLogger("JaguarLogger");
+
+	/** The default address of the Jacoco agent tcpserver */
+	public static final String DEFAULT_ADDRESS = "localhost";
+
+	/** The default port of the Jacoco agent tcpserver */
+	public static final int DEFAULT_PORT = 6300;
+
+	private CoverageClients() {
+	}
+
+	/**
+	 * Create the client used to read the coverage. The in process client is
+	 * used only if requested and if the agent is running in this JVM,
+	 * otherwise the coverage is read from the agent tcpserver.
+	 *
+	 * @param inProcess
+	 *            if the in process client is preferred
+	 * @param nio
+	 *            if the tcpserver is read with {@link NioCoverageClient}
+	 *            instead of {@link JaCoCoClient}
+	 * @param isDataflow
+	 *            if the agent collects data-flow coverage
+	 * @return the client, not connected
+	 */
+	public static CoverageClient create(boolean inProcess, boolean nio, Boolean isDataflow) throws UnknownHostException {
+		return create(inProcess, nio, isDataflow, DEFAULT_PORT);
+	}
+
+	/**
+	 * Same as {@link #create(boolean, boolean, Boolean)}, for an agent
+	 * tcpserver on another port of localhost.
+	 *
+	 * @param port
+	 *            the port of the agent tcpserver
+	 */
+	public static CoverageClient create(boolean inProcess, boolean nio, Boolean isDataflow, int port) throws UnknownHostException {
+		if (inProcess) {
+			if (RuntimeCoverageClient.isAgentAvailable()) {
+				logger.debug("Reading coverage from the Jacoco agent in this JVM");
+				return new RuntimeCoverageClient(isDataflow);
+			}
+			logger.warn("Jacoco agent not found in this JVM, reading coverage from its tcpserver");
+		}
+		InetAddress address = InetAddress.getByName(DEFAULT_ADDRESS);
+		return nio ? new NioCoverageClient(address, port, isDataflow) : new JaCoCoClient(address, port, isDataflow);
+	}
+
+}
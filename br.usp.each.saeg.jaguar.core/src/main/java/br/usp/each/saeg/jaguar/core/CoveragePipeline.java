@@ -0,0 +1,172 @@
+package br.usp.each.saeg.jaguar.core;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jacoco.core.data.AbstractExecutionDataStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Moves the coverage analysis out of the JUnit thread. The execution data
+ * dumped after each test is queued and collected by a pool of workers while
+ * the next test runs. The queue is bounded: when it is full the test thread
+ * waits, so a slow analysis throttles the test execution instead of piling up
+ * execution data in memory.
+ * <p>
+ * The workers resolve the coverage of several tests at once, but update the
+ * requirements one test at a time, in submission order. The requirements are
+ * then first seen in the same order as without the pipeline, and so are the
+ * ties of the ranking.
+ */
+public class CoveragePipeline {
+
+	private final static Logger logger = LoggerFactory.getLogger("JaguarLogger");
+
+	private final Jaguar jaguar;
+	private final int queueDepth;
+	private final Semaphore slots;
+	private final ExecutorService workers;
+	private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+	private final Object turns = new Object();
+	private long submitted;
+	private long applied;
+
+	/**
+	 * The place of a test in the submission order.
+	 */
+	private class Turn {
+
+		private final long sequence;
+
+		Turn(long sequence) {
+			this.sequence = sequence;
+		}
+
+		/**
+		 * Wait until the tests submitted before this one are applied.
+		 */
+		void await() {
+			boolean interrupted = false;
+			synchronized (turns) {
+				while (applied < sequence) {
+					try {
+						turns.wait();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * Let the next test be applied, once this one is.
+		 */
+		void end() {
+			await();
+			synchronized (turns) {
+				if (applied == sequence) {
+					applied++;
+					turns.notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param jaguar
+	 *            where the coverage is collected
+	 * @param queueDepth
+	 *            the max number of tests waiting to be collected
+	 * @param threads
+	 *            the number of workers collecting coverage
+	 */
+	public CoveragePipeline(Jaguar jaguar, int queueDepth, int threads) {
+		if (queueDepth < 1 || threads < 1) {
+			throw new IllegalArgumentException("Queue depth and threads must be positive");
+		}
+		this.jaguar = jaguar;
+		this.queueDepth = queueDepth;
+		this.slots = new Semaphore(queueDepth);
+		this.workers = Executors.newFixedThreadPool(threads);
+	}
+
+	/**
+	 * Queue the coverage of one test, waiting while the queue is full.
+	 *
+	 * @param executionData
+	 *            the coverage data of the test, not used by the caller anymore
+	 * @param currentTestFailed
+	 *            result of the test
+	 * @param whenCollected
+	 *            run by the worker after the coverage is collected, may be
+	 *            null
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for a free slot
+	 */
+	public void submit(final AbstractExecutionDataStore executionData, final boolean currentTestFailed, final Runnable whenCollected)
+			throws InterruptedException {
+		long startTime = System.currentTimeMillis();
+		slots.acquire();
+		logger.debug("Time waiting for the coverage queue: {}", System.currentTimeMillis() - startTime);
+
+		final Turn turn = new Turn(submitted++);
+		workers.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					jaguar.collect(executionData, currentTestFailed, turn::await);
+				} catch (Throwable t) {
+					logger.error("Exception during collecting coverage information: {}", t.toString());
+					failure.compareAndSet(null, t);
+				} finally {
+					turn.end();
+					if (whenCollected != null) {
+						whenCollected.run();
+					}
+					slots.release();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Wait until every queued coverage is collected.
+	 *
+	 * @throws IllegalStateException
+	 *             if the collection of any test failed
+	 */
+	public void drain() {
+		slots.acquireUninterruptibly(queueDepth);
+		slots.release(queueDepth);
+
+		Throwable t = failure.get();
+		if (t != null) {
+			throw new IllegalStateException("Coverage collection failed", t);
+		}
+	}
+
+	/**
+	 * Drain the queue and stop the workers.
+	 */
+	public void shutdown() {
+		try {
+			drain();
+		} finally {
+			workers.shutdown();
+			try {
+				workers.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+}
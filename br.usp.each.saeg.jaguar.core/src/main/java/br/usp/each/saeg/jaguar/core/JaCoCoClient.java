@@ -12,10 +12,11 @@ import org.jacoco.core.data.DataFlowExecutionDataStore;
 import org.jacoco.core.runtime.RemoteControlReader;
 import org.jacoco.core.runtime.RemoteControlWriter;
 
-public final class JaCoCoClient {
+/**
+ * Reads the coverage from a Jacoco agent running as tcpserver.
+ */
+public final class JaCoCoClient implements CoverageClient {
 
-	private static final String DEFAULT_ADDRESS = "localhost";
-	private static final int DEFAULT_PORT = 6300;
 	private final InetAddress address;
 	private final int port;
 
@@ -31,23 +32,26 @@ public final class JaCoCoClient {
 	}
 
 	public JaCoCoClient(Boolean isDataflow) throws UnknownHostException {
-		this(InetAddress.getByName(DEFAULT_ADDRESS), DEFAULT_PORT, isDataflow);
+		this(InetAddress.getByName(CoverageClients.DEFAULT_ADDRESS), CoverageClients.DEFAULT_PORT, isDataflow);
 	}
 	
 	public JaCoCoClient() throws UnknownHostException {
-		this(InetAddress.getByName(DEFAULT_ADDRESS), DEFAULT_PORT, false);
+		this(InetAddress.getByName(CoverageClients.DEFAULT_ADDRESS), CoverageClients.DEFAULT_PORT, false);
 	}
 
+	@Override
 	public void connect() throws IOException {
 		socket = new Socket(address, port);
 		writer = new RemoteControlWriter(socket.getOutputStream());
 		reader = new RemoteControlReader(socket.getInputStream());
 	}
 
+	@Override
 	public void close() throws IOException {
 		socket.close();
 	}
 
+	@Override
 	public AbstractExecutionDataStore read() throws IOException {
 		SessionInfoStore sessionInfo = new SessionInfoStore();
 		AbstractExecutionDataStore executionData = isDataflow ? new DataFlowExecutionDataStore() : new ControlFlowExecutionDataStore();
@@ -1,25 +1,20 @@
 package br.usp.each.saeg.jaguar.core;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
-import org.jacoco.core.analysis.AbstractAnalyzer;
-import org.jacoco.core.analysis.ControlFlowAnalyzer;
-import org.jacoco.core.analysis.CoverageBuilder;
-import org.jacoco.core.analysis.DataflowAnalyzer;
-import org.jacoco.core.analysis.IClassCoverage;
-import org.jacoco.core.analysis.ILine;
-import org.jacoco.core.analysis.dua.DuaCoverageBuilder;
-import org.jacoco.core.analysis.dua.IDua;
-import org.jacoco.core.analysis.dua.IDuaClassCoverage;
-import org.jacoco.core.analysis.dua.IDuaMethodCoverage;
 import org.jacoco.core.data.AbstractExecutionDataStore;
 import org.jacoco.core.data.ControlFlowExecutionData;
 import org.jacoco.core.data.ControlFlowExecutionDataStore;
@@ -27,12 +22,21 @@ import org.jacoco.core.data.DataFlowExecutionDataStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import br.usp.each.saeg.jaguar.core.analysis.ClassAnalysisCache;
+import br.usp.each.saeg.jaguar.core.analysis.DuaCatalog;
+import br.usp.each.saeg.jaguar.core.analysis.ParallelAnalyzer;
+import br.usp.each.saeg.jaguar.core.analysis.ProbeBits;
+import br.usp.each.saeg.jaguar.core.analysis.ProbeLineTable;
 import br.usp.each.saeg.jaguar.core.heuristic.Heuristic;
-import br.usp.each.saeg.jaguar.core.heuristic.HeuristicCalculator;
-import br.usp.each.saeg.jaguar.core.model.core.CoverageStatus;
+import br.usp.each.saeg.jaguar.core.heuristic.Rank;
+import br.usp.each.saeg.jaguar.core.heuristic.RankEngine;
 import br.usp.each.saeg.jaguar.core.model.core.requirement.AbstractTestRequirement;
+import br.usp.each.saeg.jaguar.core.output.xml.XmlWriter;
 import br.usp.each.saeg.jaguar.core.output.xml.flat.FlatXmlWriter;
 import br.usp.each.saeg.jaguar.core.output.xml.hierarchical.HierarchicalXmlWriter;
+import br.usp.each.saeg.jaguar.core.shard.ShardMerger;
+import br.usp.each.saeg.jaguar.core.shard.SpectrumShardWriter;
+import br.usp.each.saeg.jaguar.core.spectrum.SpectrumFileWriter;
 
 /**
  * This class store the coverage information received from Jacoco and generate a
@@ -48,8 +52,17 @@ public class Jaguar {
 	private int nTests = 0;
 	private int nTestsFailed = 0;
 	private Map<String, File> classFilesCache;
+	private ClassAnalysisCache analysisCache;
+	private CoveragePipeline pipeline;
+	private ParallelAnalyzer analyzer = new ParallelAnalyzer(1);
+	private int rankLimit = 0;
+	private String stopReason;
+	private boolean footprint;
 
 	private JaguarSFL sfl = new JaguarSFL();
+	private final SpectrumGroups<ProbeLineTable> lineSpectra = new SpectrumGroups<ProbeLineTable>();
+	private final SpectrumGroups<DuaCatalog> duaSpectra = new SpectrumGroups<DuaCatalog>();
+	private final MethodSpectrum methodSpectrum = new MethodSpectrum();
 	
 	private Long startTime;
 	private Long totalTimeSpent;
@@ -66,6 +79,7 @@ public class Jaguar {
 		classFilesCache = new HashMap<>();
 		populateClassFilesCache(classesDir, "");
 		logger.debug("ClassFilesCache size = {}", classFilesCache.size());
+		analysisCache = new ClassAnalysisCache(classFilesCache);
 	}
 
 	private void populateClassFilesCache(File dir, String path) {
@@ -83,6 +97,145 @@ public class Jaguar {
 		}
 	}
 
+	/**
+	 * @param className
+	 *            the vm name of the class
+	 * @return the class file in the classes dir, or null if there is none
+	 */
+	public File getClassFile(String className) {
+		return classFilesCache.get(className);
+	}
+
+	/**
+	 * Set the number of threads used to analyze the classes covered by each
+	 * test. See {@link ParallelAnalyzer}.
+	 * 
+	 * @param parallelism
+	 *            the number of threads, 1 analyzes the classes sequentially
+	 */
+	public void setAnalysisParallelism(int parallelism) {
+		analyzer.shutdown();
+		analyzer = new ParallelAnalyzer(parallelism);
+		logger.debug("Analysis parallelism = {}", parallelism);
+	}
+
+	/**
+	 * Write only the most suspicious requirements to the output XML, see
+	 * {@link RankEngine#rank(Heuristic, int)}.
+	 * 
+	 * @param rankLimit
+	 *            the number of requirements, 0 writes every requirement
+	 */
+	public void setRankLimit(int rankLimit) {
+		this.rankLimit = rankLimit;
+		logger.debug("Rank limit = {}", rankLimit);
+	}
+
+	/**
+	 * Record in the output XML that the tests stopped before the end, with
+	 * the number of tests used.
+	 * 
+	 * @param stopReason
+	 *            why the tests stopped
+	 */
+	public void setStopReason(String stopReason) {
+		this.stopReason = stopReason;
+		logger.debug("Stop reason = {}", stopReason);
+	}
+
+	/**
+	 * Collect the coverage of each test in background workers instead of the
+	 * test thread. See {@link CoveragePipeline}.
+	 * 
+	 * @param queueDepth
+	 *            the max number of tests waiting to be collected
+	 * @param threads
+	 *            the number of workers collecting coverage
+	 */
+	public void enablePipeline(int queueDepth, int threads) {
+		pipeline = new CoveragePipeline(this, queueDepth, threads);
+		logger.debug("Coverage pipeline enabled, queue depth = {}, threads = {}", queueDepth, threads);
+	}
+
+	/**
+	 * Also keep the classes covered by each test class in the method
+	 * spectrum, see {@link #collectFootprint}, to run again only the test
+	 * classes covering some classes.
+	 */
+	public void enableFootprint() {
+		footprint = true;
+		logger.debug("Footprint of the test classes enabled");
+	}
+
+	/**
+	 * Add the classes covered by a finished test to the footprint of its test
+	 * class, see {@link MethodSpectrum#getTestClassesCovering(java.util.Set)}.
+	 * Does nothing unless the footprint is enabled.
+	 * 
+	 * @param testClass
+	 *            the name of the test class
+	 * @param executionData
+	 *            the coverage data from Jacoco, not modified
+	 * @param currentTestFailed
+	 *            result of the test
+	 */
+	public void collectFootprint(String testClass, AbstractExecutionDataStore executionData, boolean currentTestFailed) {
+		if (!footprint) {
+			return;
+		}
+		final List<String> classNames = new ArrayList<String>();
+		for (ControlFlowExecutionData data : executionData.getContents()) {
+			if (ProbeBits.hasHits(data)) {
+				classNames.add(data.getName());
+			}
+		}
+		methodSpectrum.addCoveredClasses(testClass, classNames, currentTestFailed);
+	}
+
+	/**
+	 * Receive the coverage information of a finished test. When the pipeline
+	 * is enabled it is queued, otherwise it is collected right away.
+	 * 
+	 * @param executionData
+	 *            the coverage data from Jacoco
+	 * @param currentTestFailed
+	 *            result of the test
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the queue
+	 */
+	public void submit(final AbstractExecutionDataStore executionData, boolean currentTestFailed) throws InterruptedException {
+		submit(executionData, currentTestFailed, null);
+	}
+
+	/**
+	 * Receive the coverage information of a finished test. When the pipeline
+	 * is enabled it is queued, otherwise it is collected right away.
+	 * 
+	 * @param executionData
+	 *            the coverage data from Jacoco
+	 * @param currentTestFailed
+	 *            result of the test
+	 * @param whenCollected
+	 *            run once the coverage is collected, may be null
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the queue
+	 */
+	public void submit(final AbstractExecutionDataStore executionData, boolean currentTestFailed, Runnable whenCollected)
+			throws InterruptedException {
+		logger.debug("Test # {}", nTests);
+		if (pipeline == null) {
+			try {
+				collect(executionData, currentTestFailed);
+			} finally {
+				if (whenCollected != null) {
+					whenCollected.run();
+				}
+			}
+		} else {
+			pipeline.submit(executionData, currentTestFailed, whenCollected);
+		}
+	}
+
 	/**
 	 * Receive the coverage information and store it on Test Requirements.
 	 * 
@@ -92,36 +245,35 @@ public class Jaguar {
 	 *            result of the test
 	 */
 	public void collect(final AbstractExecutionDataStore executionData, boolean currentTestFailed) {
-		logger.debug("Test # {}", nTests);
+		collect(executionData, currentTestFailed, null);
+	}
+
+	/**
+	 * Receive the coverage information and store it on Test Requirements,
+	 * waiting for the given turn once the coverage is resolved and before the
+	 * requirements are updated, see {@link CoveragePipeline}.
+	 * 
+	 * @param executionData
+	 *            the coverage data from Jacoco
+	 * @param currentTestFailed
+	 *            result of the test
+	 * @param awaitTurn
+	 *            run before the requirements are updated, may be null
+	 */
+	public void collect(final AbstractExecutionDataStore executionData, boolean currentTestFailed, Runnable awaitTurn) {
 		if (executionData instanceof DataFlowExecutionDataStore) {
 			logger.trace("Collecting DF coverage");
 
 			long startTime = System.currentTimeMillis();
-			DuaCoverageBuilder duaCoverageBuilder = new DuaCoverageBuilder();
-			logger.trace("DUA coverage built");
-
-			AbstractAnalyzer analyzer = new DataflowAnalyzer(executionData, duaCoverageBuilder);
-			analyzeCoveredClasses(executionData, analyzer);
-			logger.debug("Time to analyze DF data: {}", System.currentTimeMillis() - startTime);
-
-			startTime = System.currentTimeMillis();
-			collectDuaCoverage(currentTestFailed, duaCoverageBuilder);
-			logger.debug("Time to read and store data: {} , from {} classes", System.currentTimeMillis() - startTime, duaCoverageBuilder
-					.getClasses().size());
+			int nClasses = collectDuaCoverage(currentTestFailed, executionData, awaitTurn);
+			logger.debug("Time to analyze and store DF data: {} , from {} classes", System.currentTimeMillis() - startTime, nClasses);
 
 		} else if (executionData instanceof ControlFlowExecutionDataStore) {
 			logger.trace("Collecting CF coverage");
 
 			long startTime = System.currentTimeMillis();
-			CoverageBuilder coverageBuilder = new CoverageBuilder();
-			AbstractAnalyzer analyzer = new ControlFlowAnalyzer(executionData, coverageBuilder);
-			analyzeCoveredClasses(executionData, analyzer);
-			logger.debug("Time to analyze CF data: {}", System.currentTimeMillis() - startTime);
-
-			startTime = System.currentTimeMillis();
-			collectLineCoverage(currentTestFailed, coverageBuilder);
-			logger.debug("Time to read and store data: {} , from {} classes", System.currentTimeMillis() - startTime, coverageBuilder
-					.getClasses().size());
+			int nClasses = collectLineCoverage(currentTestFailed, executionData, awaitTurn);
+			logger.debug("Time to analyze and store CF data: {} , from {} classes", System.currentTimeMillis() - startTime, nClasses);
 
 		} else {
 			logger.error("Unknown DataStore - {}", executionData.getClass().getName());
@@ -129,88 +281,205 @@ public class Jaguar {
 
 	}
 
-	private void analyzeCoveredClasses(AbstractExecutionDataStore executionData, AbstractAnalyzer analyzer) {
-		logger.trace("Analyzing covered classes");
-
-		Collection<File> classFiles = classFilesOfStore(executionData);
-		logger.trace("Class files size = {}", classFiles.size());
+	/**
+	 * Receive the coverage information of a finished test and store it by
+	 * method only, see {@link MethodSpectrum}. The covered lines or DUAs of
+	 * each class are resolved as in {@link #collect}, but only their methods
+	 * are counted. The number of tests is not changed.
+	 * 
+	 * @param testClass
+	 *            the name of the test class
+	 * @param executionData
+	 *            the coverage data from Jacoco
+	 * @param currentTestFailed
+	 *            result of the test
+	 */
+	public void collectMethods(String testClass, AbstractExecutionDataStore executionData, boolean currentTestFailed) {
+		final List<ControlFlowExecutionData> contents = sortedContents(executionData);
+		final boolean dataFlow = executionData instanceof DataFlowExecutionDataStore;
+		final int[][] methods = new int[contents.size()][];
+		analyzer.forEach(contents.size(), i -> {
+			ControlFlowExecutionData data = contents.get(i);
+			if (dataFlow) {
+				final DuaCatalog catalog = analysisCache.getDuaCatalog(data);
+				methods[i] = catalog == null ? new int[0] : coveredMethods(catalog, catalog.getCoveredDuas(ProbeBits.longProbes(data)));
+			} else {
+				final ProbeLineTable table = analysisCache.getLineTable(data);
+				methods[i] = table == null ? new int[0] : coveredMethods(table, table.getCoveredLines(data.getProbes()));
+			}
+		});
+		methodSpectrum.addTest(testClass, Stream.of(methods).flatMapToInt(IntStream::of).toArray(), currentTestFailed);
+	}
 
-		for (File classFile : classFiles) {
-			logger.trace("Analyzing class {}", classFile.getPath());
+	private int[] coveredMethods(DuaCatalog catalog, int[] covered) {
+		return IntStream.of(covered)
+				.map(dua -> methodSpectrum.methodSlot(catalog.getClassName(), catalog.getMethodId(dua), catalog.getMethodSignature(dua)))
+				.distinct().toArray();
+	}
 
-			try (final InputStream inputStream = new FileInputStream(classFile)) {
-                analyzer.analyzeClass(inputStream, classFile.getPath());
-            }
-            catch (IOException e) {
-                logger.warn("Error when reading file: ", classFile);
-                logger.warn("Exception: {}", e.toString());
-            }
-		}
+	private int[] coveredMethods(ProbeLineTable table, int[] covered) {
+		return IntStream.of(covered).filter(table::hasMethod)
+				.map(line -> methodSpectrum.methodSlot(table.getClassName(), table.getMethodId(line), table.getMethodSignature(line)))
+				.distinct().toArray();
 	}
 
-	private Collection<File> classFilesOfStore(AbstractExecutionDataStore executionDataStore) {
-		Collection<File> result = new ArrayList<>();
+	/**
+	 * @return the spectrum of the tests collected by method, see
+	 *         {@link #collectMethods}
+	 */
+	public MethodSpectrum getMethodSpectrum() {
+		return methodSpectrum;
+	}
 
-		// TODO: create abstract FlowExecutionData so ControlFlow and DataFlow can extend
-		Collection<ControlFlowExecutionData> contents = executionDataStore.getContents();
-		logger.trace("ControlFlowExecutionData contents size = {}", contents.size());
+	/**
+	 * Resolve the covered DUAs of each class using its cached DUA catalog, so
+	 * the class files are only analyzed the first time they are seen. The
+	 * classes are resolved in parallel and then stored in class name order.
+	 * A test with the same spectrum and outcome of a previous test only adds
+	 * weight to it, see {@link SpectrumGroups}.
+	 * 
+	 * @return the number of classes with a DUA catalog
+	 */
+	private int collectDuaCoverage(boolean currentTestFailed, AbstractExecutionDataStore executionData, Runnable awaitTurn) {
+		final List<ControlFlowExecutionData> contents = sortedContents(executionData);
+		final DuaCatalog[] catalogs = new DuaCatalog[contents.size()];
+		final int[][] covered = new int[contents.size()][];
+		analyzer.forEach(contents.size(), i -> {
+			ControlFlowExecutionData data = contents.get(i);
+			catalogs[i] = analysisCache.getDuaCatalog(data);
+			if (catalogs[i] != null) {
+				covered[i] = catalogs[i].getCoveredDuas(ProbeBits.longProbes(data));
+			}
+		});
 
-		for (ControlFlowExecutionData data : contents) {
-			String vmClassName = data.getName();
-			File classFile = classFilesCache.get(vmClassName);
-			if (classFile != null) {
-				result.add(classFile);
+		int totalClasses = 0;
+		int totalDuas = 0;
+		int totalDuasCovered = 0;
+		for (int i = 0; i < catalogs.length; i++) {
+			if (catalogs[i] != null) {
+				catalogs[totalClasses] = catalogs[i];
+				covered[totalClasses] = covered[i];
+				totalClasses++;
+				totalDuas += catalogs[i].size();
+				totalDuasCovered += covered[i].length;
 			}
 		}
-		return result;
-	}
+		final DuaCatalog[] coveredCatalogs = Arrays.copyOf(catalogs, totalClasses);
+		final int[][] coveredDuas = Arrays.copyOf(covered, totalClasses);
+		if (awaitTurn != null) {
+			awaitTurn.run();
+		}
 
-	private void collectDuaCoverage(boolean currentTestFailed, DuaCoverageBuilder coverageVisitor) {
-		int totalDuas = 0;
-		int totalDuasCovered = 0; 
-		for (IDuaClassCoverage clazz : coverageVisitor.getClasses()) {
-			logger.trace("Collecting duas from class  {}", clazz.getName());
-			for (IDuaMethodCoverage method : clazz.getMethods()) {
-				logger.trace("Collecting duas from method  {}", method.getSignature());
-				for (IDua dua : method.getDuas()) {
-					totalDuas++;
-					logger.trace("Collecting information from dua {}", dua);
-					CoverageStatus coverageStatus = CoverageStatus.as(dua.getStatus());
-					if (CoverageStatus.FULLY_COVERED == coverageStatus) {
-						totalDuasCovered++;
-						sfl.updateRequirement(clazz, method, dua, currentTestFailed);
-					}
-				}
+		synchronized (sfl) {
+			if (!duaSpectra.add(coveredCatalogs, coveredDuas, currentTestFailed)) {
+				logger.debug("Same spectrum of a previous test, #duplicatedTests = {}", duaSpectra.getnDuplicates());
+				return totalClasses;
 			}
+			updateDuas(coveredCatalogs, coveredDuas, currentTestFailed, 1);
 		}
-		logger.debug("#duas = {}, #coveredDuas = {}", totalDuas, totalDuasCovered);
+		logger.debug("#duas = {}, #coveredDuas = {}, #cachedClasses = {}", totalDuas, totalDuasCovered, analysisCache.size());
+		return totalClasses;
 	}
 
-	private void collectLineCoverage(boolean currentTestFailed, CoverageBuilder coverageVisitor) {
+	/**
+	 * Resolve the covered lines of each class using its cached line table, so
+	 * the class files are only analyzed the first time they are seen. The
+	 * classes are resolved in parallel and then stored in class name order.
+	 * A test with the same spectrum and outcome of a previous test only adds
+	 * weight to it, see {@link SpectrumGroups}.
+	 * 
+	 * @return the number of classes with a line table
+	 */
+	private int collectLineCoverage(boolean currentTestFailed, AbstractExecutionDataStore executionData, Runnable awaitTurn) {
+		final List<ControlFlowExecutionData> contents = sortedContents(executionData);
+		final ProbeLineTable[] tables = new ProbeLineTable[contents.size()];
+		final int[][] covered = new int[contents.size()][];
+		analyzer.forEach(contents.size(), i -> {
+			ControlFlowExecutionData data = contents.get(i);
+			tables[i] = analysisCache.getLineTable(data);
+			if (tables[i] != null) {
+				covered[i] = tables[i].getCoveredLines(data.getProbes());
+			}
+		});
+
+		int totalClasses = 0;
 		int totalLines = 0;
 		int totalLinesCovered = 0;
-		for (IClassCoverage clazz : coverageVisitor.getClasses()) {
-			logger.trace("Collecting lines from class " + clazz.getName());
-			CoverageStatus coverageStatus = CoverageStatus.as(clazz.getClassCounter().getStatus());
-			if (CoverageStatus.FULLY_COVERED == coverageStatus || CoverageStatus.PARTLY_COVERED == coverageStatus) {
-				int firstLine = clazz.getFirstLine();
-				int lastLine = clazz.getLastLine();
-				if (firstLine >= 0) {
-					for (int currentLine = firstLine; currentLine <= lastLine; currentLine++) {
-						totalLines++;
-						ILine line = clazz.getLine(currentLine);
-						logger.trace("Collecting information from line {}", currentLine);
-						coverageStatus = CoverageStatus.as(line.getStatus());
-						if (CoverageStatus.FULLY_COVERED == coverageStatus || CoverageStatus.PARTLY_COVERED == coverageStatus) {
-							totalLinesCovered++;
-							sfl.updateRequirement(clazz, currentLine, currentTestFailed);
-						}
-					}
-				}
+		for (int i = 0; i < tables.length; i++) {
+			if (tables[i] != null) {
+				tables[totalClasses] = tables[i];
+				covered[totalClasses] = covered[i];
+				totalClasses++;
+				totalLines += tables[i].getLineCount();
+				totalLinesCovered += covered[i].length;
+			}
+		}
+		final ProbeLineTable[] coveredTables = Arrays.copyOf(tables, totalClasses);
+		final int[][] coveredLines = Arrays.copyOf(covered, totalClasses);
+		if (awaitTurn != null) {
+			awaitTurn.run();
+		}
+
+		synchronized (sfl) {
+			if (!lineSpectra.add(coveredTables, coveredLines, currentTestFailed)) {
+				logger.debug("Same spectrum of a previous test, #duplicatedTests = {}", lineSpectra.getnDuplicates());
+				return totalClasses;
 			}
+			updateLines(coveredTables, coveredLines, currentTestFailed, 1);
+		}
+		logger.debug("#lines = {}, #coveredlines = {}, #cachedClasses = {}", totalLines, totalLinesCovered, analysisCache.size());
+		return totalClasses;
+	}
+
+	private void updateDuas(DuaCatalog[] catalogs, int[][] covered, boolean failed, int weight) {
+		for (int i = 0; i < catalogs.length; i++) {
+			logger.trace("Collecting duas from class  {}", catalogs[i].getClassName());
+			sfl.updateRequirements(catalogs[i], covered[i], failed, weight);
+		}
+	}
+
+	private void updateLines(ProbeLineTable[] tables, int[][] covered, boolean failed, int weight) {
+		for (int i = 0; i < tables.length; i++) {
+			logger.trace("Collecting lines from class {}", tables[i].getClassName());
+			sfl.updateRequirements(tables[i], covered[i], failed, weight);
+		}
+	}
+
+	/**
+	 * Apply the weight of the tests grouped with a previous test of the same
+	 * spectrum, see {@link SpectrumGroups}.
+	 */
+	private void applyGroupedTests() {
+		synchronized (sfl) {
+			lineSpectra.drain(this::updateLines);
+			duaSpectra.drain(this::updateDuas);
 		}
-		logger.debug("#lines = {}, #coveredlines = {}", totalLines, totalLinesCovered);
+	}
 
+	/**
+	 * Jacoco dumps every class loaded so far, the ones not executed by the
+	 * current test are dropped here, before any analysis.
+	 * 
+	 * @return the execution data of the classes with hits, sorted by class
+	 *         name and id
+	 */
+	private static List<ControlFlowExecutionData> sortedContents(AbstractExecutionDataStore executionData) {
+		Collection<ControlFlowExecutionData> allContents = executionData.getContents();
+		List<ControlFlowExecutionData> contents = new ArrayList<>(allContents.size());
+		for (ControlFlowExecutionData data : allContents) {
+			if (ProbeBits.hasHits(data)) {
+				contents.add(data);
+			}
+		}
+		logger.trace("Classes with hits = {} of {}", contents.size(), allContents.size());
+		Collections.sort(contents, new Comparator<ControlFlowExecutionData>() {
+			@Override
+			public int compare(ControlFlowExecutionData o1, ControlFlowExecutionData o2) {
+				int result = o1.getName().compareTo(o2.getName());
+				return result != 0 ? result : Long.compare(o1.getId(), o2.getId());
+			}
+		});
+		return contents;
 	}
 
 	/**
@@ -222,8 +491,7 @@ public class Jaguar {
 	 */
 	private ArrayList<AbstractTestRequirement> generateRank(Heuristic heuristic) {
 		logger.debug("Rank calculation started...");
-		HeuristicCalculator calc = new HeuristicCalculator(heuristic, sfl.getTestRequirements().values(), nTests - nTestsFailed, nTestsFailed);
-		ArrayList<AbstractTestRequirement> result = calc.calculateRank();
+		ArrayList<AbstractTestRequirement> result = newRankEngine().rank(heuristic, rankLimit).toRequirements();
 		logger.debug("Rank calculation finished.");
 		return result;
 	}
@@ -258,8 +526,7 @@ public class Jaguar {
 	 */
 	public void generateFlatXML(Heuristic heuristic, File projectDir, String fileName) {
 		ArrayList<AbstractTestRequirement> testRequirements = generateRank(heuristic);
-		FlatXmlWriter xmlWriter = new FlatXmlWriter(testRequirements, heuristic, totalTimeSpent);
-		xmlWriter.generateXML(projectDir, fileName);
+		writeXML(new FlatXmlWriter(testRequirements, heuristic, totalTimeSpent), projectDir, fileName);
 	}
 
 	/**
@@ -292,19 +559,169 @@ public class Jaguar {
 	 */
 	public void generateHierarchicalXML(Heuristic heuristic, File projectDir, String fileName) {
 		ArrayList<AbstractTestRequirement> testRequirements = generateRank(heuristic);
-		HierarchicalXmlWriter xmlWriter = new HierarchicalXmlWriter(testRequirements, heuristic, totalTimeSpent);
+		writeXML(new HierarchicalXmlWriter(testRequirements, heuristic, totalTimeSpent), projectDir, fileName);
+	}
+
+	/**
+	 * Rank the requirements with every heuristic and generate the Flat output
+	 * XML of each one, see {@link RankEngine}. The heuristics are ranked and
+	 * written in parallel.
+	 * 
+	 * @param heuristics
+	 *            the heuristics to be used on the fault localization ranks.
+	 * @param projectDir
+	 *            the directory in which the output folder and files will be
+	 *            written
+	 * @param fileNames
+	 *            the name of the output xml file of each heuristic
+	 * 
+	 */
+	public void generateFlatXML(Heuristic[] heuristics, File projectDir, Function<Heuristic, String> fileNames) throws Exception {
+		newRankEngine().rankAll(heuristics, rankLimit, rank -> {
+			writeXML(new FlatXmlWriter(rank.toRequirements(), rank.getHeuristic(), totalTimeSpent), projectDir,
+					fileNames.apply(rank.getHeuristic()));
+		}, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Same as {@link #generateFlatXML(Heuristic[], File, Function)}, for the
+	 * Hierarchical output XML.
+	 * 
+	 * @param heuristics
+	 *            the heuristics to be used on the fault localization ranks.
+	 * @param projectDir
+	 *            the directory in which the output folder and files will be
+	 *            written
+	 * @param fileNames
+	 *            the name of the output xml file of each heuristic
+	 * 
+	 */
+	public void generateHierarchicalXML(Heuristic[] heuristics, File projectDir, Function<Heuristic, String> fileNames) throws Exception {
+		newRankEngine().rankAll(heuristics, rankLimit, rank -> {
+			writeXML(new HierarchicalXmlWriter(rank.toRequirements(), rank.getHeuristic(), totalTimeSpent), projectDir,
+					fileNames.apply(rank.getHeuristic()));
+		}, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Rank the requirements covered so far. The spectrum is not changed, so
+	 * this can be called while the tests are still running.
+	 * 
+	 * @param heuristic
+	 *            the heuristic to be used on the fault localization rank.
+	 * @return the rank
+	 */
+	public Rank rank(Heuristic heuristic) {
+		return newRankEngine().rank(heuristic);
+	}
+
+	/**
+	 * Rank only the most suspicious requirements covered so far, see
+	 * {@link RankEngine#rank(Heuristic, int)}.
+	 * 
+	 * @param heuristic
+	 *            the heuristic to be used on the fault localization rank.
+	 * @param top
+	 *            the number of requirements to rank, 0 or less to rank all
+	 * @return the top of the rank
+	 */
+	public Rank rank(Heuristic heuristic, int top) {
+		return newRankEngine().rank(heuristic, top);
+	}
+
+	private void writeXML(XmlWriter xmlWriter, File projectDir, String fileName) {
+		if (stopReason != null) {
+			xmlWriter.stoppedAfter(nTests, stopReason);
+		}
 		xmlWriter.generateXML(projectDir, fileName);
 	}
 
 	/**
-	 * Currently only used to save the total time spent since Jaguar was
-	 * created.
+	 * The queued coverage is collected first, so the rank has every test
+	 * finished so far.
+	 */
+	private RankEngine newRankEngine() {
+		if (pipeline != null) {
+			pipeline.drain();
+		}
+		applyGroupedTests();
+		synchronized (sfl) {
+			return new RankEngine(sfl.getTestRequirements().values(), nTests - nTestsFailed, nTestsFailed);
+		}
+	}
+
+	/**
+	 * Wait for the queued coverage, if the pipeline is enabled, stop the
+	 * analysis threads and save the total time spent since Jaguar was
+	 * created. The pipeline is not used anymore, but coverage may still be
+	 * collected, starting the analysis threads again, and finish may be
+	 * called again.
 	 * 
 	 */
 	public void finish() {
+		if (pipeline != null) {
+			pipeline.shutdown();
+			pipeline = null;
+		}
+		analyzer.shutdown();
+		applyGroupedTests();
+		logger.debug("#spectra = {}, #duplicatedTests = {}", lineSpectra.size() + duaSpectra.size(),
+				lineSpectra.getnDuplicates() + duaSpectra.getnDuplicates());
 		totalTimeSpent = System.currentTimeMillis() - startTime;
 	}
 
+	/**
+	 * Add the spectrum collected by another Jaguar, like the one of a forked
+	 * JVM running part of the tests.
+	 * 
+	 * @param nTests
+	 *            the number of tests run by the other Jaguar
+	 * @param nTestsFailed
+	 *            the number of failed tests among them
+	 * @param testRequirements
+	 *            the requirements with the cef and cep of those tests
+	 */
+	public void merge(int nTests, int nTestsFailed, Collection<AbstractTestRequirement> testRequirements) {
+		synchronized (sfl) {
+			this.nTests += nTests;
+			this.nTestsFailed += nTestsFailed;
+			for (AbstractTestRequirement testRequirement : testRequirements) {
+				sfl.merge(testRequirement);
+			}
+		}
+	}
+
+	/**
+	 * @return the requirements covered so far, with their cef and cep
+	 */
+	public Collection<AbstractTestRequirement> getTestRequirements() {
+		applyGroupedTests();
+		return sfl.getTestRequirements().values();
+	}
+
+	/**
+	 * Write the spectrum collected so far as a shard, to be merged with the
+	 * shards of the other parts of the tests. See {@link ShardMerger}.
+	 * 
+	 * @param file
+	 *            the shard file
+	 */
+	public void writeShard(File file) throws IOException {
+		SpectrumShardWriter.write(file, nTests, nTestsFailed, getTestRequirements());
+	}
+
+	/**
+	 * Save the whole spectrum, so it can be ranked again without running the
+	 * tests. See {@link SpectrumFileWriter}.
+	 * 
+	 * @param file
+	 *            the spectrum file
+	 */
+	public void writeSpectrum(File file) throws IOException {
+		SpectrumFileWriter.write(file, nTests, nTestsFailed, totalTimeSpent, getTestRequirements(), false);
+		logger.info("Spectrum saved at: {}", file.getAbsolutePath());
+	}
+
 	public int getnTests() {
 		return nTests;
 	}
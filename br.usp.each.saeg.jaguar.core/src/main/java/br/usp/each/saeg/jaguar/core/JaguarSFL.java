@@ -1,24 +1,23 @@
 package br.usp.each.saeg.jaguar.core;
 
-import java.util.Collection;
 import java.util.HashMap;
 
-import org.apache.commons.lang3.StringUtils;
-import org.eclipse.jdt.core.Signature;
-import org.jacoco.core.analysis.IClassCoverage;
-import org.jacoco.core.analysis.IMethodCoverage;
 import org.jacoco.core.analysis.dua.IDua;
 import org.jacoco.core.analysis.dua.IDuaClassCoverage;
 import org.jacoco.core.analysis.dua.IDuaMethodCoverage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import br.usp.each.saeg.jaguar.core.analysis.DuaCatalog;
+import br.usp.each.saeg.jaguar.core.analysis.ProbeLineTable;
 import br.usp.each.saeg.jaguar.core.model.core.requirement.AbstractTestRequirement;
 import br.usp.each.saeg.jaguar.core.model.core.requirement.DuaTestRequirement;
-import br.usp.each.saeg.jaguar.core.model.core.requirement.LineTestRequirement;
+import br.usp.each.saeg.jaguar.core.utils.StringUtils;
 
 /**
- * This class store the SFL coverage information.
+ * This class store the SFL coverage information. The cef and cep are counted
+ * in a {@link RequirementStore}, and the requirement objects are only created
+ * when they are asked for.
  * 
  * @author Henrique Ribeiro
  */
@@ -26,7 +25,8 @@ public class JaguarSFL {
 
 	private final static Logger logger = LoggerFactory.getLogger("JaguarLogger");
 
-	private HashMap<AbstractTestRequirement, AbstractTestRequirement> testRequirements = new HashMap<AbstractTestRequirement, AbstractTestRequirement>();
+	private final RequirementStore store = new RequirementStore();
+	private HashMap<AbstractTestRequirement, AbstractTestRequirement> testRequirements;
 
 	/**
 	 * Update the testRequirement info. If it does not exist, create a new one.
@@ -48,29 +48,80 @@ public class JaguarSFL {
 
 		AbstractTestRequirement testRequirement = new DuaTestRequirement(clazz.getName(), dua.getIndex(), dua.getDef(), dua.getUse(),
 				dua.getTarget(), dua.getVar());
-		AbstractTestRequirement foundRequirement = testRequirements.get(testRequirement);
-		
-		if (foundRequirement == null) {
-			testRequirement.setClassFirstLine(0);
-			testRequirement.setMethodLine(dua.getDef());
-			
-			String methodSignature = Signature.toString(method.getDesc(), method.getName(), null, false, true);		
-			testRequirement.setMethodSignature(extractName(methodSignature, clazz.getName()));
-			testRequirement.setMethodId(method.getId());
-			testRequirements.put(testRequirement, testRequirement);
-		} else {
-			testRequirement = foundRequirement;
-		}
+		testRequirement.setClassFirstLine(0);
+		testRequirement.setMethodLine(dua.getDef());
+		testRequirement.setMethodSignature(StringUtils.getMethodSignature(method.getName(), method.getDesc(), clazz.getName()));
+		testRequirement.setMethodId(method.getId());
 
 		if (failed) {
 			testRequirement.increaseFailed();
 		} else {
 			testRequirement.increasePassed();
 		}
+		merge(testRequirement);
 		logger.trace("Added information from covered dua to TestRequirement {}", testRequirement.toString());
 
 	}
 
+	/**
+	 * Update the testRequirement info. If it does not exist, create a new one.
+	 * If the test has failed, increment the cef (executed and failed coefficient)
+	 * If the test has passed, increment the cep (executed and passed coefficient)
+	 *
+	 * @param catalog
+	 *            the DUA catalog of the class
+	 * @param duaIndex
+	 *            the position of the DUA in the catalog
+	 * @param failed
+	 *            if the test has failed
+	 *
+	 */
+	public void updateRequirement(DuaCatalog catalog, int duaIndex, boolean failed) {
+		updateRequirement(catalog, duaIndex, failed, 1);
+	}
+
+	/**
+	 * Same as {@link #updateRequirement(DuaCatalog, int, boolean)}, for weight
+	 * tests with the same outcome covering the DUA.
+	 *
+	 * @param catalog
+	 *            the DUA catalog of the class
+	 * @param duaIndex
+	 *            the position of the DUA in the catalog
+	 * @param failed
+	 *            if the tests have failed
+	 * @param weight
+	 *            the number of tests
+	 */
+	public void updateRequirement(DuaCatalog catalog, int duaIndex, boolean failed, int weight) {
+		if (!catalog.isIgnored(duaIndex)) {
+			store.addDua(store.classId(catalog.getClassName()), catalog, duaIndex, failed, weight);
+			testRequirements = null;
+		}
+	}
+
+	/**
+	 * Same as {@link #updateRequirement(DuaCatalog, int, boolean, int)}, for
+	 * every covered DUA of the class. The class name is looked up once.
+	 *
+	 * @param catalog
+	 *            the DUA catalog of the class
+	 * @param duaIndexes
+	 *            the positions of the covered DUAs in the catalog
+	 * @param failed
+	 *            if the tests have failed
+	 * @param weight
+	 *            the number of tests
+	 */
+	public void updateRequirements(DuaCatalog catalog, int[] duaIndexes, boolean failed, int weight) {
+		final int classId = store.classId(catalog.getClassName());
+		for (int duaIndex : duaIndexes) {
+			if (!catalog.isIgnored(duaIndex)) {
+				store.addDua(classId, catalog, duaIndex, failed, weight);
+			}
+		}
+		testRequirements = null;
+	}
 
 	/**
 	 * Update the testRequirement info. If it does not exist, create a new one.
@@ -78,69 +129,80 @@ public class JaguarSFL {
 	 * failed) If the test has passed, increment the cep (coefficient of
 	 * executed and passed)
 	 * 
-	 * @param clazz
-	 *            the class name, including package
-	 * @param lineNumber
-	 *            the line number
+	 * @param table
+	 *            the line table of the class
+	 * @param lineIndex
+	 *            the index of the line in the table
 	 * @param failed
 	 *            if the test has failed
 	 * 
 	 */
-	public void updateRequirement(IClassCoverage clazz, int lineNumber, boolean failed) {
-		AbstractTestRequirement testRequirement = new LineTestRequirement(clazz.getName(), lineNumber);
-		AbstractTestRequirement foundRequirement = testRequirements.get(testRequirement);
-
-		if (foundRequirement == null) {
-			testRequirement.setClassFirstLine(clazz.getFirstLine());
-			Collection<IMethodCoverage> methods = clazz.getMethods();
-			Integer methodId = 0;
-			for (IMethodCoverage method : methods) {
-				methodId++;
-				if (method.getLine(lineNumber) != org.jacoco.core.internal.analysis.LineImpl.EMPTY) {
-					testRequirement.setMethodLine(method.getFirstLine());
-					String methodSignature = Signature.toString(method.getDesc(), method.getName(), null, false, true);
-					testRequirement.setMethodSignature(extractName(methodSignature, clazz.getName()));
-					testRequirement.setMethodId(methodId);
-					break;
-				}
-			}
-			testRequirements.put(testRequirement, testRequirement);
-		} else {
-			testRequirement = foundRequirement;
-		}
-
-		if (failed) {
-			testRequirement.increaseFailed();
-		} else {
-			testRequirement.increasePassed();
-		}
+	public void updateRequirement(ProbeLineTable table, int lineIndex, boolean failed) {
+		updateRequirement(table, lineIndex, failed, 1);
+	}
 
-		logger.trace("Added information from covered line to TestRequirement {}", testRequirement.toString());
+	/**
+	 * Same as {@link #updateRequirement(ProbeLineTable, int, boolean)}, for
+	 * weight tests with the same outcome covering the line.
+	 *
+	 * @param table
+	 *            the line table of the class
+	 * @param lineIndex
+	 *            the index of the line in the table
+	 * @param failed
+	 *            if the tests have failed
+	 * @param weight
+	 *            the number of tests
+	 */
+	public void updateRequirement(ProbeLineTable table, int lineIndex, boolean failed, int weight) {
+		store.addLine(store.classId(table.getClassName()), table, lineIndex, failed, weight);
+		testRequirements = null;
 	}
 
 	/**
-	 * Remove the return value and replace method name by Class name if it is
-	 * init();
-	 * 
-	 * @param methodName
-	 *            method complete signature
-	 * @param className
-	 * @return method name without return value
+	 * Same as {@link #updateRequirement(ProbeLineTable, int, boolean, int)},
+	 * for every covered line of the class. The class name is looked up once.
+	 *
+	 * @param table
+	 *            the line table of the class
+	 * @param lineIndexes
+	 *            the indexes of the covered lines in the table
+	 * @param failed
+	 *            if the tests have failed
+	 * @param weight
+	 *            the number of tests
 	 */
-	private String extractName(String methodName, String className) {
-		methodName = methodName.substring(StringUtils.indexOf(methodName, " ") + 1);
-		if (methodName.equals("<init>()")) {
-			String[] classNameSplited = className.split("/");
-			methodName = classNameSplited[classNameSplited.length - 1] + "()";
+	public void updateRequirements(ProbeLineTable table, int[] lineIndexes, boolean failed, int weight) {
+		final int classId = store.classId(table.getClassName());
+		for (int lineIndex : lineIndexes) {
+			store.addLine(classId, table, lineIndex, failed, weight);
 		}
-		return methodName;
+		testRequirements = null;
 	}
 
+	/**
+	 * Add the cef and cep of a requirement collected somewhere else, like in
+	 * a forked JVM. If the requirement does not exist, it is added as is.
+	 * 
+	 * @param partial
+	 *            the requirement with the partial cef and cep
+	 */
+	public void merge(AbstractTestRequirement partial) {
+		store.merge(partial);
+		testRequirements = null;
+	}
 
 	/**
-	 * @return the testRequirements
+	 * @return the testRequirements, created from the counts of the store the
+	 *         first time they are asked for after an update
 	 */
 	public HashMap<AbstractTestRequirement, AbstractTestRequirement> getTestRequirements() {
+		if (testRequirements == null) {
+			testRequirements = new HashMap<AbstractTestRequirement, AbstractTestRequirement>(store.size() * 2);
+			for (AbstractTestRequirement testRequirement : store.materialize()) {
+				testRequirements.put(testRequirement, testRequirement);
+			}
+		}
 		return testRequirements;
 	}
 
@@ -149,7 +211,11 @@ public class JaguarSFL {
 	 * @param testRequirements the testRequirements to set
 	 */
 	public void setTestRequirements(HashMap<AbstractTestRequirement, AbstractTestRequirement> testRequirements) {
-		this.testRequirements = testRequirements;
+		store.clear();
+		for (AbstractTestRequirement testRequirement : testRequirements.values()) {
+			store.merge(testRequirement);
+		}
+		this.testRequirements = null;
 	}
 	
 }
@@ -0,0 +1,234 @@
+package br.usp.each.saeg.jaguar.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import br.usp.each.saeg.jaguar.core.heuristic.Heuristic;
+import br.usp.each.saeg.jaguar.core.heuristic.HeuristicCalculator;
+
+/**
+ * The cef and cep of every covered method, the coarse spectrum of a
+ * coarse-to-fine run. A method is covered by a test when any of its lines,
+ * or DUAs, is covered, and only one counter per method is kept.
+ * <p>
+ * The classes covered by each test class are also kept, so the tests
+ * relevant to a set of classes can be run again with line or DUA coverage of
+ * those classes only.
+ */
+public class MethodSpectrum {
+
+	private final Map<String, Integer> slots = new HashMap<String, Integer>();
+	private final List<String> classNames = new ArrayList<String>();
+	private final List<Integer> methodIds = new ArrayList<Integer>();
+	private final List<String> signatures = new ArrayList<String>();
+	private int[] cef = new int[1024];
+	private int[] cep = new int[1024];
+
+	private final Map<String, Set<String>> coveredClasses = new HashMap<String, Set<String>>();
+	private final Set<String> failedTestClasses = new HashSet<String>();
+
+	/**
+	 * @param className
+	 *            the vm name of the class
+	 * @param methodId
+	 *            the id of the method in the class
+	 * @param signature
+	 *            the method signature, kept from the first call
+	 * @return the slot of the method in this spectrum
+	 */
+	public synchronized int methodSlot(String className, int methodId, String signature) {
+		final String key = className + '#' + methodId;
+		Integer slot = slots.get(key);
+		if (slot == null) {
+			slot = classNames.size();
+			slots.put(key, slot);
+			classNames.add(className);
+			methodIds.add(methodId);
+			signatures.add(signature);
+			if (slot == cef.length) {
+				cef = Arrays.copyOf(cef, slot * 2);
+				cep = Arrays.copyOf(cep, slot * 2);
+			}
+		}
+		return slot;
+	}
+
+	/**
+	 * Count a test covering the given methods.
+	 *
+	 * @param testClass
+	 *            the name of the test class
+	 * @param methods
+	 *            the distinct slots of the covered methods
+	 * @param failed
+	 *            if the test has failed
+	 */
+	public synchronized void addTest(String testClass, int[] methods, boolean failed) {
+		final Set<String> classes = new HashSet<String>();
+		for (int slot : methods) {
+			if (failed) {
+				cef[slot]++;
+			} else {
+				cep[slot]++;
+			}
+			classes.add(classNames.get(slot));
+		}
+		addCoveredClasses(testClass, classes, failed);
+	}
+
+	/**
+	 * Add the cef and cep of a method counted somewhere else, like in a
+	 * forked JVM.
+	 *
+	 * @param slot
+	 *            the slot of the method, see {@link #methodSlot}
+	 */
+	public synchronized void addCounts(int slot, int cef, int cep) {
+		this.cef[slot] += cef;
+		this.cep[slot] += cep;
+	}
+
+	/**
+	 * Add the classes covered by the tests of a test class.
+	 *
+	 * @param testClass
+	 *            the name of the test class
+	 * @param classes
+	 *            the vm names of the covered classes
+	 * @param failed
+	 *            if any of the tests has failed
+	 */
+	public synchronized void addCoveredClasses(String testClass, Collection<String> classes, boolean failed) {
+		Set<String> covered = coveredClasses.get(testClass);
+		if (covered == null) {
+			covered = new HashSet<String>();
+			coveredClasses.put(testClass, covered);
+		}
+		covered.addAll(classes);
+		if (failed) {
+			failedTestClasses.add(testClass);
+		}
+	}
+
+	/**
+	 * Rank the methods and keep the most suspicious ones, along with the ones
+	 * tied with the last of them.
+	 *
+	 * @param heuristic
+	 *            the heuristic of the rank
+	 * @param nTestsPassed
+	 *            Total number of passed tests
+	 * @param nTestsFailed
+	 *            Total number of failed tests
+	 * @param top
+	 *            the number of methods to keep
+	 * @return the slots of the most suspicious methods, the more suspicious
+	 *         first
+	 */
+	public synchronized int[] rank(Heuristic heuristic, int nTestsPassed, int nTestsFailed, int top) {
+		final int size = classNames.size();
+		final double[] score = HeuristicCalculator.evaluate(heuristic, Arrays.copyOf(cef, size), Arrays.copyOf(cep, size),
+				nTestsFailed, nTestsPassed);
+		final Integer[] order = new Integer[size];
+		for (int slot = 0; slot < size; slot++) {
+			order[slot] = slot;
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(score[b], score[a]));
+
+		int limit = Math.min(Math.max(top, 0), size);
+		while (limit > 0 && limit < size && Double.compare(score[order[limit]], score[order[limit - 1]]) == 0) {
+			limit++;
+		}
+		final int[] result = new int[limit];
+		for (int i = 0; i < limit; i++) {
+			result[i] = order[i];
+		}
+		return result;
+	}
+
+	/**
+	 * @return the classes of the given methods, in the order of the methods
+	 */
+	public synchronized Set<String> getClassNames(int[] methods) {
+		final Set<String> result = new LinkedHashSet<String>();
+		for (int slot : methods) {
+			result.add(classNames.get(slot));
+		}
+		return result;
+	}
+
+	/**
+	 * @param classes
+	 *            the vm names of the classes
+	 * @return the test classes with a failed test or covering any of the
+	 *         classes
+	 */
+	public synchronized Set<String> getTestClassesCovering(Set<String> classes) {
+		final Set<String> result = new HashSet<String>(failedTestClasses);
+		for (Map.Entry<String, Set<String>> entry : coveredClasses.entrySet()) {
+			if (!result.contains(entry.getKey()) && !Collections.disjoint(entry.getValue(), classes)) {
+				result.add(entry.getKey());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the names of the test classes seen so far
+	 */
+	public synchronized Set<String> getTestClasses() {
+		return new HashSet<String>(coveredClasses.keySet());
+	}
+
+	/**
+	 * @return the vm names of the classes covered by the tests of the test
+	 *         class
+	 */
+	public synchronized Set<String> getCoveredClasses(String testClass) {
+		final Set<String> covered = coveredClasses.get(testClass);
+		return covered == null ? Collections.<String> emptySet() : new HashSet<String>(covered);
+	}
+
+	/**
+	 * @return if any test of the test class has failed
+	 */
+	public synchronized boolean hasFailed(String testClass) {
+		return failedTestClasses.contains(testClass);
+	}
+
+	public synchronized String getClassName(int slot) {
+		return classNames.get(slot);
+	}
+
+	public synchronized int getMethodId(int slot) {
+		return methodIds.get(slot);
+	}
+
+	public synchronized String getSignature(int slot) {
+		return signatures.get(slot);
+	}
+
+	public synchronized int getCef(int slot) {
+		return cef[slot];
+	}
+
+	public synchronized int getCep(int slot) {
+		return cep[slot];
+	}
+
+	/**
+	 * @return the number of covered methods
+	 */
+	public synchronized int size() {
+		return classNames.size();
+	}
+
+}
@@ -0,0 +1,321 @@
+package br.usp.each.saeg.jaguar.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.jacoco.core.data.AbstractExecutionDataStore;
+import org.jacoco.core.data.ControlFlowExecutionData;
+import org.jacoco.core.data.ControlFlowExecutionDataStore;
+import org.jacoco.core.data.DataFlowExecutionData;
+import org.jacoco.core.data.DataFlowExecutionDataStore;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.runtime.RemoteControlWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the coverage from a Jacoco agent running as tcpserver, like
+ * {@link JaCoCoClient}, but parsing the exec protocol straight from a
+ * {@link SocketChannel} into reusable buffers.
+ * <p>
+ * The stores returned by {@link #read()} are pooled: once given back with
+ * {@link #release(AbstractExecutionDataStore)} they are reset and filled again
+ * by a later read, reusing the probe array of each class id. After the first
+ * tests the allocation per read does not grow with the number of loaded
+ * classes.
+ */
+public class NioCoverageClient implements CoverageClient {
+
+	private final static Logger logger = LoggerFactory.getLogger("JaguarLogger");
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_POOLED_STORES = 16;
+
+	private final InetSocketAddress address;
+	private final Boolean isDataflow;
+
+	private SocketChannel channel;
+	private final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final ByteBuffer out = ByteBuffer.allocateDirect(16);
+	private byte[] nameBytes = new byte[256];
+
+	private final Deque<AbstractExecutionDataStore> pool = new ArrayDeque<AbstractExecutionDataStore>();
+
+	private long lastReadBytes;
+	private long lastReadNanos;
+	private long totalBytes;
+	private long totalNanos;
+	private long reads;
+
+	public NioCoverageClient(final InetAddress address, final int port, Boolean isDataflow) {
+		this.address = new InetSocketAddress(address, port);
+		this.isDataflow = isDataflow;
+	}
+
+	public NioCoverageClient(Boolean isDataflow) throws UnknownHostException {
+		this(InetAddress.getByName(CoverageClients.DEFAULT_ADDRESS), CoverageClients.DEFAULT_PORT, isDataflow);
+	}
+
+	@Override
+	public void connect() throws IOException {
+		channel = SocketChannel.open(address);
+		channel.configureBlocking(true);
+		in.clear();
+		in.flip();
+
+		out.clear();
+		out.put(ExecutionDataWriter.BLOCK_HEADER);
+		out.putChar(ExecutionDataWriter.MAGIC_NUMBER);
+		out.putChar(ExecutionDataWriter.FORMAT_VERSION);
+		write();
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	@Override
+	public AbstractExecutionDataStore read() throws IOException {
+		long startTime = System.nanoTime();
+		lastReadBytes = 0;
+
+		AbstractExecutionDataStore executionData = takeStore();
+
+		// Send a dump and reset command and read the response:
+		out.clear();
+		out.put(RemoteControlWriter.BLOCK_CMDDUMP);
+		out.put((byte) 1);
+		out.put((byte) 1);
+		write();
+
+		boolean done = false;
+		while (!done) {
+			byte block = readByte();
+			switch (block) {
+				case ExecutionDataWriter.BLOCK_HEADER:
+					readHeader();
+					break;
+				case ExecutionDataWriter.BLOCK_SESSIONINFO:
+					skip(readUnsignedShort() + 16);
+					break;
+				case ExecutionDataWriter.BLOCK_EXECUTIONDATA:
+					readExecutionData(executionData);
+					break;
+				case RemoteControlWriter.BLOCK_CMDOK:
+					done = true;
+					break;
+				default:
+					throw new IOException(String.format("Unknown block type %x.", block));
+			}
+		}
+
+		lastReadNanos = System.nanoTime() - startTime;
+		totalBytes += lastReadBytes;
+		totalNanos += lastReadNanos;
+		reads++;
+		logger.debug("Coverage read: {} bytes in {} us", lastReadBytes, lastReadNanos / 1000);
+		return executionData;
+	}
+
+	@Override
+	public void release(AbstractExecutionDataStore executionData) {
+		synchronized (pool) {
+			if (pool.size() < MAX_POOLED_STORES) {
+				pool.push(executionData);
+			}
+		}
+	}
+
+	private AbstractExecutionDataStore takeStore() {
+		AbstractExecutionDataStore executionData;
+		synchronized (pool) {
+			executionData = pool.poll();
+		}
+		if (executionData == null) {
+			return isDataflow ? new DataFlowExecutionDataStore() : new ControlFlowExecutionDataStore();
+		}
+		executionData.reset();
+		return executionData;
+	}
+
+	private void readHeader() throws IOException {
+		if (readChar() != ExecutionDataWriter.MAGIC_NUMBER) {
+			throw new IOException("Invalid execution data file.");
+		}
+		char version = readChar();
+		if (version != ExecutionDataWriter.FORMAT_VERSION) {
+			throw new IOException(String.format("Incompatible version %x.", (int) version));
+		}
+	}
+
+	private void readExecutionData(AbstractExecutionDataStore executionData) throws IOException {
+		long id = readLong();
+		int nameLength = readUnsignedShort();
+		ControlFlowExecutionData data = executionData.get(id);
+		String name = null;
+		if (data == null) {
+			name = readName(nameLength);
+		} else {
+			skip(nameLength);
+		}
+
+		int probeCount = readVarInt();
+		if (data == null) {
+			data = executionData.get(id, name, isDataflow ? (probeCount + 63) >>> 6 : probeCount);
+		}
+		if (data instanceof DataFlowExecutionData) {
+			readProbes(((DataFlowExecutionData) data).getLongProbes(), probeCount);
+		} else {
+			readProbes(data.getProbes(), probeCount);
+		}
+	}
+
+	private void readProbes(boolean[] probes, int probeCount) throws IOException {
+		if (probes.length != probeCount) {
+			throw new IOException("Incompatible probe count " + probeCount);
+		}
+		int probe = 0;
+		while (probe < probeCount) {
+			require(1);
+			int end = Math.min(probeCount, probe + in.remaining() * 8);
+			while (probe < end) {
+				int bits = in.get();
+				for (int bit = 0; bit < 8 && probe < end; bit++, probe++) {
+					probes[probe] = (bits & (1 << bit)) != 0;
+				}
+			}
+		}
+	}
+
+	private void readProbes(long[] probes, int probeCount) throws IOException {
+		if (probes.length * 64 < probeCount) {
+			throw new IOException("Incompatible probe count " + probeCount);
+		}
+		int bytes = (probeCount + 7) >>> 3;
+		int index = 0;
+		while (index < bytes) {
+			require(1);
+			int end = Math.min(bytes, index + in.remaining());
+			for (; index < end; index++) {
+				probes[index >>> 3] |= (in.get() & 0xFFL) << ((index & 7) << 3);
+			}
+		}
+	}
+
+	private String readName(int length) throws IOException {
+		if (nameBytes.length < length) {
+			nameBytes = new byte[length];
+		}
+		int read = 0;
+		while (read < length) {
+			require(1);
+			int chunk = Math.min(length - read, in.remaining());
+			in.get(nameBytes, read, chunk);
+			read += chunk;
+		}
+		// class names have no chars where modified UTF-8 differs from UTF-8
+		return new String(nameBytes, 0, length, StandardCharsets.UTF_8);
+	}
+
+	private byte readByte() throws IOException {
+		require(1);
+		return in.get();
+	}
+
+	private char readChar() throws IOException {
+		require(2);
+		return in.getChar();
+	}
+
+	private int readUnsignedShort() throws IOException {
+		require(2);
+		return in.getShort() & 0xFFFF;
+	}
+
+	private long readLong() throws IOException {
+		require(8);
+		return in.getLong();
+	}
+
+	private int readVarInt() throws IOException {
+		int value = 0;
+		for (int shift = 0;; shift += 7) {
+			int b = readByte() & 0xFF;
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+	}
+
+	private void skip(int n) throws IOException {
+		while (n > 0) {
+			require(1);
+			int chunk = Math.min(n, in.remaining());
+			in.position(in.position() + chunk);
+			n -= chunk;
+		}
+	}
+
+	/**
+	 * Make sure at least n bytes are buffered, reading more from the channel
+	 * if needed.
+	 */
+	private void require(int n) throws IOException {
+		if (in.remaining() >= n) {
+			return;
+		}
+		in.compact();
+		while (in.position() < n) {
+			int read = channel.read(in);
+			if (read < 0) {
+				throw new EOFException();
+			}
+			lastReadBytes += read;
+		}
+		in.flip();
+	}
+
+	private void write() throws IOException {
+		out.flip();
+		while (out.hasRemaining()) {
+			channel.write(out);
+		}
+	}
+
+	/**
+	 * @return the bytes received by the last read
+	 */
+	public long getLastReadBytes() {
+		return lastReadBytes;
+	}
+
+	/**
+	 * @return the time spent by the last read, in nanoseconds
+	 */
+	public long getLastReadNanos() {
+		return lastReadNanos;
+	}
+
+	public long getTotalBytes() {
+		return totalBytes;
+	}
+
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	public long getReads() {
+		return reads;
+	}
+
+}
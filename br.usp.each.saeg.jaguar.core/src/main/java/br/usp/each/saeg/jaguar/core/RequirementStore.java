@@ -0,0 +1,306 @@
+package br.usp.each.saeg.jaguar.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import br.usp.each.saeg.jaguar.core.analysis.DuaCatalog;
+import br.usp.each.saeg.jaguar.core.analysis.ProbeLineTable;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.AbstractTestRequirement;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.DuaTestRequirement;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.LineTestRequirement;
+
+/**
+ * The cef and cep of every covered requirement, kept in primitive arrays.
+ * <p>
+ * Class names are interned to int ids, once per class of a test. A line is
+ * keyed by its class id and line number, and a DUA by its class id and its
+ * position in the {@link DuaCatalog}, packed in a long. The keys are held in
+ * an open addressing table pointing to the entries, and each entry is a slot
+ * of the count arrays plus the table and position it came from. Counting a
+ * covered requirement is then only integer work, with no allocation.
+ * <p>
+ * The requirement objects are only created by {@link #materialize()}, when
+ * the rank is calculated.
+ */
+public class RequirementStore {
+
+	private static final long DUA_KEY = 1L << 63;
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final Map<String, Integer> classIds = new HashMap<String, Integer>();
+
+	/**
+	 * DUAs are equal by def, use, target and var, not by catalog position, so
+	 * the DUA entries are also indexed by the requirement. Only used when a
+	 * DUA key is seen for the first time and for merged DUAs.
+	 */
+	private final Map<AbstractTestRequirement, Integer> duaEntries = new HashMap<AbstractTestRequirement, Integer>();
+
+	private long[] keys = new long[INITIAL_CAPACITY];
+	private int[] slots = new int[INITIAL_CAPACITY];
+	private int nKeys = 0;
+
+	private int[] cef = new int[INITIAL_CAPACITY];
+	private int[] cep = new int[INITIAL_CAPACITY];
+	private Object[] origin = new Object[INITIAL_CAPACITY];
+	private int[] originIndex = new int[INITIAL_CAPACITY];
+	private int size = 0;
+
+	/**
+	 * @param className
+	 *            the class name, including package
+	 * @return the id of the class in this store
+	 */
+	public int classId(String className) {
+		Integer id = classIds.get(className);
+		if (id == null) {
+			id = classIds.size();
+			classIds.put(className, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Count weight tests with the same outcome covering a line.
+	 *
+	 * @param classId
+	 *            the id of the class of the table, see {@link #classId(String)}
+	 * @param table
+	 *            the line table of the class
+	 * @param lineIndex
+	 *            the index of the line in the table
+	 * @param failed
+	 *            if the tests have failed
+	 * @param weight
+	 *            the number of tests
+	 */
+	public void addLine(int classId, ProbeLineTable table, int lineIndex, boolean failed, int weight) {
+		final long key = lineKey(classId, table.getLine(lineIndex));
+		int entry = find(key);
+		if (entry < 0) {
+			entry = newEntry(table, lineIndex);
+			putKey(key, entry);
+		}
+		count(entry, failed, weight);
+	}
+
+	/**
+	 * Count weight tests with the same outcome covering a DUA.
+	 *
+	 * @param classId
+	 *            the id of the class of the catalog, see
+	 *            {@link #classId(String)}
+	 * @param catalog
+	 *            the DUA catalog of the class
+	 * @param duaIndex
+	 *            the position of the DUA in the catalog
+	 * @param failed
+	 *            if the tests have failed
+	 * @param weight
+	 *            the number of tests
+	 */
+	public void addDua(int classId, DuaCatalog catalog, int duaIndex, boolean failed, int weight) {
+		final long key = DUA_KEY | ((long) classId << 32) | duaIndex;
+		int entry = find(key);
+		if (entry < 0) {
+			final AbstractTestRequirement dua = new DuaTestRequirement(catalog.getClassName(), catalog.getIndex(duaIndex),
+					catalog.getDef(duaIndex), catalog.getUse(duaIndex), catalog.getTarget(duaIndex), catalog.getVar(duaIndex));
+			final Integer existing = duaEntries.get(dua);
+			if (existing != null) {
+				entry = existing;
+			} else {
+				entry = newEntry(catalog, duaIndex);
+				duaEntries.put(dua, entry);
+			}
+			putKey(key, entry);
+		}
+		count(entry, failed, weight);
+	}
+
+	/**
+	 * Add the cef and cep of a requirement collected somewhere else. If the
+	 * requirement does not exist, its identity and method are kept as given.
+	 *
+	 * @param partial
+	 *            the requirement with the partial cef and cep
+	 */
+	public void merge(AbstractTestRequirement partial) {
+		int entry;
+		if (partial instanceof DuaTestRequirement) {
+			final Integer existing = duaEntries.get(partial);
+			if (existing != null) {
+				entry = existing;
+			} else {
+				entry = newEntry(partial, 0);
+				duaEntries.put(partial, entry);
+			}
+		} else {
+			final long key = lineKey(classId(partial.getClassName()), ((LineTestRequirement) partial).getLineNumber());
+			entry = find(key);
+			if (entry < 0) {
+				entry = newEntry(partial, 0);
+				putKey(key, entry);
+			}
+		}
+		cef[entry] += partial.getCef();
+		cep[entry] += partial.getCep();
+	}
+
+	/**
+	 * @return the number of requirements
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Remove every requirement.
+	 */
+	public void clear() {
+		classIds.clear();
+		duaEntries.clear();
+		Arrays.fill(slots, 0);
+		Arrays.fill(origin, 0, size, null);
+		Arrays.fill(cef, 0, size, 0);
+		Arrays.fill(cep, 0, size, 0);
+		nKeys = 0;
+		size = 0;
+	}
+
+	/**
+	 * Create the requirement objects, with their cef and cep.
+	 *
+	 * @return the requirements, in the order they were first covered
+	 */
+	public List<AbstractTestRequirement> materialize() {
+		final List<AbstractTestRequirement> requirements = new ArrayList<AbstractTestRequirement>(size);
+		for (int entry = 0; entry < size; entry++) {
+			final AbstractTestRequirement requirement = create(origin[entry], originIndex[entry]);
+			requirement.increaseFailed(cef[entry]);
+			requirement.increasePassed(cep[entry]);
+			requirements.add(requirement);
+		}
+		return requirements;
+	}
+
+	private static AbstractTestRequirement create(Object source, int index) {
+		final AbstractTestRequirement requirement;
+		if (source instanceof ProbeLineTable) {
+			final ProbeLineTable table = (ProbeLineTable) source;
+			requirement = new LineTestRequirement(table.getClassName(), table.getLine(index));
+			requirement.setClassFirstLine(table.getClassFirstLine());
+			if (table.hasMethod(index)) {
+				requirement.setMethodLine(table.getMethodFirstLine(index));
+				requirement.setMethodSignature(table.getMethodSignature(index));
+				requirement.setMethodId(table.getMethodId(index));
+			}
+		} else if (source instanceof DuaCatalog) {
+			final DuaCatalog catalog = (DuaCatalog) source;
+			requirement = new DuaTestRequirement(catalog.getClassName(), catalog.getIndex(index), catalog.getDef(index),
+					catalog.getUse(index), catalog.getTarget(index), catalog.getVar(index));
+			requirement.setClassFirstLine(0);
+			requirement.setMethodLine(catalog.getDef(index));
+			requirement.setMethodSignature(catalog.getMethodSignature(index));
+			requirement.setMethodId(catalog.getMethodId(index));
+		} else if (source instanceof DuaTestRequirement) {
+			final DuaTestRequirement dua = (DuaTestRequirement) source;
+			requirement = new DuaTestRequirement(dua.getClassName(), dua.getIndex(), dua.getDef(), dua.getUse(), dua.getTarget(),
+					dua.getVar());
+			copyMethod(dua, requirement);
+		} else {
+			final LineTestRequirement line = (LineTestRequirement) source;
+			requirement = new LineTestRequirement(line.getClassName(), line.getLineNumber());
+			copyMethod(line, requirement);
+		}
+		return requirement;
+	}
+
+	private static void copyMethod(AbstractTestRequirement from, AbstractTestRequirement to) {
+		to.setClassFirstLine(from.getClassFirstLine());
+		to.setMethodLine(from.getMethodLine());
+		to.setMethodSignature(from.getMethodSignature());
+		to.setMethodId(from.getMethodId());
+	}
+
+	private static long lineKey(int classId, int line) {
+		return ((long) classId << 32) | (line & 0xFFFFFFFFL);
+	}
+
+	private void count(int entry, boolean failed, int weight) {
+		if (failed) {
+			cef[entry] += weight;
+		} else {
+			cep[entry] += weight;
+		}
+	}
+
+	private int newEntry(Object source, int index) {
+		if (size == cef.length) {
+			final int capacity = size * 2;
+			cef = Arrays.copyOf(cef, capacity);
+			cep = Arrays.copyOf(cep, capacity);
+			origin = Arrays.copyOf(origin, capacity);
+			originIndex = Arrays.copyOf(originIndex, capacity);
+		}
+		origin[size] = source;
+		originIndex[size] = index;
+		return size++;
+	}
+
+	/**
+	 * @return the entry of the key, or -1 if it is not in the table
+	 */
+	private int find(long key) {
+		final int mask = keys.length - 1;
+		for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+			final int slot = slots[i];
+			if (slot == 0) {
+				return -1;
+			}
+			if (keys[i] == key) {
+				return slot - 1;
+			}
+		}
+	}
+
+	private void putKey(long key, int entry) {
+		if ((nKeys + 1) * 2 > keys.length) {
+			rehash(keys.length * 2);
+		}
+		insert(keys, slots, key, entry + 1);
+		nKeys++;
+	}
+
+	private void rehash(int capacity) {
+		final long[] newKeys = new long[capacity];
+		final int[] newSlots = new int[capacity];
+		for (int i = 0; i < keys.length; i++) {
+			if (slots[i] != 0) {
+				insert(newKeys, newSlots, keys[i], slots[i]);
+			}
+		}
+		keys = newKeys;
+		slots = newSlots;
+	}
+
+	private static void insert(long[] keys, int[] slots, long key, int slot) {
+		final int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (slots[i] != 0) {
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		slots[i] = slot;
+	}
+
+	private static int hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+}
@@ -0,0 +1,144 @@
+package br.usp.each.saeg.jaguar.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.jacoco.core.data.AbstractExecutionDataStore;
+import org.jacoco.core.data.ControlFlowExecutionDataStore;
+import org.jacoco.core.data.DataFlowExecutionDataStore;
+import org.jacoco.core.data.ExecutionDataReader;
+import org.jacoco.core.data.ISessionInfoVisitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the coverage straight from the Jacoco agent loaded in this JVM,
+ * without the socket round trip of {@link JaCoCoClient}. The agent runtime
+ * classes are shaded, so the agent is reached through its public API
+ * ({@code org.jacoco.agent.rt.RT}) using reflection, and Jaguar does not
+ * depend on the agent jar at compile time.
+ * <p>
+ * Like {@link NioCoverageClient}, the stores returned by {@link #read()} are
+ * pooled once given back with {@link #release(AbstractExecutionDataStore)}.
+ */
+public class RuntimeCoverageClient implements CoverageClient {
+
+	private final static Logger logger = LoggerFactory.getLogger("JaguarLogger");
+
+	private static final String AGENT_RT_CLASS = "org.jacoco.agent.rt.RT";
+	private static final int MAX_POOLED_STORES = 16;
+	private static final ISessionInfoVisitor IGNORE_SESSION_INFO = info -> {
+	};
+
+	private final Boolean isDataflow;
+	private Object agent;
+	private Method getExecutionData;
+
+	private final Deque<AbstractExecutionDataStore> pool = new ArrayDeque<AbstractExecutionDataStore>();
+
+	public RuntimeCoverageClient(Boolean isDataflow) {
+		this.isDataflow = isDataflow;
+	}
+
+	/**
+	 * Use the given agent instead of looking it up.
+	 *
+	 * @param agent
+	 *            any object with a public {@code byte[] getExecutionData(boolean reset)}
+	 *            method, like {@code org.jacoco.agent.rt.IAgent}
+	 * @param isDataflow
+	 *            if the agent collects data-flow coverage
+	 */
+	public RuntimeCoverageClient(Object agent, Boolean isDataflow) {
+		this.isDataflow = isDataflow;
+		this.agent = agent;
+	}
+
+	/**
+	 * @return true if a Jacoco agent is running in this JVM
+	 */
+	public static boolean isAgentAvailable() {
+		try {
+			lookupAgent();
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private static Object lookupAgent() throws IOException {
+		try {
+			return Class.forName(AGENT_RT_CLASS).getMethod("getAgent").invoke(null);
+		} catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+			throw new IOException("Jacoco agent runtime not found", e);
+		} catch (InvocationTargetException e) {
+			throw new IOException("Jacoco agent not started", e.getCause());
+		}
+	}
+
+	@Override
+	public void connect() throws IOException {
+		if (agent == null) {
+			agent = lookupAgent();
+		}
+		try {
+			getExecutionData = agent.getClass().getMethod("getExecutionData", boolean.class);
+			getExecutionData.setAccessible(true);
+		} catch (NoSuchMethodException e) {
+			throw new IOException("Unknown Jacoco agent " + agent.getClass().getName(), e);
+		}
+	}
+
+	@Override
+	public AbstractExecutionDataStore read() throws IOException {
+		byte[] dump;
+		try {
+			dump = (byte[]) getExecutionData.invoke(agent, true);
+		} catch (IllegalAccessException e) {
+			throw new IOException(e);
+		} catch (InvocationTargetException e) {
+			throw new IOException(e.getCause());
+		}
+
+		AbstractExecutionDataStore executionData = takeStore();
+
+		ExecutionDataReader reader = new ExecutionDataReader(new ByteArrayInputStream(dump));
+		reader.setSessionInfoVisitor(IGNORE_SESSION_INFO);
+		reader.setExecutionDataVisitor(executionData);
+		reader.read();
+
+		return executionData;
+	}
+
+	@Override
+	public void release(AbstractExecutionDataStore executionData) {
+		synchronized (pool) {
+			if (pool.size() < MAX_POOLED_STORES) {
+				pool.push(executionData);
+			}
+		}
+	}
+
+	private AbstractExecutionDataStore takeStore() {
+		AbstractExecutionDataStore executionData;
+		synchronized (pool) {
+			executionData = pool.poll();
+		}
+		if (executionData == null) {
+			return isDataflow ? new DataFlowExecutionDataStore() : new ControlFlowExecutionDataStore();
+		}
+		executionData.reset();
+		return executionData;
+	}
+
+	@Override
+	public void close() {
+		agent = null;
+		getExecutionData = null;
+	}
+
+}
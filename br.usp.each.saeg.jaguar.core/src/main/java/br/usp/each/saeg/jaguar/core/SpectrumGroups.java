@@ -0,0 +1,169 @@
+package br.usp.each.saeg.jaguar.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Groups the tests with the same outcome and the same coverage spectrum.
+ * Only the first test of a group has its requirements updated right away,
+ * the others just add weight to the group, and the weight is applied to the
+ * requirements at once by {@link #drain(Visitor)}. The cef and cep of every
+ * requirement end up the same as if each test was applied on its own.
+ * <p>
+ * A spectrum is the covered requirement indexes of each class, along with
+ * the class table (line table or DUA catalog) they refer to. Tables and
+ * covered arrays are shared by the tests that executed a class the same way,
+ * so comparing two spectra is mostly comparing references.
+ * <p>
+ * Every group keeps its spectrum, so the number of groups is capped: once
+ * the cap is reached, a test with a new spectrum is not grouped and the
+ * caller updates the requirements with it as usual.
+ *
+ * @param <T>
+ *            the class table type
+ */
+public class SpectrumGroups<T> {
+
+	/**
+	 * Receives the weight of each group not applied yet.
+	 */
+	public interface Visitor<T> {
+
+		void visit(T[] tables, int[][] covered, boolean failed, int weight);
+
+	}
+
+	private static class Spectrum<T> {
+
+		private final T[] tables;
+		private final int[][] covered;
+		private final boolean failed;
+		private final int hash;
+		private int pendingWeight;
+
+		Spectrum(T[] tables, int[][] covered, boolean failed) {
+			this.tables = tables;
+			this.covered = covered;
+			this.failed = failed;
+			int h = failed ? 1 : 0;
+			for (int i = 0; i < tables.length; i++) {
+				h = 31 * h + System.identityHashCode(tables[i]);
+				h = 31 * h + Arrays.hashCode(covered[i]);
+			}
+			this.hash = h;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Spectrum)) {
+				return false;
+			}
+			Spectrum<?> other = (Spectrum<?>) obj;
+			if (hash != other.hash || failed != other.failed || tables.length != other.tables.length) {
+				return false;
+			}
+			for (int i = 0; i < tables.length; i++) {
+				if (tables[i] != other.tables[i]) {
+					return false;
+				}
+				if (covered[i] != other.covered[i] && !Arrays.equals(covered[i], other.covered[i])) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Default maximum number of groups.
+	 */
+	public static final int DEFAULT_MAX_GROUPS = 4096;
+
+	private final Map<Spectrum<T>, Spectrum<T>> groups = new HashMap<Spectrum<T>, Spectrum<T>>();
+	private final int maxGroups;
+	private int nDuplicates;
+	private int nUngrouped;
+
+	public SpectrumGroups() {
+		this(DEFAULT_MAX_GROUPS);
+	}
+
+	/**
+	 * @param maxGroups
+	 *            maximum number of groups kept
+	 */
+	public SpectrumGroups(int maxGroups) {
+		this.maxGroups = maxGroups;
+	}
+
+	/**
+	 * Add a test to its group.
+	 *
+	 * @param tables
+	 *            the table of each class covered by the test, not modified
+	 *            afterwards
+	 * @param covered
+	 *            the covered indexes of each table, not modified afterwards
+	 * @param failed
+	 *            result of the test
+	 * @return true if it is the first test of the group, or it was not
+	 *         grouped because the cap was reached, so the caller must update
+	 *         the requirements, false if the test was added as weight
+	 */
+	public boolean add(T[] tables, int[][] covered, boolean failed) {
+		Spectrum<T> spectrum = new Spectrum<T>(tables, covered, failed);
+		Spectrum<T> group = groups.get(spectrum);
+		if (group == null) {
+			if (groups.size() < maxGroups) {
+				groups.put(spectrum, spectrum);
+			} else {
+				nUngrouped++;
+			}
+			return true;
+		}
+		group.pendingWeight++;
+		nDuplicates++;
+		return false;
+	}
+
+	/**
+	 * Give the weight added since the last drain to the visitor, once per
+	 * group.
+	 */
+	public void drain(Visitor<T> visitor) {
+		for (Spectrum<T> group : groups.values()) {
+			if (group.pendingWeight > 0) {
+				visitor.visit(group.tables, group.covered, group.failed, group.pendingWeight);
+				group.pendingWeight = 0;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of distinct groups
+	 */
+	public int size() {
+		return groups.size();
+	}
+
+	/**
+	 * @return the number of tests not grouped because the cap was reached
+	 */
+	public int getnUngrouped() {
+		return nUngrouped;
+	}
+
+	/**
+	 * @return the number of tests added as weight to a previous group
+	 */
+	public int getnDuplicates() {
+		return nDuplicates;
+	}
+
+}
@@ -0,0 +1,218 @@
+package br.usp.each.saeg.jaguar.core.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+import org.jacoco.core.analysis.ControlFlowAnalyzer;
+import org.jacoco.core.analysis.CoverageBuilder;
+import org.jacoco.core.analysis.DataflowAnalyzer;
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.analysis.dua.DuaCoverageBuilder;
+import org.jacoco.core.analysis.dua.IDuaClassCoverage;
+import org.jacoco.core.data.ControlFlowExecutionData;
+import org.jacoco.core.data.ControlFlowExecutionDataStore;
+import org.jacoco.core.data.DataFlowExecutionData;
+import org.jacoco.core.data.DataFlowExecutionDataStore;
+import org.jacoco.core.internal.data.CRC64;
+import org.jacoco.core.internal.flow.ClassProbesAdapter;
+import org.objectweb.asm.ClassReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the {@link ProbeLineTable} and the {@link DuaCatalog} of every class
+ * seen during the run, keyed by the Jacoco class id (the CRC64 of the class
+ * file). Each class file is read and analyzed only the first time its
+ * coverage is received. It can be shared by concurrent collectors: a class
+ * first seen by two threads at once may be analyzed twice, but both get the
+ * same instance.
+ */
+public class ClassAnalysisCache {
+
+	private final static Logger logger = LoggerFactory.getLogger("JaguarLogger");
+
+	private final Map<String, File> classFiles;
+	private final ConcurrentMap<Long, ProbeLineTable> lineTables = new ConcurrentHashMap<Long, ProbeLineTable>();
+	private final ConcurrentMap<Long, DuaCatalog> duaCatalogs = new ConcurrentHashMap<Long, DuaCatalog>();
+	private final Set<Long> unknownClasses = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @param classFiles
+	 *            the compiled class files, by VM class name
+	 */
+	public ClassAnalysisCache(Map<String, File> classFiles) {
+		this.classFiles = classFiles;
+	}
+
+	/**
+	 * Return the line table of the class which produced the given execution
+	 * data, analyzing its class file if it was not seen before.
+	 *
+	 * @param data
+	 *            the execution data of one class
+	 * @return the table, or null if there is no matching class file
+	 */
+	public ProbeLineTable getLineTable(ControlFlowExecutionData data) {
+		Long id = data.getId();
+		ProbeLineTable table = lineTables.get(id);
+		if (table != null || unknownClasses.contains(id)) {
+			return table;
+		}
+
+		byte[] classBytes = readClass(data.getName());
+		if (classBytes != null) {
+			table = analyzeLines(classBytes, id);
+		}
+		if (table == null) {
+			unknownClasses.add(id);
+			return null;
+		}
+		ProbeLineTable previous = lineTables.putIfAbsent(id, table);
+		return previous != null ? previous : table;
+	}
+
+	/**
+	 * Return the DUA catalog of the class which produced the given execution
+	 * data, analyzing its class file if it was not seen before.
+	 *
+	 * @param data
+	 *            the data-flow execution data of one class
+	 * @return the catalog, or null if there is no matching class file
+	 */
+	public DuaCatalog getDuaCatalog(ControlFlowExecutionData data) {
+		Long id = data.getId();
+		DuaCatalog catalog = duaCatalogs.get(id);
+		if (catalog != null || unknownClasses.contains(id)) {
+			return catalog;
+		}
+
+		byte[] classBytes = readClass(data.getName());
+		if (classBytes != null) {
+			catalog = analyzeDuas(classBytes, id, data.getName(), ProbeBits.longProbes(data).length);
+		}
+		if (catalog == null) {
+			unknownClasses.add(id);
+			return null;
+		}
+		DuaCatalog previous = duaCatalogs.putIfAbsent(id, catalog);
+		return previous != null ? previous : catalog;
+	}
+
+	private byte[] readClass(String vmClassName) {
+		File classFile = classFiles.get(vmClassName);
+		if (classFile == null) {
+			return null;
+		}
+
+		logger.trace("Analyzing class {}", classFile.getPath());
+		try {
+			return Files.readAllBytes(classFile.toPath());
+		} catch (IOException e) {
+			logger.warn("Error when reading file: {}", classFile);
+			logger.warn("Exception: {}", e.toString());
+			return null;
+		}
+	}
+
+	/**
+	 * Build the line table of the given class bytes.
+	 *
+	 * @param classBytes
+	 *            the class file content
+	 * @param id
+	 *            the class id received from Jacoco
+	 * @return the table, or null if the bytes do not match the id
+	 */
+	static ProbeLineTable analyzeLines(byte[] classBytes, long id) {
+		if (CRC64.checksum(classBytes) != id) {
+			return null;
+		}
+
+		CoverageBuilder coverageBuilder = new CoverageBuilder();
+		new ControlFlowAnalyzer(new ControlFlowExecutionDataStore(), coverageBuilder).analyzeClass(new ClassReader(classBytes));
+		if (coverageBuilder.getClasses().isEmpty()) {
+			return null;
+		}
+		IClassCoverage clazz = coverageBuilder.getClasses().iterator().next();
+
+		ProbeLineAnalyzer analyzer = new ProbeLineAnalyzer(ProbeLineTable.methodKeys(clazz));
+		new ClassReader(classBytes).accept(new ClassProbesAdapter(analyzer, false), 0);
+
+		return new ProbeLineTable(clazz, analyzer);
+	}
+
+	/**
+	 * Build the DUA catalog of the given class bytes. The class is analyzed
+	 * once per bit of the probe index, see {@link DuaCatalog}.
+	 *
+	 * @param classBytes
+	 *            the class file content
+	 * @param id
+	 *            the class id received from Jacoco
+	 * @param vmClassName
+	 *            the class name received from Jacoco
+	 * @param probeWords
+	 *            the number of 64 bits words of the class probes
+	 * @return the catalog, or null if the bytes do not match the id
+	 */
+	static DuaCatalog analyzeDuas(byte[] classBytes, long id, String vmClassName, int probeWords) {
+		if (CRC64.checksum(classBytes) != id) {
+			return null;
+		}
+
+		return analyzeSlices(probeWords, probes -> {
+			DataFlowExecutionDataStore store = new DataFlowExecutionDataStore();
+			store.put(new DataFlowExecutionData(id, vmClassName, probes));
+			DuaCoverageBuilder duaCoverageBuilder = new DuaCoverageBuilder();
+			new DataflowAnalyzer(store, duaCoverageBuilder).analyzeClass(new ClassReader(classBytes));
+			return duaCoverageBuilder.getClasses().isEmpty() ? null : duaCoverageBuilder.getClasses().iterator().next();
+		});
+	}
+
+	/**
+	 * Build the DUA catalog from one analysis per bit of the probe index: in
+	 * the k-th analysis, probe p is set if the k-th bit of p is set, probe p
+	 * being bit p % 64 of word p / 64.
+	 *
+	 * @param probeWords
+	 *            the number of 64 bits words of the class probes
+	 * @param analysis
+	 *            analyzes the class with the given probes, returning null if
+	 *            it has no DUA coverage
+	 * @return the catalog, or null if any analysis returned null
+	 */
+	public static DuaCatalog analyzeSlices(int probeWords, Function<long[], IDuaClassCoverage> analysis) {
+		int probeCount = probeWords * 64;
+		int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(probeCount - 1));
+		List<IDuaClassCoverage> analyses = new ArrayList<IDuaClassCoverage>();
+		for (int bit = 0; bit < bits; bit++) {
+			long[] probes = new long[probeWords];
+			for (int p = 0; p < probeCount; p++) {
+				if ((p & (1 << bit)) != 0) {
+					probes[p >>> 6] |= 1L << p;
+				}
+			}
+
+			IDuaClassCoverage clazz = analysis.apply(probes);
+			if (clazz == null) {
+				return null;
+			}
+			analyses.add(clazz);
+		}
+
+		return new DuaCatalog(analyses);
+	}
+
+	public int size() {
+		return lineTables.size() + duaCatalogs.size() + unknownClasses.size();
+	}
+
+}
@@ -0,0 +1,208 @@
+package br.usp.each.saeg.jaguar.core.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.jacoco.core.analysis.dua.IDua;
+import org.jacoco.core.analysis.dua.IDuaClassCoverage;
+import org.jacoco.core.analysis.dua.IDuaMethodCoverage;
+
+import br.usp.each.saeg.jaguar.core.model.core.CoverageStatus;
+import br.usp.each.saeg.jaguar.core.utils.StringUtils;
+
+/**
+ * The static DUA information of one class: every DUA with its def, use,
+ * target, var, method and the probe that marks it as covered. DUAs do not
+ * change during a run, so the catalog is built once and the coverage of any
+ * test is resolved by checking one probe bit per DUA.
+ */
+public class DuaCatalog {
+
+	private static final String IGNORED_VAR_PREFIX = "random_";
+
+	private final String className;
+
+	private final int[] index;
+	private final int[] def;
+	private final int[] use;
+	private final int[] target;
+	private final String[] var;
+	private final int[] probe;
+	private final boolean[] ignored;
+
+	private final int[] methodId;
+	private final String[] methodSignature;
+
+	private final ProbeMemo memo = new ProbeMemo();
+
+	/**
+	 * Create the catalog from the analyses of the same class made with bit
+	 * sliced probes: in the k-th analysis, probe p is set if the k-th bit of p
+	 * is set. The status of a DUA in each analysis then spells out the index of
+	 * its probe.
+	 *
+	 * @param analyses
+	 *            the DUA coverage of each bit, starting with the lowest
+	 */
+	public DuaCatalog(List<IDuaClassCoverage> analyses) {
+		IDuaClassCoverage clazz = analyses.get(0);
+		this.className = clazz.getName();
+
+		List<Iterator<IDua>> duaIterators = new ArrayList<Iterator<IDua>>();
+		List<Iterator<IDuaMethodCoverage>> methodIterators = new ArrayList<Iterator<IDuaMethodCoverage>>();
+		for (IDuaClassCoverage analysis : analyses) {
+			methodIterators.add(analysis.getMethods().iterator());
+		}
+
+		List<IDua> duas = new ArrayList<IDua>();
+		List<Integer> probes = new ArrayList<Integer>();
+		List<IDuaMethodCoverage> methods = new ArrayList<IDuaMethodCoverage>();
+		for (IDuaMethodCoverage method : clazz.getMethods()) {
+			duaIterators.clear();
+			for (Iterator<IDuaMethodCoverage> methodIterator : methodIterators) {
+				if (!methodIterator.hasNext()) {
+					throw new IllegalStateException("Inconsistent DUA analysis of class " + className);
+				}
+				duaIterators.add(methodIterator.next().getDuas().iterator());
+			}
+
+			for (IDua dua : method.getDuas()) {
+				int probeIndex = 0;
+				for (int bit = 0; bit < duaIterators.size(); bit++) {
+					Iterator<IDua> duaIterator = duaIterators.get(bit);
+					IDua slice = duaIterator.hasNext() ? duaIterator.next() : null;
+					if (slice == null || slice.getIndex() != dua.getIndex()) {
+						throw new IllegalStateException("Inconsistent DUA analysis of class " + className);
+					}
+					if (CoverageStatus.FULLY_COVERED == CoverageStatus.as(slice.getStatus())) {
+						probeIndex |= 1 << bit;
+					}
+				}
+				duas.add(dua);
+				probes.add(probeIndex);
+				methods.add(method);
+			}
+		}
+
+		int size = duas.size();
+		index = new int[size];
+		def = new int[size];
+		use = new int[size];
+		target = new int[size];
+		var = new String[size];
+		probe = new int[size];
+		ignored = new boolean[size];
+		methodId = new int[size];
+		methodSignature = new String[size];
+
+		IDuaMethodCoverage previousMethod = null;
+		for (int i = 0; i < size; i++) {
+			IDua dua = duas.get(i);
+			IDuaMethodCoverage method = methods.get(i);
+			index[i] = dua.getIndex();
+			def[i] = dua.getDef();
+			use[i] = dua.getUse();
+			target[i] = dua.getTarget();
+			var[i] = dua.getVar();
+			probe[i] = probes.get(i);
+			ignored[i] = dua.getVar().startsWith(IGNORED_VAR_PREFIX);
+			methodId[i] = method.getId();
+			methodSignature[i] = method == previousMethod ? methodSignature[i - 1]
+					: StringUtils.getMethodSignature(method.getName(), method.getDesc(), className);
+			previousMethod = method;
+		}
+	}
+
+	/**
+	 * Check if the DUA at the given position was covered.
+	 *
+	 * @param i
+	 *            the DUA position, between 0 and {@link #size()}
+	 * @param probes
+	 *            the probes of the class dumped by Jacoco
+	 * @return true if the probe of the DUA is set
+	 */
+	public boolean isCovered(int i, long[] probes) {
+		int p = probe[i];
+		return (p >>> 6) < probes.length && (probes[p >>> 6] & (1L << p)) != 0;
+	}
+
+	/**
+	 * Resolve every DUA covered with the given probes, except the ignored
+	 * ones. The result of each distinct probe vector is remembered, so a test
+	 * that executes the class like a previous one gets the same (shared)
+	 * array.
+	 *
+	 * @param probes
+	 *            the probes of the class dumped by Jacoco
+	 * @return the positions of the covered DUAs, in ascending order, must not
+	 *         be modified
+	 */
+	public int[] getCoveredDuas(long[] probes) {
+		int[] covered = memo.get(probes);
+		if (covered != null) {
+			return covered;
+		}
+
+		covered = new int[probe.length];
+		int count = 0;
+		for (int i = 0; i < probe.length; i++) {
+			if (!ignored[i] && isCovered(i, probes)) {
+				covered[count++] = i;
+			}
+		}
+		covered = Arrays.copyOf(covered, count);
+		memo.put(probes, covered);
+		return covered;
+	}
+
+	/**
+	 * @return true if the DUA var has no name and must not be a requirement
+	 */
+	public boolean isIgnored(int i) {
+		return ignored[i];
+	}
+
+	public String getClassName() {
+		return className;
+	}
+
+	public int size() {
+		return index.length;
+	}
+
+	public int getIndex(int i) {
+		return index[i];
+	}
+
+	public int getDef(int i) {
+		return def[i];
+	}
+
+	public int getUse(int i) {
+		return use[i];
+	}
+
+	public int getTarget(int i) {
+		return target[i];
+	}
+
+	public String getVar(int i) {
+		return var[i];
+	}
+
+	public int getProbe(int i) {
+		return probe[i];
+	}
+
+	public int getMethodId(int i) {
+		return methodId[i];
+	}
+
+	public String getMethodSignature(int i) {
+		return methodSignature[i];
+	}
+
+}
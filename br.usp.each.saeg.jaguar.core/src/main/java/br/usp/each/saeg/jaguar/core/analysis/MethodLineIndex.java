@@ -0,0 +1,96 @@
+package br.usp.each.saeg.jaguar.core.analysis;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * The line interval, first to last line, of each method of a class, sorted
+ * by first line. The methods containing a line are found with a binary
+ * search instead of asking every method of the class.
+ * <p>
+ * Intervals may overlap, like the one of a lambda inside its enclosing
+ * method, so the search walks back from the last interval starting before
+ * the line while the largest last line so far still reaches it.
+ */
+public class MethodLineIndex {
+
+	private final int[] first;
+	private final int[] last;
+	private final int[] method;
+	private final int[] maxLast;
+
+	/**
+	 * @param firstLines
+	 *            the first line of each method, in declaration order, negative
+	 *            for a method without lines
+	 * @param lastLines
+	 *            the last line of each method, in declaration order
+	 */
+	public MethodLineIndex(int[] firstLines, int[] lastLines) {
+		Integer[] order = new Integer[firstLines.length];
+		int size = 0;
+		for (int i = 0; i < firstLines.length; i++) {
+			if (firstLines[i] >= 0) {
+				order[size++] = i;
+			}
+		}
+		order = Arrays.copyOf(order, size);
+		Arrays.sort(order, (a, b) -> firstLines[a] != firstLines[b] ? Integer.compare(firstLines[a], firstLines[b])
+				: Integer.compare(a, b));
+
+		first = new int[size];
+		last = new int[size];
+		method = new int[size];
+		maxLast = new int[size];
+		for (int i = 0; i < size; i++) {
+			first[i] = firstLines[order[i]];
+			last[i] = lastLines[order[i]];
+			method[i] = order[i];
+			maxLast[i] = i == 0 ? last[i] : Math.max(maxLast[i - 1], last[i]);
+		}
+	}
+
+	/**
+	 * Find the first method, in declaration order, whose interval contains
+	 * the line and that owns it.
+	 *
+	 * @param line
+	 *            the line number
+	 * @param owns
+	 *            tells if the method, by declaration index, has code on the
+	 *            line
+	 * @return the declaration index of the method, or -1 if there is none
+	 */
+	public int find(int line, IntPredicate owns) {
+		int found = -1;
+		for (int i = lastStartingAtOrBefore(line); i >= 0 && maxLast[i] >= line; i--) {
+			if (last[i] >= line && (found < 0 || method[i] < found) && owns.test(method[i])) {
+				found = method[i];
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * @return the position of the last interval with first line up to the
+	 *         given line, or -1 if there is none
+	 */
+	private int lastStartingAtOrBefore(int line) {
+		int low = 0;
+		int high = first.length - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (first[middle] <= line) {
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return high;
+	}
+
+	public int size() {
+		return first.length;
+	}
+
+}
@@ -0,0 +1,103 @@
+package br.usp.each.saeg.jaguar.core.analysis;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs the per-class analysis of one test on a {@link ForkJoinPool}. Each
+ * class is handled by an independent action that only writes to its own
+ * slot, so the caller merges the results in a fixed order and the outcome
+ * does not depend on the thread scheduling.
+ * <p>
+ * The pool is created on the first parallel analysis, and created again if
+ * needed after {@link #shutdown()}.
+ */
+public class ParallelAnalyzer {
+
+	private static final int CLASSES_PER_TASK = 4;
+
+	private final int parallelism;
+	private ForkJoinPool pool;
+
+	/**
+	 * @param parallelism
+	 *            the number of threads analyzing classes, 1 analyzes them in
+	 *            the calling thread
+	 */
+	public ParallelAnalyzer(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Run the action once for each index in [0, count) and wait for all of
+	 * them.
+	 *
+	 * @param count
+	 *            the number of classes
+	 * @param action
+	 *            receives the class index
+	 */
+	public void forEach(int count, IntConsumer action) {
+		if (parallelism == 1 || count <= CLASSES_PER_TASK) {
+			for (int i = 0; i < count; i++) {
+				action.accept(i);
+			}
+		} else {
+			pool().invoke(new RangeAction(0, count, action));
+		}
+	}
+
+	private synchronized ForkJoinPool pool() {
+		if (pool == null) {
+			pool = new ForkJoinPool(parallelism);
+		}
+		return pool;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Stop the threads of the pool, if any. A later analysis starts them
+	 * again.
+	 */
+	public synchronized void shutdown() {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+	}
+
+	private static class RangeAction extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+		private final IntConsumer action;
+
+		RangeAction(int from, int to, IntConsumer action) {
+			this.from = from;
+			this.to = to;
+			this.action = action;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= CLASSES_PER_TASK) {
+				for (int i = from; i < to; i++) {
+					action.accept(i);
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new RangeAction(from, middle, action), new RangeAction(middle, to, action));
+			}
+		}
+	}
+
+}
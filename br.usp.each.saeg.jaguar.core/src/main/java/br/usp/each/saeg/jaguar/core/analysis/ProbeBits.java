@@ -0,0 +1,69 @@
+package br.usp.each.saeg.jaguar.core.analysis;
+
+import org.jacoco.core.data.ControlFlowExecutionData;
+import org.jacoco.core.data.DataFlowExecutionData;
+
+/**
+ * Helpers to read the probes of an execution data as 64 bits words. Data-flow
+ * probes may arrive either as {@link DataFlowExecutionData}, already packed,
+ * or as plain {@link ControlFlowExecutionData} when they are read from the
+ * Jacoco exec format, which only knows boolean arrays.
+ */
+public final class ProbeBits {
+
+	private ProbeBits() {
+	}
+
+	/**
+	 * @return the probes, one bit per probe
+	 */
+	public static long[] toLongs(boolean[] probes) {
+		long[] bits = new long[(probes.length + 63) >>> 6];
+		for (int probe = 0; probe < probes.length; probe++) {
+			if (probes[probe]) {
+				bits[probe >>> 6] |= 1L << probe;
+			}
+		}
+		return bits;
+	}
+
+	/**
+	 * @return the probes packed in the words, 64 per word
+	 */
+	public static boolean[] toBooleans(long[] bits) {
+		boolean[] probes = new boolean[bits.length << 6];
+		for (int probe = 0; probe < probes.length; probe++) {
+			probes[probe] = (bits[probe >>> 6] & (1L << probe)) != 0;
+		}
+		return probes;
+	}
+
+	/**
+	 * @return the probes of the data, one bit per probe
+	 */
+	public static long[] longProbes(ControlFlowExecutionData data) {
+		if (data instanceof DataFlowExecutionData) {
+			return ((DataFlowExecutionData) data).getLongProbes();
+		}
+		return toLongs(data.getProbes());
+	}
+
+	/**
+	 * Same as {@link ControlFlowExecutionData#hasHits()}, without expanding
+	 * the data-flow probes to a boolean array.
+	 *
+	 * @return true if any probe of the data is set
+	 */
+	public static boolean hasHits(ControlFlowExecutionData data) {
+		if (data instanceof DataFlowExecutionData) {
+			for (long word : ((DataFlowExecutionData) data).getLongProbes()) {
+				if (word != 0) {
+					return true;
+				}
+			}
+			return false;
+		}
+		return data.hasHits();
+	}
+
+}
@@ -0,0 +1,282 @@
+package br.usp.each.saeg.jaguar.core.analysis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.jacoco.core.analysis.ISourceNode;
+import org.jacoco.core.internal.flow.ClassProbesVisitor;
+import org.jacoco.core.internal.flow.IFrame;
+import org.jacoco.core.internal.flow.LabelInfo;
+import org.jacoco.core.internal.flow.MethodProbesVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+
+/**
+ * Visits a class once and records, for each source line, which probes cover
+ * it. It follows the same instruction/probe wiring done by the Jacoco line
+ * analyzer, but instead of propagating the coverage of one probe array it
+ * keeps the whole probe-to-line relation, so any later probe array can be
+ * resolved without visiting the bytecode again.
+ */
+public class ProbeLineAnalyzer extends ClassProbesVisitor {
+
+	private final Set<String> analyzedMethods;
+	private final Map<Integer, Set<Integer>> lineProbes = new TreeMap<Integer, Set<Integer>>();
+	private int probeCount;
+
+	/**
+	 * @param analyzedMethods
+	 *            name + desc of the methods Jacoco reports for this class,
+	 *            methods out of this set (e.g. filtered synthetic methods) are
+	 *            ignored
+	 */
+	public ProbeLineAnalyzer(Set<String> analyzedMethods) {
+		this.analyzedMethods = analyzedMethods;
+	}
+
+	@Override
+	public MethodProbesVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+		if (!analyzedMethods.contains(name + desc)) {
+			return null;
+		}
+		return new ProbeLineMethodAnalyzer();
+	}
+
+	@Override
+	public void visitTotalProbeCount(int count) {
+		this.probeCount = count;
+	}
+
+	public int getProbeCount() {
+		return probeCount;
+	}
+
+	/**
+	 * @return the probes covering each line, lines in ascending order
+	 */
+	public Map<Integer, Set<Integer>> getLineProbes() {
+		return lineProbes;
+	}
+
+	private void addLineProbe(int line, int probeId) {
+		Set<Integer> probes = lineProbes.get(line);
+		if (probes == null) {
+			probes = new TreeSet<Integer>();
+			lineProbes.put(line, probes);
+		}
+		probes.add(probeId);
+	}
+
+	private static class Instruction {
+
+		private final int line;
+		private Instruction predecessor;
+
+		Instruction(int line) {
+			this.line = line;
+		}
+	}
+
+	private class ProbeLineMethodAnalyzer extends MethodProbesVisitor {
+
+		private int currentLine = ISourceNode.UNKNOWN_LINE;
+		private final List<Label> currentLabel = new ArrayList<Label>(2);
+		private final Map<Label, Instruction> labelInstructions = new IdentityHashMap<Label, Instruction>();
+		private final List<Instruction> probeInstructions = new ArrayList<Instruction>();
+		private final List<Integer> probeIds = new ArrayList<Integer>();
+		private final List<Instruction> jumpSources = new ArrayList<Instruction>();
+		private final List<Label> jumpTargets = new ArrayList<Label>();
+		private Instruction lastInsn;
+
+		@Override
+		public void visitLabel(Label label) {
+			currentLabel.add(label);
+			if (!LabelInfo.isSuccessor(label)) {
+				lastInsn = null;
+			}
+		}
+
+		@Override
+		public void visitLineNumber(int line, Label start) {
+			currentLine = line;
+		}
+
+		private void visitInsn() {
+			final Instruction insn = new Instruction(currentLine);
+			if (lastInsn != null) {
+				insn.predecessor = lastInsn;
+			}
+			for (Label label : currentLabel) {
+				labelInstructions.put(label, insn);
+			}
+			currentLabel.clear();
+			lastInsn = insn;
+		}
+
+		@Override
+		public void visitInsn(int opcode) {
+			visitInsn();
+		}
+
+		@Override
+		public void visitIntInsn(int opcode, int operand) {
+			visitInsn();
+		}
+
+		@Override
+		public void visitVarInsn(int opcode, int var) {
+			visitInsn();
+		}
+
+		@Override
+		public void visitTypeInsn(int opcode, String type) {
+			visitInsn();
+		}
+
+		@Override
+		public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+			visitInsn();
+		}
+
+		@Override
+		public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+			visitInsn();
+		}
+
+		@Override
+		public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+			visitInsn();
+		}
+
+		@Override
+		public void visitJumpInsn(int opcode, Label label) {
+			visitInsn();
+			addJump(label);
+		}
+
+		@Override
+		public void visitLdcInsn(Object cst) {
+			visitInsn();
+		}
+
+		@Override
+		public void visitIincInsn(int var, int increment) {
+			visitInsn();
+		}
+
+		@Override
+		public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+			visitSwitchInsn(dflt, labels);
+		}
+
+		@Override
+		public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+			visitSwitchInsn(dflt, labels);
+		}
+
+		private void visitSwitchInsn(Label dflt, Label[] labels) {
+			visitInsn();
+			LabelInfo.resetDone(labels);
+			addJump(dflt);
+			LabelInfo.setDone(dflt);
+			for (Label label : labels) {
+				if (!LabelInfo.isDone(label)) {
+					addJump(label);
+					LabelInfo.setDone(label);
+				}
+			}
+		}
+
+		@Override
+		public void visitMultiANewArrayInsn(String desc, int dims) {
+			visitInsn();
+		}
+
+		@Override
+		public void visitProbe(int probeId) {
+			addProbe(probeId);
+			lastInsn = null;
+		}
+
+		@Override
+		public void visitJumpInsnWithProbe(int opcode, Label label, int probeId, IFrame frame) {
+			visitInsn();
+			addProbe(probeId);
+		}
+
+		@Override
+		public void visitInsnWithProbe(int opcode, int probeId) {
+			visitInsn();
+			addProbe(probeId);
+		}
+
+		@Override
+		public void visitTableSwitchInsnWithProbes(int min, int max, Label dflt, Label[] labels, IFrame frame) {
+			visitSwitchInsnWithProbes(dflt, labels);
+		}
+
+		@Override
+		public void visitLookupSwitchInsnWithProbes(Label dflt, int[] keys, Label[] labels, IFrame frame) {
+			visitSwitchInsnWithProbes(dflt, labels);
+		}
+
+		private void visitSwitchInsnWithProbes(Label dflt, Label[] labels) {
+			visitInsn();
+			LabelInfo.resetDone(dflt);
+			LabelInfo.resetDone(labels);
+			visitSwitchTarget(dflt);
+			for (Label label : labels) {
+				visitSwitchTarget(label);
+			}
+		}
+
+		private void visitSwitchTarget(Label label) {
+			final int id = LabelInfo.getProbeId(label);
+			if (!LabelInfo.isDone(label)) {
+				if (id == LabelInfo.NO_PROBE) {
+					addJump(label);
+				} else {
+					addProbe(id);
+				}
+				LabelInfo.setDone(label);
+			}
+		}
+
+		private void addJump(Label target) {
+			jumpSources.add(lastInsn);
+			jumpTargets.add(target);
+		}
+
+		private void addProbe(int probeId) {
+			probeInstructions.add(lastInsn);
+			probeIds.add(probeId);
+		}
+
+		@Override
+		public void visitEnd() {
+			for (int i = 0; i < jumpSources.size(); i++) {
+				labelInstructions.get(jumpTargets.get(i)).predecessor = jumpSources.get(i);
+			}
+
+			// a probe covers its instruction and every predecessor in the chain
+			final Set<Instruction> visited = Collections.newSetFromMap(new IdentityHashMap<Instruction, Boolean>());
+			for (int i = 0; i < probeInstructions.size(); i++) {
+				visited.clear();
+				Instruction insn = probeInstructions.get(i);
+				while (insn != null && visited.add(insn)) {
+					if (insn.line != ISourceNode.UNKNOWN_LINE) {
+						addLineProbe(insn.line, probeIds.get(i));
+					}
+					insn = insn.predecessor;
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,223 @@
+package br.usp.each.saeg.jaguar.core.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.analysis.IMethodCoverage;
+import org.jacoco.core.internal.analysis.LineImpl;
+
+import br.usp.each.saeg.jaguar.core.utils.StringUtils;
+
+/**
+ * The static line information of one class: which lines exist, which probes
+ * cover each of them and which method each line belongs to. The bytecode of a
+ * class does not change during a run, so it is built once and the coverage of
+ * any test is then resolved by checking the probes of each line.
+ * <p>
+ * The method of each line is found with a {@link MethodLineIndex}, and the
+ * signature of each method is computed once.
+ */
+public class ProbeLineTable {
+
+	private final long classId;
+	private final String className;
+	private final int classFirstLine;
+	private final int probeCount;
+
+	private final int[] lines;
+	private final int[][] lineProbes;
+	private final int[] lineMethod;
+
+	private final int[] methodFirstLine;
+	private final String[] methodName;
+	private final String[] methodDesc;
+	private final String[] methodSignature;
+
+	private final ProbeMemo memo = new ProbeMemo();
+
+	/**
+	 * Create the table from the class structure reported by Jacoco and the
+	 * probe-to-line relation of the same class.
+	 *
+	 * @param clazz
+	 *            the class coverage, used only for its structure
+	 * @param analyzer
+	 *            the analyzer that already visited the class
+	 */
+	public ProbeLineTable(IClassCoverage clazz, ProbeLineAnalyzer analyzer) {
+		this.classId = clazz.getId();
+		this.className = clazz.getName();
+		this.classFirstLine = clazz.getFirstLine();
+		this.probeCount = analyzer.getProbeCount();
+
+		List<IMethodCoverage> methods = new ArrayList<IMethodCoverage>(clazz.getMethods());
+		methodFirstLine = new int[methods.size()];
+		methodName = new String[methods.size()];
+		methodDesc = new String[methods.size()];
+		methodSignature = new String[methods.size()];
+		int[] methodLastLine = new int[methods.size()];
+		for (int i = 0; i < methods.size(); i++) {
+			methodFirstLine[i] = methods.get(i).getFirstLine();
+			methodLastLine[i] = methods.get(i).getLastLine();
+			methodName[i] = methods.get(i).getName();
+			methodDesc[i] = methods.get(i).getDesc();
+			methodSignature[i] = StringUtils.getMethodSignature(methodName[i], methodDesc[i], className);
+		}
+		MethodLineIndex methodIndex = new MethodLineIndex(methodFirstLine, methodLastLine);
+
+		List<Integer> classLines = new ArrayList<Integer>();
+		if (classFirstLine >= 0) {
+			for (int line = classFirstLine; line <= clazz.getLastLine(); line++) {
+				if (clazz.getLine(line) != LineImpl.EMPTY) {
+					classLines.add(line);
+				}
+			}
+		}
+
+		Map<Integer, Set<Integer>> probesByLine = analyzer.getLineProbes();
+		lines = new int[classLines.size()];
+		lineProbes = new int[classLines.size()][];
+		lineMethod = new int[classLines.size()];
+		for (int i = 0; i < classLines.size(); i++) {
+			int line = classLines.get(i);
+			lines[i] = line;
+			lineProbes[i] = toArray(probesByLine.get(line));
+			lineMethod[i] = methodIndex.find(line, m -> methods.get(m).getLine(line) != LineImpl.EMPTY);
+		}
+	}
+
+	/**
+	 * @return the name + desc of every method Jacoco reports for the class
+	 */
+	static Set<String> methodKeys(IClassCoverage clazz) {
+		Set<String> keys = new HashSet<String>();
+		for (IMethodCoverage method : clazz.getMethods()) {
+			keys.add(method.getName() + method.getDesc());
+		}
+		return keys;
+	}
+
+	private static int[] toArray(Collection<Integer> values) {
+		if (values == null) {
+			return new int[0];
+		}
+		int[] result = new int[values.size()];
+		int i = 0;
+		for (Integer value : values) {
+			result[i++] = value;
+		}
+		return result;
+	}
+
+	/**
+	 * Check if the line at the given index was executed.
+	 *
+	 * @param index
+	 *            the line index, between 0 and {@link #getLineCount()}
+	 * @param probes
+	 *            the probes of the class dumped by Jacoco
+	 * @return true if any probe covering the line is set
+	 */
+	public boolean isCovered(int index, boolean[] probes) {
+		for (int probe : lineProbes[index]) {
+			if (probes[probe]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Resolve every line executed with the given probes. The result of each
+	 * distinct probe vector is remembered, so a test that executes the class
+	 * like a previous one gets the same (shared) array.
+	 *
+	 * @param probes
+	 *            the probes of the class dumped by Jacoco
+	 * @return the indexes of the covered lines, in ascending order, must not
+	 *         be modified
+	 */
+	public int[] getCoveredLines(boolean[] probes) {
+		long[] key = ProbeBits.toLongs(probes);
+		int[] covered = memo.get(key);
+		if (covered != null) {
+			return covered;
+		}
+
+		covered = new int[lines.length];
+		int count = 0;
+		for (int index = 0; index < lines.length; index++) {
+			if (isCovered(index, probes)) {
+				covered[count++] = index;
+			}
+		}
+		covered = Arrays.copyOf(covered, count);
+		memo.put(key, covered);
+		return covered;
+	}
+
+	public long getClassId() {
+		return classId;
+	}
+
+	public String getClassName() {
+		return className;
+	}
+
+	public int getClassFirstLine() {
+		return classFirstLine;
+	}
+
+	public int getProbeCount() {
+		return probeCount;
+	}
+
+	public int getLineCount() {
+		return lines.length;
+	}
+
+	public int getLine(int index) {
+		return lines[index];
+	}
+
+	/**
+	 * @return true if the line at the given index belongs to a method
+	 */
+	public boolean hasMethod(int index) {
+		return lineMethod[index] >= 0;
+	}
+
+	/**
+	 * @return the method id, counting from 1 in declaration order
+	 */
+	public int getMethodId(int index) {
+		return lineMethod[index] + 1;
+	}
+
+	public int getMethodFirstLine(int index) {
+		return methodFirstLine[lineMethod[index]];
+	}
+
+	public String getMethodName(int index) {
+		return methodName[lineMethod[index]];
+	}
+
+	public String getMethodDesc(int index) {
+		return methodDesc[lineMethod[index]];
+	}
+
+	/**
+	 * @return the signature of the method of the line at the given index,
+	 *         computed once per method
+	 */
+	public String getMethodSignature(int index) {
+		return methodSignature[lineMethod[index]];
+	}
+
+}
@@ -0,0 +1,58 @@
+package br.usp.each.saeg.jaguar.core.analysis;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers the covered requirements resolved for the probe vectors already
+ * seen in one class, keyed by the hash of the vector. Many tests execute a
+ * class (e.g. an utility class) in exactly the same way, and they reuse the
+ * resolved list instead of walking the class requirements again.
+ */
+class ProbeMemo {
+
+	private static final int MAX_ENTRIES = 256;
+
+	private final ConcurrentMap<Integer, Entry> entries = new ConcurrentHashMap<Integer, Entry>();
+
+	/**
+	 * @param probes
+	 *            the probe vector, one bit per probe
+	 * @return the covered requirements resolved before for the same vector,
+	 *         or null
+	 */
+	int[] get(long[] probes) {
+		Entry entry = entries.get(Arrays.hashCode(probes));
+		if (entry != null && Arrays.equals(entry.probes, probes)) {
+			return entry.covered;
+		}
+		return null;
+	}
+
+	/**
+	 * Remember the covered requirements of a vector. Once the memo is full, or
+	 * if another vector has the same hash, nothing is stored.
+	 */
+	void put(long[] probes, int[] covered) {
+		if (entries.size() < MAX_ENTRIES) {
+			entries.putIfAbsent(Arrays.hashCode(probes), new Entry(probes.clone(), covered));
+		}
+	}
+
+	int size() {
+		return entries.size();
+	}
+
+	private static class Entry {
+
+		private final long[] probes;
+		private final int[] covered;
+
+		Entry(long[] probes, int[] covered) {
+			this.probes = probes;
+			this.covered = covered;
+		}
+	}
+
+}
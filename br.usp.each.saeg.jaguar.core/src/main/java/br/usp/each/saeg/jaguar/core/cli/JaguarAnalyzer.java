@@ -0,0 +1,160 @@
+package br.usp.each.saeg.jaguar.core.cli;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+import br.usp.each.saeg.jaguar.core.Jaguar;
+import br.usp.each.saeg.jaguar.core.heuristic.Heuristic;
+import br.usp.each.saeg.jaguar.core.offline.CoverageRecorder;
+import br.usp.each.saeg.jaguar.core.offline.CoverageReplayer;
+import br.usp.each.saeg.jaguar.core.offline.CoverageSegments;
+import br.usp.each.saeg.jaguar.core.offline.ExecFileImporter;
+import br.usp.each.saeg.jaguar.core.offline.RecordedTest;
+import br.usp.each.saeg.jaguar.core.spectrum.SpectrumFileWriter;
+
+/**
+ * Analyzes the tests recorded by {@link JaguarRunner} with the --record
+ * option, without running them again. Uses the same options of
+ * {@link JaguarRunner}.
+ */
+public class JaguarAnalyzer {
+
+	private static Logger logger = (Logger) LoggerFactory.getLogger("JaguarLogger");
+
+	private final Heuristic heuristic;
+	private final File projectDir;
+	private final File sourceDir;
+	private final File recordDir;
+	private final File shardFile;
+	private final List<File> importExec;
+	private final File failedTests;
+	private final Boolean isDataFlow;
+	private final String outputFile;
+	private final String outputType;
+	private final int replayThreads;
+	private final int analysisThreads;
+	private final int top;
+
+	public JaguarAnalyzer(Heuristic heuristic, File projectDir, File sourceDir, File recordDir, File shardFile,
+			List<File> importExec, File failedTests, Boolean isDataFlow, String outputFile, String outputType,
+			int replayThreads, int analysisThreads, int top) {
+		this.heuristic = heuristic;
+		this.projectDir = projectDir;
+		this.sourceDir = sourceDir;
+		this.recordDir = recordDir;
+		this.shardFile = shardFile;
+		this.importExec = importExec;
+		this.failedTests = failedTests;
+		this.isDataFlow = isDataFlow;
+		this.outputFile = outputFile;
+		this.outputType = outputType;
+		this.replayThreads = replayThreads;
+		this.analysisThreads = analysisThreads;
+		this.top = top;
+	}
+
+	private void run() throws Exception {
+		if (!importExec.isEmpty()) {
+			importExecFiles();
+		}
+
+		final Jaguar jaguar = new Jaguar(sourceDir);
+		jaguar.setAnalysisParallelism(analysisThreads);
+		jaguar.setRankLimit(top);
+
+		final List<RecordedTest> tests = CoverageSegments.read(recordDir);
+		logger.info("Analyzing {} recorded tests", tests.size());
+		new CoverageReplayer(jaguar, isDataFlow, replayThreads).replay(tests);
+		jaguar.finish();
+
+		if (shardFile != null) {
+			jaguar.writeShard(shardFile);
+			logger.info("Spectrum of {} tests written to {}", jaguar.getnTests(), shardFile);
+			return;
+		}
+
+		logger.trace("Generating XML");
+		if (outputType.equals("H")) {
+			jaguar.generateHierarchicalXML(heuristic, projectDir, outputFile);
+		} else {
+			jaguar.generateFlatXML(heuristic, projectDir, outputFile);
+		}
+		jaguar.writeSpectrum(SpectrumFileWriter.locate(projectDir, outputFile));
+	}
+
+	private void importExecFiles() throws Exception {
+		final Set<String> failed = new HashSet<String>();
+		if (failedTests != null) {
+			for (String line : Files.readAllLines(failedTests.toPath(), StandardCharsets.UTF_8)) {
+				if (!line.trim().isEmpty()) {
+					failed.add(line.trim());
+				}
+			}
+		}
+
+		try (CoverageRecorder recorder = new CoverageRecorder(recordDir)) {
+			final ExecFileImporter importer = new ExecFileImporter(recorder, failed);
+			for (File execFile : importExec) {
+				logger.info("Imported {} tests from {}", importer.importFile(execFile), execFile);
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+		logger.info("Welcome to Jaguar Analyzer!");
+
+		final JaguarRunnerOptions options = new JaguarRunnerOptions();
+		final CmdLineParser parser = new CmdLineParser(options);
+
+		try {
+			logger.debug("Command:" + Arrays.toString(args));
+			parser.parseArgument(args);
+			if (options.getRecordDir() == null && !options.isHelp()) {
+				throw new CmdLineException(parser, "Option \"--record\" is required", null);
+			}
+		} catch (final CmdLineException e) {
+			System.err.println(e.getLocalizedMessage());
+			parser.printUsage(System.err);
+			System.exit(1);
+		}
+
+		if (options.isHelp()) {
+			parser.printUsage(System.err);
+			System.exit(0);
+		}
+
+		logger.setLevel(Level.toLevel(options.getLogLevel(), Level.OFF));
+
+		try {
+			logger.info(options.toString());
+			Heuristic heuristic = (Heuristic) Class.forName("br.usp.each.saeg.jaguar.core.heuristic." + options.getHeuristic() + "Heuristic").newInstance();
+
+			new JaguarAnalyzer(heuristic, options.getProjectPath(), options.getSourcePath(), options.getRecordDir(), options.getShardFile(),
+					options.getImportExec(), options.getFailedTests(), options.isDataFlow(),
+					options.getOutputFileName(), options.getOutputType(),
+					options.getReplayThreads(), options.getAnalysisThreads(), options.getTop()).run();
+		}
+		catch (Exception e) {
+			logger.error("Exception: " + e.toString());
+			logger.error("Stacktrace: ");
+			e.printStackTrace(System.err);
+			System.exit(1);
+		}
+
+		logger.info("Jaguar has finished!");
+		System.exit(0);
+	}
+
+}
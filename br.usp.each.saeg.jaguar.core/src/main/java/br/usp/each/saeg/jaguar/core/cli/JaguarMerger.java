@@ -0,0 +1,125 @@
+package br.usp.each.saeg.jaguar.core.cli;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+import br.usp.each.saeg.jaguar.core.Jaguar;
+import br.usp.each.saeg.jaguar.core.heuristic.Heuristic;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.AbstractTestRequirement;
+import br.usp.each.saeg.jaguar.core.shard.ShardMerger;
+import br.usp.each.saeg.jaguar.core.spectrum.SpectrumFileWriter;
+
+/**
+ * Merges the spectrum shards written with the --shard option by
+ * {@link JaguarRunner} or {@link JaguarAnalyzer} on each node running part of
+ * the tests, and generates the XML of the whole run, or a merged shard when
+ * --shard is given. Uses the same options of {@link JaguarRunner}.
+ */
+public class JaguarMerger {
+
+	private static Logger logger = (Logger) LoggerFactory.getLogger("JaguarLogger");
+
+	private final Heuristic heuristic;
+	private final File projectDir;
+	private final File sourceDir;
+	private final List<File> shards;
+	private final File shardFile;
+	private final String outputFile;
+	private final String outputType;
+	private final int top;
+
+	public JaguarMerger(Heuristic heuristic, File projectDir, File sourceDir, List<File> shards, File shardFile,
+			String outputFile, String outputType, int top) {
+		this.heuristic = heuristic;
+		this.projectDir = projectDir;
+		this.sourceDir = sourceDir;
+		this.shards = shards;
+		this.shardFile = shardFile;
+		this.outputFile = outputFile;
+		this.outputType = outputType;
+		this.top = top;
+	}
+
+	private void run() throws Exception {
+		try (ShardMerger merger = new ShardMerger(shards)) {
+			logger.info("Merging {} shards with {} tests", shards.size(), merger.getnTests());
+			if (shardFile != null) {
+				merger.writeTo(shardFile);
+				logger.info("Merged shard written to {}", shardFile);
+				return;
+			}
+
+			final List<AbstractTestRequirement> testRequirements = new ArrayList<AbstractTestRequirement>();
+			AbstractTestRequirement requirement;
+			while ((requirement = merger.next()) != null) {
+				testRequirements.add(requirement);
+			}
+
+			final Jaguar jaguar = new Jaguar(sourceDir);
+			jaguar.merge(merger.getnTests(), merger.getnTestsFailed(), testRequirements);
+			jaguar.finish();
+			jaguar.setRankLimit(top);
+
+			logger.trace("Generating XML");
+			if (outputType.equals("H")) {
+				jaguar.generateHierarchicalXML(heuristic, projectDir, outputFile);
+			} else {
+				jaguar.generateFlatXML(heuristic, projectDir, outputFile);
+			}
+			jaguar.writeSpectrum(SpectrumFileWriter.locate(projectDir, outputFile));
+		}
+	}
+
+	public static void main(String[] args) {
+		logger.info("Welcome to Jaguar Merger!");
+
+		final JaguarRunnerOptions options = new JaguarRunnerOptions();
+		final CmdLineParser parser = new CmdLineParser(options);
+
+		try {
+			logger.debug("Command:" + Arrays.toString(args));
+			parser.parseArgument(args);
+			if (options.getMergeShards().isEmpty() && !options.isHelp()) {
+				throw new CmdLineException(parser, "Option \"--merge\" is required", null);
+			}
+		} catch (final CmdLineException e) {
+			System.err.println(e.getLocalizedMessage());
+			parser.printUsage(System.err);
+			System.exit(1);
+		}
+
+		if (options.isHelp()) {
+			parser.printUsage(System.err);
+			System.exit(0);
+		}
+
+		logger.setLevel(Level.toLevel(options.getLogLevel(), Level.OFF));
+
+		try {
+			logger.info(options.toString());
+			Heuristic heuristic = (Heuristic) Class.forName("br.usp.each.saeg.jaguar.core.heuristic." + options.getHeuristic() + "Heuristic").newInstance();
+
+			new JaguarMerger(heuristic, options.getProjectPath(), options.getSourcePath(), options.getMergeShards(),
+					options.getShardFile(), options.getOutputFileName(), options.getOutputType(), options.getTop()).run();
+		}
+		catch (Exception e) {
+			logger.error("Exception: " + e.toString());
+			logger.error("Stacktrace: ");
+			e.printStackTrace(System.err);
+			System.exit(1);
+		}
+
+		logger.info("Jaguar has finished!");
+		System.exit(0);
+	}
+
+}
@@ -0,0 +1,105 @@
+package br.usp.each.saeg.jaguar.core.cli;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+import br.usp.each.saeg.jaguar.core.heuristic.Heuristic;
+import br.usp.each.saeg.jaguar.core.heuristic.RankEngine;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.AbstractTestRequirement;
+import br.usp.each.saeg.jaguar.core.output.xml.flat.FlatXmlWriter;
+import br.usp.each.saeg.jaguar.core.output.xml.hierarchical.HierarchicalXmlWriter;
+import br.usp.each.saeg.jaguar.core.spectrum.SpectrumFileReader;
+import br.usp.each.saeg.jaguar.core.spectrum.SpectrumFileWriter;
+
+/**
+ * Ranks a spectrum saved by a previous run, see {@link SpectrumFileWriter},
+ * and generates the XML of the given heuristic without running the tests.
+ * Reads the spectrum given by --spectrum, or the one saved with the output
+ * of the same name. Uses the same options of {@link JaguarRunner}.
+ */
+public class JaguarRank {
+
+	private static Logger logger = (Logger) LoggerFactory.getLogger("JaguarLogger");
+
+	private final Heuristic heuristic;
+	private final File projectDir;
+	private final File spectrumFile;
+	private final String outputFile;
+	private final String outputType;
+	private final int top;
+
+	public JaguarRank(Heuristic heuristic, File projectDir, File spectrumFile, String outputFile, String outputType, int top) {
+		this.heuristic = heuristic;
+		this.projectDir = projectDir;
+		this.spectrumFile = spectrumFile;
+		this.outputFile = outputFile;
+		this.outputType = outputType;
+		this.top = top;
+	}
+
+	private void run() throws Exception {
+		final SpectrumFileReader spectrum = new SpectrumFileReader(spectrumFile);
+		logger.info("Ranking {} requirements of {} tests", spectrum.getTestRequirements().size(), spectrum.getnTests());
+
+		final ArrayList<AbstractTestRequirement> rank = new RankEngine(spectrum.getTestRequirements(),
+				spectrum.getnTests() - spectrum.getnTestsFailed(), spectrum.getnTestsFailed()).rank(heuristic, top).toRequirements();
+
+		logger.trace("Generating XML");
+		if (outputType.equals("H")) {
+			new HierarchicalXmlWriter(rank, heuristic, spectrum.getTimeSpent()).generateXML(projectDir, outputFile);
+		} else {
+			new FlatXmlWriter(rank, heuristic, spectrum.getTimeSpent()).generateXML(projectDir, outputFile);
+		}
+	}
+
+	public static void main(String[] args) {
+		logger.info("Welcome to Jaguar Rank!");
+
+		final JaguarRunnerOptions options = new JaguarRunnerOptions();
+		final CmdLineParser parser = new CmdLineParser(options);
+
+		try {
+			logger.debug("Command:" + Arrays.toString(args));
+			parser.parseArgument(args);
+		} catch (final CmdLineException e) {
+			System.err.println(e.getLocalizedMessage());
+			parser.printUsage(System.err);
+			System.exit(1);
+		}
+
+		if (options.isHelp()) {
+			parser.printUsage(System.err);
+			System.exit(0);
+		}
+
+		logger.setLevel(Level.toLevel(options.getLogLevel(), Level.OFF));
+
+		try {
+			logger.info(options.toString());
+			Heuristic heuristic = (Heuristic) Class.forName("br.usp.each.saeg.jaguar.core.heuristic." + options.getHeuristic() + "Heuristic").newInstance();
+
+			final File spectrumFile = options.getSpectrumFile() != null ? options.getSpectrumFile()
+					: SpectrumFileWriter.locate(options.getProjectPath(), options.getOutputFileName());
+			new JaguarRank(heuristic, options.getProjectPath(), spectrumFile, options.getOutputFileName(), options.getOutputType(),
+					options.getTop()).run();
+		}
+		catch (Exception e) {
+			logger.error("Exception: " + e.toString());
+			logger.error("Stacktrace: ");
+			e.printStackTrace(System.err);
+			System.exit(1);
+		}
+
+		logger.info("Jaguar has finished!");
+		System.exit(0);
+	}
+
+}
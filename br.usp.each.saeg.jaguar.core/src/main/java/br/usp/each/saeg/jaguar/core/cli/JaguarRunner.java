@@ -1,10 +1,22 @@
 package br.usp.each.saeg.jaguar.core.cli;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import org.junit.runner.Description;
 import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Runner;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runner.notification.StoppedByUserException;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.slf4j.LoggerFactory;
@@ -12,11 +24,24 @@ import org.slf4j.LoggerFactory;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
 
-import br.usp.each.saeg.jaguar.core.JaCoCoClient;
+import br.usp.each.saeg.jaguar.core.CoverageClient;
+import br.usp.each.saeg.jaguar.core.CoverageClients;
 import br.usp.each.saeg.jaguar.core.Jaguar;
+import br.usp.each.saeg.jaguar.core.MethodSpectrum;
+import br.usp.each.saeg.jaguar.core.fork.ForkPool;
 import br.usp.each.saeg.jaguar.core.heuristic.Heuristic;
+import br.usp.each.saeg.jaguar.core.heuristic.Rank;
+import br.usp.each.saeg.jaguar.core.heuristic.RankConvergence;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.AbstractTestRequirement;
+import br.usp.each.saeg.jaguar.core.offline.CoverageRecorder;
+import br.usp.each.saeg.jaguar.core.offline.CoverageReplayer;
+import br.usp.each.saeg.jaguar.core.offline.RecordedTest;
+import br.usp.each.saeg.jaguar.core.offline.TestCoverageCache;
+import br.usp.each.saeg.jaguar.core.runner.ConvergenceListener;
 import br.usp.each.saeg.jaguar.core.runner.JaguarRunListener;
-import br.usp.each.saeg.jaguar.core.utils.FileUtils;
+import br.usp.each.saeg.jaguar.core.runner.StaleTestFilter;
+import br.usp.each.saeg.jaguar.core.spectrum.SpectrumFileWriter;
+import br.usp.each.saeg.jaguar.core.utils.TestClassFinder;
 
 /**
  * @author Henrique Ribeiro
@@ -25,6 +50,7 @@ import br.usp.each.saeg.jaguar.core.utils.FileUtils;
 public class JaguarRunner {
 
 	private final JUnitCore junit = new JUnitCore();
+	private final RunNotifier notifier = new RunNotifier();
 	private static Logger logger = (Logger) LoggerFactory.getLogger("JaguarLogger");
 	
 	private final Heuristic heuristic;
@@ -35,18 +61,64 @@ public class JaguarRunner {
 	private final String outputFile;
 	private final String outputType;
 	private final String testSuite;
+	private final int queueDepth;
+	private final int collectThreads;
+	private final int analysisThreads;
+	private final boolean inProcess;
+	private final boolean nio;
+	private final ForkPool forkPool;
+	private final File recordDir;
+	private final File shardFile;
+	private final File cacheDir;
+	private final File testIndexFile;
+	private final boolean failingFirst;
+	private final int top;
+	private final RankConvergence convergence;
+	private final int convergeTop;
+	private final int convergeEvery;
+	private final int coarseTop;
+	private final int escalateTop;
+	private ConvergenceListener convergenceListener;
 	
-	public JaguarRunner(Heuristic heuristic, File projectDir, File sourceDir,
-			File testDir, String testSuite, Boolean isDataFlow, String outputFile, String outputType) {
+	/**
+	 * @param heuristic
+	 *            ranks the requirements
+	 * @param options
+	 *            the parsed command line, see
+	 *            {@link JaguarRunnerOptions#validate()}
+	 * @param forkPool
+	 *            runs the test classes in forked JVMs, or null to run them in
+	 *            this JVM
+	 */
+	public JaguarRunner(Heuristic heuristic, JaguarRunnerOptions options, ForkPool forkPool) {
 		super();
+		options.validate();
 		this.heuristic = heuristic;
-		this.projectDir = projectDir;
-		this.sourceDir = sourceDir;
-		this.testDir = testDir;
-		this.isDataFlow = isDataFlow;
-		this.outputFile = outputFile;
-		this.outputType = outputType;
-		this.testSuite = testSuite;
+		this.projectDir = options.getProjectPath();
+		this.sourceDir = options.getSourcePath();
+		this.testDir = options.getTestPath();
+		this.isDataFlow = options.isDataFlow();
+		this.outputFile = options.getOutputFileName();
+		this.outputType = options.getOutputType();
+		this.testSuite = options.getTestSuite();
+		this.queueDepth = options.getQueueDepth();
+		this.collectThreads = options.getCollectThreads();
+		this.analysisThreads = options.getAnalysisThreads();
+		this.inProcess = options.isInProcess();
+		this.nio = options.isNio();
+		this.forkPool = forkPool;
+		this.recordDir = options.getRecordDir();
+		this.shardFile = options.getShardFile();
+		this.cacheDir = options.getCacheDir();
+		this.testIndexFile = options.getTestIndexFile();
+		this.failingFirst = options.isFailingFirst();
+		this.top = options.getTop();
+		this.convergence = options.getConvergeTop() > 0
+				? new RankConvergence(options.getConvergeWindow(), options.getConvergeOverlap(), options.getConvergeTau()) : null;
+		this.convergeTop = options.getConvergeTop();
+		this.convergeEvery = options.getConvergeEvery();
+		this.coarseTop = options.getCoarseTop();
+		this.escalateTop = options.getEscalateTop();
 	}
 
 	private void run() throws Exception {
@@ -62,10 +134,11 @@ public class JaguarRunner {
 
 		Class<?>[] classes;
 		if (suiteClass == null) {
-			final Class<?>[] testClasses = FileUtils.findTestCaseClasses(testDir);
+			final TestClassFinder finder = new TestClassFinder(testDir, testIndexFile);
+			final Class<?>[] testClasses = finder.findTestCaseClasses();
 			logger.debug("Total TestCase classes = {}", testClasses.length);
 	
-			final Class<?>[] annotatedClasses = FileUtils.findAnnotatedTestClasses(testDir);
+			final Class<?>[] annotatedClasses = finder.findAnnotatedTestClasses();
 			logger.debug("Total annotated test classes = {}", annotatedClasses.length);
 	
 			classes = Stream.of(testClasses, annotatedClasses)
@@ -77,21 +150,300 @@ public class JaguarRunner {
 			classes = new Class<?>[] { suiteClass };
 		}
 
+		if (coarseTop > 0) {
+			runCoarseToFine(classes);
+			return;
+		}
+		if (escalateTop > 0) {
+			runEscalation(classes);
+			return;
+		}
+
 		final Jaguar jaguar = new Jaguar(sourceDir);
-		final JaCoCoClient client = new JaCoCoClient(isDataFlow);
+		if (forkPool != null) {
+			forkPool.run(classes, jaguar);
+			jaguar.finish();
+			generateXML(jaguar);
+			return;
+		}
+
+		jaguar.setAnalysisParallelism(analysisThreads);
+		if (queueDepth > 0) {
+			jaguar.enablePipeline(queueDepth, collectThreads);
+		}
+		final CoverageClient client = CoverageClients.create(inProcess, nio, isDataFlow);
 		client.connect();
 
-		junit.addListener(new JaguarRunListener(jaguar, client));
-		junit.run(classes);
+		final CoverageRecorder recorder = recordDir != null ? new CoverageRecorder(recordDir) : null;
+		final TestCoverageCache cache = cacheDir != null ? new TestCoverageCache(cacheDir, className -> {
+			final File classFile = jaguar.getClassFile(className);
+			return classFile != null ? classFile : new File(testDir, className + ".class");
+		}) : null;
+
+		final JaguarRunListener listener = new JaguarRunListener(jaguar, client, recorder, cache);
+		if (convergence != null) {
+			convergenceListener = new ConvergenceListener(jaguar, heuristic, convergeTop, convergeEvery, convergence, notifier);
+			notifier.addListener(listener);
+			notifier.addListener(convergenceListener);
+		} else {
+			junit.addListener(listener);
+		}
+		if (cache != null) {
+			runStaleTests(classes, jaguar, cache);
+		} else {
+			junit.run(classes);
+		}
 
 		client.close();
+		jaguar.finish();
+		if (cache != null) {
+			cache.save();
+		}
+
+		if (convergence != null) {
+			jaguar.setStopReason(hasConverged() ? "converged" : "completed");
+			logger.info("Rank calculated from {} tests after {} checkpoints", jaguar.getnTests(), convergence.getnCheckpoints());
+		}
+
+		if (recorder != null) {
+			recorder.close();
+			logger.info("Coverage of {} tests recorded in {}", recorder.getnRecords(), recordDir);
+			return;
+		}
+
+		generateXML(jaguar);
+	}
+
+	/**
+	 * Replay the cached coverage of the fresh tests and run the others. A test
+	 * class found more than once runs once, as its tests have one cache entry
+	 * each.
+	 * <p>
+	 * A failing first run goes through the stale tests in three phases: the
+	 * tests that failed in the last run, then the tests without cached
+	 * coverage, whose outcome is unknown, and then only the passed tests
+	 * whose cached coverage shares a class with the tests that failed now.
+	 * The fresh tests sharing those classes are replayed. The other passed
+	 * tests, stale or fresh, covered none of the requirements covered by the
+	 * failed tests, so they are only counted: the cep and cnp of every
+	 * requirement with cef above 0 are the same of a full run. The stale
+	 * ones keep their cached coverage for the next run. The rank may only
+	 * converge among the passed tests of the last phase, and then the other
+	 * tests are neither replayed nor counted.
+	 */
+	private void runStaleTests(Class<?>[] classes, Jaguar jaguar, TestCoverageCache cache) throws Exception {
+		final Class<?>[] distinct = Stream.of(classes).distinct().toArray(Class<?>[]::new);
+		final CoverageReplayer replayer = new CoverageReplayer(jaguar, isDataFlow, Math.max(1, collectThreads));
+
+		if (!failingFirst) {
+			final StaleTestFilter filter = new StaleTestFilter(cache);
+			final Runner runner = Request.classes(distinct).filterWith(filter).getRunner();
+			final List<RecordedTest> reused = cache.getReusedTests();
+			logger.info("Reusing the cached coverage of {} tests, running {} tests", reused.size(), filter.getnStale());
+			replayer.replay(reused);
+			if (filter.getnStale() > 0) {
+				runTests(runner);
+			}
+			return;
+		}
+
+		final Set<String> stale = new LinkedHashSet<String>();
+		addTests(Request.classes(distinct).getRunner().getDescription(), stale);
+		stale.removeIf(cache::isFresh);
+
+		int nRun = runStale(distinct, new StaleTestFilter(cache, cache::hasFailed), "that failed in the last run");
+		nRun += runStale(distinct, new StaleTestFilter(cache, testId -> !cache.isCached(testId)), "not in the cache");
+		final Set<String> failedClasses = cache.getFailedTestsClasses();
+		if (convergenceListener != null) {
+			convergenceListener.start();
+		}
+		nRun += runStale(distinct, new StaleTestFilter(cache, testId -> cache.isCached(testId) && !cache.hasFailed(testId)
+				&& cache.covered(testId, failedClasses)), "that passed sharing classes with the failed tests");
+		cache.keepNotRun(stale);
+		if (hasConverged()) {
+			return;
+		}
+
+		final List<RecordedTest> reused = cache.getReusedTests(failedClasses);
+		final int counted = cache.getnReused() - reused.size() + stale.size() - nRun;
+		logger.info("Reusing the cached coverage of {} tests sharing classes with the failed tests, counting {} other passed tests",
+				reused.size(), counted);
+		replayer.replay(reused);
+		jaguar.merge(counted, 0, Collections.emptyList());
+	}
+
+	/**
+	 * Add the names given by JUnit of the tests under the description.
+	 */
+	private static void addTests(Description description, Set<String> testIds) {
+		if (description.isTest()) {
+			testIds.add(description.getDisplayName());
+		}
+		for (Description child : description.getChildren()) {
+			addTests(child, testIds);
+		}
+	}
+
+	/**
+	 * Run the stale tests selected by the filter, unless the rank has
+	 * converged.
+	 *
+	 * @return the number of selected tests
+	 */
+	private int runStale(Class<?>[] classes, StaleTestFilter filter, String description) {
+		final Runner runner = Request.classes(classes).filterWith(filter).getRunner();
+		logger.info("Running {} tests {}", filter.getnStale(), description);
+		if (filter.getnStale() > 0 && !hasConverged()) {
+			runTests(runner);
+		}
+		return filter.getnStale();
+	}
+
+	/**
+	 * Localize in two passes. The tests run once in forked JVMs with their
+	 * control-flow coverage collected by method, see {@link MethodSpectrum},
+	 * even for data-flow, and the methods are ranked. Then the test classes
+	 * with a failed test or covering a class of the most suspicious methods
+	 * run again in forked JVMs, whose agent instruments only those classes,
+	 * collecting their lines or DUAs.
+	 * <p>
+	 * The other tests passed without covering any of those classes, so they
+	 * are only counted, and the requirements of those classes get the cef and
+	 * cep of a full run.
+	 */
+	private void runCoarseToFine(Class<?>[] classes) throws Exception {
+		final Jaguar coarse = new Jaguar(sourceDir);
+		forkPool.setDataFlow(false);
+		forkPool.setMethods(true);
+		forkPool.run(classes, coarse);
+		coarse.finish();
+		forkPool.setMethods(false);
+		forkPool.setDataFlow(isDataFlow);
+
+		final MethodSpectrum methods = coarse.getMethodSpectrum();
+		final int[] suspicious = methods.rank(heuristic, coarse.getnTests() - coarse.getnTestsFailed(), coarse.getnTestsFailed(),
+				coarseTop);
+		for (int slot : suspicious) {
+			logger.debug("Suspicious method {}", methods.getSignature(slot));
+		}
+		final Set<String> suspiciousClasses = methods.getClassNames(suspicious);
+		final Set<String> testClasses = methods.getTestClassesCovering(suspiciousClasses);
+		final Class<?>[] relevant = Stream.of(classes).filter(clazz -> testClasses.contains(clazz.getName())).toArray(Class<?>[]::new);
+		logger.info("{} tests covered {} methods", coarse.getnTests(), methods.size());
+		logger.info("Running {} test classes again for the classes of the most suspicious methods: {}", relevant.length,
+				suspiciousClasses);
+
+		final Jaguar jaguar = new Jaguar(sourceDir);
+		if (relevant.length > 0) {
+			forkPool.setAgentIncludes(suspiciousClasses.stream().map(name -> name.replace('/', '.')).collect(Collectors.joining(":")));
+			forkPool.run(relevant, jaguar);
+		}
+		jaguar.merge(Math.max(0, coarse.getnTests() - jaguar.getnTests()), 0, Collections.emptyList());
+		jaguar.finish();
+		generateXML(jaguar);
+	}
+
+	/**
+	 * Escalate from control-flow to data-flow coverage for the suspicious
+	 * classes only. The tests run once collecting lines and the classes
+	 * covered by each test class, and then the test classes with a failed
+	 * test or covering a class of the most suspicious lines run again in
+	 * forked JVMs, whose agent instruments only those classes, for DUAs.
+	 * <p>
+	 * The DUAs of those classes replace their lines in one spectrum, ranked
+	 * together: the heuristics only look at the cef and cep, and the other
+	 * tests passed without covering those classes. A class without any
+	 * covered DUA keeps its lines. When the second run does not have the same
+	 * tests and failures, its DUAs are not merged and every class keeps its
+	 * lines.
+	 */
+	private void runEscalation(Class<?>[] classes) throws Exception {
+		final Jaguar merged = new Jaguar(sourceDir);
+		final Jaguar lines = new Jaguar(sourceDir);
+		lines.setAnalysisParallelism(analysisThreads);
+		lines.enableFootprint();
+		if (queueDepth > 0) {
+			lines.enablePipeline(queueDepth, collectThreads);
+		}
+		final CoverageClient client = CoverageClients.create(inProcess, nio, false);
+		client.connect();
+		junit.addListener(new JaguarRunListener(lines, client));
+		junit.run(classes);
+		client.close();
+		lines.finish();
+
+		final Set<String> suspiciousClasses = new LinkedHashSet<String>();
+		if (lines.getnTestsFailed() > 0) {
+			final Rank rank = lines.rank(heuristic, escalateTop);
+			for (int position = 0; position < rank.size(); position++) {
+				suspiciousClasses.add(rank.getRequirement(position).getClassName());
+			}
+		}
+		logger.info("Escalating to data-flow the classes of the most suspicious lines: {}", suspiciousClasses);
+
+		Collection<AbstractTestRequirement> duaRequirements = Collections.emptyList();
+		if (!suspiciousClasses.isEmpty()) {
+			final Set<String> testClasses = lines.getMethodSpectrum().getTestClassesCovering(suspiciousClasses);
+			final Class<?>[] relevant = Stream.of(classes).filter(clazz -> testClasses.contains(clazz.getName())).toArray(Class<?>[]::new);
+			final int nRelevantTests = Request.classes(relevant).getRunner().testCount();
+			logger.info("Running {} test classes again, with {} tests", relevant.length, nRelevantTests);
+
+			final Jaguar duas = new Jaguar(sourceDir);
+			forkPool.setAgentIncludes(suspiciousClasses.stream().map(name -> name.replace('/', '.')).collect(Collectors.joining(":")));
+			forkPool.setDataFlow(true);
+			forkPool.run(relevant, duas);
+			if (duas.getnTests() == nRelevantTests && duas.getnTestsFailed() == lines.getnTestsFailed()) {
+				duaRequirements = duas.getTestRequirements();
+			} else {
+				logger.warn("The data-flow run had {} tests and {} failures, unlike the control-flow run, so no class is escalated",
+						duas.getnTests(), duas.getnTestsFailed());
+			}
+		}
+
+		final Set<String> escalated = duaRequirements.stream().map(AbstractTestRequirement::getClassName)
+				.collect(Collectors.toSet());
+		merged.merge(lines.getnTests(), lines.getnTestsFailed(), lines.getTestRequirements().stream()
+				.filter(requirement -> !escalated.contains(requirement.getClassName())).collect(Collectors.toList()));
+		merged.merge(0, 0, duaRequirements);
+		merged.finish();
+		logger.info("{} classes escalated to data-flow", escalated.size());
+		generateXML(merged);
+	}
+
+	/**
+	 * Run the tests, until the rank converges when it is checked.
+	 */
+	private void runTests(Runner runner) {
+		if (convergenceListener == null) {
+			junit.run(runner);
+			return;
+		}
+		try {
+			runner.run(notifier);
+		} catch (StoppedByUserException e) {
+			logger.debug("Tests stopped after {} checkpoints", convergence.getnCheckpoints());
+		}
+	}
+
+	private boolean hasConverged() {
+		return convergenceListener != null && convergenceListener.hasStopped();
+	}
+
+	private void generateXML(Jaguar jaguar) throws IOException {
+		if (shardFile != null) {
+			jaguar.writeShard(shardFile);
+			logger.info("Spectrum of {} tests written to {}", jaguar.getnTests(), shardFile);
+			return;
+		}
 
 		logger.trace("Generating XML");
+		jaguar.setRankLimit(top);
 		if (outputType.equals("H")) {
 			jaguar.generateHierarchicalXML(heuristic, projectDir, outputFile);
 		} else {
 			jaguar.generateFlatXML(heuristic, projectDir, outputFile);
 		}
+		jaguar.writeSpectrum(SpectrumFileWriter.locate(projectDir, outputFile));
 	}
 
 	public static void main(String[] args) {
@@ -114,14 +466,14 @@ public class JaguarRunner {
 			System.exit(0);	
         }
 		
-		setLogLevel(options.getLogLevel());
+		logger.setLevel(Level.toLevel(options.getLogLevel(), Level.OFF));
 
 		try {
 			logger.info(options.toString());
 			Heuristic heuristic = (Heuristic) Class.forName("br.usp.each.saeg.jaguar.core.heuristic." + options.getHeuristic() + "Heuristic").newInstance();
 
-			new JaguarRunner(heuristic, options.getProjectPath(), options.getSourcePath(), options.getTestPath(), options.getTestSuite(),
-					         options.isDataFlow(), options.getOutputFileName(), options.getOutputType()).run();
+			new JaguarRunner(heuristic, options, options.getForks() > 1 || options.getCoarseTop() > 0 || options.getEscalateTop() > 0
+					? new ForkPool(options.getForks(), args) : null).run();
 		}
 		catch (Exception e) {
 			logger.error("Exception: " + e.toString());
@@ -134,39 +486,4 @@ public class JaguarRunner {
 		System.exit(0);
 	}
 
-	private static void setLogLevel(String logLevel) {
-		Level level;
-
-		switch (logLevel.toUpperCase()) {
-			case "ALL":
-				level = Level.ALL;
-				break;
-
-			case "TRACE":
-				level = Level.TRACE;
-				break;
-
-			case "DEBUG":
-				level = Level.DEBUG;
-				break;
-
-			case "INFO": 
-				level = Level.INFO;
-				break;
-
-			case "WARN":
-				level = Level.WARN;
-				break;
-
-			case "ERROR":
-				level = Level.ERROR; 
-				break;
-
-			default:
-				level = Level.OFF;
-		}
-
-		logger.setLevel(level);
-	}
-
 }
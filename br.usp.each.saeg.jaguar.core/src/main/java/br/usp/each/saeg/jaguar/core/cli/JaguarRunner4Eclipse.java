@@ -10,8 +10,10 @@ import org.kohsuke.args4j.CmdLineParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import br.usp.each.saeg.jaguar.core.JaCoCoClient;
+import br.usp.each.saeg.jaguar.core.CoverageClient;
+import br.usp.each.saeg.jaguar.core.CoverageClients;
 import br.usp.each.saeg.jaguar.core.Jaguar;
+import br.usp.each.saeg.jaguar.core.fork.ForkPool;
 import br.usp.each.saeg.jaguar.core.heuristic.DRTHeuristic;
 import br.usp.each.saeg.jaguar.core.heuristic.Heuristic;
 import br.usp.each.saeg.jaguar.core.heuristic.JaccardHeuristic;
@@ -24,6 +26,7 @@ import br.usp.each.saeg.jaguar.core.heuristic.TarantulaHeuristic;
 import br.usp.each.saeg.jaguar.core.heuristic.Wong3Heuristic;
 import br.usp.each.saeg.jaguar.core.heuristic.ZoltarHeuristic;
 import br.usp.each.saeg.jaguar.core.runner.JaguarRunListener;
+import br.usp.each.saeg.jaguar.core.spectrum.SpectrumFileWriter;
 import br.usp.each.saeg.jaguar.core.utils.FileUtils;
 import ch.qos.logback.classic.Level;
 
@@ -41,6 +44,13 @@ public class JaguarRunner4Eclipse {
 	private final File testsListFile;
 	private final Boolean isDataFlow;
 	private final String outputType;
+	private final int queueDepth;
+	private final int collectThreads;
+	private final int analysisThreads;
+	private final boolean inProcess;
+	private final boolean nio;
+	private final int top;
+	private final ForkPool forkPool;
 	
 	public Heuristic[] heuristics = new Heuristic[] { 
 			new DRTHeuristic(), 
@@ -55,13 +65,29 @@ public class JaguarRunner4Eclipse {
 			new ZoltarHeuristic() 
 	};
 
-	public JaguarRunner4Eclipse(File projectDir, File sourceDir, File testsListFile, Boolean isDataFlow, String outputType) {
+	/**
+	 * @param options
+	 *            the parsed command line, see
+	 *            {@link JaguarRunnerOptions#validate()}
+	 * @param forkPool
+	 *            runs the test classes in forked JVMs, or null to run them in
+	 *            this JVM
+	 */
+	public JaguarRunner4Eclipse(JaguarRunnerOptions options, ForkPool forkPool) {
 		super();
-		this.projectDir = projectDir;
-		this.sourceDir = sourceDir;
-		this.testsListFile = testsListFile;
-		this.isDataFlow = isDataFlow;
-		this.outputType = outputType;
+		options.validate();
+		this.projectDir = options.getProjectPath();
+		this.sourceDir = options.getSourcePath();
+		this.testsListFile = options.getTestListFile();
+		this.isDataFlow = options.isDataFlow();
+		this.outputType = options.getOutputType();
+		this.queueDepth = options.getQueueDepth();
+		this.collectThreads = options.getCollectThreads();
+		this.analysisThreads = options.getAnalysisThreads();
+		this.inProcess = options.isInProcess();
+		this.nio = options.isNio();
+		this.top = options.getTop();
+		this.forkPool = forkPool;
 	}
 	
 	public static void main(String[] args) {
@@ -81,12 +107,7 @@ public class JaguarRunner4Eclipse {
 		logger.debug(options.toString());
 
 		try {
-			new JaguarRunner4Eclipse(
-					options.getProjectPath(), 
-					options.getSourcePath(), 
-					options.getTestListFile(), 
-					options.isDataFlow(),
-					options.getOutputType()).run();
+			new JaguarRunner4Eclipse(options, options.getForks() > 1 ? new ForkPool(options.getForks(), args) : null).run();
 		} catch (Exception e) {
 			logger.error(e.getMessage());
 		}
@@ -98,24 +119,33 @@ public class JaguarRunner4Eclipse {
 		final Class<?>[] classes = FileUtils.getClassesInFile(testsListFile);
 
 		final Jaguar jaguar = new Jaguar(sourceDir);
-		final JaCoCoClient client = new JaCoCoClient(isDataFlow);
-		client.connect();
+		jaguar.setRankLimit(top);
+		if (forkPool != null) {
+			forkPool.run(classes, jaguar);
+		} else {
+			jaguar.setAnalysisParallelism(analysisThreads);
+			if (queueDepth > 0) {
+				jaguar.enablePipeline(queueDepth, collectThreads);
+			}
+			final CoverageClient client = CoverageClients.create(inProcess, nio, isDataFlow);
+			client.connect();
 
-		junit.addListener(new JaguarRunListener(jaguar, client));
-		junit.run(classes);
+			junit.addListener(new JaguarRunListener(jaguar, client));
+			junit.run(classes);
 
-		client.close();
+			client.close();
+		}
 		jaguar.finish();
-		for (Heuristic heuristic : heuristics) {
-			String coverageType = isDataFlow ? "dataflow" : "controlflow";
-			String fileName = "coverage_" + coverageType + "_" + heuristic.getClass().getSimpleName();
-			logger.debug("OutputType = {}", outputType);
-			if (outputType.equals("H")) {
-				jaguar.generateHierarchicalXML(heuristic, projectDir, fileName + "_hierarchical_" + System.currentTimeMillis());
-			} else {
-				jaguar.generateFlatXML(heuristic, projectDir, fileName + "_flat_" + System.currentTimeMillis());
-			}
+		final String coverageType = isDataFlow ? "dataflow" : "controlflow";
+		logger.debug("OutputType = {}", outputType);
+		if (outputType.equals("H")) {
+			jaguar.generateHierarchicalXML(heuristics, projectDir, heuristic -> "coverage_" + coverageType + "_"
+					+ heuristic.getClass().getSimpleName() + "_hierarchical_" + System.currentTimeMillis());
+		} else {
+			jaguar.generateFlatXML(heuristics, projectDir, heuristic -> "coverage_" + coverageType + "_"
+					+ heuristic.getClass().getSimpleName() + "_flat_" + System.currentTimeMillis());
 		}
+		jaguar.writeSpectrum(SpectrumFileWriter.locate(projectDir, "coverage_" + coverageType));
 	}
 
 	private static void setLogLevel(final JaguarRunnerOptions options) {
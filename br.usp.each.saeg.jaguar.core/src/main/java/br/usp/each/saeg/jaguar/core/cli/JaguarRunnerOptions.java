@@ -2,9 +2,13 @@ package br.usp.each.saeg.jaguar.core.cli;
 
 import java.io.File;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.kohsuke.args4j.Option;
 
+import br.usp.each.saeg.jaguar.core.CoverageClients;
+
 /**
  * Class to represent the Command Line Interface (CLI) options
  * and respective descriptions.
@@ -26,6 +30,15 @@ public class JaguarRunnerOptions {
     				+ "when this parameter is not set control-flow information is collected")
 	private Boolean dataFlow = false;
     
+    @Option(name = "--inProcess", aliases = {"-ip"},
+    		usage = "read the coverage from the Jacoco agent running in this JVM instead of its tcpserver\n"
+    				+ "when the agent is not found the tcpserver is used")
+	private Boolean inProcess = false;
+    
+    @Option(name = "--nio",
+    		usage = "read the coverage from the Jacoco tcpserver using a buffered channel and reused probe arrays")
+	private Boolean nio = false;
+    
     @Option(name = "--outputType", aliases = {"-ot"}, 
     		usage = "the output type\n F = Flat, H = Hierarchical")
 	private String outputType = "F";
@@ -47,6 +60,126 @@ public class JaguarRunnerOptions {
 					"if a test suite is specified, Jaguar runs it instead of all classes in testDir")
 	private String testSuite;
     
+    @Option(name = "--queueDepth", aliases = {"-qd"},
+    		usage = "collect the coverage in background, letting up to this number of tests wait in queue\n"
+    				+ "when the queue is full the tests wait; 0 collects the coverage in the test thread")
+    private int queueDepth = 0;
+
+    @Option(name = "--collectThreads", aliases = {"-ct"},
+    		usage = "the number of threads collecting the coverage in background\n"
+    				+ "used only when queueDepth is greater than 0")
+    private int collectThreads = 1;
+    
+    @Option(name = "--analysisThreads", aliases = {"-at"},
+    		usage = "the number of threads analyzing the classes covered by each test")
+    private int analysisThreads = 1;
+    
+    @Option(name = "--record", aliases = {"-rec"},
+    		usage = "the directory where the coverage of each test is recorded\n"
+    				+ "JaguarRunner records the tests instead of analyzing them, JaguarAnalyzer analyzes the recorded tests")
+    private File recordDir;
+
+    @Option(name = "--importExec", aliases = {"-ie"},
+    		usage = "a Jacoco exec file to import into the record directory before the analysis, one test per session\n"
+    				+ "can be repeated")
+    private List<File> importExec = new ArrayList<File>();
+
+    @Option(name = "--failedTests", aliases = {"-ft"},
+    		usage = "the file with the session ids of the failed tests of the imported exec files, one per line")
+    private File failedTests;
+
+    @Option(name = "--replayThreads", aliases = {"-rt"},
+    		usage = "the number of threads collecting the recorded tests")
+    private int replayThreads = 1;
+    
+    @Option(name = "--shard", aliases = {"-sh"},
+    		usage = "write the spectrum to this shard file instead of the XML, to be merged with the shards of other nodes\n"
+    				+ "JaguarMerger writes the merged shard here instead of the XML")
+    private File shardFile;
+
+    @Option(name = "--merge", aliases = {"-m"},
+    		usage = "a shard file merged by JaguarMerger\n"
+    				+ "can be repeated")
+    private List<File> mergeShards = new ArrayList<File>();
+    
+    @Option(name = "--cache", aliases = {"-cc"},
+    		usage = "keep the coverage of each test in this directory, and on the next run reuse it for the tests\n"
+    				+ "that passed and whose classes did not change instead of running them")
+    private File cacheDir;
+
+    @Option(name = "--testIndex", aliases = {"-ti"},
+    		usage = "keep the headers of the test class files in this file, and on the next run read again only\n"
+    				+ "the class files whose size or modification time changed to find the test classes")
+    private File testIndexFile;
+
+    @Option(name = "--failingFirst", aliases = {"-ff"},
+    		usage = "with --cache, run the tests that failed in the last run and the new tests first, and then run or reuse\n"
+    				+ "only the cached coverage of the passed tests sharing a class with the failed ones; the other passed tests\n"
+    				+ "are only counted")
+    private boolean failingFirst = false;
+
+    @Option(name = "--spectrum", aliases = {"-sp"},
+    		usage = "the spectrum file ranked by JaguarRank\n"
+    				+ "the spectrum saved with the output of the same name by default")
+    private File spectrumFile;
+
+    @Option(name = "--top", aliases = {"-k"},
+    		usage = "write only the K most suspicious requirements, and the ones tied with the last of them, to the XML\n"
+    				+ "0 writes every requirement")
+    private int top = 0;
+
+    @Option(name = "--converge", aliases = {"-cv"},
+    		usage = "with --failingFirst, stop running the passed tests once the K most suspicious requirements stop changing\n"
+    				+ "checked only after the failing and new tests ran; 0 runs every test")
+    private int convergeTop = 0;
+
+    @Option(name = "--convergeEvery", aliases = {"-cve"},
+    		usage = "the number of tests between the checks of --converge")
+    private int convergeEvery = 10;
+
+    @Option(name = "--convergeWindow", aliases = {"-cvw"},
+    		usage = "the number of stable checks in a row to stop the tests")
+    private int convergeWindow = 3;
+
+    @Option(name = "--convergeOverlap", aliases = {"-cvo"},
+    		usage = "the least share of the K most suspicious requirements kept since the last check for it to be stable")
+    private double convergeOverlap = 1;
+
+    @Option(name = "--convergeTau", aliases = {"-cvt"},
+    		usage = "the least Kendall tau of the kept requirements since the last check for it to be stable")
+    private double convergeTau = 0.9;
+
+    @Option(name = "--coarseToFine", aliases = {"-ctf"},
+    		usage = "run the tests once in forked JVMs collecting only the control-flow coverage of each method, rank the\n"
+    				+ "methods, and run again in forked JVMs\n"
+    				+ "the tests of the classes of the N most suspicious methods, with the agent instrumenting only those classes\n"
+    				+ "Jaguar must be started with the Jacoco agent; 0 runs the tests once")
+    private int coarseTop = 0;
+
+    @Option(name = "--escalate", aliases = {"-esc"},
+    		usage = "run the tests collecting control-flow coverage, and run the test classes covering the classes of the N\n"
+    				+ "most suspicious lines again in forked JVMs collecting data-flow coverage of those classes only; their DUAs\n"
+    				+ "replace their lines in the rank\n"
+    				+ "Jaguar must be started with the Jacoco agent; 0 does not escalate")
+    private int escalateTop = 0;
+    
+    @Option(name = "--forks", aliases = {"-f"},
+    		usage = "run the test classes in this number of forked JVMs, each with its own Jacoco agent\n"
+    				+ "Jaguar must be started with the Jacoco agent; 1 runs the tests in this JVM")
+    private int forks = 1;
+
+    @Option(name = "--forkPort", hidden = true,
+    		usage = "the port of the parent of a forked worker")
+    private int forkPort = 0;
+
+    @Option(name = "--forkMethods", hidden = true,
+    		usage = "a forked worker collects the coverage by method")
+    private boolean forkMethods = false;
+
+    @Option(name = "--agentPort", hidden = true,
+    		usage = "the port of the Jacoco agent tcpserver")
+    private int agentPort = CoverageClients.DEFAULT_PORT;
+    
     @Option(name = "--logLevel", aliases = {"-l"}, 
     		usage = "the log level\n ERROR, INFO, DEBUG, TRACE")
     private String logLevel = "INFO";
@@ -113,11 +246,150 @@ public class JaguarRunnerOptions {
 	public Boolean isDataFlow() {
 		return dataFlow;
 	}
+
+	public Boolean isInProcess() {
+		return inProcess;
+	}
+
+	public Boolean isNio() {
+		return nio;
+	}
 	
 	public String getLogLevel() {
 		return logLevel;
 	}
+
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	public int getCollectThreads() {
+		return collectThreads;
+	}
+
+	public int getAnalysisThreads() {
+		return analysisThreads;
+	}
+
+	public int getForks() {
+		return forks;
+	}
+
+	public int getForkPort() {
+		return forkPort;
+	}
+
+	public boolean isForkMethods() {
+		return forkMethods;
+	}
+
+	public int getAgentPort() {
+		return agentPort;
+	}
+
+	public File getRecordDir() {
+		return recordDir;
+	}
+
+	public List<File> getImportExec() {
+		return importExec;
+	}
+
+	public File getFailedTests() {
+		return failedTests;
+	}
+
+	public int getReplayThreads() {
+		return replayThreads;
+	}
+
+	public File getShardFile() {
+		return shardFile;
+	}
+
+	public List<File> getMergeShards() {
+		return mergeShards;
+	}
+
+	public File getCacheDir() {
+		return cacheDir;
+	}
+
+	public File getTestIndexFile() {
+		return testIndexFile;
+	}
+
+	public boolean isFailingFirst() {
+		return failingFirst;
+	}
+
+	public File getSpectrumFile() {
+		return spectrumFile;
+	}
+
+	public int getTop() {
+		return top;
+	}
+
+	public int getConvergeTop() {
+		return convergeTop;
+	}
+
+	public int getConvergeEvery() {
+		return convergeEvery;
+	}
+
+	public int getConvergeWindow() {
+		return convergeWindow;
+	}
+
+	public double getConvergeOverlap() {
+		return convergeOverlap;
+	}
+
+	public double getConvergeTau() {
+		return convergeTau;
+	}
+
+	public int getCoarseTop() {
+		return coarseTop;
+	}
+
+	public int getEscalateTop() {
+		return escalateTop;
+	}
 	
+	/**
+	 * Check that the options given together can run together, before any
+	 * test runs.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             telling the first two options that can not run together
+	 */
+	public void validate() {
+		final boolean converge = convergeTop > 0;
+		check(coarseTop > 0 && escalateTop > 0, "The coarse-to-fine run can not escalate");
+		check(coarseTop > 0 && (recordDir != null || cacheDir != null || converge),
+				"The coarse-to-fine run can not record, cache or converge");
+		check(escalateTop > 0 && dataFlow, "The escalation starts from control-flow coverage");
+		check(escalateTop > 0 && (recordDir != null || cacheDir != null || converge),
+				"The escalation can not record, cache or converge");
+		check(forks > 1 && recordDir != null, "Forked workers can not record the coverage");
+		check(forks > 1 && cacheDir != null, "Forked workers can not cache the coverage");
+		check(forks > 1 && converge, "Forked workers can not stop when the rank converges");
+		check(recordDir != null && cacheDir != null, "The coverage can not be recorded and cached at once");
+		check(recordDir != null && converge, "The recorded coverage is not ranked, so it can not converge");
+		check(failingFirst && cacheDir == null, "The failing first run needs the covered classes of each test in the cache");
+		check(converge && !failingFirst,
+				"The rank can only converge in a failing first run, once every test that may fail has run");
+	}
+
+	private static void check(boolean conflict, String message) {
+		if (conflict) {
+			throw new IllegalArgumentException(message);
+		}
+	}
+
 	@Override
 	public String toString() {
 		return "JaguarRunnerOptions \n"
@@ -130,7 +402,31 @@ public class JaguarRunnerOptions {
 				+ "output = " + outputFileName + "\n"
 				+ "outputType = " + outputType + "\n"
 				+ "logLevel = " + logLevel + "\n"
-				+ "dataflow = " + dataFlow ;
+				+ "queueDepth = " + queueDepth + "\n"
+				+ "collectThreads = " + collectThreads + "\n"
+				+ "analysisThreads = " + analysisThreads + "\n"
+				+ "dataflow = " + dataFlow + "\n"
+				+ "inProcess = " + inProcess + "\n"
+				+ "nio = " + nio + "\n"
+				+ "record = " + recordDir + "\n"
+				+ "importExec = " + importExec + "\n"
+				+ "failedTests = " + failedTests + "\n"
+				+ "replayThreads = " + replayThreads + "\n"
+				+ "shard = " + shardFile + "\n"
+				+ "merge = " + mergeShards + "\n"
+				+ "cache = " + cacheDir + "\n"
+				+ "testIndex = " + testIndexFile + "\n"
+				+ "failingFirst = " + failingFirst + "\n"
+				+ "spectrum = " + spectrumFile + "\n"
+				+ "top = " + top + "\n"
+				+ "converge = " + convergeTop + "\n"
+				+ "convergeEvery = " + convergeEvery + "\n"
+				+ "convergeWindow = " + convergeWindow + "\n"
+				+ "convergeOverlap = " + convergeOverlap + "\n"
+				+ "convergeTau = " + convergeTau + "\n"
+				+ "coarseToFine = " + coarseTop + "\n"
+				+ "escalate = " + escalateTop + "\n"
+				+ "forks = " + forks;
 	}
 	
 }
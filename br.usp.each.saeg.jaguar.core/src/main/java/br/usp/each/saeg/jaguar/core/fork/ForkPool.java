@@ -0,0 +1,275 @@
+package br.usp.each.saeg.jaguar.core.fork;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import br.usp.each.saeg.jaguar.core.Jaguar;
+import br.usp.each.saeg.jaguar.core.MethodSpectrum;
+
+/**
+ * Runs the tests in a pool of forked JVMs instead of the current one. Each
+ * worker JVM is started with the Jacoco agent of the current JVM, on its own
+ * tcpserver port, and runs {@link ForkWorker}. The test classes are shared
+ * with {@link WorkQueues}, and the partial spectrum of each worker is merged
+ * into the Jaguar of the current JVM before the rank is calculated.
+ * <p>
+ * The cef and cep of each requirement are sums over the tests, so the merged
+ * spectrum is the same as the one of a serial run.
+ */
+public class ForkPool {
+
+	private final static Logger logger = LoggerFactory.getLogger("JaguarLogger");
+
+	private static final int CONNECT_TIMEOUT = 5 * 60 * 1000;
+
+	private final int forks;
+	private final String[] args;
+	private String agentIncludes;
+	private Boolean dataFlow;
+	private boolean methods = false;
+
+	/**
+	 * @param forks
+	 *            the number of worker JVMs
+	 * @param args
+	 *            the command line options of the current run, given to each
+	 *            worker
+	 */
+	public ForkPool(int forks, String[] args) {
+		if (forks < 1) {
+			throw new IllegalArgumentException("Forks must be positive");
+		}
+		this.forks = forks;
+		this.args = args;
+	}
+
+	/**
+	 * Instrument only the given classes in the workers started from now on,
+	 * instead of the ones of the agent of the current JVM.
+	 *
+	 * @param agentIncludes
+	 *            the includes option of the Jacoco agent, class names
+	 *            separated by ':', wildcards allowed
+	 */
+	public void setAgentIncludes(String agentIncludes) {
+		this.agentIncludes = agentIncludes;
+	}
+
+	/**
+	 * Collect data-flow or control-flow coverage in the workers started from
+	 * now on, with the agent instrumenting the classes for DUAs or not,
+	 * whatever the current JVM collects. By default the workers collect the
+	 * same coverage of the current JVM.
+	 *
+	 * @param dataFlow
+	 *            if the workers collect data-flow coverage
+	 */
+	public void setDataFlow(boolean dataFlow) {
+		this.dataFlow = dataFlow;
+	}
+
+	/**
+	 * Collect the coverage by method in the workers started from now on, and
+	 * merge it into the {@link MethodSpectrum} of the Jaguar given to
+	 * {@link #run}, instead of its requirements.
+	 *
+	 * @param methods
+	 *            if the workers collect the coverage by method
+	 */
+	public void setMethods(boolean methods) {
+		this.methods = methods;
+	}
+
+	/**
+	 * Run the test classes in the workers and merge their spectra into
+	 * jaguar, waiting until every worker is done.
+	 *
+	 * @param classes
+	 *            the test classes
+	 * @param jaguar
+	 *            where the spectra are merged
+	 */
+	public void run(Class<?>[] classes, final Jaguar jaguar) throws IOException, InterruptedException {
+		final List<String> names = new ArrayList<String>(classes.length);
+		for (Class<?> clazz : classes) {
+			names.add(clazz.getName());
+		}
+		final WorkQueues queues = new WorkQueues(names, forks);
+		logger.info("Running {} test classes in {} forked JVMs", names.size(), forks);
+
+		final List<Process> workers = new ArrayList<Process>(forks);
+		final ExecutorService handlers = Executors.newFixedThreadPool(forks);
+		try (ServerSocket server = new ServerSocket(0, forks, InetAddress.getLoopbackAddress())) {
+			server.setSoTimeout(CONNECT_TIMEOUT);
+			for (int i = 0; i < forks; i++) {
+				workers.add(startWorker(server.getLocalPort()));
+			}
+
+			final List<Future<?>> done = new ArrayList<Future<?>>(forks);
+			for (int i = 0; i < forks; i++) {
+				final Socket socket = server.accept();
+				final int worker = i;
+				done.add(handlers.submit(() -> {
+					serve(socket, worker, queues, jaguar);
+					return null;
+				}));
+			}
+
+			for (Future<?> future : done) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					throw new IOException("Forked worker failed", e.getCause());
+				}
+			}
+			for (Process worker : workers) {
+				if (worker.waitFor() != 0) {
+					throw new IOException("Forked worker exited with " + worker.exitValue());
+				}
+			}
+		} finally {
+			handlers.shutdownNow();
+			for (Process worker : workers) {
+				worker.destroy();
+			}
+		}
+	}
+
+	private void serve(Socket socket, int worker, WorkQueues queues, Jaguar jaguar) throws IOException {
+		try (Socket s = socket) {
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+			while (true) {
+				final byte command = in.readByte();
+				if (command == ForkProtocol.CMD_NEXT) {
+					final String testClass = queues.next(worker);
+					out.writeUTF(testClass == null ? "" : testClass);
+					out.flush();
+				} else if (command == ForkProtocol.CMD_SPECTRUM) {
+					ForkProtocol.readSpectrum(in, jaguar);
+					logger.debug("Merged the spectrum of worker {}", worker);
+					return;
+				} else if (command == ForkProtocol.CMD_METHODS) {
+					ForkProtocol.readMethods(in, jaguar);
+					logger.debug("Merged the method spectrum of worker {}", worker);
+					return;
+				} else {
+					throw new IOException("Unknown command " + command);
+				}
+			}
+		}
+	}
+
+	private Process startWorker(int parentPort) throws IOException {
+		final int agentPort = freePort();
+		final List<String> command = jvmCommand(agentPort, agentIncludes, dataFlow);
+		command.add(ForkWorker.class.getName());
+		for (String arg : args) {
+			if (dataFlow == null || !(arg.equals("--dataflow") || arg.equals("-df"))) {
+				command.add(arg);
+			}
+		}
+		if (Boolean.TRUE.equals(dataFlow)) {
+			command.add("--dataflow");
+		}
+		if (methods) {
+			command.add("--forkMethods");
+		}
+		command.add("--forkPort");
+		command.add(String.valueOf(parentPort));
+		command.add("--agentPort");
+		command.add(String.valueOf(agentPort));
+		logger.debug("Starting worker: {}", command);
+		return new ProcessBuilder(command).inheritIO().start();
+	}
+
+	/**
+	 * The java command of the current JVM, with its agent moved to the given
+	 * port and, if not null, instrumenting the given classes, for DUAs or
+	 * not. Debugger agents are dropped, their port would clash.
+	 */
+	private static List<String> jvmCommand(int agentPort, String agentIncludes, Boolean dataFlow) {
+		final List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		boolean hasAgent = false;
+		for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+			if (arg.startsWith("-javaagent:") && arg.toLowerCase().contains("jacoco")) {
+				String agent = withAgentPort(arg, agentPort);
+				if (agentIncludes != null) {
+					agent = withAgentOption(agent, "includes", agentIncludes);
+				}
+				if (dataFlow != null) {
+					agent = withAgentOption(agent, "dataflow", dataFlow.toString());
+				}
+				command.add(agent);
+				hasAgent = true;
+			} else if (!arg.startsWith("-agentlib:jdwp") && !arg.startsWith("-Xrunjdwp")) {
+				command.add(arg);
+			}
+		}
+		if (!hasAgent) {
+			throw new IllegalStateException("Forked workers need the Jacoco agent, run Jaguar with -javaagent:jacocoagent.jar");
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		return command;
+	}
+
+	/**
+	 * @param agentArg
+	 *            a -javaagent argument of the Jacoco agent
+	 * @param port
+	 *            the new tcpserver port
+	 * @return the argument with the port option replaced
+	 */
+	public static String withAgentPort(String agentArg, int port) {
+		return withAgentOption(agentArg, "port", String.valueOf(port));
+	}
+
+	/**
+	 * @param agentArg
+	 *            a -javaagent argument of the Jacoco agent
+	 * @param name
+	 *            the name of the agent option
+	 * @param value
+	 *            the new value of the option
+	 * @return the argument with the option replaced
+	 */
+	public static String withAgentOption(String agentArg, String name, String value) {
+		final int separator = agentArg.indexOf('=');
+		if (separator < 0) {
+			return agentArg + "=" + name + "=" + value;
+		}
+		final StringBuilder result = new StringBuilder(agentArg.substring(0, separator + 1));
+		for (String option : agentArg.substring(separator + 1).split(",")) {
+			if (!option.isEmpty() && !option.startsWith(name + "=")) {
+				result.append(option).append(',');
+			}
+		}
+		return result.append(name).append('=').append(value).toString();
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+}
@@ -0,0 +1,122 @@
+package br.usp.each.saeg.jaguar.core.fork;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import br.usp.each.saeg.jaguar.core.Jaguar;
+import br.usp.each.saeg.jaguar.core.MethodSpectrum;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.AbstractTestRequirement;
+import br.usp.each.saeg.jaguar.core.shard.RequirementCodec;
+
+/**
+ * The messages between {@link ForkPool} and {@link ForkWorker}.
+ * <p>
+ * A worker sends {@link #CMD_NEXT} and gets the name of the next test class
+ * to run, or an empty name when there is no work left. It then sends
+ * {@link #CMD_SPECTRUM} followed by its partial spectrum: the number of
+ * tests, the number of failed tests and every covered requirement with its
+ * cef and cep, encoded by {@link RequirementCodec}. A worker collecting
+ * coverage by method sends {@link #CMD_METHODS} followed by its partial
+ * {@link MethodSpectrum} instead.
+ */
+public final class ForkProtocol {
+
+	public static final byte CMD_NEXT = 0x01;
+	public static final byte CMD_SPECTRUM = 0x02;
+	public static final byte CMD_METHODS = 0x03;
+
+	private ForkProtocol() {
+	}
+
+	/**
+	 * Write a partial spectrum, without the command byte.
+	 */
+	public static void writeSpectrum(DataOutput out, int nTests, int nTestsFailed, Collection<AbstractTestRequirement> testRequirements)
+			throws IOException {
+		out.writeInt(nTests);
+		out.writeInt(nTestsFailed);
+		out.writeInt(testRequirements.size());
+		for (AbstractTestRequirement requirement : testRequirements) {
+			RequirementCodec.write(out, requirement);
+		}
+	}
+
+	/**
+	 * Read a partial spectrum written by
+	 * {@link #writeSpectrum(DataOutput, int, int, Collection)} and merge it
+	 * into jaguar.
+	 */
+	public static void readSpectrum(DataInput in, Jaguar jaguar) throws IOException {
+		int nTests = in.readInt();
+		int nTestsFailed = in.readInt();
+		int size = in.readInt();
+		List<AbstractTestRequirement> testRequirements = new ArrayList<AbstractTestRequirement>(size);
+		for (int i = 0; i < size; i++) {
+			testRequirements.add(RequirementCodec.read(in));
+		}
+		jaguar.merge(nTests, nTestsFailed, testRequirements);
+	}
+
+	/**
+	 * Write a partial method spectrum, without the command byte: the number
+	 * of tests and of failed tests, every method with its cef and cep, and
+	 * the classes covered by each test class.
+	 */
+	public static void writeMethods(DataOutput out, int nTests, int nTestsFailed, MethodSpectrum methods) throws IOException {
+		out.writeInt(nTests);
+		out.writeInt(nTestsFailed);
+		out.writeInt(methods.size());
+		for (int slot = 0; slot < methods.size(); slot++) {
+			out.writeUTF(methods.getClassName(slot));
+			out.writeInt(methods.getMethodId(slot));
+			out.writeUTF(methods.getSignature(slot));
+			out.writeInt(methods.getCef(slot));
+			out.writeInt(methods.getCep(slot));
+		}
+		final Set<String> testClasses = methods.getTestClasses();
+		out.writeInt(testClasses.size());
+		for (String testClass : testClasses) {
+			out.writeUTF(testClass);
+			out.writeBoolean(methods.hasFailed(testClass));
+			final Set<String> covered = methods.getCoveredClasses(testClass);
+			out.writeInt(covered.size());
+			for (String className : covered) {
+				out.writeUTF(className);
+			}
+		}
+	}
+
+	/**
+	 * Read a partial method spectrum written by
+	 * {@link #writeMethods(DataOutput, int, int, MethodSpectrum)} and merge it
+	 * into the method spectrum of jaguar.
+	 */
+	public static void readMethods(DataInput in, Jaguar jaguar) throws IOException {
+		final int nTests = in.readInt();
+		final int nTestsFailed = in.readInt();
+		final MethodSpectrum methods = jaguar.getMethodSpectrum();
+		final int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			final int slot = methods.methodSlot(in.readUTF(), in.readInt(), in.readUTF());
+			methods.addCounts(slot, in.readInt(), in.readInt());
+		}
+		final int nTestClasses = in.readInt();
+		for (int i = 0; i < nTestClasses; i++) {
+			final String testClass = in.readUTF();
+			final boolean failed = in.readBoolean();
+			final List<String> covered = new ArrayList<String>();
+			for (int n = in.readInt(); n > 0; n--) {
+				covered.add(in.readUTF());
+			}
+			methods.addCoveredClasses(testClass, covered, failed);
+		}
+		jaguar.merge(nTests, nTestsFailed, Collections.<AbstractTestRequirement> emptyList());
+	}
+
+}
@@ -0,0 +1,116 @@
+package br.usp.each.saeg.jaguar.core.fork;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+
+import org.junit.runner.JUnitCore;
+import org.kohsuke.args4j.CmdLineParser;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+import br.usp.each.saeg.jaguar.core.CoverageClient;
+import br.usp.each.saeg.jaguar.core.CoverageClients;
+import br.usp.each.saeg.jaguar.core.Jaguar;
+import br.usp.each.saeg.jaguar.core.cli.JaguarRunnerOptions;
+import br.usp.each.saeg.jaguar.core.runner.JaguarRunListener;
+import br.usp.each.saeg.jaguar.core.runner.MethodSpectrumListener;
+
+/**
+ * Runs in a JVM forked by {@link ForkPool}: asks the parent for test classes
+ * until there are none left, collecting their coverage with its own agent,
+ * and then sends its partial spectrum, or method spectrum, to the parent.
+ */
+public class ForkWorker {
+
+	private static Logger logger = (Logger) LoggerFactory.getLogger("JaguarLogger");
+
+	private final JUnitCore junit = new JUnitCore();
+	private final Jaguar jaguar;
+	private final int parentPort;
+	private final boolean methods;
+
+	/**
+	 * @param jaguar
+	 *            where the coverage of the tests is collected
+	 * @param client
+	 *            the connected client of the agent of this JVM
+	 * @param parentPort
+	 *            the port where the parent waits for the workers
+	 * @param methods
+	 *            if the coverage is collected by method, see
+	 *            {@link Jaguar#collectMethods}
+	 */
+	public ForkWorker(Jaguar jaguar, CoverageClient client, int parentPort, boolean methods) {
+		this.jaguar = jaguar;
+		this.parentPort = parentPort;
+		this.methods = methods;
+		junit.addListener(methods ? new MethodSpectrumListener(jaguar, client) : new JaguarRunListener(jaguar, client));
+	}
+
+	/**
+	 * Run the test classes given by the parent and send the spectrum.
+	 */
+	public void run() throws Exception {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), parentPort)) {
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+			while (true) {
+				out.writeByte(ForkProtocol.CMD_NEXT);
+				out.flush();
+				final String testClass = in.readUTF();
+				if (testClass.isEmpty()) {
+					break;
+				}
+				logger.debug("Running test class {}", testClass);
+				junit.run(Class.forName(testClass));
+			}
+
+			jaguar.finish();
+			if (methods) {
+				out.writeByte(ForkProtocol.CMD_METHODS);
+				ForkProtocol.writeMethods(out, jaguar.getnTests(), jaguar.getnTestsFailed(), jaguar.getMethodSpectrum());
+			} else {
+				out.writeByte(ForkProtocol.CMD_SPECTRUM);
+				ForkProtocol.writeSpectrum(out, jaguar.getnTests(), jaguar.getnTestsFailed(), jaguar.getTestRequirements());
+			}
+			out.flush();
+			logger.debug("Sent the spectrum of {} tests", jaguar.getnTests());
+		}
+	}
+
+	public static void main(String[] args) {
+		final JaguarRunnerOptions options = new JaguarRunnerOptions();
+		final CmdLineParser parser = new CmdLineParser(options);
+
+		try {
+			logger.debug("Command:" + Arrays.toString(args));
+			parser.parseArgument(args);
+			logger.setLevel(Level.toLevel(options.getLogLevel(), Level.OFF));
+
+			final Jaguar jaguar = new Jaguar(options.getSourcePath());
+			jaguar.setAnalysisParallelism(options.getAnalysisThreads());
+			if (options.getQueueDepth() > 0) {
+				jaguar.enablePipeline(options.getQueueDepth(), options.getCollectThreads());
+			}
+			final CoverageClient client = CoverageClients.create(true, options.isNio(), options.isDataFlow(), options.getAgentPort());
+			client.connect();
+
+			new ForkWorker(jaguar, client, options.getForkPort(), options.isForkMethods()).run();
+			client.close();
+		} catch (Exception e) {
+			logger.error("Exception: " + e.toString());
+			e.printStackTrace(System.err);
+			System.exit(1);
+		}
+		System.exit(0);
+	}
+
+}
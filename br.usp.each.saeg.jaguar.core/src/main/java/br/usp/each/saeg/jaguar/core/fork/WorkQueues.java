@@ -0,0 +1,61 @@
+package br.usp.each.saeg.jaguar.core.fork;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Shards the test classes across the workers. Each worker has its own queue,
+ * filled round robin, and takes from its head. A worker with an empty queue
+ * steals from the tail of the longest queue, so a worker stuck on a slow
+ * class does not keep the others idle.
+ */
+public class WorkQueues {
+
+	private final List<Deque<String>> queues;
+
+	/**
+	 * @param items
+	 *            the test classes, in the order they would run serially
+	 * @param workers
+	 *            the number of workers
+	 */
+	public WorkQueues(List<String> items, int workers) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("Workers must be positive");
+		}
+		queues = new ArrayList<Deque<String>>(workers);
+		for (int i = 0; i < workers; i++) {
+			queues.add(new ArrayDeque<String>());
+		}
+		for (int i = 0; i < items.size(); i++) {
+			queues.get(i % workers).addLast(items.get(i));
+		}
+	}
+
+	/**
+	 * @param worker
+	 *            the worker asking for work, between 0 and workers - 1
+	 * @return the next test class for the worker, or null when there is no
+	 *         work left
+	 */
+	public synchronized String next(int worker) {
+		String item = queues.get(worker).pollFirst();
+		if (item != null) {
+			return item;
+		}
+		Deque<String> victim = null;
+		for (Deque<String> queue : queues) {
+			if (victim == null || queue.size() > victim.size()) {
+				victim = queue;
+			}
+		}
+		return victim.pollLast();
+	}
+
+	public int getWorkers() {
+		return queues.size();
+	}
+
+}
@@ -9,4 +9,28 @@ public interface Heuristic {
 
 	double eval(int cef, int cnf, int cep, int cnp);
 
+	/**
+	 * Evaluate a whole spectrum at once, kept in columns: the i-th requirement
+	 * has cef[i] and cep[i]. Same as calling {@link #eval(int, int, int, int)}
+	 * for each requirement, the built-in heuristics override it to call their
+	 * formula directly, without going through the interface.
+	 * 
+	 * @param cef
+	 *            the cef of each requirement
+	 * @param cep
+	 *            the cep of each requirement, same length of cef
+	 * @param totalFailed
+	 *            the number of failed tests
+	 * @param totalPassed
+	 *            the number of passed tests
+	 * @param out
+	 *            receives the suspiciousness of each requirement, at least
+	 *            the length of cef
+	 */
+	default void evalAll(int[] cef, int[] cep, int totalFailed, int totalPassed, double[] out) {
+		for (int i = 0; i < cef.length; i++) {
+			out[i] = eval(cef[i], totalFailed - cef[i], cep[i], totalPassed - cep[i]);
+		}
+	}
+
 }
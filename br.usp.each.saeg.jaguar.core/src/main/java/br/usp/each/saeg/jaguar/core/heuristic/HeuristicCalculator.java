@@ -2,7 +2,6 @@ package br.usp.each.saeg.jaguar.core.heuristic;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,33 +46,36 @@ public class HeuristicCalculator {
 
 	/**
 	 * Based on the objects (heuristic, set of test requirements, total failed
-	 * and passed tests) create a fault suspicious rank.
+	 * and passed tests) create a fault suspicious rank. The given requirements
+	 * are not modified, see {@link Rank}.
 	 * 
 	 * @return A list of suspicious test requirements, order by suspiciousness
 	 *         (the more suspicious come first)
 	 */
 	public ArrayList<AbstractTestRequirement> calculateRank() {
-		int cef, cnf, cep, cnp;
-		ArrayList<AbstractTestRequirement> rankList = new ArrayList<AbstractTestRequirement>();
-		for (AbstractTestRequirement requirement : requirements) {
-			cef = requirement.getCef();
-			cep = requirement.getCep();
-			cnf = nTestsFailed - cef;
-			cnp = nTestsPassed - cep;
-			
-			Double suspiciousness = heuristic.eval(cef, cnf, cep, cnp);
-			requirement.setSuspiciousness(suspiciousness);
-			requirement.setCnf(cnf);
-			requirement.setCnp(cnp);
-			
-			rankList.add(requirement);
-		}
+		return new RankEngine(requirements, nTestsPassed, nTestsFailed).rank(heuristic).toRequirements();
+	}
 
-		Collections.sort(rankList);
-		Collections.reverse(rankList);
-		normalize(rankList);
-		
-		return rankList;
+	/**
+	 * Evaluate a spectrum kept in columns, see
+	 * {@link Heuristic#evalAll(int[], int[], int, int, double[])}.
+	 * 
+	 * @param heuristic
+	 *            An implemented SFL heuristic
+	 * @param cef
+	 *            the cef of each requirement
+	 * @param cep
+	 *            the cep of each requirement
+	 * @param nTestsFailed
+	 *            Total number of failed tests
+	 * @param nTestsPassed
+	 *            Total number of passed tests
+	 * @return the suspiciousness of each requirement, not normalized
+	 */
+	public static double[] evaluate(Heuristic heuristic, int[] cef, int[] cep, int nTestsFailed, int nTestsPassed) {
+		double[] suspiciousness = new double[cef.length];
+		heuristic.evalAll(cef, cep, nTestsFailed, nTestsPassed, suspiciousness);
+		return suspiciousness;
 	}
 
 	/**
@@ -95,13 +97,13 @@ public class HeuristicCalculator {
 		
 		logger.debug("testRequirements list size {} " ,rankList.size());
 		
-		Double maxSusp = rankList.get(0).getSuspiciousness();
+		double maxSusp = rankList.get(0).getSuspiciousness();
 		logger.debug("maxSus = {}", maxSusp);
 		
-		Double minSusp = rankList.get(rankList.size() - 1).getSuspiciousness();
+		double minSusp = rankList.get(rankList.size() - 1).getSuspiciousness();
 		logger.debug("minSusp = {}", minSusp);
 		
-		Double diff = maxSusp - minSusp;
+		double diff = maxSusp - minSusp;
 		for (AbstractTestRequirement testRequirement : rankList) {
 			double normalizedValue = diff == 0 ? 1 : ((testRequirement.getSuspiciousness()-minSusp) / diff);
 			testRequirement.setSuspiciousness(normalizedValue);
@@ -4,6 +4,17 @@ package br.usp.each.saeg.jaguar.core.heuristic;
 public class JaccardHeuristic implements Heuristic {
 
 	public double eval(int cef, int cnf, int cep, int cnp) {
+		return suspiciousness(cef, cnf, cep, cnp);
+	}
+
+	@Override
+	public void evalAll(int[] cef, int[] cep, int totalFailed, int totalPassed, double[] out) {
+		for (int i = 0; i < cef.length; i++) {
+			out[i] = suspiciousness(cef[i], totalFailed - cef[i], cep[i], totalPassed - cep[i]);
+		}
+	}
+
+	private static double suspiciousness(int cef, int cnf, int cep, int cnp) {
 		double susp = 0.0d;
 		if (cef > 0) {
 			final double dCef = cef;
@@ -0,0 +1,143 @@
+package br.usp.each.saeg.jaguar.core.heuristic;
+
+import java.util.ArrayList;
+
+import br.usp.each.saeg.jaguar.core.model.core.requirement.AbstractTestRequirement;
+
+/**
+ * The fault localization rank of one heuristic, calculated by
+ * {@link RankEngine}. It never changes and never changes the requirements of
+ * the spectrum it was calculated from, so ranks of different heuristics can
+ * be calculated at the same time, kept and shared.
+ * <p>
+ * Positions go from 0, the most suspicious requirement, to {@link #size()} -
+ * 1, which may be the whole spectrum or only its top. Each position has the
+ * id of its requirement in the spectrum, its raw and normalized scores and
+ * its tie position, the first position with the same normalized score.
+ */
+public final class Rank {
+
+	private final Heuristic heuristic;
+	private final AbstractTestRequirement[] requirements;
+	private final int[] order;
+	private final double[] score;
+	private final double[] normalized;
+	private final int[] tiePosition;
+	private final int nTestsPassed;
+	private final int nTestsFailed;
+
+	/**
+	 * @param heuristic
+	 *            the heuristic of the rank
+	 * @param requirements
+	 *            the requirements of the spectrum, by id, not modified
+	 * @param order
+	 *            the requirement id of each position
+	 * @param score
+	 *            the raw score of each position
+	 * @param maxScore
+	 *            the greatest score of every requirement, ranked or not
+	 * @param minScore
+	 *            the least score of every requirement, ranked or not
+	 * @param nTestsPassed
+	 *            Total number of passed tests
+	 * @param nTestsFailed
+	 *            Total number of failed tests
+	 */
+	Rank(Heuristic heuristic, AbstractTestRequirement[] requirements, int[] order, double[] score, double maxScore,
+			double minScore, int nTestsPassed, int nTestsFailed) {
+		this.heuristic = heuristic;
+		this.requirements = requirements;
+		this.order = order;
+		this.score = score;
+		this.nTestsPassed = nTestsPassed;
+		this.nTestsFailed = nTestsFailed;
+
+		normalized = new double[order.length];
+		tiePosition = new int[order.length];
+		final double diff = maxScore - minScore;
+		for (int k = 0; k < order.length; k++) {
+			normalized[k] = diff == 0 ? 1 : ((score[k] - minScore) / diff);
+			final boolean tied = k > 0 && Double.valueOf(normalized[k]).equals(normalized[k - 1]);
+			tiePosition[k] = tied ? tiePosition[k - 1] : k;
+		}
+	}
+
+	public Heuristic getHeuristic() {
+		return heuristic;
+	}
+
+	/**
+	 * @return the number of ranked requirements
+	 */
+	public int size() {
+		return order.length;
+	}
+
+	/**
+	 * @return the id, in the spectrum, of the requirement at the position
+	 */
+	public int getRequirementId(int position) {
+		return order[position];
+	}
+
+	/**
+	 * @return the requirement at the position, as it is in the spectrum, with
+	 *         no suspiciousness
+	 */
+	public AbstractTestRequirement getRequirement(int position) {
+		return requirements[order[position]];
+	}
+
+	/**
+	 * @return the score given by the heuristic to the requirement at the
+	 *         position
+	 */
+	public double getScore(int position) {
+		return score[position];
+	}
+
+	/**
+	 * @return the score of the requirement at the position, normalized between
+	 *         0 and 1
+	 */
+	public double getSuspiciousness(int position) {
+		return normalized[position];
+	}
+
+	/**
+	 * @return the first position with the same suspiciousness of the given
+	 *         one
+	 */
+	public int getTiePosition(int position) {
+		return tiePosition[position];
+	}
+
+	public int getCnf(int position) {
+		return nTestsFailed - getRequirement(position).getCef();
+	}
+
+	public int getCnp(int position) {
+		return nTestsPassed - getRequirement(position).getCep();
+	}
+
+	/**
+	 * Create the requirement objects of the rank, like the ones the xml
+	 * writers expect.
+	 *
+	 * @return copies of the requirements with their suspiciousness, cnf and
+	 *         cnp, the more suspicious first
+	 */
+	public ArrayList<AbstractTestRequirement> toRequirements() {
+		final ArrayList<AbstractTestRequirement> rank = new ArrayList<AbstractTestRequirement>(order.length);
+		for (int k = 0; k < order.length; k++) {
+			final AbstractTestRequirement requirement = getRequirement(k).copy();
+			requirement.setSuspiciousness(normalized[k]);
+			requirement.setCnf(getCnf(k));
+			requirement.setCnp(getCnp(k));
+			rank.add(requirement);
+		}
+		return rank;
+	}
+
+}
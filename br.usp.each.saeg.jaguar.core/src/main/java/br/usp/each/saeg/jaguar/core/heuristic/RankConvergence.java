@@ -0,0 +1,167 @@
+package br.usp.each.saeg.jaguar.core.heuristic;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import br.usp.each.saeg.jaguar.core.model.core.requirement.AbstractTestRequirement;
+
+/**
+ * Tells when the top of a rank stopped changing while tests are still being
+ * added to the spectrum. The top of the rank is given at each checkpoint and
+ * compared to the one of the previous checkpoint by two measures:
+ * <ul>
+ * <li>the overlap, the requirements in both tops over the size of the
+ * largest one;</li>
+ * <li>the Kendall tau-b of the positions of the requirements in both tops,
+ * from -1, reversed, to 1, same order. Tied requirements are neither
+ * concordant nor discordant, so the order of a bucket of ties does not
+ * count.</li>
+ * </ul>
+ * A checkpoint is stable when both reach their minimum, and the rank has
+ * converged after a window of stable checkpoints in a row.
+ * <p>
+ * The requirements are compared by equality, as a new spectrum is ranked at
+ * each checkpoint.
+ */
+public class RankConvergence {
+
+	private final int window;
+	private final double minOverlap;
+	private final double minKendallTau;
+
+	private Map<AbstractTestRequirement, Integer> previous;
+	private int nCheckpoints = 0;
+	private int nStable = 0;
+	private double overlap = 0;
+	private double kendallTau = 0;
+
+	/**
+	 * @param window
+	 *            the number of stable checkpoints in a row to converge
+	 * @param minOverlap
+	 *            the least overlap of a stable checkpoint, between 0 and 1
+	 * @param minKendallTau
+	 *            the least Kendall tau of a stable checkpoint, between -1 and
+	 *            1
+	 */
+	public RankConvergence(int window, double minOverlap, double minKendallTau) {
+		this.window = Math.max(1, window);
+		this.minOverlap = minOverlap;
+		this.minKendallTau = minKendallTau;
+	}
+
+	/**
+	 * Compare the top of the rank to the one of the previous checkpoint.
+	 *
+	 * @param top
+	 *            the top of the rank, see {@link RankEngine#rank(Heuristic, int)}
+	 * @return if the rank has converged
+	 */
+	public boolean checkpoint(Rank top) {
+		final Map<AbstractTestRequirement, Integer> current = new HashMap<AbstractTestRequirement, Integer>(top.size() * 2);
+		for (int position = 0; position < top.size(); position++) {
+			current.put(top.getRequirement(position), top.getTiePosition(position));
+		}
+		nCheckpoints++;
+
+		if (previous == null) {
+			overlap = 0;
+			kendallTau = 0;
+		} else {
+			compare(previous, current);
+		}
+		previous = current;
+
+		if (overlap >= minOverlap && kendallTau >= minKendallTau) {
+			nStable++;
+		} else {
+			nStable = 0;
+		}
+		return hasConverged();
+	}
+
+	private void compare(Map<AbstractTestRequirement, Integer> before, Map<AbstractTestRequirement, Integer> after) {
+		final int[] x = new int[Math.min(before.size(), after.size())];
+		final int[] y = new int[x.length];
+		int shared = 0;
+		for (Map.Entry<AbstractTestRequirement, Integer> entry : after.entrySet()) {
+			final Integer position = before.get(entry.getKey());
+			if (position != null) {
+				x[shared] = position;
+				y[shared] = entry.getValue();
+				shared++;
+			}
+		}
+
+		final int largest = Math.max(before.size(), after.size());
+		overlap = largest == 0 ? 1 : (double) shared / largest;
+		kendallTau = kendallTau(x, y, shared);
+	}
+
+	/**
+	 * @return the Kendall tau-b of the first n positions, 1 if there is no
+	 *         pair telling the order apart
+	 */
+	private static double kendallTau(int[] x, int[] y, int n) {
+		long concordant = 0;
+		long discordant = 0;
+		long untiedX = 0;
+		long untiedY = 0;
+		for (int i = 0; i < n; i++) {
+			for (int j = i + 1; j < n; j++) {
+				final int dx = Integer.compare(x[i], x[j]);
+				final int dy = Integer.compare(y[i], y[j]);
+				if (dx != 0) {
+					untiedX++;
+				}
+				if (dy != 0) {
+					untiedY++;
+				}
+				if (dx * dy > 0) {
+					concordant++;
+				} else if (dx * dy < 0) {
+					discordant++;
+				}
+			}
+		}
+		if (untiedX == 0 || untiedY == 0) {
+			return untiedX == untiedY ? 1 : 0;
+		}
+		return (concordant - discordant) / Math.sqrt((double) untiedX * untiedY);
+	}
+
+	/**
+	 * @return if the last checkpoints were stable for the whole window
+	 */
+	public boolean hasConverged() {
+		return nStable >= window;
+	}
+
+	public int getnCheckpoints() {
+		return nCheckpoints;
+	}
+
+	/**
+	 * @return the number of stable checkpoints in a row so far
+	 */
+	public int getnStable() {
+		return nStable;
+	}
+
+	/**
+	 * @return the overlap of the last checkpoint with the previous one, 0 at
+	 *         the first checkpoint
+	 */
+	public double getOverlap() {
+		return overlap;
+	}
+
+	/**
+	 * @return the Kendall tau of the last checkpoint with the previous one, 0
+	 *         at the first checkpoint
+	 */
+	public double getKendallTau() {
+		return kendallTau;
+	}
+
+}
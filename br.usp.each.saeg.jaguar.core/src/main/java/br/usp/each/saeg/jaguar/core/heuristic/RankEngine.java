@@ -0,0 +1,268 @@
+package br.usp.each.saeg.jaguar.core.heuristic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import br.usp.each.saeg.jaguar.core.model.core.requirement.AbstractTestRequirement;
+
+/**
+ * Calculates the rank of several heuristics over the same spectrum. The
+ * spectrum is read once and the requirements are grouped by their distinct
+ * cef/cep pairs, which are few, as cnf and cnp follow from them. A heuristic
+ * is evaluated once per pair, the pairs are sorted by score and the
+ * requirements of pairs with the same score form one bucket of ties, so only
+ * those buckets are sorted by requirement.
+ * <p>
+ * Each heuristic gets its own scores and order in a {@link Rank}, so the
+ * heuristics are ranked and written in parallel without sharing any state.
+ * The requirements are never modified.
+ */
+public class RankEngine {
+
+	private static Logger logger = LoggerFactory.getLogger("JaguarLogger");
+
+	/**
+	 * Receives the rank of one heuristic, in the thread that calculated it.
+	 */
+	public interface RankConsumer {
+
+		void accept(Rank rank) throws Exception;
+
+	}
+
+	/**
+	 * The largest cef/cep table looked up by position, pairs outside of it
+	 * are hashed.
+	 */
+	private static final int DENSE_LIMIT = 1 << 20;
+
+	private final AbstractTestRequirement[] requirements;
+	private final int nTestsPassed;
+	private final int nTestsFailed;
+
+	private int nPairs = 0;
+	private int[] pairCef = new int[16];
+	private int[] pairCep = new int[16];
+	private final int[] pairStart;
+	private final int[] members;
+
+	/**
+	 * @param requirements
+	 *            the test requirements with their cef and cep, not modified
+	 * @param nTestsPassed
+	 *            Total number of passed tests
+	 * @param nTestsFailed
+	 *            Total number of failed tests
+	 */
+	public RankEngine(Collection<AbstractTestRequirement> requirements, int nTestsPassed, int nTestsFailed) {
+		this.requirements = requirements.toArray(new AbstractTestRequirement[requirements.size()]);
+		this.nTestsPassed = nTestsPassed;
+		this.nTestsFailed = nTestsFailed;
+
+		final int n = this.requirements.length;
+		final int[] pairOf = new int[n];
+		final long denseSize = (long) (nTestsFailed + 1) * (nTestsPassed + 1);
+		final int[] dense = denseSize > 0 && denseSize <= DENSE_LIMIT ? new int[(int) denseSize] : null;
+		final Map<Long, Integer> hashed = new HashMap<Long, Integer>();
+		for (int i = 0; i < n; i++) {
+			final int ef = this.requirements[i].getCef();
+			final int ep = this.requirements[i].getCep();
+			if (dense != null && ef >= 0 && ef <= nTestsFailed && ep >= 0 && ep <= nTestsPassed) {
+				final int slot = ef * (nTestsPassed + 1) + ep;
+				if (dense[slot] == 0) {
+					dense[slot] = newPair(ef, ep) + 1;
+				}
+				pairOf[i] = dense[slot] - 1;
+			} else {
+				final Long key = ((long) ef << 32) | (ep & 0xFFFFFFFFL);
+				Integer pair = hashed.get(key);
+				if (pair == null) {
+					pair = newPair(ef, ep);
+					hashed.put(key, pair);
+				}
+				pairOf[i] = pair;
+			}
+		}
+		pairCef = Arrays.copyOf(pairCef, nPairs);
+		pairCep = Arrays.copyOf(pairCep, nPairs);
+
+		// the requirements of each pair, last requirement first
+		pairStart = new int[nPairs + 1];
+		for (int i = 0; i < n; i++) {
+			pairStart[pairOf[i] + 1]++;
+		}
+		for (int pair = 0; pair < nPairs; pair++) {
+			pairStart[pair + 1] += pairStart[pair];
+		}
+		members = new int[n];
+		final int[] next = Arrays.copyOf(pairStart, nPairs);
+		for (int i = n - 1; i >= 0; i--) {
+			members[next[pairOf[i]]++] = i;
+		}
+	}
+
+	private int newPair(int ef, int ep) {
+		if (nPairs == pairCef.length) {
+			pairCef = Arrays.copyOf(pairCef, nPairs * 2);
+			pairCep = Arrays.copyOf(pairCep, nPairs * 2);
+		}
+		pairCef[nPairs] = ef;
+		pairCep[nPairs] = ep;
+		return nPairs++;
+	}
+
+	/**
+	 * Rank the requirements with one heuristic.
+	 *
+	 * @return the rank, the more suspicious first
+	 */
+	public Rank rank(Heuristic heuristic) {
+		return rank(heuristic, 0);
+	}
+
+	/**
+	 * Rank only the most suspicious requirements with one heuristic. The
+	 * requirements tied with the last one are kept, so the rank may be longer
+	 * than top, and the suspiciousness is normalized by the scores of every
+	 * requirement, as in the full rank.
+	 *
+	 * @param top
+	 *            the number of requirements to rank, 0 or less to rank all
+	 * @return the top of the rank, the more suspicious first
+	 */
+	public Rank rank(Heuristic heuristic, int top) {
+		if (requirements.length == 0) {
+			return new Rank(heuristic, requirements, new int[0], new double[0], 0, 0, nTestsPassed, nTestsFailed);
+		}
+		final double[] pairScore = HeuristicCalculator.evaluate(heuristic, pairCef, pairCep, nTestsFailed, nTestsPassed);
+
+		final Integer[] pairs = new Integer[nPairs];
+		for (int pair = 0; pair < nPairs; pair++) {
+			pairs[pair] = pair;
+		}
+		Arrays.sort(pairs, (a, b) -> Double.compare(pairScore[b], pairScore[a]));
+		final double max = pairScore[pairs[0]];
+		final double min = pairScore[pairs[nPairs - 1]];
+
+		final int limit = top <= 0 ? requirements.length : Math.min(top, requirements.length);
+		int[] order = new int[limit];
+		double[] score = new double[limit];
+		int size = 0;
+		for (int first = 0; first < nPairs && size < limit;) {
+			final double bucketScore = pairScore[pairs[first]];
+			int end = first + 1;
+			while (end < nPairs && Double.compare(pairScore[pairs[end]], bucketScore) == 0) {
+				end++;
+			}
+
+			int bucketSize = 0;
+			for (int k = first; k < end; k++) {
+				bucketSize += pairStart[pairs[k] + 1] - pairStart[pairs[k]];
+			}
+			if (size + bucketSize > order.length) {
+				order = Arrays.copyOf(order, size + bucketSize);
+				score = Arrays.copyOf(score, size + bucketSize);
+			}
+			for (int k = first; k < end; k++) {
+				final int from = pairStart[pairs[k]];
+				final int length = pairStart[pairs[k] + 1] - from;
+				System.arraycopy(members, from, order, size, length);
+				size += length;
+			}
+			Arrays.fill(score, size - bucketSize, size, bucketScore);
+
+			// HeuristicCalculator used to sort ascending and reverse, so ties
+			// are kept in the reverse order of the requirements
+			if (end - first > 1) {
+				Arrays.sort(order, size - bucketSize, size);
+				for (int i = size - bucketSize, j = size - 1; i < j; i++, j--) {
+					final int tmp = order[i];
+					order[i] = order[j];
+					order[j] = tmp;
+				}
+			}
+			first = end;
+		}
+		return new Rank(heuristic, requirements, Arrays.copyOf(order, size), Arrays.copyOf(score, size), max, min,
+				nTestsPassed, nTestsFailed);
+	}
+
+	/**
+	 * Rank the requirements with every heuristic in parallel, handing each
+	 * rank to the consumer as soon as it is ready. Waits until every rank has
+	 * been consumed.
+	 *
+	 * @param heuristics
+	 *            the heuristics
+	 * @param consumer
+	 *            receives each rank, must be thread safe
+	 * @param threads
+	 *            the number of heuristics ranked at the same time
+	 */
+	public void rankAll(Heuristic[] heuristics, RankConsumer consumer, int threads) throws Exception {
+		rankAll(heuristics, 0, consumer, threads);
+	}
+
+	/**
+	 * Same as {@link #rankAll(Heuristic[], RankConsumer, int)}, ranking only
+	 * the most suspicious requirements, see {@link #rank(Heuristic, int)}.
+	 *
+	 * @param heuristics
+	 *            the heuristics
+	 * @param top
+	 *            the number of requirements to rank, 0 or less to rank all
+	 * @param consumer
+	 *            receives each rank, must be thread safe
+	 * @param threads
+	 *            the number of heuristics ranked at the same time
+	 */
+	public void rankAll(Heuristic[] heuristics, final int top, final RankConsumer consumer, int threads) throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, heuristics.length)));
+		try {
+			final List<Future<?>> done = new ArrayList<Future<?>>(heuristics.length);
+			for (final Heuristic heuristic : heuristics) {
+				done.add(executor.submit(() -> {
+					logger.debug("Ranking with {}", heuristic.getClass().getSimpleName());
+					consumer.accept(rank(heuristic, top));
+					return null;
+				}));
+			}
+			for (Future<?> future : done) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception) {
+						throw (Exception) e.getCause();
+					}
+					throw e;
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	public int size() {
+		return requirements.length;
+	}
+
+	/**
+	 * @return the number of distinct cef/cep pairs, the formulas evaluated by
+	 *         each rank
+	 */
+	public int getnPairs() {
+		return nPairs;
+	}
+
+}
@@ -14,7 +14,7 @@ public abstract class AbstractTestRequirement implements Comparable<AbstractTest
 	private int cnf = 0;
 	private int cnp = 0;
 	
-	private Double suspiciousness = 0.0;
+	private double suspiciousness = 0.0;
 	private Boolean covered;
 
 	public enum Type{
@@ -22,6 +22,25 @@ public abstract class AbstractTestRequirement implements Comparable<AbstractTest
 	}
 	
 	public abstract Type getType();
+
+	/**
+	 * @return a new requirement with the same identity, method, cef and cep,
+	 *         and no suspiciousness
+	 */
+	public abstract AbstractTestRequirement copy();
+
+	/**
+	 * Copy the method, cef and cep of this requirement to another one.
+	 */
+	protected <T extends AbstractTestRequirement> T copyTo(T other) {
+		other.setClassFirstLine(classFirstLine);
+		other.setMethodId(methodId);
+		other.setMethodLine(methodLine);
+		other.setMethodSignature(methodSignature);
+		other.increaseFailed(cef);
+		other.increasePassed(cep);
+		return other;
+	}
 	
 	public String getClassName() {
 		return className;
@@ -66,6 +85,13 @@ public abstract class AbstractTestRequirement implements Comparable<AbstractTest
 	public void increaseFailed(){
 		cef++;
 	}
+
+	/**
+	 * Same as calling {@link #increaseFailed()} weight times.
+	 */
+	public void increaseFailed(int weight){
+		cef += weight;
+	}
 	
 	public int getCef() {
 		return cef;
@@ -75,6 +101,13 @@ public abstract class AbstractTestRequirement implements Comparable<AbstractTest
 		cep++;
 	}
 
+	/**
+	 * Same as calling {@link #increasePassed()} weight times.
+	 */
+	public void increasePassed(int weight){
+		cep += weight;
+	}
+
 	public int getCep() {
 		return cep;
 	}
@@ -105,7 +138,7 @@ public abstract class AbstractTestRequirement implements Comparable<AbstractTest
 
 
 	public int compareTo(AbstractTestRequirement o) {
-		return this.suspiciousness.compareTo(o.getSuspiciousness());
+		return Double.compare(suspiciousness, o.getSuspiciousness());
 	}
 
 	public Boolean getCovered() {
@@ -21,6 +21,11 @@ public class DuaTestRequirement extends AbstractTestRequirement {
 	public Type getType() {
 		return Type.DUA;
 	}
+
+	@Override
+	public DuaTestRequirement copy() {
+		return copyTo(new DuaTestRequirement(className, index, def, use, target, var));
+	}
 	
 	public int getIndex(){
 		return index;
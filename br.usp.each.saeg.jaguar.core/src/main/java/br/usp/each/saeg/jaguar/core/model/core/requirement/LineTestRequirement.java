@@ -19,6 +19,11 @@ public class LineTestRequirement extends AbstractTestRequirement {
 		return lineNumber;
 	}
 
+	@Override
+	public LineTestRequirement copy() {
+		return copyTo(new LineTestRequirement(className, lineNumber));
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
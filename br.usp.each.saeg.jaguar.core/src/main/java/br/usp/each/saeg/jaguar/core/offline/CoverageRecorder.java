@@ -0,0 +1,152 @@
+package br.usp.each.saeg.jaguar.core.offline;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.jacoco.core.data.AbstractExecutionDataStore;
+import org.jacoco.core.data.ControlFlowExecutionData;
+import org.jacoco.core.data.DataFlowExecutionData;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.data.SessionInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import br.usp.each.saeg.jaguar.core.analysis.ProbeBits;
+
+/**
+ * Writes the coverage of each test to the segment files of a record
+ * directory, so it can be analyzed later by {@link CoverageReplayer}.
+ * <p>
+ * Each test is one record: its outcome and its coverage in the Jacoco exec
+ * format, in a session named after the test. Only the classes with hits are
+ * written. The segments are append only: a new recorder on the same directory
+ * starts a new segment after the existing ones, and a segment is closed once
+ * it reaches the max segment size. See {@link CoverageSegments} for the
+ * layout.
+ */
+public class CoverageRecorder implements Closeable {
+
+	private final static Logger logger = LoggerFactory.getLogger("JaguarLogger");
+
+	/** Default max size of a segment, 64MB */
+	public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+	private final File dir;
+	private final long maxSegmentSize;
+	private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+
+	private int nextSegment;
+	private DataOutputStream segment;
+	private long segmentSize;
+	private int nRecords;
+
+	/**
+	 * @param dir
+	 *            the record directory, created if needed
+	 */
+	public CoverageRecorder(File dir) throws IOException {
+		this(dir, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * @param dir
+	 *            the record directory, created if needed
+	 * @param maxSegmentSize
+	 *            the size in bytes after which a new segment is started
+	 */
+	public CoverageRecorder(File dir, long maxSegmentSize) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Could not create the record directory " + dir);
+		}
+		if (maxSegmentSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Segments can not be larger than 2GB");
+		}
+		this.dir = dir;
+		this.maxSegmentSize = maxSegmentSize;
+		this.nextSegment = CoverageSegments.nextIndex(dir);
+	}
+
+	/**
+	 * Append the coverage of one test.
+	 *
+	 * @param testName
+	 *            the name of the test, used as Jacoco session id
+	 * @param failed
+	 *            result of the test
+	 * @param executionData
+	 *            the coverage of the test, not modified
+	 */
+	public synchronized void record(String testName, boolean failed, AbstractExecutionDataStore executionData) throws IOException {
+		record.reset();
+		encode(testName, executionData, record);
+
+		int recordSize = CoverageSegments.RECORD_HEADER_SIZE + record.size();
+		if (segment == null || (segmentSize > CoverageSegments.HEADER_SIZE && segmentSize + recordSize > maxSegmentSize)) {
+			openSegment();
+		}
+		segment.writeInt(record.size());
+		segment.writeByte(failed ? CoverageSegments.FAILED : CoverageSegments.PASSED);
+		record.writeTo(segment);
+		segmentSize += recordSize;
+		nRecords++;
+		logger.trace("Recorded test {} , {} bytes", testName, recordSize);
+	}
+
+	/**
+	 * Write the coverage of one test in the Jacoco exec format, the payload
+	 * of a record. Only the classes with hits are written.
+	 */
+	static void encode(String testName, AbstractExecutionDataStore executionData, OutputStream out) throws IOException {
+		ExecutionDataWriter writer = new ExecutionDataWriter(out);
+		long now = System.currentTimeMillis();
+		writer.visitSessionInfo(new SessionInfo(testName, now, now));
+		for (ControlFlowExecutionData data : executionData.getContents()) {
+			if (!ProbeBits.hasHits(data)) {
+				continue;
+			}
+			if (data instanceof DataFlowExecutionData) {
+				// the exec format only knows boolean probes
+				long[] words = ((DataFlowExecutionData) data).getLongProbes();
+				data = new ControlFlowExecutionData(data.getId(), data.getName(), ProbeBits.toBooleans(words));
+			}
+			writer.visitClassExecution(data);
+		}
+		writer.flush();
+	}
+
+	private void openSegment() throws IOException {
+		closeSegment();
+		File file = CoverageSegments.segmentFile(dir, nextSegment++);
+		segment = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		segment.writeInt(CoverageSegments.MAGIC_NUMBER);
+		segment.writeChar(CoverageSegments.FORMAT_VERSION);
+		segmentSize = CoverageSegments.HEADER_SIZE;
+		logger.debug("Recording coverage to {}", file);
+	}
+
+	private void closeSegment() throws IOException {
+		if (segment != null) {
+			segment.close();
+			segment = null;
+		}
+	}
+
+	/**
+	 * @return the number of tests recorded by this recorder
+	 */
+	public int getnRecords() {
+		return nRecords;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		closeSegment();
+	}
+
+}
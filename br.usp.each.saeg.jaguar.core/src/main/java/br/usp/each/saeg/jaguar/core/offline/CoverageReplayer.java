@@ -0,0 +1,89 @@
+package br.usp.each.saeg.jaguar.core.offline;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import br.usp.each.saeg.jaguar.core.Jaguar;
+
+/**
+ * Feeds a recording to {@link Jaguar#collect}, as if the tests were running.
+ * Each test is decoded and collected by a pool of workers, so the tests are
+ * analyzed in parallel and only the coverage of the tests being collected is
+ * kept in memory.
+ */
+public class CoverageReplayer {
+
+	private final static Logger logger = LoggerFactory.getLogger("JaguarLogger");
+
+	private final Jaguar jaguar;
+	private final boolean isDataflow;
+	private final int threads;
+
+	/**
+	 * @param jaguar
+	 *            where the coverage is collected
+	 * @param isDataflow
+	 *            if the recorded coverage is data-flow
+	 * @param threads
+	 *            the number of workers collecting the tests
+	 */
+	public CoverageReplayer(Jaguar jaguar, boolean isDataflow, int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Threads must be positive");
+		}
+		this.jaguar = jaguar;
+		this.isDataflow = isDataflow;
+		this.threads = threads;
+	}
+
+	/**
+	 * Collect every recorded test, waiting until all of them are collected.
+	 *
+	 * @param tests
+	 *            the recorded tests, see {@link CoverageSegments#read}
+	 * @throws IOException
+	 *             if the coverage of a test can not be decoded
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the workers
+	 */
+	public void replay(List<RecordedTest> tests) throws IOException, InterruptedException {
+		long startTime = System.currentTimeMillis();
+		ExecutorService workers = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> collected = new ArrayList<Future<?>>(tests.size());
+			for (final RecordedTest test : tests) {
+				jaguar.increaseNTests();
+				if (test.isFailed()) {
+					jaguar.increaseNTestsFailed();
+				}
+				collected.add(workers.submit(() -> {
+					jaguar.collect(test.read(isDataflow), test.isFailed());
+					return null;
+				}));
+			}
+
+			for (Future<?> future : collected) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException) {
+						throw (IOException) e.getCause();
+					}
+					throw new IllegalStateException("Coverage collection failed", e.getCause());
+				}
+			}
+		} finally {
+			workers.shutdownNow();
+		}
+		logger.debug("Time to replay {} tests: {}", tests.size(), System.currentTimeMillis() - startTime);
+	}
+
+}
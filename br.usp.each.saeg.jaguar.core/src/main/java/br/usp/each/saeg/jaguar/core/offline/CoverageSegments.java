@@ -0,0 +1,122 @@
+package br.usp.each.saeg.jaguar.core.offline;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Layout and reading of the segment files written by {@link CoverageRecorder}.
+ * <p>
+ * A segment starts with an int magic number and a char format version,
+ * followed by the records. Each record is an int with the payload size, a
+ * byte with the test outcome and the payload, which is the coverage of the
+ * test in the Jacoco exec format. A record cut short, like the last one of a
+ * recording that was killed, is ignored.
+ */
+public final class CoverageSegments {
+
+	private final static Logger logger = LoggerFactory.getLogger("JaguarLogger");
+
+	static final int MAGIC_NUMBER = 0x4A475253;
+	static final char FORMAT_VERSION = 0x0001;
+	static final int HEADER_SIZE = 6;
+	static final int RECORD_HEADER_SIZE = 5;
+	static final byte PASSED = 0;
+	static final byte FAILED = 1;
+
+	private static final String PREFIX = "coverage-";
+	private static final String SUFFIX = ".seg";
+
+	private CoverageSegments() {
+	}
+
+	static File segmentFile(File dir, int index) {
+		return new File(dir, String.format("%s%05d%s", PREFIX, index, SUFFIX));
+	}
+
+	/**
+	 * @return the index of the segment after the last one in the directory
+	 */
+	static int nextIndex(File dir) {
+		File[] segments = list(dir);
+		if (segments.length == 0) {
+			return 0;
+		}
+		String name = segments[segments.length - 1].getName();
+		return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length())) + 1;
+	}
+
+	/**
+	 * @param dir
+	 *            the record directory
+	 * @return the segment files in the directory, in recording order
+	 */
+	public static File[] list(File dir) {
+		File[] segments = dir.listFiles((d, name) -> name.matches(PREFIX + "\\d+\\" + SUFFIX));
+		if (segments == null) {
+			return new File[0];
+		}
+		Arrays.sort(segments);
+		return segments;
+	}
+
+	/**
+	 * Map every segment of the directory in memory and split them into
+	 * records. The payloads are read only views of the mapped files, nothing
+	 * is copied.
+	 *
+	 * @param dir
+	 *            the record directory
+	 * @return the recorded tests, in recording order
+	 */
+	public static List<RecordedTest> read(File dir) throws IOException {
+		List<RecordedTest> tests = new ArrayList<RecordedTest>();
+		for (File segment : list(dir)) {
+			read(segment, tests);
+		}
+		logger.debug("Recorded tests = {} in {}", tests.size(), dir);
+		return tests;
+	}
+
+	private static void read(File segment, List<RecordedTest> tests) throws IOException {
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC_NUMBER) {
+			throw new IOException("Invalid segment file " + segment);
+		}
+		char version = buffer.getChar();
+		if (version != FORMAT_VERSION) {
+			throw new IOException(String.format("Incompatible version %x in %s", (int) version, segment));
+		}
+
+		while (buffer.hasRemaining()) {
+			if (buffer.remaining() < RECORD_HEADER_SIZE) {
+				logger.warn("Ignoring truncated record at the end of {}", segment);
+				break;
+			}
+			int size = buffer.getInt();
+			boolean failed = buffer.get() == FAILED;
+			if (size < 0 || buffer.remaining() < size) {
+				logger.warn("Ignoring truncated record at the end of {}", segment);
+				break;
+			}
+			ByteBuffer payload = buffer.slice();
+			payload.limit(size);
+			buffer.position(buffer.position() + size);
+			tests.add(new RecordedTest(failed, payload));
+		}
+	}
+
+}
@@ -0,0 +1,93 @@
+package br.usp.each.saeg.jaguar.core.offline;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+
+import org.jacoco.core.data.AbstractExecutionDataStore;
+import org.jacoco.core.data.ControlFlowExecutionDataStore;
+import org.jacoco.core.data.ExecutionDataReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Imports Jacoco exec files written by other tools into a recording. Each
+ * session of an exec file is taken as one test, named by the session id, and
+ * the execution data after a session info belongs to that session. Data
+ * before the first session info is taken as a test named by the file.
+ * Sessions without execution data are imported too, as tests that covered
+ * nothing.
+ */
+public class ExecFileImporter {
+
+	private final static Logger logger = LoggerFactory.getLogger("JaguarLogger");
+
+	private final CoverageRecorder recorder;
+	private final Set<String> failedTests;
+
+	private String testName;
+	private boolean isSession;
+	private AbstractExecutionDataStore executionData;
+	private IOException failure;
+	private int nTests;
+
+	/**
+	 * @param recorder
+	 *            where the tests are recorded
+	 * @param failedTests
+	 *            the names of the failed tests, the other tests passed
+	 */
+	public ExecFileImporter(CoverageRecorder recorder, Set<String> failedTests) {
+		this.recorder = recorder;
+		this.failedTests = failedTests;
+	}
+
+	/**
+	 * @param execFile
+	 *            the exec file
+	 * @return the number of tests imported from the file
+	 */
+	public int importFile(File execFile) throws IOException {
+		nTests = 0;
+		failure = null;
+		startTest(execFile.getName(), false);
+		try (InputStream in = new BufferedInputStream(new FileInputStream(execFile))) {
+			ExecutionDataReader reader = new ExecutionDataReader(in);
+			reader.setSessionInfoVisitor(info -> {
+				finishTest();
+				startTest(info.getId(), true);
+			});
+			reader.setExecutionDataVisitor(data -> executionData.visitClassExecution(data));
+			reader.read();
+		}
+		finishTest();
+		if (failure != null) {
+			throw failure;
+		}
+		logger.debug("Imported {} tests from {}", nTests, execFile);
+		return nTests;
+	}
+
+	private void startTest(String name, boolean isSession) {
+		this.testName = name;
+		this.isSession = isSession;
+		executionData = new ControlFlowExecutionDataStore();
+	}
+
+	private void finishTest() {
+		// a session without data is a test that covered nothing
+		if (failure != null || (!isSession && executionData.getContents().isEmpty())) {
+			return;
+		}
+		try {
+			recorder.record(testName, failedTests.contains(testName), executionData);
+			nTests++;
+		} catch (IOException e) {
+			failure = e;
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+package br.usp.each.saeg.jaguar.core.offline;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.jacoco.core.data.AbstractExecutionDataStore;
+import org.jacoco.core.data.ControlFlowExecutionDataStore;
+import org.jacoco.core.data.DataFlowExecutionDataStore;
+import org.jacoco.core.data.ExecutionDataReader;
+import org.jacoco.core.data.SessionInfoStore;
+
+/**
+ * One test of a recording: its outcome and its coverage, still encoded in
+ * the Jacoco exec format.
+ */
+public class RecordedTest {
+
+	private final boolean failed;
+	private final ByteBuffer payload;
+
+	RecordedTest(boolean failed, ByteBuffer payload) {
+		this.failed = failed;
+		this.payload = payload;
+	}
+
+	public boolean isFailed() {
+		return failed;
+	}
+
+	/**
+	 * Decode the coverage of the test. Can be called by several threads at
+	 * once.
+	 *
+	 * @param isDataflow
+	 *            if the coverage is data-flow
+	 * @return a new store with the coverage of the test
+	 */
+	public AbstractExecutionDataStore read(boolean isDataflow) throws IOException {
+		AbstractExecutionDataStore executionData = isDataflow ? new DataFlowExecutionDataStore() : new ControlFlowExecutionDataStore();
+		ExecutionDataReader reader = new ExecutionDataReader(new ByteBufferInputStream(payload.duplicate()));
+		reader.setSessionInfoVisitor(new SessionInfoStore());
+		reader.setExecutionDataVisitor(executionData);
+		reader.read();
+		return executionData;
+	}
+
+	private static class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			len = Math.min(len, buffer.remaining());
+			buffer.get(b, off, len);
+			return len;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+
+}
@@ -0,0 +1,361 @@
+package br.usp.each.saeg.jaguar.core.offline;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.jacoco.core.data.AbstractExecutionDataStore;
+import org.jacoco.core.data.ControlFlowExecutionData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import br.usp.each.saeg.jaguar.core.analysis.ProbeBits;
+
+/**
+ * The coverage of each test of the last run, kept between runs so the tests
+ * whose code did not change are not run again.
+ * <p>
+ * Each test is kept with its outcome, its coverage encoded like a record of
+ * {@link CoverageRecorder} and a content hash of the class files of its
+ * test class and of every class it covered. The covered classes are also the
+ * footprint of the test, see {@link #getReusedTests(Set)}. A test is fresh when it passed
+ * and none of those class files changed; its coverage is then replayed by
+ * {@link CoverageReplayer} instead of running it. Failed tests are always
+ * run again, as they are the ones being fixed.
+ * <p>
+ * The cache is a single file in the cache directory, rewritten by
+ * {@link #save()} with the fresh tests that were reused and the tests that
+ * ran. Tests that no longer exist are dropped.
+ */
+public class TestCoverageCache {
+
+	private final static Logger logger = LoggerFactory.getLogger("JaguarLogger");
+
+	static final int MAGIC_NUMBER = 0x4A475443;
+	static final char FORMAT_VERSION = 0x0001;
+	private static final String FILE_NAME = "tests.cache";
+
+	private static class Entry {
+
+		final boolean failed;
+		final String[] classNames;
+		final long[] hashes;
+		final byte[] payload;
+
+		Entry(boolean failed, String[] classNames, long[] hashes, byte[] payload) {
+			this.failed = failed;
+			this.classNames = classNames;
+			this.hashes = hashes;
+			this.payload = payload;
+		}
+	}
+
+	private final File dir;
+	private final Function<String, File> classFiles;
+	private final Map<String, Long> currentHashes = new HashMap<String, Long>();
+	private final Map<String, Entry> cached = new HashMap<String, Entry>();
+	private final Map<String, Entry> kept = new LinkedHashMap<String, Entry>();
+	private final Set<String> reused = new LinkedHashSet<String>();
+
+	/**
+	 * Load the cache of the directory, if there is one.
+	 *
+	 * @param dir
+	 *            the cache directory, created if needed
+	 * @param classFiles
+	 *            the class file of a class, by its vm name
+	 */
+	public TestCoverageCache(File dir, Function<String, File> classFiles) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Could not create the cache directory " + dir);
+		}
+		this.dir = dir;
+		this.classFiles = classFiles;
+		load();
+	}
+
+	private void load() throws IOException {
+		final File file = new File(dir, FILE_NAME);
+		if (!file.isFile()) {
+			return;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+			if (in.readInt() != MAGIC_NUMBER || in.readChar() != FORMAT_VERSION) {
+				logger.warn("Ignoring the incompatible test cache {}", file);
+				return;
+			}
+			while (in.readBoolean()) {
+				final String testId = in.readUTF();
+				final boolean failed = in.readBoolean();
+				final String[] classNames = new String[in.readInt()];
+				final long[] hashes = new long[classNames.length];
+				for (int i = 0; i < classNames.length; i++) {
+					classNames[i] = in.readUTF();
+					hashes[i] = in.readLong();
+				}
+				final byte[] payload = new byte[in.readInt()];
+				in.readFully(payload);
+				cached.put(testId, new Entry(failed, classNames, hashes, payload));
+			}
+		}
+		logger.debug("Cached tests = {} in {}", cached.size(), dir);
+	}
+
+	/**
+	 * Tell if the cached coverage of a test can be used instead of running it.
+	 * A fresh test is kept, and its coverage is returned by
+	 * {@link #getReusedTests()}.
+	 *
+	 * @param testId
+	 *            the test, as named by JUnit
+	 * @return true if the test passed and its classes did not change
+	 */
+	public synchronized boolean isFresh(String testId) {
+		if (reused.contains(testId)) {
+			return true;
+		}
+		final Entry entry = cached.get(testId);
+		if (entry == null || entry.failed) {
+			return false;
+		}
+		for (int i = 0; i < entry.classNames.length; i++) {
+			final Long hash = hash(entry.classNames[i]);
+			if (hash == null || hash != entry.hashes[i]) {
+				return false;
+			}
+		}
+		kept.put(testId, entry);
+		reused.add(testId);
+		return true;
+	}
+
+	/**
+	 * @param testId
+	 *            the test, as named by JUnit
+	 * @return true if the test is in the cache, fresh or not
+	 */
+	public synchronized boolean isCached(String testId) {
+		return cached.containsKey(testId);
+	}
+
+	/**
+	 * @param testId
+	 *            the test, as named by JUnit
+	 * @return true if the test failed in the last run
+	 */
+	public synchronized boolean hasFailed(String testId) {
+		final Entry entry = cached.get(testId);
+		return entry != null && entry.failed;
+	}
+
+	/**
+	 * Tell if a test covered any of the given classes in the last run, even
+	 * if its classes changed since then.
+	 *
+	 * @param testId
+	 *            the test, as named by JUnit
+	 * @param classNames
+	 *            the vm names of the classes
+	 * @return true if the test is in the cache and covered any of the classes
+	 */
+	public synchronized boolean covered(String testId, Set<String> classNames) {
+		final Entry entry = cached.get(testId);
+		return entry != null && covers(entry, classNames);
+	}
+
+	/**
+	 * Keep the cached coverage of tests that did not run, so the classes they
+	 * covered are still known on the next run. Their classes changed, so
+	 * they are not fresh then either. The tests that ran keep their new
+	 * coverage.
+	 *
+	 * @param testIds
+	 *            the tests, as named by JUnit
+	 */
+	public synchronized void keepNotRun(Collection<String> testIds) {
+		for (String testId : testIds) {
+			final Entry entry = cached.get(testId);
+			if (entry != null && !kept.containsKey(testId)) {
+				kept.put(testId, entry);
+			}
+		}
+	}
+
+	/**
+	 * @return the coverage of the fresh tests, see {@link #isFresh(String)}
+	 */
+	public synchronized List<RecordedTest> getReusedTests() {
+		return getReusedTests(null);
+	}
+
+	/**
+	 * The coverage of the fresh tests that covered any of the given classes.
+	 *
+	 * @param classNames
+	 *            the vm names of the classes, or null for every fresh test
+	 * @return the coverage of the tests, see {@link #isFresh(String)}
+	 */
+	public synchronized List<RecordedTest> getReusedTests(Set<String> classNames) {
+		final List<RecordedTest> tests = new ArrayList<RecordedTest>();
+		for (String testId : reused) {
+			final Entry entry = kept.get(testId);
+			if (classNames == null || covers(entry, classNames)) {
+				tests.add(new RecordedTest(false, ByteBuffer.wrap(entry.payload)));
+			}
+		}
+		return tests;
+	}
+
+	/**
+	 * @return the number of fresh tests, see {@link #isFresh(String)}
+	 */
+	public synchronized int getnReused() {
+		return reused.size();
+	}
+
+	/**
+	 * @return the vm names of the classes covered by the tests that failed in
+	 *         this run
+	 */
+	public synchronized Set<String> getFailedTestsClasses() {
+		final Set<String> classNames = new HashSet<String>();
+		for (Map.Entry<String, Entry> test : kept.entrySet()) {
+			final Entry entry = test.getValue();
+			if (entry.failed && !reused.contains(test.getKey())) {
+				classNames.addAll(Arrays.asList(entry.classNames).subList(1, entry.classNames.length));
+			}
+		}
+		return classNames;
+	}
+
+	/**
+	 * The first class of an entry is its test class, the others are the
+	 * classes it covered.
+	 */
+	private static boolean covers(Entry entry, Set<String> classNames) {
+		for (int i = 1; i < entry.classNames.length; i++) {
+			if (classNames.contains(entry.classNames[i])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Keep the coverage of a test that ran.
+	 *
+	 * @param testId
+	 *            the test, as named by JUnit
+	 * @param testClassName
+	 *            the name of the test class
+	 * @param failed
+	 *            result of the test
+	 * @param executionData
+	 *            the coverage of the test, not modified
+	 */
+	public synchronized void put(String testId, String testClassName, boolean failed, AbstractExecutionDataStore executionData)
+			throws IOException {
+		final List<String> classNames = new ArrayList<String>();
+		classNames.add(testClassName.replace('.', '/'));
+		for (ControlFlowExecutionData data : executionData.getContents()) {
+			if (ProbeBits.hasHits(data)) {
+				classNames.add(data.getName());
+			}
+		}
+		final long[] hashes = new long[classNames.size()];
+		for (int i = 0; i < hashes.length; i++) {
+			final Long hash = hash(classNames.get(i));
+			if (hash == null) {
+				// not kept, so it runs again next time
+				return;
+			}
+			hashes[i] = hash;
+		}
+		final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		CoverageRecorder.encode(testId, executionData, payload);
+		kept.put(testId, new Entry(failed, classNames.toArray(new String[classNames.size()]), hashes, payload.toByteArray()));
+	}
+
+	/**
+	 * Rewrite the cache with the reused tests and the tests that ran.
+	 */
+	public synchronized void save() throws IOException {
+		final File file = new File(dir, FILE_NAME);
+		final File tmp = new File(dir, FILE_NAME + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024))) {
+			out.writeInt(MAGIC_NUMBER);
+			out.writeChar(FORMAT_VERSION);
+			for (Map.Entry<String, Entry> test : kept.entrySet()) {
+				final Entry entry = test.getValue();
+				out.writeBoolean(true);
+				out.writeUTF(test.getKey());
+				out.writeBoolean(entry.failed);
+				out.writeInt(entry.classNames.length);
+				for (int i = 0; i < entry.classNames.length; i++) {
+					out.writeUTF(entry.classNames[i]);
+					out.writeLong(entry.hashes[i]);
+				}
+				out.writeInt(entry.payload.length);
+				out.write(entry.payload);
+			}
+			out.writeBoolean(false);
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		logger.debug("Cached tests = {} saved in {}", kept.size(), dir);
+	}
+
+	/**
+	 * @return the number of tests in the cache when it was loaded
+	 */
+	public synchronized int getnCached() {
+		return cached.size();
+	}
+
+	/**
+	 * The first 8 bytes of the SHA-1 of the class file, 0 if there is no
+	 * class file or null if it can not be read.
+	 */
+	private Long hash(String className) {
+		if (currentHashes.containsKey(className)) {
+			return currentHashes.get(className);
+		}
+		Long hash = 0L;
+		final File file = classFiles.apply(className);
+		if (file != null && file.isFile()) {
+			try {
+				final byte[] digest = MessageDigest.getInstance("SHA-1").digest(Files.readAllBytes(file.toPath()));
+				hash = ByteBuffer.wrap(digest).getLong();
+			} catch (IOException e) {
+				logger.warn("Could not read {}, its tests will run again", file);
+				hash = null;
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		currentHashes.put(className, hash);
+		return hash;
+	}
+
+}
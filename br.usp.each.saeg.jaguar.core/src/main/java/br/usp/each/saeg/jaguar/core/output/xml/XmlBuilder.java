@@ -16,6 +16,8 @@ public abstract class XmlBuilder {
     protected Heuristic heuristic;
     protected Requirement.Type requirementType;
     protected Long timeSpent;
+    protected Integer testsUsed;
+    protected String stopReason;
 
     private Integer absolutePosition = 1;
     private Integer tiedPosition = 1;
@@ -49,6 +51,20 @@ public abstract class XmlBuilder {
         this.timeSpent = timeSpent;
     }
 
+    /**
+     * Set the number of tests used when the tests stopped before the end.
+     */
+    public void testsUsed(Integer testsUsed) {
+        this.testsUsed = testsUsed;
+    }
+
+    /**
+     * Set why the tests stopped before the end.
+     */
+    public void stopReason(String stopReason) {
+        this.stopReason = stopReason;
+    }
+
     protected Integer getPosition(double currentSuspicious) {
         if (previousSuspicious.equals(currentSuspicious)) {
             absolutePosition++;
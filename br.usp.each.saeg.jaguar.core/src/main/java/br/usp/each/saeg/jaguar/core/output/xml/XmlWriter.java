@@ -21,6 +21,8 @@ public abstract class XmlWriter {
     protected ArrayList<AbstractTestRequirement> testRequirements;
     protected Heuristic currentHeuristic;
     protected Long coverageTime;
+    protected Integer testsUsed;
+    protected String stopReason;
 
     public XmlWriter(ArrayList<AbstractTestRequirement> testRequirements, Heuristic currentHeuristic, Long coverageTime) {
         this.testRequirements = testRequirements;
@@ -28,6 +30,20 @@ public abstract class XmlWriter {
         this.coverageTime = coverageTime;
     }
 
+    /**
+     * Record in the xml that the rank was calculated from only some of the
+     * tests.
+     * 
+     * @param testsUsed
+     *            the number of tests used
+     * @param stopReason
+     *            why the tests stopped
+     */
+    public void stoppedAfter(int testsUsed, String stopReason) {
+        this.testsUsed = testsUsed;
+        this.stopReason = stopReason;
+    }
+
     public void generateXML(File projectDir, String fileName) {
         XmlBuilder xmlBuilder = createXmlBuilder();
         File xmlFile = write(xmlBuilder, projectDir, fileName);
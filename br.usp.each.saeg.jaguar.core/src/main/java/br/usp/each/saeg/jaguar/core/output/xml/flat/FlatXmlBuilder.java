@@ -94,6 +94,8 @@ public class FlatXmlBuilder extends XmlBuilder {
 		}
 
 		faultClassification.setTimeSpent(timeSpent);
+		faultClassification.setTestsUsed(testsUsed);
+		faultClassification.setStopReason(stopReason);
 		faultClassification.setRequirementType(requirementType);
 		faultClassification.setRequirements(requirements);
 		faultClassification.setProject(project);
@@ -20,6 +20,8 @@ public class FlatXmlWriter extends XmlWriter {
 		xmlBuilder.project("fault localization");
 		xmlBuilder.heuristic(currentHeuristic);
 		xmlBuilder.timeSpent(coverageTime);
+		xmlBuilder.testsUsed(testsUsed);
+		xmlBuilder.stopReason(stopReason);
 		xmlBuilder.requirementType(getType());
 		
 		for (AbstractTestRequirement testRequirement : testRequirements) {
@@ -205,6 +205,8 @@ public class HierarchicalXmlBuilder extends XmlBuilder {
 							"heuristic")));
 		}
 		faultClassification.setTimeSpent(timeSpent);
+		faultClassification.setTestsUsed(testsUsed);
+		faultClassification.setStopReason(stopReason);
 		faultClassification.setRequirementType(requirementType);
 		faultClassification.setPackages(packageMap.values());
 		faultClassification.setProject(project);
@@ -0,0 +1,93 @@
+package br.usp.each.saeg.jaguar.core.runner;
+
+import org.junit.runner.Description;
+import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import br.usp.each.saeg.jaguar.core.Jaguar;
+import br.usp.each.saeg.jaguar.core.heuristic.Heuristic;
+import br.usp.each.saeg.jaguar.core.heuristic.RankConvergence;
+
+/**
+ * Stops the tests when the top of the rank stops changing. Every few tests
+ * the top of the rank covered so far is given to a {@link RankConvergence},
+ * and once it has converged the notifier is asked to stop before the next
+ * test starts.
+ * <p>
+ * A failed test left out would change the cef of the rank, so the
+ * checkpoints only start once every test that may fail has run, see
+ * {@link #start()}, and then after the first failure, as without one every
+ * suspiciousness is the same. Must be added after the
+ * {@link JaguarRunListener}, so each test is collected before the rank is
+ * calculated.
+ */
+public class ConvergenceListener extends RunListener {
+
+	private static Logger logger = LoggerFactory.getLogger("JaguarLogger");
+
+	private final Jaguar jaguar;
+	private final Heuristic heuristic;
+	private final int top;
+	private final int every;
+	private final RankConvergence convergence;
+	private final RunNotifier notifier;
+
+	private int nFinished = 0;
+	private boolean started = false;
+
+	/**
+	 * @param top
+	 *            the number of requirements compared at each checkpoint
+	 * @param every
+	 *            the number of tests between checkpoints
+	 * @param convergence
+	 *            tells when the rank has converged
+	 * @param notifier
+	 *            the notifier running the tests
+	 */
+	public ConvergenceListener(Jaguar jaguar, Heuristic heuristic, int top, int every, RankConvergence convergence,
+			RunNotifier notifier) {
+		this.jaguar = jaguar;
+		this.heuristic = heuristic;
+		this.top = top;
+		this.every = Math.max(1, every);
+		this.convergence = convergence;
+		this.notifier = notifier;
+	}
+
+	/**
+	 * Start the checkpoints, once the tests left only passed.
+	 */
+	public void start() {
+		started = true;
+	}
+
+	@Override
+	public void testFinished(Description description) {
+		if (!started) {
+			return;
+		}
+		nFinished++;
+		if (nFinished % every != 0 || jaguar.getnTestsFailed() == 0 || convergence.hasConverged()) {
+			return;
+		}
+
+		if (convergence.checkpoint(jaguar.rank(heuristic, top))) {
+			logger.info("Rank converged after {} tests, stopping", jaguar.getnTests());
+			notifier.pleaseStop();
+		} else {
+			logger.debug("Checkpoint {} after {} tests: overlap = {}, kendall tau = {}", convergence.getnCheckpoints(),
+					jaguar.getnTests(), convergence.getOverlap(), convergence.getKendallTau());
+		}
+	}
+
+	/**
+	 * @return if the tests were stopped
+	 */
+	public boolean hasStopped() {
+		return convergence.hasConverged();
+	}
+
+}
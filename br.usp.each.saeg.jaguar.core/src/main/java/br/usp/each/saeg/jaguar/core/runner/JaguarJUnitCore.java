@@ -72,6 +72,7 @@ public class JaguarJUnitCore {
 		}
 
 		client.close();
+		jaguar.finish();
 		jaguar.generateFlatXML(heuristic, FileUtils.findClassDir(this.getClass()));
 
 		return result;
@@ -7,8 +7,10 @@ import org.junit.runner.notification.RunListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import br.usp.each.saeg.jaguar.core.JaCoCoClient;
+import br.usp.each.saeg.jaguar.core.CoverageClient;
 import br.usp.each.saeg.jaguar.core.Jaguar;
+import br.usp.each.saeg.jaguar.core.offline.CoverageRecorder;
+import br.usp.each.saeg.jaguar.core.offline.TestCoverageCache;
 
 import java.io.IOException;
 
@@ -17,13 +19,40 @@ public class JaguarRunListener extends RunListener {
 	private static Logger logger = LoggerFactory.getLogger("JaguarLogger");
 	private final Jaguar jaguar;
 
-	private final JaCoCoClient client;
+	private final CoverageClient client;
+
+	private final CoverageRecorder recorder;
+
+	private final TestCoverageCache cache;
 
 	private boolean currentTestFailed;
 
-	public JaguarRunListener(Jaguar jaguar, JaCoCoClient client) {
+	public JaguarRunListener(Jaguar jaguar, CoverageClient client) {
+		this(jaguar, client, null);
+	}
+
+	/**
+	 * @param recorder
+	 *            if not null, the coverage of each test is recorded instead of
+	 *            collected
+	 */
+	public JaguarRunListener(Jaguar jaguar, CoverageClient client, CoverageRecorder recorder) {
+		this(jaguar, client, recorder, null);
+	}
+
+	/**
+	 * @param recorder
+	 *            if not null, the coverage of each test is recorded instead of
+	 *            collected
+	 * @param cache
+	 *            if not null, the coverage of each test is also kept in the
+	 *            cache for the next run
+	 */
+	public JaguarRunListener(Jaguar jaguar, CoverageClient client, CoverageRecorder recorder, TestCoverageCache cache) {
 		this.jaguar = jaguar;
 		this.client = client;
+		this.recorder = recorder;
+		this.cache = cache;
 	}
 
 	@Override
@@ -44,12 +73,26 @@ public class JaguarRunListener extends RunListener {
 
  		try {
  			long startTime = System.currentTimeMillis();
- 			AbstractExecutionDataStore dataStore = client.read();
+ 			final AbstractExecutionDataStore dataStore = client.read();
  			logger.debug("Time to receive data: {}", System.currentTimeMillis() - startTime);
  			
  			startTime = System.currentTimeMillis();
-			jaguar.collect(dataStore, currentTestFailed);
-			logger.debug("Time to collect data: {}", System.currentTimeMillis() - startTime);
+			if (recorder != null) {
+				recorder.record(description.getDisplayName(), currentTestFailed, dataStore);
+				client.release(dataStore);
+				logger.debug("Time to record data: {}", System.currentTimeMillis() - startTime);
+			} else {
+				if (cache != null) {
+					cache.put(description.getDisplayName(), description.getClassName(), currentTestFailed, dataStore);
+				}
+				jaguar.collectFootprint(description.getClassName(), dataStore, currentTestFailed);
+				jaguar.submit(dataStore, currentTestFailed, () -> client.release(dataStore));
+				logger.debug("Time to collect data: {}", System.currentTimeMillis() - startTime);
+			}
+		}
+		catch (InterruptedException e) {
+			logger.error("Interrupted while waiting to collect coverage information");
+			Thread.currentThread().interrupt();
 		}
 		catch (IOException e) {
 			logger.error("Exception during collecting coverage information :" + e.toString());
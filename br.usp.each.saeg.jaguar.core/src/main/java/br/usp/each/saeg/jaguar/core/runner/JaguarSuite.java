@@ -94,6 +94,7 @@ public class JaguarSuite extends Suite {
 		super.run(notifier);
 
 		tearDown();
+		jaguar.finish();
 
 		jaguar.generateFlatXML(heuristic, new File(System.getProperty("user.dir")));
 	}
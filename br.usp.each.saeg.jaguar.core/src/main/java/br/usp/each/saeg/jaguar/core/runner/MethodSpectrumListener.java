@@ -0,0 +1,58 @@
+package br.usp.each.saeg.jaguar.core.runner;
+
+import java.io.IOException;
+
+import org.jacoco.core.data.AbstractExecutionDataStore;
+import org.junit.runner.Description;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import br.usp.each.saeg.jaguar.core.CoverageClient;
+import br.usp.each.saeg.jaguar.core.Jaguar;
+
+/**
+ * Collects the coverage of each test by method, the coarse pass of a
+ * coarse-to-fine run. See {@link Jaguar#collectMethods}.
+ */
+public class MethodSpectrumListener extends RunListener {
+
+	private static Logger logger = LoggerFactory.getLogger("JaguarLogger");
+
+	private final Jaguar jaguar;
+	private final CoverageClient client;
+
+	private boolean currentTestFailed;
+
+	public MethodSpectrumListener(Jaguar jaguar, CoverageClient client) {
+		this.jaguar = jaguar;
+		this.client = client;
+	}
+
+	@Override
+	public void testStarted(Description description) {
+		currentTestFailed = false;
+		jaguar.increaseNTests();
+	}
+
+	@Override
+	public void testFailure(Failure failure) {
+		currentTestFailed = true;
+		jaguar.increaseNTestsFailed();
+	}
+
+	@Override
+	public void testFinished(Description description) {
+		try {
+			final AbstractExecutionDataStore dataStore = client.read();
+			jaguar.collectMethods(description.getClassName(), dataStore, currentTestFailed);
+			client.release(dataStore);
+		} catch (IOException e) {
+			logger.error("Exception during collecting coverage information :" + e.toString());
+			e.printStackTrace(System.err);
+			System.exit(1);
+		}
+	}
+
+}
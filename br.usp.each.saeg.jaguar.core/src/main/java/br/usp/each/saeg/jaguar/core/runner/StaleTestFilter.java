@@ -0,0 +1,71 @@
+package br.usp.each.saeg.jaguar.core.runner;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.junit.runner.Description;
+import org.junit.runner.manipulation.Filter;
+
+import br.usp.each.saeg.jaguar.core.offline.TestCoverageCache;
+
+/**
+ * Runs only the tests that can not reuse their cached coverage, see
+ * {@link TestCoverageCache#isFresh(String)}, optionally only some of them.
+ */
+public class StaleTestFilter extends Filter {
+
+	private final TestCoverageCache cache;
+	private final Predicate<String> selected;
+	private final Set<String> stale = new HashSet<String>();
+
+	public StaleTestFilter(TestCoverageCache cache) {
+		this(cache, testId -> true);
+	}
+
+	/**
+	 * @param selected
+	 *            tells which of the stale tests run, by the test name given
+	 *            by JUnit
+	 */
+	public StaleTestFilter(TestCoverageCache cache, Predicate<String> selected) {
+		this.cache = cache;
+		this.selected = selected;
+	}
+
+	@Override
+	public boolean shouldRun(Description description) {
+		if (description.isTest()) {
+			if (cache.isFresh(description.getDisplayName()) || !selected.test(description.getDisplayName())) {
+				return false;
+			}
+			stale.add(description.getDisplayName());
+			return true;
+		}
+		boolean shouldRun = false;
+		for (Description child : description.getChildren()) {
+			shouldRun |= shouldRun(child);
+		}
+		return shouldRun;
+	}
+
+	@Override
+	public String describe() {
+		return "tests without fresh cached coverage";
+	}
+
+	/**
+	 * @return the number of tests that will run
+	 */
+	public int getnStale() {
+		return stale.size();
+	}
+
+	/**
+	 * @return the names of the tests that will run
+	 */
+	public Set<String> getStaleTests() {
+		return stale;
+	}
+
+}
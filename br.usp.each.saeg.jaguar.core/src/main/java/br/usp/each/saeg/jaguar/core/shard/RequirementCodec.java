@@ -0,0 +1,120 @@
+package br.usp.each.saeg.jaguar.core.shard;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Comparator;
+
+import br.usp.each.saeg.jaguar.core.model.core.requirement.AbstractTestRequirement;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.DuaTestRequirement;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.LineTestRequirement;
+
+/**
+ * Binary encoding of a test requirement: its identity, the location of its
+ * method and its cef and cep.
+ */
+public final class RequirementCodec {
+
+	private static final byte LINE = 0x01;
+	private static final byte DUA = 0x02;
+
+	/**
+	 * Orders the requirements by identity: type, class name and then line
+	 * number or DUA. Two requirements are equal in this order when they are
+	 * equal.
+	 */
+	public static final Comparator<AbstractTestRequirement> IDENTITY_ORDER = new Comparator<AbstractTestRequirement>() {
+		@Override
+		public int compare(AbstractTestRequirement o1, AbstractTestRequirement o2) {
+			int result = o1.getType().compareTo(o2.getType());
+			if (result == 0) {
+				result = o1.getClassName().compareTo(o2.getClassName());
+			}
+			if (result != 0) {
+				return result;
+			}
+			if (o1 instanceof LineTestRequirement) {
+				return ((LineTestRequirement) o1).getLineNumber().compareTo(((LineTestRequirement) o2).getLineNumber());
+			}
+			DuaTestRequirement d1 = (DuaTestRequirement) o1;
+			DuaTestRequirement d2 = (DuaTestRequirement) o2;
+			result = Integer.compare(d1.getIndex(), d2.getIndex());
+			if (result == 0) {
+				result = Integer.compare(d1.getDef(), d2.getDef());
+			}
+			if (result == 0) {
+				result = Integer.compare(d1.getUse(), d2.getUse());
+			}
+			if (result == 0) {
+				result = Integer.compare(d1.getTarget(), d2.getTarget());
+			}
+			if (result == 0) {
+				result = d1.getVar().compareTo(d2.getVar());
+			}
+			return result;
+		}
+	};
+
+	private RequirementCodec() {
+	}
+
+	public static void write(DataOutput out, AbstractTestRequirement requirement) throws IOException {
+		if (requirement instanceof DuaTestRequirement) {
+			DuaTestRequirement dua = (DuaTestRequirement) requirement;
+			out.writeByte(DUA);
+			out.writeUTF(dua.getClassName());
+			out.writeInt(dua.getIndex());
+			out.writeInt(dua.getDef());
+			out.writeInt(dua.getUse());
+			out.writeInt(dua.getTarget());
+			out.writeUTF(dua.getVar());
+		} else {
+			LineTestRequirement line = (LineTestRequirement) requirement;
+			out.writeByte(LINE);
+			out.writeUTF(line.getClassName());
+			out.writeInt(line.getLineNumber());
+		}
+		writeInteger(out, requirement.getClassFirstLine());
+		writeInteger(out, requirement.getMethodId());
+		writeInteger(out, requirement.getMethodLine());
+		out.writeBoolean(requirement.getMethodSignature() != null);
+		if (requirement.getMethodSignature() != null) {
+			out.writeUTF(requirement.getMethodSignature());
+		}
+		out.writeInt(requirement.getCef());
+		out.writeInt(requirement.getCep());
+	}
+
+	public static AbstractTestRequirement read(DataInput in) throws IOException {
+		AbstractTestRequirement requirement;
+		byte type = in.readByte();
+		if (type == DUA) {
+			requirement = new DuaTestRequirement(in.readUTF(), in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readUTF());
+		} else if (type == LINE) {
+			requirement = new LineTestRequirement(in.readUTF(), in.readInt());
+		} else {
+			throw new IOException("Unknown requirement type " + type);
+		}
+		requirement.setClassFirstLine(readInteger(in));
+		requirement.setMethodId(readInteger(in));
+		requirement.setMethodLine(readInteger(in));
+		if (in.readBoolean()) {
+			requirement.setMethodSignature(in.readUTF());
+		}
+		requirement.increaseFailed(in.readInt());
+		requirement.increasePassed(in.readInt());
+		return requirement;
+	}
+
+	private static void writeInteger(DataOutput out, Integer value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeInt(value);
+		}
+	}
+
+	private static Integer readInteger(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readInt() : null;
+	}
+
+}
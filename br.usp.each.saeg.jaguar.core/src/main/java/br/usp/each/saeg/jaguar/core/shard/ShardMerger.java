@@ -0,0 +1,137 @@
+package br.usp.each.saeg.jaguar.core.shard;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import br.usp.each.saeg.jaguar.core.model.core.requirement.AbstractTestRequirement;
+
+/**
+ * Merges spectrum shards with a k-way merge. Each shard is sorted by
+ * {@link RequirementCodec#IDENTITY_ORDER}, so the requirements are read in
+ * that order from a heap holding the head of each shard, and the cef and cep
+ * of the equal ones are added. Only one requirement per shard is kept in
+ * memory.
+ * <p>
+ * The cef and cep of a requirement are sums over the tests, so merging the
+ * shards of disjoint sets of tests gives the spectrum of all of them.
+ */
+public class ShardMerger implements Closeable {
+
+	private final List<SpectrumShardReader> readers = new ArrayList<SpectrumShardReader>();
+	private final PriorityQueue<Head> heads;
+	private int nTests = 0;
+	private int nTestsFailed = 0;
+
+	/**
+	 * @param shards
+	 *            the shard files to merge
+	 */
+	public ShardMerger(List<File> shards) throws IOException {
+		heads = new PriorityQueue<Head>(Math.max(1, shards.size()));
+		try {
+			for (File shard : shards) {
+				final SpectrumShardReader reader = new SpectrumShardReader(shard);
+				readers.add(reader);
+				nTests += reader.getnTests();
+				nTestsFailed += reader.getnTestsFailed();
+				advance(reader);
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the next merged requirement, or null when every shard has been
+	 *         read
+	 */
+	public AbstractTestRequirement next() throws IOException {
+		final Head first = heads.poll();
+		if (first == null) {
+			return null;
+		}
+		final AbstractTestRequirement merged = first.requirement;
+		advance(first.reader);
+		while (!heads.isEmpty() && RequirementCodec.IDENTITY_ORDER.compare(heads.peek().requirement, merged) == 0) {
+			final Head equal = heads.poll();
+			merged.increaseFailed(equal.requirement.getCef());
+			merged.increasePassed(equal.requirement.getCep());
+			advance(equal.reader);
+		}
+		return merged;
+	}
+
+	/**
+	 * Merge the rest of the shards into a new shard.
+	 *
+	 * @param file
+	 *            the merged shard file
+	 */
+	public void writeTo(File file) throws IOException {
+		try (SpectrumShardWriter writer = new SpectrumShardWriter(file, nTests, nTestsFailed)) {
+			AbstractTestRequirement requirement;
+			while ((requirement = next()) != null) {
+				writer.write(requirement);
+			}
+		}
+	}
+
+	private void advance(SpectrumShardReader reader) throws IOException {
+		final AbstractTestRequirement requirement = reader.next();
+		if (requirement != null) {
+			heads.add(new Head(requirement, reader));
+		}
+	}
+
+	/**
+	 * @return the number of tests of all shards
+	 */
+	public int getnTests() {
+		return nTests;
+	}
+
+	/**
+	 * @return the number of failed tests of all shards
+	 */
+	public int getnTestsFailed() {
+		return nTestsFailed;
+	}
+
+	@Override
+	public void close() throws IOException {
+		IOException error = null;
+		for (SpectrumShardReader reader : readers) {
+			try {
+				reader.close();
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	private static class Head implements Comparable<Head> {
+
+		final AbstractTestRequirement requirement;
+		final SpectrumShardReader reader;
+
+		Head(AbstractTestRequirement requirement, SpectrumShardReader reader) {
+			this.requirement = requirement;
+			this.reader = reader;
+		}
+
+		@Override
+		public int compareTo(Head o) {
+			return RequirementCodec.IDENTITY_ORDER.compare(requirement, o.requirement);
+		}
+
+	}
+
+}
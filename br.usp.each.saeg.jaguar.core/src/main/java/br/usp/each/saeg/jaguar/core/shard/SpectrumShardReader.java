@@ -0,0 +1,71 @@
+package br.usp.each.saeg.jaguar.core.shard;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import br.usp.each.saeg.jaguar.core.model.core.requirement.AbstractTestRequirement;
+
+/**
+ * Reads the requirements of a shard written by {@link SpectrumShardWriter},
+ * one at a time.
+ */
+public class SpectrumShardReader implements Closeable {
+
+	private final File file;
+	private final DataInputStream in;
+	private final int nTests;
+	private final int nTestsFailed;
+	private boolean ended;
+
+	public SpectrumShardReader(File file) throws IOException {
+		this.file = file;
+		in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+		try {
+			if (in.readInt() != SpectrumShardWriter.MAGIC_NUMBER) {
+				throw new IOException(file + " is not a spectrum shard");
+			}
+			final char version = in.readChar();
+			if (version != SpectrumShardWriter.FORMAT_VERSION) {
+				throw new IOException(file + " has unknown shard version " + (int) version);
+			}
+			nTests = in.readInt();
+			nTestsFailed = in.readInt();
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the next requirement of the shard, or null at its end
+	 */
+	public AbstractTestRequirement next() throws IOException {
+		if (ended || !in.readBoolean()) {
+			ended = true;
+			return null;
+		}
+		return RequirementCodec.read(in);
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public int getnTests() {
+		return nTests;
+	}
+
+	public int getnTestsFailed() {
+		return nTestsFailed;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+}
@@ -0,0 +1,86 @@
+package br.usp.each.saeg.jaguar.core.shard;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import br.usp.each.saeg.jaguar.core.model.core.requirement.AbstractTestRequirement;
+
+/**
+ * Writes a spectrum shard: the spectrum of the part of the tests run by one
+ * node, to be merged with the shards of the other nodes by
+ * {@link ShardMerger}.
+ * <p>
+ * A shard starts with an int magic number, a char format version, the number
+ * of tests and the number of failed tests. Then each requirement, encoded by
+ * {@link RequirementCodec} and preceded by a true boolean, in
+ * {@link RequirementCodec#IDENTITY_ORDER}. A false boolean ends the shard.
+ */
+public class SpectrumShardWriter implements Closeable {
+
+	static final int MAGIC_NUMBER = 0x4A475348;
+	static final char FORMAT_VERSION = 0x0001;
+
+	private final DataOutputStream out;
+	private AbstractTestRequirement last;
+
+	/**
+	 * @param file
+	 *            the shard file, replaced if it exists
+	 * @param nTests
+	 *            the number of tests of the shard
+	 * @param nTestsFailed
+	 *            the number of failed tests among them
+	 */
+	public SpectrumShardWriter(File file, int nTests, int nTestsFailed) throws IOException {
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+		out.writeInt(MAGIC_NUMBER);
+		out.writeChar(FORMAT_VERSION);
+		out.writeInt(nTests);
+		out.writeInt(nTestsFailed);
+	}
+
+	/**
+	 * @param requirement
+	 *            the next requirement, after the last one in
+	 *            {@link RequirementCodec#IDENTITY_ORDER}
+	 */
+	public void write(AbstractTestRequirement requirement) throws IOException {
+		if (last != null && RequirementCodec.IDENTITY_ORDER.compare(last, requirement) >= 0) {
+			throw new IllegalArgumentException("Requirements out of order: " + last + " before " + requirement);
+		}
+		out.writeBoolean(true);
+		RequirementCodec.write(out, requirement);
+		last = requirement;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			out.writeBoolean(false);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Write a whole spectrum as a shard, sorting its requirements.
+	 */
+	public static void write(File file, int nTests, int nTestsFailed, Collection<AbstractTestRequirement> testRequirements)
+			throws IOException {
+		final List<AbstractTestRequirement> sorted = new ArrayList<AbstractTestRequirement>(testRequirements);
+		sorted.sort(RequirementCodec.IDENTITY_ORDER);
+		try (SpectrumShardWriter writer = new SpectrumShardWriter(file, nTests, nTestsFailed)) {
+			for (AbstractTestRequirement requirement : sorted) {
+				writer.write(requirement);
+			}
+		}
+	}
+
+}
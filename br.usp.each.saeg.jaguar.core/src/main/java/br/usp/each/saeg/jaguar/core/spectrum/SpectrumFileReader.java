@@ -0,0 +1,160 @@
+package br.usp.each.saeg.jaguar.core.spectrum;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import br.usp.each.saeg.jaguar.core.model.core.requirement.AbstractTestRequirement;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.DuaTestRequirement;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.LineTestRequirement;
+
+/**
+ * Reads a spectrum saved by {@link SpectrumFileWriter}. The file is memory
+ * mapped and decoded straight from the map, unless it is deflated.
+ */
+public class SpectrumFileReader {
+
+	private final File file;
+	private final int nTests;
+	private final int nTestsFailed;
+	private final Long timeSpent;
+	private final List<AbstractTestRequirement> testRequirements;
+
+	public SpectrumFileReader(File file) throws IOException {
+		this.file = file;
+		ByteBuffer in;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		try {
+			if (in.getInt() != SpectrumFileWriter.MAGIC_NUMBER) {
+				throw new IOException(file + " is not a spectrum file");
+			}
+			final char version = in.getChar();
+			if (version != SpectrumFileWriter.FORMAT_VERSION) {
+				throw new IOException(file + " has unknown spectrum version " + (int) version);
+			}
+			if ((in.get() & SpectrumFileWriter.DEFLATED) != 0) {
+				in = inflate(in);
+			}
+
+			nTests = Varints.readUnsignedInt(in);
+			nTestsFailed = Varints.readUnsignedInt(in);
+			final long time = Varints.readSigned(in);
+			timeSpent = time >= 0 ? time : null;
+
+			final String[] strings = new String[Varints.readUnsignedInt(in)];
+			for (int i = 0; i < strings.length; i++) {
+				strings[i] = Varints.readString(in);
+			}
+
+			final int nMethods = Varints.readUnsignedInt(in);
+			final String[] className = new String[nMethods];
+			final Integer[] classFirstLine = new Integer[nMethods];
+			final Integer[] methodId = new Integer[nMethods];
+			final Integer[] methodLine = new Integer[nMethods];
+			final String[] methodSignature = new String[nMethods];
+			for (int i = 0; i < nMethods; i++) {
+				className[i] = strings[Varints.readUnsignedInt(in)];
+				final int flags = in.get();
+				if ((flags & SpectrumFileWriter.HAS_CLASS_FIRST_LINE) != 0) {
+					classFirstLine[i] = Varints.readSignedInt(in);
+				}
+				if ((flags & SpectrumFileWriter.HAS_METHOD_ID) != 0) {
+					methodId[i] = Varints.readSignedInt(in);
+				}
+				if ((flags & SpectrumFileWriter.HAS_METHOD_LINE) != 0) {
+					methodLine[i] = Varints.readSignedInt(in);
+				}
+				if ((flags & SpectrumFileWriter.HAS_METHOD_SIGNATURE) != 0) {
+					methodSignature[i] = strings[Varints.readUnsignedInt(in)];
+				}
+			}
+
+			final int size = Varints.readUnsignedInt(in);
+			testRequirements = new ArrayList<AbstractTestRequirement>(size);
+			for (int i = 0; i < size; i++) {
+				final byte type = in.get();
+				final int method = Varints.readUnsignedInt(in);
+				final AbstractTestRequirement requirement;
+				if (type == SpectrumFileWriter.DUA) {
+					requirement = new DuaTestRequirement(className[method], Varints.readSignedInt(in), Varints.readSignedInt(in),
+							Varints.readSignedInt(in), Varints.readSignedInt(in), strings[Varints.readUnsignedInt(in)]);
+				} else if (type == SpectrumFileWriter.LINE) {
+					requirement = new LineTestRequirement(className[method], Varints.readSignedInt(in));
+				} else {
+					throw new IOException(file + " has unknown requirement type " + type);
+				}
+				requirement.setClassFirstLine(classFirstLine[method]);
+				requirement.setMethodId(methodId[method]);
+				requirement.setMethodLine(methodLine[method]);
+				requirement.setMethodSignature(methodSignature[method]);
+				requirement.increaseFailed(Varints.readUnsignedInt(in));
+				requirement.increasePassed(Varints.readUnsignedInt(in));
+				testRequirements.add(requirement);
+			}
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new IOException(file + " is truncated or corrupted", e);
+		}
+	}
+
+	private ByteBuffer inflate(ByteBuffer in) throws IOException {
+		final byte[] compressed = new byte[in.remaining()];
+		in.get(compressed);
+		final Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(compressed);
+			final ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 4);
+			final byte[] buffer = new byte[64 * 1024];
+			while (!inflater.finished()) {
+				final int n = inflater.inflate(buffer);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new IOException(file + " is truncated");
+				}
+				out.write(buffer, 0, n);
+			}
+			return ByteBuffer.wrap(out.toByteArray());
+		} catch (DataFormatException e) {
+			throw new IOException(file + " is corrupted", e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public int getnTests() {
+		return nTests;
+	}
+
+	public int getnTestsFailed() {
+		return nTestsFailed;
+	}
+
+	/**
+	 * @return the time spent running the tests, or null if it was not known
+	 */
+	public Long getTimeSpent() {
+		return timeSpent;
+	}
+
+	/**
+	 * @return the requirements with their cef and cep, in the order they
+	 *         were saved
+	 */
+	public List<AbstractTestRequirement> getTestRequirements() {
+		return testRequirements;
+	}
+
+}
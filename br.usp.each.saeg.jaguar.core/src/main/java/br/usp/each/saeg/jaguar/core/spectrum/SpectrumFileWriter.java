@@ -0,0 +1,184 @@
+package br.usp.each.saeg.jaguar.core.spectrum;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+
+import br.usp.each.saeg.jaguar.core.model.core.requirement.AbstractTestRequirement;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.DuaTestRequirement;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.LineTestRequirement;
+
+/**
+ * Saves a whole spectrum, so it can be ranked again by
+ * {@link SpectrumFileReader} without running the tests.
+ * <p>
+ * The file starts with a magic number, a version and a flags byte telling
+ * if the rest of it is deflated. The rest is made of variable length
+ * integers, see {@link Varints}: the number of tests, failed tests and the
+ * time spent, a dictionary of the strings (class names, method signatures
+ * and variables), a table of the distinct methods and then the requirements,
+ * each one pointing to its method, with its line or DUA and its cef and cep.
+ * The requirements keep their order, so the ranks of the file have the same
+ * ties of the ranks of the run.
+ */
+public class SpectrumFileWriter {
+
+	static final int MAGIC_NUMBER = 0x4A475350;
+	static final char FORMAT_VERSION = 1;
+	static final int DEFLATED = 0x01;
+
+	static final byte LINE = 0x01;
+	static final byte DUA = 0x02;
+
+	static final int HAS_CLASS_FIRST_LINE = 0x01;
+	static final int HAS_METHOD_ID = 0x02;
+	static final int HAS_METHOD_LINE = 0x04;
+	static final int HAS_METHOD_SIGNATURE = 0x08;
+
+	private static final String FOLDER_NAME = ".jaguar";
+	private static final String EXTENSION = ".spectrum";
+
+	private final Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+	private final Map<List<Object>, Integer> methods = new HashMap<List<Object>, Integer>();
+
+	private SpectrumFileWriter() {
+	}
+
+	/**
+	 * @return the spectrum file saved with the output xml of the given name
+	 */
+	public static File locate(File projectDir, String fileName) {
+		return new File(new File(projectDir, FOLDER_NAME), fileName + EXTENSION);
+	}
+
+	/**
+	 * Write a spectrum.
+	 *
+	 * @param file
+	 *            the spectrum file
+	 * @param nTests
+	 *            the number of tests
+	 * @param nTestsFailed
+	 *            the number of failed tests
+	 * @param timeSpent
+	 *            the time spent running the tests, may be null
+	 * @param testRequirements
+	 *            the covered requirements with their cef and cep
+	 * @param deflate
+	 *            compress the file, which then can not be read straight from
+	 *            its memory map
+	 */
+	public static void write(File file, int nTests, int nTestsFailed, Long timeSpent,
+			Collection<AbstractTestRequirement> testRequirements, boolean deflate) throws IOException {
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+		try (OutputStream stream = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024)) {
+			final DataOutputStream header = new DataOutputStream(stream);
+			header.writeInt(MAGIC_NUMBER);
+			header.writeChar(FORMAT_VERSION);
+			header.writeByte(deflate ? DEFLATED : 0);
+
+			if (deflate) {
+				final DeflaterOutputStream deflater = new DeflaterOutputStream(stream, true);
+				final DataOutputStream out = new DataOutputStream(deflater);
+				new SpectrumFileWriter().writeBody(out, nTests, nTestsFailed, timeSpent, testRequirements);
+				out.flush();
+				deflater.finish();
+			} else {
+				new SpectrumFileWriter().writeBody(header, nTests, nTestsFailed, timeSpent, testRequirements);
+			}
+		}
+	}
+
+	private void writeBody(DataOutputStream out, int nTests, int nTestsFailed, Long timeSpent,
+			Collection<AbstractTestRequirement> testRequirements) throws IOException {
+		Varints.writeUnsigned(out, nTests);
+		Varints.writeUnsigned(out, nTestsFailed);
+		Varints.writeSigned(out, timeSpent != null ? timeSpent : -1);
+
+		final int[] methodOf = new int[testRequirements.size()];
+		final List<List<Object>> methodTable = new ArrayList<List<Object>>();
+		int i = 0;
+		for (AbstractTestRequirement requirement : testRequirements) {
+			if (requirement instanceof DuaTestRequirement) {
+				stringId(((DuaTestRequirement) requirement).getVar());
+			}
+			final List<Object> method = Arrays.<Object> asList(stringId(requirement.getClassName()),
+					requirement.getClassFirstLine(), requirement.getMethodId(), requirement.getMethodLine(),
+					requirement.getMethodSignature() != null ? stringId(requirement.getMethodSignature()) : null);
+			Integer id = methods.get(method);
+			if (id == null) {
+				id = methodTable.size();
+				methods.put(method, id);
+				methodTable.add(method);
+			}
+			methodOf[i++] = id;
+		}
+
+		Varints.writeUnsigned(out, strings.size());
+		for (String string : strings.keySet()) {
+			Varints.writeString(out, string);
+		}
+
+		Varints.writeUnsigned(out, methodTable.size());
+		for (List<Object> method : methodTable) {
+			Varints.writeUnsigned(out, (Integer) method.get(0));
+			final int flags = (method.get(1) != null ? HAS_CLASS_FIRST_LINE : 0)
+					| (method.get(2) != null ? HAS_METHOD_ID : 0)
+					| (method.get(3) != null ? HAS_METHOD_LINE : 0)
+					| (method.get(4) != null ? HAS_METHOD_SIGNATURE : 0);
+			out.writeByte(flags);
+			for (int field = 1; field <= 3; field++) {
+				if (method.get(field) != null) {
+					Varints.writeSigned(out, (Integer) method.get(field));
+				}
+			}
+			if (method.get(4) != null) {
+				Varints.writeUnsigned(out, (Integer) method.get(4));
+			}
+		}
+
+		Varints.writeUnsigned(out, testRequirements.size());
+		i = 0;
+		for (AbstractTestRequirement requirement : testRequirements) {
+			if (requirement instanceof DuaTestRequirement) {
+				final DuaTestRequirement dua = (DuaTestRequirement) requirement;
+				out.writeByte(DUA);
+				Varints.writeUnsigned(out, methodOf[i++]);
+				Varints.writeSigned(out, dua.getIndex());
+				Varints.writeSigned(out, dua.getDef());
+				Varints.writeSigned(out, dua.getUse());
+				Varints.writeSigned(out, dua.getTarget());
+				Varints.writeUnsigned(out, strings.get(dua.getVar()));
+			} else {
+				out.writeByte(LINE);
+				Varints.writeUnsigned(out, methodOf[i++]);
+				Varints.writeSigned(out, ((LineTestRequirement) requirement).getLineNumber());
+			}
+			Varints.writeUnsigned(out, requirement.getCef());
+			Varints.writeUnsigned(out, requirement.getCep());
+		}
+	}
+
+	private int stringId(String string) {
+		Integer id = strings.get(string);
+		if (id == null) {
+			id = strings.size();
+			strings.put(string, id);
+		}
+		return id;
+	}
+
+}
@@ -0,0 +1,66 @@
+package br.usp.each.saeg.jaguar.core.spectrum;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Variable length integers, 7 bits per byte with the high bit telling that
+ * more bytes follow. Signed values are zigzag encoded first, so small
+ * negative values are also short.
+ */
+final class Varints {
+
+	private Varints() {
+	}
+
+	static void writeUnsigned(DataOutput out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	static void writeSigned(DataOutput out, long value) throws IOException {
+		writeUnsigned(out, (value << 1) ^ (value >> 63));
+	}
+
+	static void writeString(DataOutput out, String value) throws IOException {
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeUnsigned(out, bytes.length);
+		out.write(bytes);
+	}
+
+	static long readUnsigned(ByteBuffer in) {
+		long value = 0;
+		for (int shift = 0;; shift += 7) {
+			final byte b = in.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+	}
+
+	static int readUnsignedInt(ByteBuffer in) {
+		return (int) readUnsigned(in);
+	}
+
+	static long readSigned(ByteBuffer in) {
+		final long value = readUnsigned(in);
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	static int readSignedInt(ByteBuffer in) {
+		return (int) readSigned(in);
+	}
+
+	static String readString(ByteBuffer in) {
+		final byte[] bytes = new byte[readUnsignedInt(in)];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
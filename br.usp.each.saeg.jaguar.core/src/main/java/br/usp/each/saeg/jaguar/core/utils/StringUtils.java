@@ -1,11 +1,34 @@
 package br.usp.each.saeg.jaguar.core.utils;
 
+import org.eclipse.jdt.core.Signature;
 
 /**
  * @author Henrique Ribeiro
  * 
  */
 public class StringUtils {
+
+	/**
+	 * Create the method signature shown in the output, without the return
+	 * value and with the class name instead of init().
+	 * 
+	 * @param name
+	 *            the method name
+	 * @param desc
+	 *            the method descriptor
+	 * @param className
+	 *            the class name, including package
+	 * @return the method signature
+	 */
+	public static String getMethodSignature(String name, String desc, String className) {
+		String methodName = Signature.toString(desc, name, null, false, true);
+		methodName = methodName.substring(methodName.indexOf(' ') + 1);
+		if (methodName.equals("<init>()")) {
+			String[] classNameSplited = className.split("/");
+			methodName = classNameSplited[classNameSplited.length - 1] + "()";
+		}
+		return methodName;
+	}
 	
 	//TODO javadoc e testes
 	public static String getParametros(String desc) {
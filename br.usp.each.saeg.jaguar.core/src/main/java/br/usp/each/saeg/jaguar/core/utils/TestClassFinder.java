@@ -0,0 +1,444 @@
+package br.usp.each.saeg.jaguar.core.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the test classes of a directory by reading their class files with
+ * ASM instead of loading them. The directory is walked once, each
+ * subdirectory on its own task of the common fork/join pool, and only the
+ * header, the nesting and the method annotations of each class are read.
+ * The selected classes are the ones {@link FileUtils#findTestCaseClasses}
+ * and {@link FileUtils#findAnnotatedTestClasses} would return, in the same
+ * order, and they are loaded without being initialized.
+ * <p>
+ * The headers can be kept in an index file between runs, keyed by the path of
+ * the class file, its size and its last modification time, so only the class
+ * files that changed are read again. Superclasses outside the directory, like
+ * junit.framework.TestCase, are read from the class loader resources.
+ */
+public class TestClassFinder {
+
+	private final static Logger logger = LoggerFactory.getLogger("JaguarLogger");
+
+	static final int MAGIC_NUMBER = 0x4A475449;
+	static final char FORMAT_VERSION = 0x0001;
+
+	private static final String TEST_CASE = "junit/framework/TestCase";
+	private static final String OBJECT = "java/lang/Object";
+	private static final String TEST_ANNOTATION = "Lorg/junit/Test;";
+
+	/**
+	 * What is needed from a class file to tell if it is a test class.
+	 */
+	private static class ClassHeader {
+
+		final String path;
+		final long length;
+		final long lastModified;
+		final String name;
+		final String superName;
+		final int access;
+		final boolean nested;
+		final int nTestMethods;
+
+		ClassHeader(String path, long length, long lastModified, String name, String superName, int access,
+				boolean nested, int nTestMethods) {
+			this.path = path;
+			this.length = length;
+			this.lastModified = lastModified;
+			this.name = name;
+			this.superName = superName;
+			this.access = access;
+			this.nested = nested;
+			this.nTestMethods = nTestMethods;
+		}
+
+		/**
+		 * Top level and concrete, like the classes kept by
+		 * {@link FileUtils#convertToClasses}.
+		 */
+		boolean isCandidate() {
+			return !nested && (access & Opcodes.ACC_ABSTRACT) == 0;
+		}
+	}
+
+	private final File testDir;
+	private final File indexFile;
+	private final ClassLoader loader;
+
+	private final Map<String, ClassHeader> indexed = new HashMap<String, ClassHeader>();
+	private final ConcurrentMap<String, String> externalSuperNames = new ConcurrentHashMap<String, String>();
+	private final Map<String, Class<?>> loaded = new HashMap<String, Class<?>>();
+	private final AtomicInteger nRead = new AtomicInteger();
+	private List<ClassHeader> headers;
+	private Map<String, ClassHeader> byName;
+
+	/**
+	 * @param testDir
+	 *            the directory of the compiled test classes
+	 * @param indexFile
+	 *            the file where the headers are kept between runs, or null to
+	 *            read every class file
+	 */
+	public TestClassFinder(File testDir, File indexFile) {
+		this(testDir, indexFile, TestClassFinder.class.getClassLoader());
+	}
+
+	/**
+	 * @param testDir
+	 *            the directory of the compiled test classes
+	 * @param indexFile
+	 *            the file where the headers are kept between runs, or null to
+	 *            read every class file
+	 * @param loader
+	 *            loads the selected classes and reads the superclasses outside
+	 *            the directory
+	 */
+	public TestClassFinder(File testDir, File indexFile, ClassLoader loader) {
+		this.testDir = testDir;
+		this.indexFile = indexFile;
+		this.loader = loader;
+	}
+
+	/**
+	 * Search recursively for classes that extends junit.framework.TestCase.
+	 * For JUnit 3
+	 *
+	 * @return the classes, not initialized
+	 * @throws ClassNotFoundException
+	 */
+	public synchronized Class<?>[] findTestCaseClasses() throws ClassNotFoundException {
+		scan();
+		final List<Class<?>> testClasses = new ArrayList<Class<?>>();
+		for (ClassHeader header : headers) {
+			if (header.isCandidate() && isTestCase(header.name)) {
+				testClasses.add(load(header.name));
+			}
+		}
+		return testClasses.toArray(new Class[testClasses.size()]);
+	}
+
+	/**
+	 * Search recursively for classes with annotated Test methods. As in
+	 * {@link FileUtils#findAnnotatedTestClasses}, a class is listed once for
+	 * each of its test methods, so both give the same spectrum.
+	 *
+	 * @return the classes, not initialized
+	 * @throws ClassNotFoundException
+	 */
+	public synchronized Class<?>[] findAnnotatedTestClasses() throws ClassNotFoundException {
+		scan();
+		final List<Class<?>> testClasses = new ArrayList<Class<?>>();
+		for (ClassHeader header : headers) {
+			if (header.isCandidate() && header.nTestMethods > 0) {
+				final Class<?> clazz = load(header.name);
+				for (int i = 0; i < header.nTestMethods; i++) {
+					testClasses.add(clazz);
+				}
+			}
+		}
+		return testClasses.toArray(new Class[testClasses.size()]);
+	}
+
+	/**
+	 * @return the number of class files in the directory
+	 */
+	public synchronized int getnClassFiles() {
+		return headers == null ? 0 : headers.size();
+	}
+
+	/**
+	 * @return the number of class files read by ASM, the other ones came
+	 *         from the index
+	 */
+	public int getnRead() {
+		return nRead.get();
+	}
+
+	/**
+	 * @return the number of classes loaded so far
+	 */
+	public synchronized int getnLoaded() {
+		return loaded.size();
+	}
+
+	private void scan() {
+		if (headers != null) {
+			return;
+		}
+		loadIndex();
+		headers = new DirectoryTask(testDir).invoke();
+		byName = new HashMap<String, ClassHeader>(headers.size() * 2);
+		for (ClassHeader header : headers) {
+			byName.put(header.name, header);
+		}
+		logger.debug("Test class files = {}, read = {}", headers.size(), nRead.get());
+		saveIndex();
+	}
+
+	private boolean isTestCase(String name) {
+		while (name != null && !OBJECT.equals(name)) {
+			if (TEST_CASE.equals(name)) {
+				return true;
+			}
+			final ClassHeader header = byName.get(name);
+			name = header != null ? header.superName : externalSuperName(name);
+		}
+		return false;
+	}
+
+	/**
+	 * @return the superclass of a class outside the directory, or null if it
+	 *         can not be read
+	 */
+	private String externalSuperName(String name) {
+		String superName = externalSuperNames.get(name);
+		if (superName == null) {
+			superName = "";
+			try (InputStream in = loader.getResourceAsStream(name + ".class")) {
+				if (in != null) {
+					final String read = new ClassReader(in).getSuperName();
+					superName = read != null ? read : "";
+				}
+			} catch (IOException | RuntimeException e) {
+				logger.warn("Could not read the superclass of {}", name);
+			}
+			externalSuperNames.put(name, superName);
+		}
+		return superName.isEmpty() ? null : superName;
+	}
+
+	private Class<?> load(String name) throws ClassNotFoundException {
+		Class<?> clazz = loaded.get(name);
+		if (clazz == null) {
+			clazz = Class.forName(name.replace('/', '.'), false, loader);
+			loaded.put(name, clazz);
+		}
+		return clazz;
+	}
+
+	/**
+	 * Walks one directory, in the order of {@link File#listFiles()}, with a
+	 * forked task for each subdirectory.
+	 */
+	private class DirectoryTask extends RecursiveTask<List<ClassHeader>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final File dir;
+
+		DirectoryTask(File dir) {
+			this.dir = dir;
+		}
+
+		@Override
+		protected List<ClassHeader> compute() {
+			final File[] files = dir.listFiles();
+			if (files == null) {
+				return Collections.emptyList();
+			}
+			final Map<File, DirectoryTask> subdirs = new HashMap<File, DirectoryTask>();
+			for (File file : files) {
+				if (file.isDirectory()) {
+					final DirectoryTask task = new DirectoryTask(file);
+					task.fork();
+					subdirs.put(file, task);
+				}
+			}
+
+			final List<ClassHeader> result = new ArrayList<ClassHeader>();
+			for (File file : files) {
+				final DirectoryTask task = subdirs.get(file);
+				if (task != null) {
+					result.addAll(task.join());
+				} else if (file.getName().toLowerCase().endsWith(".class")) {
+					final ClassHeader header = header(file);
+					if (header != null) {
+						result.add(header);
+					}
+				}
+			}
+			return result;
+		}
+	}
+
+	private ClassHeader header(File file) {
+		final String path = file.getPath().substring(testDir.getPath().length() + 1);
+		final long length = file.length();
+		final long lastModified = file.lastModified();
+		final ClassHeader cached = indexed.get(path);
+		if (cached != null && cached.length == length && cached.lastModified == lastModified) {
+			return cached;
+		}
+
+		nRead.incrementAndGet();
+		try {
+			return read(path, length, lastModified, Files.readAllBytes(file.toPath()));
+		} catch (IOException | RuntimeException e) {
+			logger.warn("Error when reading file: {}", file);
+			logger.warn("Exception: {}", e.toString());
+			return null;
+		}
+	}
+
+	/**
+	 * Read the header of a class, skipping the code of its methods.
+	 */
+	private static ClassHeader read(String path, long length, long lastModified, byte[] classBytes) {
+		final HeaderVisitor visitor = new HeaderVisitor();
+		new ClassReader(classBytes).accept(visitor, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		return new ClassHeader(path, length, lastModified, visitor.name, visitor.superName, visitor.access,
+				visitor.nested, visitor.nTestMethods);
+	}
+
+	/**
+	 * A class is nested when it is named in its own InnerClasses attribute, a
+	 * member class, or has an EnclosingMethod attribute, a local or anonymous
+	 * class, the same ones with an enclosing class by reflection.
+	 */
+	private static class HeaderVisitor extends ClassVisitor {
+
+		String name;
+		String superName;
+		int access;
+		boolean nested;
+		int nTestMethods;
+
+		private final MethodVisitor testMethodCounter = new MethodVisitor(Opcodes.ASM5) {
+			@Override
+			public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+				if (visible && TEST_ANNOTATION.equals(desc)) {
+					nTestMethods++;
+				}
+				return null;
+			}
+		};
+
+		HeaderVisitor() {
+			super(Opcodes.ASM5);
+		}
+
+		@Override
+		public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+			this.name = name;
+			this.superName = superName;
+			this.access = access;
+		}
+
+		@Override
+		public void visitOuterClass(String owner, String name, String desc) {
+			nested = true;
+		}
+
+		@Override
+		public void visitInnerClass(String name, String outerName, String innerName, int access) {
+			if (name.equals(this.name)) {
+				nested = true;
+			}
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+			return testMethodCounter;
+		}
+	}
+
+	private void loadIndex() {
+		if (indexFile == null || !indexFile.isFile()) {
+			return;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), 64 * 1024))) {
+			if (in.readInt() != MAGIC_NUMBER || in.readChar() != FORMAT_VERSION
+					|| !in.readUTF().equals(testDir.getAbsolutePath())) {
+				logger.warn("Ignoring the incompatible test index {}", indexFile);
+				return;
+			}
+			while (in.readBoolean()) {
+				final String path = in.readUTF();
+				final long length = in.readLong();
+				final long lastModified = in.readLong();
+				final String name = in.readUTF();
+				final String superName = in.readUTF();
+				final int access = in.readInt();
+				final boolean nested = in.readBoolean();
+				final int nTestMethods = in.readInt();
+				indexed.put(path, new ClassHeader(path, length, lastModified, name,
+						superName.isEmpty() ? null : superName, access, nested, nTestMethods));
+			}
+		} catch (IOException e) {
+			logger.warn("Could not read the test index {}, every class file will be read", indexFile);
+			indexed.clear();
+		}
+		logger.debug("Indexed test class files = {}", indexed.size());
+	}
+
+	/**
+	 * Rewrite the index with the class files found now, dropping the deleted
+	 * ones.
+	 */
+	private void saveIndex() {
+		if (indexFile == null) {
+			return;
+		}
+		final Map<String, ClassHeader> current = new LinkedHashMap<String, ClassHeader>();
+		for (ClassHeader header : headers) {
+			current.put(header.path, header);
+		}
+		final File tmp = new File(indexFile.getPath() + ".tmp");
+		try {
+			final File parent = indexFile.getAbsoluteFile().getParentFile();
+			if (!parent.isDirectory() && !parent.mkdirs()) {
+				throw new IOException("Could not create the directory " + parent);
+			}
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024))) {
+				out.writeInt(MAGIC_NUMBER);
+				out.writeChar(FORMAT_VERSION);
+				out.writeUTF(testDir.getAbsolutePath());
+				for (ClassHeader header : current.values()) {
+					out.writeBoolean(true);
+					out.writeUTF(header.path);
+					out.writeLong(header.length);
+					out.writeLong(header.lastModified);
+					out.writeUTF(header.name);
+					out.writeUTF(header.superName != null ? header.superName : "");
+					out.writeInt(header.access);
+					out.writeBoolean(header.nested);
+					out.writeInt(header.nTestMethods);
+				}
+				out.writeBoolean(false);
+			}
+			Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			logger.warn("Could not save the test index {}: {}", indexFile, e.toString());
+		}
+	}
+
+}
@@ -0,0 +1,169 @@
+package br.usp.each.saeg.jaguar;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jacoco.core.data.AbstractExecutionDataStore;
+import org.jacoco.core.data.ControlFlowExecutionDataStore;
+import org.junit.Assert;
+import org.junit.Test;
+
+import br.usp.each.saeg.jaguar.core.CoveragePipeline;
+import br.usp.each.saeg.jaguar.core.Jaguar;
+import br.usp.each.saeg.jaguar.core.heuristic.TarantulaHeuristic;
+
+public class CoveragePipelineTest {
+
+	/**
+	 * Counts the collected tests, blocking each collection until released.
+	 */
+	private static class BlockingJaguar extends Jaguar {
+
+		private final CountDownLatch release;
+		private final AtomicInteger collected = new AtomicInteger();
+		private final AtomicInteger failed = new AtomicInteger();
+
+		BlockingJaguar(CountDownLatch release) {
+			super(new File("."));
+			this.release = release;
+		}
+
+		@Override
+		public void collect(AbstractExecutionDataStore executionData, boolean currentTestFailed, Runnable awaitTurn) {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (currentTestFailed) {
+				failed.incrementAndGet();
+			}
+			collected.incrementAndGet();
+		}
+	}
+
+	@Test
+	public void drainWaitsForEveryQueuedTest() throws Exception {
+		BlockingJaguar jaguar = new BlockingJaguar(new CountDownLatch(0));
+		CoveragePipeline pipeline = new CoveragePipeline(jaguar, 4, 3);
+		for (int i = 0; i < 50; i++) {
+			pipeline.submit(new ControlFlowExecutionDataStore(), i % 5 == 0, null);
+		}
+		pipeline.shutdown();
+
+		Assert.assertEquals(50, jaguar.collected.get());
+		Assert.assertEquals(10, jaguar.failed.get());
+	}
+
+	@Test
+	public void testsAreAppliedInSubmissionOrder() throws Exception {
+		final List<AbstractExecutionDataStore> applied = Collections.synchronizedList(new ArrayList<AbstractExecutionDataStore>());
+		final Random random = new Random(6300);
+		Jaguar jaguar = new Jaguar(new File(".")) {
+			@Override
+			public void collect(AbstractExecutionDataStore executionData, boolean currentTestFailed, Runnable awaitTurn) {
+				try {
+					Thread.sleep(random.nextInt(5));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				awaitTurn.run();
+				applied.add(executionData);
+			}
+		};
+		CoveragePipeline pipeline = new CoveragePipeline(jaguar, 8, 4);
+		List<AbstractExecutionDataStore> submitted = new ArrayList<AbstractExecutionDataStore>();
+		for (int i = 0; i < 50; i++) {
+			AbstractExecutionDataStore executionData = new ControlFlowExecutionDataStore();
+			submitted.add(executionData);
+			pipeline.submit(executionData, false, null);
+		}
+		pipeline.shutdown();
+
+		Assert.assertEquals(submitted, applied);
+	}
+
+	@Test
+	public void fullQueueBlocksTheTestThread() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		BlockingJaguar jaguar = new BlockingJaguar(release);
+		final CoveragePipeline pipeline = new CoveragePipeline(jaguar, 2, 1);
+		pipeline.submit(new ControlFlowExecutionDataStore(), false, null);
+		pipeline.submit(new ControlFlowExecutionDataStore(), false, null);
+
+		final CountDownLatch submitted = new CountDownLatch(1);
+		Thread testThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					pipeline.submit(new ControlFlowExecutionDataStore(), false, null);
+					submitted.countDown();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		testThread.start();
+
+		Assert.assertFalse(submitted.await(200, TimeUnit.MILLISECONDS));
+		release.countDown();
+		Assert.assertTrue(submitted.await(5, TimeUnit.SECONDS));
+
+		pipeline.shutdown();
+		Assert.assertEquals(3, jaguar.collected.get());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void collectFailureIsReportedOnDrain() throws Exception {
+		Jaguar jaguar = new Jaguar(new File(".")) {
+			@Override
+			public void collect(AbstractExecutionDataStore executionData, boolean currentTestFailed, Runnable awaitTurn) {
+				throw new RuntimeException("analysis failed");
+			}
+		};
+		CoveragePipeline pipeline = new CoveragePipeline(jaguar, 2, 1);
+		pipeline.submit(new ControlFlowExecutionDataStore(), false, null);
+		pipeline.drain();
+	}
+
+	@Test
+	public void finishDrainsThePipeline() throws Exception {
+		BlockingJaguar jaguar = new BlockingJaguar(new CountDownLatch(0));
+		jaguar.enablePipeline(2, 2);
+		for (int i = 0; i < 10; i++) {
+			jaguar.submit(new ControlFlowExecutionDataStore(), false);
+		}
+		jaguar.finish();
+
+		Assert.assertEquals(10, jaguar.collected.get());
+	}
+
+	@Test
+	public void rankWaitsForTheQueuedCoverage() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		BlockingJaguar jaguar = new BlockingJaguar(release);
+		jaguar.enablePipeline(4, 1);
+		for (int i = 0; i < 3; i++) {
+			jaguar.submit(new ControlFlowExecutionDataStore(), false);
+		}
+		new Thread(() -> {
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			release.countDown();
+		}).start();
+		jaguar.rank(new TarantulaHeuristic(), 10);
+
+		Assert.assertEquals(3, jaguar.collected.get());
+		jaguar.finish();
+	}
+
+}
@@ -0,0 +1,93 @@
+package br.usp.each.saeg.jaguar;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.jacoco.core.data.ControlFlowExecutionData;
+import org.jacoco.core.data.ControlFlowExecutionDataStore;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import br.usp.each.saeg.jaguar.core.Jaguar;
+import br.usp.each.saeg.jaguar.core.MethodSpectrum;
+import br.usp.each.saeg.jaguar.core.heuristic.OpHeuristic;
+
+public class MethodSpectrumTest {
+
+	private MethodSpectrum spectrum;
+	private int a1;
+	private int a2;
+	private int b1;
+	private int c1;
+
+	/**
+	 * T1 fails covering a/A#1 and a/B#1, T2 passes covering a/A#1 and a/A#2,
+	 * T3 passes covering a/C#1.
+	 */
+	@Before
+	public void setUp() {
+		spectrum = new MethodSpectrum();
+		a1 = spectrum.methodSlot("a/A", 1, "a.A.m1()");
+		a2 = spectrum.methodSlot("a/A", 2, "a.A.m2()");
+		b1 = spectrum.methodSlot("a/B", 1, "a.B.m1()");
+		c1 = spectrum.methodSlot("a/C", 1, "a.C.m1()");
+		spectrum.addTest("T1", new int[] { a1, b1 }, true);
+		spectrum.addTest("T2", new int[] { a1, a2 }, false);
+		spectrum.addTest("T3", new int[] { c1 }, false);
+	}
+
+	@Test
+	public void methodsAreCountedOnce() {
+		Assert.assertEquals(4, spectrum.size());
+		Assert.assertEquals(a1, spectrum.methodSlot("a/A", 1, "ignored"));
+		Assert.assertEquals("a.A.m1()", spectrum.getSignature(a1));
+		Assert.assertEquals(1, spectrum.getCef(a1));
+		Assert.assertEquals(1, spectrum.getCep(a1));
+		Assert.assertEquals(0, spectrum.getCef(c1));
+		Assert.assertEquals(1, spectrum.getCep(c1));
+	}
+
+	@Test
+	public void topKeepsTheTiesOfTheLastMethod() {
+		int[] top = spectrum.rank(new OpHeuristic(), 2, 1, 1);
+		Assert.assertArrayEquals(new int[] { b1 }, top);
+
+		top = spectrum.rank(new OpHeuristic(), 2, 1, 2);
+		Assert.assertArrayEquals(new int[] { b1, a1 }, top);
+		Assert.assertEquals(new HashSet<String>(Arrays.asList("a/B", "a/A")), spectrum.getClassNames(top));
+
+		Assert.assertEquals(4, spectrum.rank(new OpHeuristic(), 2, 1, 3).length);
+	}
+
+	@Test
+	public void testClassesCoveringTheClassesAndFailedOnesAreRelevant() {
+		Assert.assertEquals(new HashSet<String>(Arrays.asList("T1", "T2")),
+				spectrum.getTestClassesCovering(Collections.singleton("a/A")));
+		Assert.assertEquals(new HashSet<String>(Arrays.asList("T1", "T3")),
+				spectrum.getTestClassesCovering(Collections.singleton("a/C")));
+		Assert.assertEquals(Collections.singleton("T1"), spectrum.getTestClassesCovering(Collections.<String> emptySet()));
+	}
+
+	@Test
+	public void footprintKeepsTheClassesWithHits() {
+		final Jaguar jaguar = new Jaguar(new File("."));
+		final ControlFlowExecutionDataStore store = new ControlFlowExecutionDataStore();
+		store.put(new ControlFlowExecutionData(1, "a/A", new boolean[] { false, true }));
+		store.put(new ControlFlowExecutionData(2, "a/B", new boolean[2]));
+		jaguar.collectFootprint("T1", store, false);
+		Assert.assertTrue(jaguar.getMethodSpectrum().getTestClasses().isEmpty());
+
+		jaguar.enableFootprint();
+		jaguar.collectFootprint("T1", store, false);
+		final MethodSpectrum footprint = jaguar.getMethodSpectrum();
+		Assert.assertEquals(Collections.singleton("a/A"), footprint.getCoveredClasses("T1"));
+		Assert.assertEquals(Collections.singleton("T1"), footprint.getTestClassesCovering(Collections.singleton("a/A")));
+		Assert.assertTrue(footprint.getTestClassesCovering(Collections.singleton("a/B")).isEmpty());
+		Assert.assertEquals(0, footprint.size());
+	}
+
+}
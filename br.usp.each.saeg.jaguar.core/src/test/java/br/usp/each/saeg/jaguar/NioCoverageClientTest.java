@@ -0,0 +1,174 @@
+package br.usp.each.saeg.jaguar;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jacoco.core.data.AbstractExecutionDataStore;
+import org.jacoco.core.data.ControlFlowExecutionData;
+import org.jacoco.core.data.DataFlowExecutionData;
+import org.jacoco.core.data.SessionInfo;
+import org.jacoco.core.runtime.IRemoteCommandVisitor;
+import org.jacoco.core.runtime.RemoteControlReader;
+import org.jacoco.core.runtime.RemoteControlWriter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import br.usp.each.saeg.jaguar.core.NioCoverageClient;
+
+public class NioCoverageClientTest {
+
+	/**
+	 * Emulates the tcpserver of the agent, answering each dump with the
+	 * classes in {@link #classes}.
+	 */
+	private static class FakeAgent implements Runnable {
+
+		private final ServerSocket server;
+		private final List<ControlFlowExecutionData> classes = new ArrayList<ControlFlowExecutionData>();
+
+		FakeAgent() throws IOException {
+			server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		}
+
+		@Override
+		public void run() {
+			try (Socket socket = server.accept()) {
+				final RemoteControlWriter writer = new RemoteControlWriter(socket.getOutputStream());
+				RemoteControlReader reader = new RemoteControlReader(socket.getInputStream());
+				reader.setRemoteCommandVisitor(new IRemoteCommandVisitor() {
+					@Override
+					public void visitDumpCommand(boolean dump, boolean reset) throws IOException {
+						writer.visitSessionInfo(new SessionInfo("session", 1, 2));
+						synchronized (classes) {
+							for (ControlFlowExecutionData data : classes) {
+								writer.visitClassExecution(data);
+							}
+						}
+						writer.sendCmdOk();
+					}
+				});
+				while (reader.read()) {
+				}
+			} catch (IOException e) {
+				// client closed
+			}
+		}
+
+		void send(ControlFlowExecutionData... data) {
+			synchronized (classes) {
+				classes.clear();
+				classes.addAll(Arrays.asList(data));
+			}
+		}
+	}
+
+	private FakeAgent agent;
+
+	@Before
+	public void startAgent() throws IOException {
+		agent = new FakeAgent();
+		new Thread(agent).start();
+	}
+
+	@After
+	public void stopAgent() throws IOException {
+		agent.server.close();
+	}
+
+	private NioCoverageClient connect(boolean isDataflow) throws IOException {
+		NioCoverageClient client = new NioCoverageClient(InetAddress.getLoopbackAddress(), agent.server.getLocalPort(), isDataflow);
+		client.connect();
+		return client;
+	}
+
+	private static boolean[] probes(int length, int... hits) {
+		boolean[] probes = new boolean[length];
+		for (int hit : hits) {
+			probes[hit] = true;
+		}
+		return probes;
+	}
+
+	@Test
+	public void readsControlFlowProbes() throws Exception {
+		agent.send(new ControlFlowExecutionData(1, "a/A", probes(10, 0, 3, 9)),
+				new ControlFlowExecutionData(2, "a/B", probes(3)));
+		NioCoverageClient client = connect(false);
+
+		AbstractExecutionDataStore store = client.read();
+
+		Assert.assertEquals("a/A", store.get(1).getName());
+		Assert.assertTrue(Arrays.equals(probes(10, 0, 3, 9), store.get(1).getProbes()));
+		// classes without hits are not sent by the agent
+		Assert.assertNull(store.get(2));
+		Assert.assertEquals(1, client.getReads());
+		Assert.assertTrue(client.getLastReadBytes() > 0);
+		client.close();
+	}
+
+	@Test
+	public void releasedStoreIsReusedAndReset() throws Exception {
+		agent.send(new ControlFlowExecutionData(1, "a/A", probes(4, 1)),
+				new ControlFlowExecutionData(2, "a/B", probes(4, 2)));
+		NioCoverageClient client = connect(false);
+
+		AbstractExecutionDataStore first = client.read();
+		boolean[] probesOfA = first.get(1).getProbes();
+		client.release(first);
+
+		agent.send(new ControlFlowExecutionData(1, "a/A", probes(4, 3)));
+		AbstractExecutionDataStore second = client.read();
+
+		Assert.assertSame(first, second);
+		Assert.assertSame(probesOfA, second.get(1).getProbes());
+		Assert.assertTrue(Arrays.equals(probes(4, 3), second.get(1).getProbes()));
+		Assert.assertTrue(Arrays.equals(probes(4), second.get(2).getProbes()));
+		client.close();
+	}
+
+	@Test
+	public void storeNotReleasedIsNotReused() throws Exception {
+		agent.send(new ControlFlowExecutionData(1, "a/A", probes(4, 1)));
+		NioCoverageClient client = connect(false);
+
+		AbstractExecutionDataStore first = client.read();
+		AbstractExecutionDataStore second = client.read();
+
+		Assert.assertNotSame(first, second);
+		Assert.assertTrue(Arrays.equals(probes(4, 1), first.get(1).getProbes()));
+		client.close();
+	}
+
+	@Test
+	public void packsDataFlowProbesInLongs() throws Exception {
+		agent.send(new ControlFlowExecutionData(1, "a/A", probes(70, 0, 5, 64, 69)));
+		NioCoverageClient client = connect(true);
+
+		AbstractExecutionDataStore store = client.read();
+
+		DataFlowExecutionData data = (DataFlowExecutionData) store.get(1);
+		Assert.assertArrayEquals(new long[] { 1L | 1L << 5, 1L | 1L << 5 }, data.getLongProbes());
+		client.close();
+	}
+
+	@Test
+	public void readsProbesLargerThanTheBuffer() throws Exception {
+		int length = 1024 * 1024;
+		agent.send(new ControlFlowExecutionData(1, "a/A", probes(length, 0, 7, 8, length / 2, length - 1)));
+		NioCoverageClient client = connect(false);
+
+		AbstractExecutionDataStore store = client.read();
+
+		Assert.assertTrue(Arrays.equals(probes(length, 0, 7, 8, length / 2, length - 1), store.get(1).getProbes()));
+		Assert.assertTrue(client.getLastReadBytes() > length / 8);
+		client.close();
+	}
+
+}
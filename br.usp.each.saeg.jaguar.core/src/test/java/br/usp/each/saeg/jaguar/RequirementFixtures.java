@@ -0,0 +1,37 @@
+package br.usp.each.saeg.jaguar;
+
+import br.usp.each.saeg.jaguar.core.model.core.requirement.AbstractTestRequirement;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.LineTestRequirement;
+
+/**
+ * Requirements with their counts, shared by the tests of the spectrum.
+ */
+public final class RequirementFixtures {
+
+	private RequirementFixtures() {
+	}
+
+	/**
+	 * @return a line of the class a/A, see
+	 *         {@link #line(String, int, int, int)}
+	 */
+	public static AbstractTestRequirement line(int lineNumber, int cef, int cep) {
+		return line("a/A", lineNumber, cef, cep);
+	}
+
+	/**
+	 * @return a line in the method m() at line 2 of the class, whose first
+	 *         line is 1, with the given cef and cep
+	 */
+	public static AbstractTestRequirement line(String className, int lineNumber, int cef, int cep) {
+		AbstractTestRequirement requirement = new LineTestRequirement(className, lineNumber);
+		requirement.setClassFirstLine(1);
+		requirement.setMethodLine(2);
+		requirement.setMethodId(0);
+		requirement.setMethodSignature(className.replace('/', '.') + ".m()");
+		requirement.increaseFailed(cef);
+		requirement.increasePassed(cep);
+		return requirement;
+	}
+
+}
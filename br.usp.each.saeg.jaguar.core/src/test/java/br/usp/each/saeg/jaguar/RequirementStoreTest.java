@@ -0,0 +1,131 @@
+package br.usp.each.saeg.jaguar;
+
+import static br.usp.each.saeg.jaguar.RequirementFixtures.line;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jacoco.core.analysis.ICounter;
+import org.jacoco.core.analysis.dua.Dua;
+import org.jacoco.core.analysis.dua.DuaClassCoverage;
+import org.jacoco.core.analysis.dua.DuaMethodCoverage;
+import org.jacoco.core.analysis.dua.IDuaClassCoverage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import br.usp.each.saeg.jaguar.core.JaguarSFL;
+import br.usp.each.saeg.jaguar.core.RequirementStore;
+import br.usp.each.saeg.jaguar.core.analysis.DuaCatalog;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.AbstractTestRequirement;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.DuaTestRequirement;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.LineTestRequirement;
+
+public class RequirementStoreTest {
+
+	private static final String CLASS_NAME = "br/usp/each/saeg/Foo";
+
+	@Test
+	public void equalLinesShareTheirCounts() {
+		RequirementStore store = new RequirementStore();
+		for (int i = 0; i < 5000; i++) {
+			store.merge(line("a/C" + (i % 7), i, 1, 0));
+		}
+		for (int i = 0; i < 5000; i += 2) {
+			store.merge(line("a/C" + (i % 7), i, 0, 3));
+		}
+
+		Assert.assertEquals(5000, store.size());
+		List<AbstractTestRequirement> requirements = store.materialize();
+		for (int i = 0; i < 5000; i++) {
+			AbstractTestRequirement requirement = requirements.get(i);
+			Assert.assertEquals(new LineTestRequirement("a/C" + (i % 7), i), requirement);
+			Assert.assertEquals(1, requirement.getCef());
+			Assert.assertEquals(i % 2 == 0 ? 3 : 0, requirement.getCep());
+			Assert.assertEquals("a.C" + (i % 7) + ".m()", requirement.getMethodSignature());
+		}
+	}
+
+	@Test
+	public void clearedStoreStartsFromZero() {
+		RequirementStore store = new RequirementStore();
+		store.merge(line(CLASS_NAME, 10, 2, 5));
+		store.merge(line(CLASS_NAME, 11, 1, 1));
+		store.clear();
+		store.merge(line(CLASS_NAME, 11, 1, 0));
+		store.merge(line(CLASS_NAME, 10, 0, 3));
+
+		List<AbstractTestRequirement> requirements = store.materialize();
+		Assert.assertEquals(2, requirements.size());
+		Assert.assertEquals(new LineTestRequirement(CLASS_NAME, 11), requirements.get(0));
+		Assert.assertEquals(1, requirements.get(0).getCef());
+		Assert.assertEquals(0, requirements.get(0).getCep());
+		Assert.assertEquals(new LineTestRequirement(CLASS_NAME, 10), requirements.get(1));
+		Assert.assertEquals(0, requirements.get(1).getCef());
+		Assert.assertEquals(3, requirements.get(1).getCep());
+	}
+
+	@Test
+	public void catalogAndMergedDuasShareTheirCounts() {
+		DuaCatalog catalog = new DuaCatalog(analyses());
+		RequirementStore store = new RequirementStore();
+		int classId = store.classId(CLASS_NAME);
+		Assert.assertEquals(classId, store.classId(CLASS_NAME));
+
+		store.addDua(classId, catalog, 0, true, 2);
+		store.addDua(classId, catalog, 1, false, 1);
+		AbstractTestRequirement merged = new DuaTestRequirement(CLASS_NAME, 1, 11, 21, -1, "x");
+		merged.increasePassed(4);
+		store.merge(merged);
+		store.addDua(classId, catalog, 0, false, 1);
+
+		Assert.assertEquals(2, store.size());
+		List<AbstractTestRequirement> requirements = store.materialize();
+		Assert.assertEquals(new DuaTestRequirement(CLASS_NAME, 0, 10, 20, -1, "x"), requirements.get(0));
+		Assert.assertEquals(2, requirements.get(0).getCef());
+		Assert.assertEquals(1, requirements.get(0).getCep());
+		Assert.assertEquals("foo(int)", requirements.get(0).getMethodSignature());
+		Assert.assertEquals(Integer.valueOf(10), requirements.get(0).getMethodLine());
+		Assert.assertEquals(5, requirements.get(1).getCep());
+	}
+
+	@Test
+	public void ignoredDuasAreNotRequirements() {
+		JaguarSFL sfl = new JaguarSFL();
+		sfl.updateRequirements(new DuaCatalog(analyses()), new int[] { 0, 2 }, false, 1);
+
+		Assert.assertEquals(1, sfl.getTestRequirements().size());
+		Assert.assertTrue(sfl.getTestRequirements().containsKey(new DuaTestRequirement(CLASS_NAME, 0, 10, 20, -1, "x")));
+	}
+
+	@Test
+	public void requirementsAreCreatedAgainAfterAnUpdate() {
+		JaguarSFL sfl = new JaguarSFL();
+		sfl.merge(line("a/A", 3, 1, 0));
+		AbstractTestRequirement before = sfl.getTestRequirements().get(new LineTestRequirement("a/A", 3));
+		Assert.assertSame(before, sfl.getTestRequirements().get(new LineTestRequirement("a/A", 3)));
+
+		sfl.merge(line("a/A", 3, 1, 0));
+		Assert.assertEquals(2, sfl.getTestRequirements().get(new LineTestRequirement("a/A", 3)).getCef());
+		Assert.assertEquals(1, before.getCef());
+	}
+
+	/**
+	 * One analysis per probe bit of three DUAs with probes 0, 1 and 2, the
+	 * third one with an ignored var. See DuaCatalogTest.
+	 */
+	private static List<IDuaClassCoverage> analyses() {
+		List<IDuaClassCoverage> analyses = new ArrayList<IDuaClassCoverage>();
+		for (int bit = 0; bit < 2; bit++) {
+			DuaClassCoverage clazz = new DuaClassCoverage(CLASS_NAME, 1L, null, "java/lang/Object", new String[0]);
+			DuaMethodCoverage foo = new DuaMethodCoverage(1, "foo", "(I)V", null, false);
+			for (int i = 0; i < 3; i++) {
+				int status = (i & (1 << bit)) != 0 ? ICounter.FULLY_COVERED : ICounter.NOT_COVERED;
+				foo.addDua(new Dua(i, 10 + i, 20 + i, -1, i == 2 ? "random_0.5" : "x", status));
+			}
+			clazz.addMethod(foo);
+			analyses.add(clazz);
+		}
+		return analyses;
+	}
+
+}
@@ -0,0 +1,90 @@
+package br.usp.each.saeg.jaguar;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.jacoco.core.data.AbstractExecutionDataStore;
+import org.jacoco.core.data.ControlFlowExecutionData;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.data.SessionInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import br.usp.each.saeg.jaguar.core.CoverageClient;
+import br.usp.each.saeg.jaguar.core.CoverageClients;
+import br.usp.each.saeg.jaguar.core.JaCoCoClient;
+import br.usp.each.saeg.jaguar.core.RuntimeCoverageClient;
+
+public class RuntimeCoverageClientTest {
+
+	/**
+	 * Mimics the IAgent of the Jacoco agent, dumping one class.
+	 */
+	public static class FakeAgent {
+
+		private boolean reset;
+
+		public byte[] getExecutionData(boolean reset) {
+			this.reset = reset;
+			try {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				ExecutionDataWriter writer = new ExecutionDataWriter(out);
+				writer.visitSessionInfo(new SessionInfo("test", 1, 2));
+				writer.visitClassExecution(new ControlFlowExecutionData(42, "br/usp/Foo", new boolean[] { true, false, true }));
+				return out.toByteArray();
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	@Test
+	public void readsAndResetsTheAgentData() throws Exception {
+		FakeAgent agent = new FakeAgent();
+		RuntimeCoverageClient client = new RuntimeCoverageClient(agent, false);
+		client.connect();
+		AbstractExecutionDataStore store = client.read();
+		client.close();
+
+		Assert.assertTrue(agent.reset);
+		ControlFlowExecutionData data = store.get(42);
+		Assert.assertEquals("br/usp/Foo", data.getName());
+		Assert.assertTrue(Arrays.equals(new boolean[] { true, false, true }, data.getProbes()));
+	}
+
+	@Test
+	public void eachReadReturnsANewStore() throws Exception {
+		RuntimeCoverageClient client = new RuntimeCoverageClient(new FakeAgent(), false);
+		client.connect();
+
+		Assert.assertNotSame(client.read(), client.read());
+	}
+
+	@Test
+	public void releasedStoreIsResetAndReused() throws Exception {
+		RuntimeCoverageClient client = new RuntimeCoverageClient(new FakeAgent(), false);
+		client.connect();
+
+		AbstractExecutionDataStore store = client.read();
+		store.get(42).getProbes()[1] = true;
+		client.release(store);
+
+		Assert.assertSame(store, client.read());
+		Assert.assertTrue(Arrays.equals(new boolean[] { true, false, true }, store.get(42).getProbes()));
+	}
+
+	@Test(expected = IOException.class)
+	public void unknownAgentIsRejected() throws Exception {
+		new RuntimeCoverageClient(new Object(), false).connect();
+	}
+
+	@Test
+	public void fallsBackToTcpWithoutAgent() throws Exception {
+		Assert.assertFalse(RuntimeCoverageClient.isAgentAvailable());
+
+		CoverageClient client = CoverageClients.create(true, false, false);
+		Assert.assertTrue(client instanceof JaCoCoClient);
+	}
+
+}
@@ -0,0 +1,133 @@
+package br.usp.each.saeg.jaguar;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import br.usp.each.saeg.jaguar.core.SpectrumGroups;
+
+public class SpectrumGroupsTest {
+
+	private static final String TABLE_A = new String("a/A");
+	private static final String TABLE_B = new String("a/B");
+
+	/**
+	 * Adds each test to the groups and keeps the cep/cef of each requirement,
+	 * named table:index, the way Jaguar updates JaguarSFL.
+	 */
+	private static class Counts {
+
+		private final SpectrumGroups<String> groups;
+		private final Map<String, Integer> cef = new HashMap<String, Integer>();
+		private final Map<String, Integer> cep = new HashMap<String, Integer>();
+
+		Counts() {
+			this(SpectrumGroups.DEFAULT_MAX_GROUPS);
+		}
+
+		Counts(int maxGroups) {
+			groups = new SpectrumGroups<String>(maxGroups);
+		}
+
+		void add(String[] tables, int[][] covered, boolean failed) {
+			if (groups.add(tables, covered, failed)) {
+				update(tables, covered, failed, 1);
+			}
+		}
+
+		void update(String[] tables, int[][] covered, boolean failed, int weight) {
+			Map<String, Integer> counts = failed ? cef : cep;
+			for (int i = 0; i < tables.length; i++) {
+				for (int index : covered[i]) {
+					counts.merge(tables[i] + ":" + index, weight, Integer::sum);
+				}
+			}
+		}
+
+		void drain() {
+			groups.drain(this::update);
+		}
+	}
+
+	@Test
+	public void duplicatedTestsOnlyAddWeight() {
+		SpectrumGroups<String> groups = new SpectrumGroups<String>();
+
+		Assert.assertTrue(groups.add(new String[] { TABLE_A }, new int[][] { { 1, 2 } }, false));
+		Assert.assertFalse(groups.add(new String[] { TABLE_A }, new int[][] { { 1, 2 } }, false));
+		Assert.assertTrue(groups.add(new String[] { TABLE_A }, new int[][] { { 1, 2 } }, true));
+		Assert.assertTrue(groups.add(new String[] { TABLE_A }, new int[][] { { 1 } }, false));
+		Assert.assertTrue(groups.add(new String[] { TABLE_B }, new int[][] { { 1, 2 } }, false));
+
+		Assert.assertEquals(4, groups.size());
+		Assert.assertEquals(1, groups.getnDuplicates());
+	}
+
+	@Test
+	public void sameTableContentIsNotTheSameClass() {
+		SpectrumGroups<String> groups = new SpectrumGroups<String>();
+
+		Assert.assertTrue(groups.add(new String[] { TABLE_A }, new int[][] { {} }, false));
+		Assert.assertTrue(groups.add(new String[] { new String("a/A") }, new int[][] { {} }, false));
+	}
+
+	@Test
+	public void newSpectraAreNotGroupedPastTheCap() {
+		SpectrumGroups<String> groups = new SpectrumGroups<String>(2);
+
+		Assert.assertTrue(groups.add(new String[] { TABLE_A }, new int[][] { { 1 } }, false));
+		Assert.assertTrue(groups.add(new String[] { TABLE_A }, new int[][] { { 2 } }, false));
+		Assert.assertTrue(groups.add(new String[] { TABLE_A }, new int[][] { { 3 } }, false));
+		Assert.assertTrue(groups.add(new String[] { TABLE_A }, new int[][] { { 3 } }, false));
+		Assert.assertFalse(groups.add(new String[] { TABLE_A }, new int[][] { { 1 } }, false));
+
+		Assert.assertEquals(2, groups.size());
+		Assert.assertEquals(2, groups.getnUngrouped());
+		Assert.assertEquals(1, groups.getnDuplicates());
+	}
+
+	@Test
+	public void cappedCountsMatchTestByTestCounts() {
+		Counts grouped = new Counts(1);
+		Counts single = new Counts();
+		String[] tables = { TABLE_A };
+		int[][][] spectra = { { { 1, 2 } }, { { 1 } }, { { 2 } } };
+
+		for (int test = 0; test < 30; test++) {
+			int[][] covered = spectra[test % spectra.length];
+			boolean failed = test % 4 == 0;
+			grouped.add(tables, covered, failed);
+			single.update(tables, covered, failed, 1);
+		}
+		grouped.drain();
+
+		Assert.assertEquals(single.cep, grouped.cep);
+		Assert.assertEquals(single.cef, grouped.cef);
+	}
+
+	@Test
+	public void weightedCountsMatchTestByTestCounts() {
+		Counts grouped = new Counts();
+		Counts single = new Counts();
+		String[] tables = { TABLE_A, TABLE_B };
+		int[][][] spectra = { { { 1, 2 }, { 0 } }, { { 1 }, { 0 } }, { { 1, 2 }, {} } };
+
+		for (int test = 0; test < 50; test++) {
+			int[][] covered = spectra[test % spectra.length];
+			boolean failed = test % 7 == 0;
+			grouped.add(tables, covered, failed);
+			single.update(tables, covered, failed, 1);
+			if (test == 20) {
+				grouped.drain();
+			}
+		}
+		grouped.drain();
+		grouped.drain();
+
+		Assert.assertEquals(single.cep, grouped.cep);
+		Assert.assertEquals(single.cef, grouped.cef);
+	}
+
+}
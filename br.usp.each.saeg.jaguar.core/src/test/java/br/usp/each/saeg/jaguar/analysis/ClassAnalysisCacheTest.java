@@ -0,0 +1,218 @@
+package br.usp.each.saeg.jaguar.analysis;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.jacoco.core.analysis.ControlFlowAnalyzer;
+import org.jacoco.core.analysis.CoverageBuilder;
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.data.ControlFlowExecutionData;
+import org.jacoco.core.data.ControlFlowExecutionDataStore;
+import org.jacoco.core.data.DataFlowExecutionData;
+import org.jacoco.core.data.DataFlowExecutionDataStore;
+import org.jacoco.core.data.ExecutionDataReader;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.internal.data.CRC64;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import br.usp.each.saeg.jaguar.core.Jaguar;
+import br.usp.each.saeg.jaguar.core.analysis.ClassAnalysisCache;
+import br.usp.each.saeg.jaguar.core.analysis.DuaCatalog;
+import br.usp.each.saeg.jaguar.core.analysis.ProbeBits;
+import br.usp.each.saeg.jaguar.core.analysis.ProbeLineTable;
+import br.usp.each.saeg.jaguar.core.heuristic.MinusHeuristic;
+import br.usp.each.saeg.jaguar.core.model.core.CoverageStatus;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.AbstractTestRequirement;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.DuaTestRequirement;
+import br.usp.each.saeg.jaguar.core.utils.FileUtils;
+import br.usp.each.saeg.jaguar.core.utils.StringUtils;
+
+public class ClassAnalysisCacheTest {
+
+	private static final Class<?>[] CLASSES = new Class<?>[] { Jaguar.class, StringUtils.class, CoverageStatus.class,
+			MinusHeuristic.class, FileUtils.class };
+
+	@Test
+	public void sameCoveredLinesAsJacocoForSingleProbes() throws Exception {
+		for (Class<?> clazz : CLASSES) {
+			byte[] bytes = readClass(clazz);
+			ProbeLineTable table = analyze(clazz, bytes, new boolean[0]);
+			for (int probe = 0; probe < table.getProbeCount(); probe++) {
+				boolean[] probes = new boolean[table.getProbeCount()];
+				probes[probe] = true;
+				assertSameCoverage(clazz, bytes, probes);
+			}
+		}
+	}
+
+	@Test
+	public void sameCoveredLinesAsJacocoForRandomProbes() throws Exception {
+		Random random = new Random(42);
+		for (Class<?> clazz : CLASSES) {
+			byte[] bytes = readClass(clazz);
+			ProbeLineTable table = analyze(clazz, bytes, new boolean[0]);
+			for (int i = 0; i < 50; i++) {
+				boolean[] probes = new boolean[table.getProbeCount()];
+				for (int probe = 0; probe < probes.length; probe++) {
+					probes[probe] = random.nextInt(4) == 0;
+				}
+				assertSameCoverage(clazz, bytes, probes);
+			}
+		}
+	}
+
+	@Test
+	public void classIsAnalyzedOnlyOnce() throws Exception {
+		byte[] bytes = readClass(Jaguar.class);
+		String name = Jaguar.class.getName().replace('.', '/');
+		ClassAnalysisCache cache = new ClassAnalysisCache(classFiles(Jaguar.class));
+
+		ProbeLineTable first = cache.getLineTable(new ControlFlowExecutionData(CRC64.checksum(bytes), name, new boolean[0]));
+		ProbeLineTable second = cache.getLineTable(new ControlFlowExecutionData(CRC64.checksum(bytes), name, new boolean[0]));
+
+		Assert.assertNotNull(first);
+		Assert.assertSame(first, second);
+		Assert.assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void differentClassIdIsIgnored() throws Exception {
+		byte[] bytes = readClass(Jaguar.class);
+		String name = Jaguar.class.getName().replace('.', '/');
+		ClassAnalysisCache cache = new ClassAnalysisCache(classFiles(Jaguar.class));
+
+		Assert.assertNull(cache.getLineTable(new ControlFlowExecutionData(CRC64.checksum(bytes) + 1, name, new boolean[0])));
+	}
+
+	@Test
+	public void repeatedProbeVectorReusesTheCoveredLines() throws Exception {
+		byte[] bytes = readClass(Jaguar.class);
+		ProbeLineTable table = analyze(Jaguar.class, bytes, new boolean[0]);
+		boolean[] probes = new boolean[table.getProbeCount()];
+		probes[0] = true;
+		boolean[] sameProbes = probes.clone();
+		boolean[] otherProbes = probes.clone();
+		otherProbes[otherProbes.length - 1] = true;
+
+		int[] covered = table.getCoveredLines(probes);
+		Assert.assertSame(covered, table.getCoveredLines(sameProbes));
+		Assert.assertNotSame(covered, table.getCoveredLines(otherProbes));
+		Assert.assertArrayEquals(covered, table.getCoveredLines(probes));
+	}
+
+	@Test
+	public void execFormatGivesControlFlowDataToTheDataFlowStore() throws Exception {
+		boolean[] probes = new boolean[130];
+		probes[1] = true;
+		probes[129] = true;
+		ControlFlowExecutionData data = readExec(new ControlFlowExecutionData(42L, "Foo", probes));
+
+		Assert.assertEquals(ControlFlowExecutionData.class, data.getClass());
+		Assert.assertArrayEquals(new long[] { 1L << 1, 0L, 1L << 1 }, ProbeBits.longProbes(data));
+	}
+
+	@Test
+	public void duasAreCoveredWhenReadFromTheExecFormat() throws Exception {
+		byte[] bytes = readClass(StringUtils.class);
+		String name = StringUtils.class.getName().replace('.', '/');
+		long id = CRC64.checksum(bytes);
+		ClassAnalysisCache cache = new ClassAnalysisCache(classFiles(StringUtils.class));
+		DuaCatalog catalog = null;
+		try {
+			catalog = cache.getDuaCatalog(new DataFlowExecutionData(id, name, new long[4]));
+		} catch (LinkageError e) {
+			Assume.assumeNoException("The data-flow analysis is not available", e);
+		}
+		Assert.assertNotNull(catalog);
+
+		boolean[] probes = new boolean[256];
+		Arrays.fill(probes, true);
+		ControlFlowExecutionData data = readExec(new ControlFlowExecutionData(id, name, probes));
+		Assert.assertSame(catalog, cache.getDuaCatalog(data));
+		int[] covered = catalog.getCoveredDuas(ProbeBits.longProbes(data));
+		Assert.assertTrue(covered.length > 0);
+
+		DataFlowExecutionDataStore store = new DataFlowExecutionDataStore();
+		store.visitClassExecution(data);
+		Jaguar jaguar = new Jaguar(FileUtils.findClassDir(StringUtils.class));
+		jaguar.collect(store, true);
+		int duas = 0;
+		for (AbstractTestRequirement requirement : jaguar.getTestRequirements()) {
+			Assert.assertTrue(requirement instanceof DuaTestRequirement);
+			Assert.assertEquals(1, requirement.getCef());
+			duas++;
+		}
+		Assert.assertEquals(covered.length, duas);
+	}
+
+	/**
+	 * Write the data in the Jacoco exec format and read it back into a
+	 * data-flow store, as the tcp client does.
+	 */
+	private ControlFlowExecutionData readExec(ControlFlowExecutionData data) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new ExecutionDataWriter(out).visitClassExecution(data);
+		DataFlowExecutionDataStore store = new DataFlowExecutionDataStore();
+		ExecutionDataReader reader = new ExecutionDataReader(new ByteArrayInputStream(out.toByteArray()));
+		reader.setExecutionDataVisitor(store);
+		reader.read();
+		return store.getContents().iterator().next();
+	}
+
+	private void assertSameCoverage(Class<?> clazz, byte[] bytes, boolean[] probes) throws Exception {
+		ProbeLineTable table = analyze(clazz, bytes, probes);
+
+		ControlFlowExecutionDataStore store = new ControlFlowExecutionDataStore();
+		store.put(new ControlFlowExecutionData(CRC64.checksum(bytes), table.getClassName(), probes));
+		CoverageBuilder builder = new CoverageBuilder();
+		new ControlFlowAnalyzer(store, builder).analyzeClass(bytes, clazz.getName());
+		IClassCoverage coverage = builder.getClasses().iterator().next();
+
+		Assert.assertEquals(coverage.getFirstLine(), table.getClassFirstLine());
+		List<Integer> coveredLines = new ArrayList<Integer>();
+		for (int index = 0; index < table.getLineCount(); index++) {
+			CoverageStatus status = CoverageStatus.as(coverage.getLine(table.getLine(index)).getStatus());
+			boolean expected = CoverageStatus.FULLY_COVERED == status || CoverageStatus.PARTLY_COVERED == status;
+			Assert.assertEquals(clazz.getName() + ":" + table.getLine(index), expected, table.isCovered(index, probes));
+			if (expected) {
+				coveredLines.add(index);
+			}
+		}
+
+		int[] resolved = table.getCoveredLines(probes);
+		Assert.assertEquals(coveredLines.size(), resolved.length);
+		for (int i = 0; i < resolved.length; i++) {
+			Assert.assertEquals(coveredLines.get(i).intValue(), resolved[i]);
+		}
+	}
+
+	private ProbeLineTable analyze(Class<?> clazz, byte[] bytes, boolean[] probes) {
+		ClassAnalysisCache cache = new ClassAnalysisCache(classFiles(clazz));
+		return cache.getLineTable(new ControlFlowExecutionData(CRC64.checksum(bytes), clazz.getName().replace('.', '/'), probes));
+	}
+
+	private Map<String, File> classFiles(Class<?> clazz) {
+		Map<String, File> classFiles = new HashMap<String, File>();
+		classFiles.put(clazz.getName().replace('.', '/'), classFile(clazz));
+		return classFiles;
+	}
+
+	private File classFile(Class<?> clazz) {
+		return new File(FileUtils.findClassDir(clazz), clazz.getName().replace('.', '/') + ".class");
+	}
+
+	private byte[] readClass(Class<?> clazz) throws Exception {
+		return Files.readAllBytes(classFile(clazz).toPath());
+	}
+
+}
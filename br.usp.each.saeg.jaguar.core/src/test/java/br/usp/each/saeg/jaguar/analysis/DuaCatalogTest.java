@@ -0,0 +1,132 @@
+package br.usp.each.saeg.jaguar.analysis;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jacoco.core.analysis.ICounter;
+import org.jacoco.core.analysis.dua.Dua;
+import org.jacoco.core.analysis.dua.DuaClassCoverage;
+import org.jacoco.core.analysis.dua.DuaMethodCoverage;
+import org.jacoco.core.analysis.dua.IDuaClassCoverage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import br.usp.each.saeg.jaguar.core.analysis.DuaCatalog;
+
+public class DuaCatalogTest {
+
+	private static final String CLASS_NAME = "br/usp/each/saeg/Foo";
+
+	// probe of each DUA, in the order they are reported
+	private static final int[] PROBES = new int[] { 0, 5, 3, 64, 70 };
+	private static final int BITS = 7;
+
+	@Test
+	public void probesAreDecodedFromTheBitAnalyses() {
+		DuaCatalog catalog = new DuaCatalog(analyses(PROBES));
+
+		Assert.assertEquals(CLASS_NAME, catalog.getClassName());
+		Assert.assertEquals(PROBES.length, catalog.size());
+		for (int i = 0; i < PROBES.length; i++) {
+			Assert.assertEquals(PROBES[i], catalog.getProbe(i));
+			Assert.assertEquals(i, catalog.getIndex(i));
+			Assert.assertEquals(10 + i, catalog.getDef(i));
+		}
+	}
+
+	@Test
+	public void methodInformationIsKept() {
+		DuaCatalog catalog = new DuaCatalog(analyses(PROBES));
+
+		Assert.assertEquals(1, catalog.getMethodId(0));
+		Assert.assertEquals("foo(int)", catalog.getMethodSignature(0));
+		Assert.assertEquals(2, catalog.getMethodId(3));
+		Assert.assertEquals("Foo()", catalog.getMethodSignature(3));
+	}
+
+	@Test
+	public void duaIsCoveredWhenItsProbeIsSet() {
+		DuaCatalog catalog = new DuaCatalog(analyses(PROBES));
+		long[] probes = new long[2];
+		probes[0] = 1L << 5;
+		probes[1] = 1L << (70 - 64);
+
+		Assert.assertFalse(catalog.isCovered(0, probes));
+		Assert.assertTrue(catalog.isCovered(1, probes));
+		Assert.assertFalse(catalog.isCovered(2, probes));
+		Assert.assertFalse(catalog.isCovered(3, probes));
+		Assert.assertTrue(catalog.isCovered(4, probes));
+	}
+
+	@Test
+	public void coveredDuasSkipTheIgnoredOnes() {
+		DuaCatalog catalog = new DuaCatalog(analyses(PROBES));
+		long[] probes = new long[] { (1L << 3) | (1L << 5), 1L << (70 - 64) };
+
+		Assert.assertArrayEquals(new int[] { 1, 4 }, catalog.getCoveredDuas(probes));
+	}
+
+	@Test
+	public void repeatedProbeVectorReusesTheCoveredDuas() {
+		DuaCatalog catalog = new DuaCatalog(analyses(PROBES));
+
+		int[] covered = catalog.getCoveredDuas(new long[] { 1L, 0L });
+		Assert.assertSame(covered, catalog.getCoveredDuas(new long[] { 1L, 0L }));
+		Assert.assertArrayEquals(new int[] { 0 }, covered);
+		Assert.assertArrayEquals(new int[] { 3 }, catalog.getCoveredDuas(new long[] { 0L, 1L }));
+	}
+
+	@Test
+	public void probeOutOfTheArrayIsNotCovered() {
+		DuaCatalog catalog = new DuaCatalog(analyses(PROBES));
+
+		Assert.assertFalse(catalog.isCovered(4, new long[] { -1L }));
+	}
+
+	@Test
+	public void randomVarIsIgnored() {
+		DuaCatalog catalog = new DuaCatalog(analyses(PROBES));
+
+		Assert.assertFalse(catalog.isIgnored(0));
+		Assert.assertTrue(catalog.isIgnored(2));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void inconsistentAnalysesAreRejected() {
+		List<IDuaClassCoverage> analyses = analyses(PROBES);
+		analyses.add(analysis(new int[] { 0, 5 }, 0));
+		new DuaCatalog(analyses);
+	}
+
+	private List<IDuaClassCoverage> analyses(int[] probes) {
+		List<IDuaClassCoverage> analyses = new ArrayList<IDuaClassCoverage>();
+		for (int bit = 0; bit < BITS; bit++) {
+			analyses.add(analysis(probes, bit));
+		}
+		return analyses;
+	}
+
+	/**
+	 * The coverage reported by Jacoco when only the probes with the given bit
+	 * set are hit.
+	 */
+	private IDuaClassCoverage analysis(int[] probes, int bit) {
+		DuaClassCoverage clazz = new DuaClassCoverage(CLASS_NAME, 1L, null, "java/lang/Object", new String[0]);
+		DuaMethodCoverage foo = new DuaMethodCoverage(1, "foo", "(I)V", null, false);
+		DuaMethodCoverage init = new DuaMethodCoverage(2, "<init>", "()V", null, false);
+		for (int i = 0; i < probes.length; i++) {
+			int status = (probes[i] & (1 << bit)) != 0 ? ICounter.FULLY_COVERED : ICounter.NOT_COVERED;
+			String var = i == 2 ? "random_0.5" : "x";
+			Dua dua = new Dua(i, 10 + i, 20 + i, -1, var, status);
+			if (i < 3) {
+				foo.addDua(dua);
+			} else {
+				init.addDua(dua);
+			}
+		}
+		clazz.addMethod(foo);
+		clazz.addMethod(init);
+		return clazz;
+	}
+
+}
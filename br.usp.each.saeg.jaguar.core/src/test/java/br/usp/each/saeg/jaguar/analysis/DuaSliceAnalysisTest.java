@@ -0,0 +1,161 @@
+package br.usp.each.saeg.jaguar.analysis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.jacoco.core.analysis.ICounter;
+import org.jacoco.core.analysis.dua.Dua;
+import org.jacoco.core.analysis.dua.DuaClassCoverage;
+import org.jacoco.core.analysis.dua.DuaMethodCoverage;
+import org.jacoco.core.analysis.dua.IDua;
+import org.jacoco.core.analysis.dua.IDuaClassCoverage;
+import org.jacoco.core.analysis.dua.IDuaMethodCoverage;
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+
+import br.usp.each.saeg.jaguar.core.analysis.ClassAnalysisCache;
+import br.usp.each.saeg.jaguar.core.analysis.DuaCatalog;
+
+/**
+ * Checks the bit-sliced decoding against a stand-in of the data-flow analyzer,
+ * which reports a DUA as covered when the probe of its basic block chain is
+ * set. The probe of a chain is the offset of its method, the sum of the chain
+ * counts of the methods before it, plus the index of the chain in the method.
+ */
+public class DuaSliceAnalysisTest {
+
+	private static final String CLASS_NAME = "br/usp/each/saeg/Foo";
+
+	private final FooMethod[] methods = new FooMethod[] {
+			new FooMethod("<init>", 0, 3, 0, 2, -1, 1),
+			new FooMethod("<clinit>", Opcodes.ACC_STATIC, 5, 0, 4),
+			new FooMethod("abstractBar", Opcodes.ACC_ABSTRACT, 0),
+			new FooMethod("bar", 0, 100, 0, -1, 99, 42, 42, 63, 64, -1, 65),
+			new FooMethod("baz", Opcodes.ACC_STATIC, 40, 0, 7, 39, -1, 20),
+			new FooMethod("qux", 0, 4, 3, 2, 1, 0) };
+
+	// probes of the DUAs in the order they are reported
+	private final List<Integer> probes = new ArrayList<Integer>();
+
+	// chain index of the DUAs in the order they are reported
+	private final List<Integer> indexes = new ArrayList<Integer>();
+
+	public DuaSliceAnalysisTest() {
+		int offset = 0;
+		for (FooMethod method : methods) {
+			if (method.isSkipped()) {
+				continue;
+			}
+			for (int i = 0; i < method.chains.length; i++) {
+				if (method.chains[i] >= 0) {
+					probes.add(offset + method.chains[i]);
+					indexes.add(i);
+				}
+			}
+			offset += method.blockChains;
+		}
+	}
+
+	@Test
+	public void probesAreDecodedFromTheMethodOffsets() {
+		DuaCatalog catalog = ClassAnalysisCache.analyzeSlices(3, this::analyze);
+
+		Assert.assertEquals(CLASS_NAME, catalog.getClassName());
+		Assert.assertEquals(probes.size(), catalog.size());
+		for (int i = 0; i < probes.size(); i++) {
+			Assert.assertEquals(probes.get(i).intValue(), catalog.getProbe(i));
+			Assert.assertEquals(indexes.get(i).intValue(), catalog.getIndex(i));
+		}
+	}
+
+	@Test
+	public void coveredDuasMatchTheAnalyzer() {
+		DuaCatalog catalog = ClassAnalysisCache.analyzeSlices(3, this::analyze);
+		Random random = new Random(6300);
+
+		for (int run = 0; run < 50; run++) {
+			long[] hits = new long[] { random.nextLong(), random.nextLong(), random.nextLong() };
+			Assert.assertArrayEquals(expectedCovered(analyze(hits)), catalog.getCoveredDuas(hits));
+		}
+	}
+
+	@Test
+	public void missingAnalysisGivesNoCatalog() {
+		Assert.assertNull(ClassAnalysisCache.analyzeSlices(3, hits -> null));
+	}
+
+	/**
+	 * The DUAs covered according to the analyzer, in reporting order.
+	 */
+	private int[] expectedCovered(IDuaClassCoverage clazz) {
+		List<Integer> covered = new ArrayList<Integer>();
+		int k = 0;
+		for (IDuaMethodCoverage method : clazz.getMethods()) {
+			for (IDua dua : method.getDuas()) {
+				if (dua.getStatus() == ICounter.FULLY_COVERED && !dua.getVar().startsWith("random_")) {
+					covered.add(k);
+				}
+				k++;
+			}
+		}
+		int[] result = new int[covered.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = covered.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Mimics the data-flow analyzer: abstract methods and the static
+	 * initializer are skipped, only global chains are reported, and the index
+	 * of a DUA counts every chain of its method.
+	 */
+	private IDuaClassCoverage analyze(long[] hits) {
+		DuaClassCoverage clazz = new DuaClassCoverage(CLASS_NAME, 1L, null, "java/lang/Object", new String[0]);
+		int id = 0;
+		int offset = 0;
+		for (FooMethod method : methods) {
+			if (method.isSkipped()) {
+				continue;
+			}
+			DuaMethodCoverage coverage = new DuaMethodCoverage(id++, method.name, "()V", null, false);
+			for (int i = 0; i < method.chains.length; i++) {
+				if (method.chains[i] < 0) {
+					continue;
+				}
+				int probe = offset + method.chains[i];
+				boolean hit = (hits[probe >>> 6] & (1L << probe)) != 0;
+				String var = i == 0 ? "random_" + Math.random() : "x" + i;
+				coverage.addDua(new Dua(i, 10 + i, 20 + i, -1, var, hit ? ICounter.FULLY_COVERED : ICounter.NOT_COVERED));
+			}
+			clazz.addMethod(coverage);
+			offset += method.blockChains;
+		}
+		return clazz;
+	}
+
+	private static class FooMethod {
+
+		private final String name;
+		private final int access;
+		private final int blockChains;
+
+		// basic block chain of each def-use chain, negative if not global
+		private final int[] chains;
+
+		FooMethod(String name, int access, int blockChains, int... chains) {
+			this.name = name;
+			this.access = access;
+			this.blockChains = blockChains;
+			this.chains = chains;
+		}
+
+		boolean isSkipped() {
+			return (access & Opcodes.ACC_ABSTRACT) != 0 || "<clinit>".equals(name);
+		}
+
+	}
+
+}
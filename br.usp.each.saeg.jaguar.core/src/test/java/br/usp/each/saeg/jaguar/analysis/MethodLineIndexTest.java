@@ -0,0 +1,50 @@
+package br.usp.each.saeg.jaguar.analysis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import br.usp.each.saeg.jaguar.core.analysis.MethodLineIndex;
+
+public class MethodLineIndexTest {
+
+	// <init> 3-4, foo 6-20, lambda$foo$0 10-12, no lines, bar 22-30
+	private static final int[] FIRST = new int[] { 3, 6, 10, -1, 22 };
+	private static final int[] LAST = new int[] { 4, 20, 12, -1, 30 };
+
+	private final MethodLineIndex index = new MethodLineIndex(FIRST, LAST);
+
+	@Test
+	public void lineIsFoundInItsInterval() {
+		Assert.assertEquals(4, index.size());
+		Assert.assertEquals(0, index.find(3, m -> true));
+		Assert.assertEquals(1, index.find(6, m -> true));
+		Assert.assertEquals(1, index.find(20, m -> true));
+		Assert.assertEquals(4, index.find(30, m -> true));
+	}
+
+	@Test
+	public void lineOutOfEveryIntervalHasNoMethod() {
+		Assert.assertEquals(-1, index.find(1, m -> true));
+		Assert.assertEquals(-1, index.find(5, m -> true));
+		Assert.assertEquals(-1, index.find(21, m -> true));
+		Assert.assertEquals(-1, index.find(31, m -> true));
+	}
+
+	@Test
+	public void firstOwnerInDeclarationOrderWins() {
+		Assert.assertEquals(1, index.find(11, m -> true));
+		Assert.assertEquals(2, index.find(11, m -> m != 1));
+		Assert.assertEquals(1, index.find(14, m -> true));
+		Assert.assertEquals(-1, index.find(11, m -> false));
+	}
+
+	@Test
+	public void laterIntervalsDoNotHideEnclosingOnes() {
+		MethodLineIndex nested = new MethodLineIndex(new int[] { 1, 2, 3 }, new int[] { 100, 4, 5 });
+
+		Assert.assertEquals(0, nested.find(50, m -> true));
+		Assert.assertEquals(1, nested.find(4, m -> m != 0));
+		Assert.assertEquals(2, nested.find(5, m -> m != 0));
+	}
+
+}
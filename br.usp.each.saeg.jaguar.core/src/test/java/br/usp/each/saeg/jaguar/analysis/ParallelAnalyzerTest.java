@@ -0,0 +1,62 @@
+package br.usp.each.saeg.jaguar.analysis;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import br.usp.each.saeg.jaguar.core.analysis.ParallelAnalyzer;
+
+public class ParallelAnalyzerTest {
+
+	@Test
+	public void everyClassIsAnalyzedOnce() {
+		ParallelAnalyzer analyzer = new ParallelAnalyzer(4);
+		final AtomicIntegerArray visits = new AtomicIntegerArray(1000);
+		analyzer.forEach(visits.length(), i -> visits.incrementAndGet(i));
+		analyzer.shutdown();
+
+		for (int i = 0; i < visits.length(); i++) {
+			Assert.assertEquals(1, visits.get(i));
+		}
+	}
+
+	@Test
+	public void sequentialWhenParallelismIsOne() {
+		ParallelAnalyzer analyzer = new ParallelAnalyzer(1);
+		final Thread caller = Thread.currentThread();
+		final int[] order = new int[100];
+		final int[] next = new int[1];
+		analyzer.forEach(order.length, i -> {
+			Assert.assertSame(caller, Thread.currentThread());
+			order[next[0]++] = i;
+		});
+
+		Assert.assertEquals(1, analyzer.getParallelism());
+		for (int i = 0; i < order.length; i++) {
+			Assert.assertEquals(i, order[i]);
+		}
+	}
+
+	@Test
+	public void analysisAfterShutdownStartsThePoolAgain() {
+		ParallelAnalyzer analyzer = new ParallelAnalyzer(4);
+		final AtomicIntegerArray visits = new AtomicIntegerArray(100);
+		analyzer.forEach(visits.length(), i -> visits.incrementAndGet(i));
+		analyzer.shutdown();
+		analyzer.shutdown();
+		analyzer.forEach(visits.length(), i -> visits.incrementAndGet(i));
+		analyzer.shutdown();
+
+		Assert.assertEquals(4, analyzer.getParallelism());
+		for (int i = 0; i < visits.length(); i++) {
+			Assert.assertEquals(2, visits.get(i));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void parallelismMustBePositive() {
+		new ParallelAnalyzer(0);
+	}
+
+}
@@ -1,6 +1,8 @@
 package br.usp.each.saeg.jaguar.cli;
 
+import org.junit.Assert;
 import org.junit.Test;
+import org.kohsuke.args4j.CmdLineParser;
 
 import br.usp.each.saeg.jaguar.core.cli.JaguarRunnerOptions;
 
@@ -11,5 +13,39 @@ public class JaguarRunnerOptionsTest {
 		JaguarRunnerOptions jaguarRunnerOptions = new JaguarRunnerOptions();
 		System.out.println(jaguarRunnerOptions.toString());
 	}
-	
+
+	private static JaguarRunnerOptions parse(String... args) throws Exception {
+		final JaguarRunnerOptions options = new JaguarRunnerOptions();
+		new CmdLineParser(options).parseArgument(args);
+		return options;
+	}
+
+	private static void assertConflict(String message, String... args) throws Exception {
+		try {
+			parse(args).validate();
+			Assert.fail("Expected a conflict: " + message);
+		} catch (IllegalArgumentException e) {
+			Assert.assertEquals(message, e.getMessage());
+		}
+	}
+
+	@Test
+	public void compatibleOptionsAreValid() throws Exception {
+		parse("-p", ".").validate();
+		parse("-p", ".", "-cc", "cache", "-ff", "-cv", "5").validate();
+		parse("-p", ".", "-f", "4", "-df").validate();
+		parse("-p", ".", "-esc", "5").validate();
+	}
+
+	@Test
+	public void conflictingOptionsAreRejected() throws Exception {
+		assertConflict("The coarse-to-fine run can not escalate", "-p", ".", "-ctf", "5", "-esc", "5");
+		assertConflict("The escalation starts from control-flow coverage", "-p", ".", "-esc", "5", "-df");
+		assertConflict("Forked workers can not cache the coverage", "-p", ".", "-f", "2", "-cc", "cache");
+		assertConflict("The coverage can not be recorded and cached at once", "-p", ".", "-rec", "rec", "-cc", "cache");
+		assertConflict("The failing first run needs the covered classes of each test in the cache", "-p", ".", "-ff");
+		assertConflict("The rank can only converge in a failing first run, once every test that may fail has run",
+				"-p", ".", "-cc", "cache", "-cv", "5");
+	}
+
 }
@@ -0,0 +1,116 @@
+package br.usp.each.saeg.jaguar.fork;
+
+import static br.usp.each.saeg.jaguar.RequirementFixtures.line;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import br.usp.each.saeg.jaguar.core.Jaguar;
+import br.usp.each.saeg.jaguar.core.MethodSpectrum;
+import br.usp.each.saeg.jaguar.core.fork.ForkPool;
+import br.usp.each.saeg.jaguar.core.fork.ForkProtocol;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.AbstractTestRequirement;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.DuaTestRequirement;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.LineTestRequirement;
+
+public class ForkProtocolTest {
+
+	private static AbstractTestRequirement dua(int cef, int cep) {
+		AbstractTestRequirement requirement = new DuaTestRequirement("a/A", 2, 10, 11, 12, "x");
+		requirement.setClassFirstLine(0);
+		requirement.increaseFailed(cef);
+		requirement.increasePassed(cep);
+		return requirement;
+	}
+
+	private static void send(Jaguar parent, int nTests, int nTestsFailed, AbstractTestRequirement... requirements) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ForkProtocol.writeSpectrum(new DataOutputStream(bytes), nTests, nTestsFailed, Arrays.asList(requirements));
+		ForkProtocol.readSpectrum(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), parent);
+	}
+
+	@Test
+	public void partialSpectraAreSummed() throws Exception {
+		Jaguar parent = new Jaguar(new File("."));
+
+		send(parent, 3, 1, line(7, 1, 2), line(8, 0, 1), dua(1, 0));
+		send(parent, 2, 1, line(7, 1, 1), dua(0, 2));
+
+		Assert.assertEquals(5, parent.getnTests());
+		Assert.assertEquals(2, parent.getnTestsFailed());
+		Map<AbstractTestRequirement, AbstractTestRequirement> requirements = new HashMap<AbstractTestRequirement, AbstractTestRequirement>();
+		for (AbstractTestRequirement requirement : parent.getTestRequirements()) {
+			requirements.put(requirement, requirement);
+		}
+		Assert.assertEquals(3, requirements.size());
+
+		AbstractTestRequirement line7 = requirements.get(new LineTestRequirement("a/A", 7));
+		Assert.assertEquals(2, line7.getCef());
+		Assert.assertEquals(3, line7.getCep());
+		Assert.assertEquals("a.A.m()", line7.getMethodSignature());
+		Assert.assertEquals(Integer.valueOf(1), line7.getClassFirstLine());
+
+		AbstractTestRequirement dua = requirements.get(new DuaTestRequirement("a/A", 2, 10, 11, 12, "x"));
+		Assert.assertEquals(1, dua.getCef());
+		Assert.assertEquals(2, dua.getCep());
+		Assert.assertNull(dua.getMethodSignature());
+	}
+
+	@Test
+	public void partialMethodSpectraAreSummed() throws Exception {
+		Jaguar parent = new Jaguar(new File("."));
+		MethodSpectrum first = new MethodSpectrum();
+		int a1 = first.methodSlot("a/A", 1, "a.A.m1()");
+		int b1 = first.methodSlot("a/B", 1, "a.B.m1()");
+		first.addTest("T1", new int[] { a1, b1 }, true);
+		first.addTest("T2", new int[] { a1 }, false);
+		MethodSpectrum second = new MethodSpectrum();
+		int c1 = second.methodSlot("a/C", 1, "a.C.m1()");
+		a1 = second.methodSlot("a/A", 1, "a.A.m1()");
+		second.addTest("T2", new int[] { a1, c1 }, false);
+
+		for (MethodSpectrum methods : new MethodSpectrum[] { first, second }) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ForkProtocol.writeMethods(new DataOutputStream(bytes), 2, 1, methods);
+			ForkProtocol.readMethods(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), parent);
+		}
+
+		MethodSpectrum merged = parent.getMethodSpectrum();
+		Assert.assertEquals(4, parent.getnTests());
+		Assert.assertEquals(2, parent.getnTestsFailed());
+		Assert.assertEquals(3, merged.size());
+		int slot = merged.methodSlot("a/A", 1, "ignored");
+		Assert.assertEquals("a.A.m1()", merged.getSignature(slot));
+		Assert.assertEquals(1, merged.getCef(slot));
+		Assert.assertEquals(2, merged.getCep(slot));
+		Assert.assertTrue(merged.hasFailed("T1"));
+		Assert.assertFalse(merged.hasFailed("T2"));
+		Assert.assertEquals(new HashSet<String>(Arrays.asList("a/A", "a/C")), merged.getCoveredClasses("T2"));
+		Assert.assertTrue(parent.getTestRequirements().isEmpty());
+	}
+
+	@Test
+	public void agentPortIsReplaced() {
+		Assert.assertEquals("-javaagent:jacocoagent.jar=port=7000",
+				ForkPool.withAgentPort("-javaagent:jacocoagent.jar", 7000));
+		Assert.assertEquals("-javaagent:jacocoagent.jar=output=tcpserver,dataflow=true,port=7000",
+				ForkPool.withAgentPort("-javaagent:jacocoagent.jar=output=tcpserver,port=6300,dataflow=true", 7000));
+	}
+
+	@Test
+	public void agentIncludesAreReplaced() {
+		Assert.assertEquals("-javaagent:jacocoagent.jar=output=tcpserver,port=7000,includes=a.A:a.B",
+				ForkPool.withAgentOption("-javaagent:jacocoagent.jar=output=tcpserver,includes=a.*,port=7000", "includes", "a.A:a.B"));
+	}
+
+}
@@ -0,0 +1,72 @@
+package br.usp.each.saeg.jaguar.fork;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import br.usp.each.saeg.jaguar.core.fork.WorkQueues;
+
+public class WorkQueuesTest {
+
+	@Test
+	public void itemsAreShardedRoundRobin() {
+		WorkQueues queues = new WorkQueues(Arrays.asList("a", "b", "c", "d", "e"), 2);
+
+		Assert.assertEquals("a", queues.next(0));
+		Assert.assertEquals("b", queues.next(1));
+		Assert.assertEquals("c", queues.next(0));
+		Assert.assertEquals("d", queues.next(1));
+	}
+
+	@Test
+	public void idleWorkerStealsFromTheTailOfTheLongestQueue() {
+		WorkQueues queues = new WorkQueues(Arrays.asList("a", "b", "c", "d", "e", "f", "g"), 3);
+		// worker 0 has a, d, g; worker 1 has b, e; worker 2 has c, f
+		Assert.assertEquals("b", queues.next(1));
+		Assert.assertEquals("e", queues.next(1));
+		Assert.assertEquals("g", queues.next(1));
+		Assert.assertEquals("a", queues.next(0));
+		Assert.assertEquals("f", queues.next(1));
+		Assert.assertEquals("d", queues.next(0));
+		Assert.assertEquals("c", queues.next(0));
+		Assert.assertNull(queues.next(2));
+	}
+
+	@Test
+	public void everyItemIsTakenOnce() throws Exception {
+		List<String> items = new ArrayList<String>();
+		for (int i = 0; i < 1000; i++) {
+			items.add("t" + i);
+		}
+		final WorkQueues queues = new WorkQueues(items, 4);
+		ExecutorService workers = Executors.newFixedThreadPool(4);
+		List<Future<List<String>>> taken = new ArrayList<Future<List<String>>>();
+		for (int i = 0; i < 4; i++) {
+			final int worker = i;
+			taken.add(workers.submit(() -> {
+				List<String> mine = new ArrayList<String>();
+				for (String item = queues.next(worker); item != null; item = queues.next(worker)) {
+					mine.add(item);
+				}
+				return mine;
+			}));
+		}
+		List<String> all = new ArrayList<String>();
+		for (Future<List<String>> future : taken) {
+			all.addAll(future.get());
+		}
+		workers.shutdown();
+
+		Collections.sort(all);
+		Collections.sort(items);
+		Assert.assertEquals(items, all);
+	}
+
+}
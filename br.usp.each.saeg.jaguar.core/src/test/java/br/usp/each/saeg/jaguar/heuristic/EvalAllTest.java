@@ -0,0 +1,66 @@
+package br.usp.each.saeg.jaguar.heuristic;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import br.usp.each.saeg.jaguar.core.heuristic.DRTHeuristic;
+import br.usp.each.saeg.jaguar.core.heuristic.Heuristic;
+import br.usp.each.saeg.jaguar.core.heuristic.HeuristicCalculator;
+import br.usp.each.saeg.jaguar.core.heuristic.JaccardHeuristic;
+import br.usp.each.saeg.jaguar.core.heuristic.Kulczynski2Heuristic;
+import br.usp.each.saeg.jaguar.core.heuristic.McConHeuristic;
+import br.usp.each.saeg.jaguar.core.heuristic.MinusHeuristic;
+import br.usp.each.saeg.jaguar.core.heuristic.OchiaiHeuristic;
+import br.usp.each.saeg.jaguar.core.heuristic.OpHeuristic;
+import br.usp.each.saeg.jaguar.core.heuristic.TarantulaHeuristic;
+import br.usp.each.saeg.jaguar.core.heuristic.Wong3Heuristic;
+import br.usp.each.saeg.jaguar.core.heuristic.ZoltarHeuristic;
+
+public class EvalAllTest {
+
+	private static final int FAILED = 4;
+	private static final int PASSED = 13;
+
+	private static final Heuristic[] HEURISTICS = new Heuristic[] { new DRTHeuristic(), new JaccardHeuristic(),
+			new Kulczynski2Heuristic(), new McConHeuristic(), new MinusHeuristic(), new OchiaiHeuristic(), new OpHeuristic(),
+			new TarantulaHeuristic(), new Wong3Heuristic(), new ZoltarHeuristic() };
+
+	private final int[] cef;
+	private final int[] cep;
+
+	public EvalAllTest() {
+		int size = (FAILED + 2) * (PASSED + 2);
+		cef = new int[size];
+		cep = new int[size];
+		int i = 0;
+		for (int ef = -1; ef <= FAILED; ef++) {
+			for (int ep = -1; ep <= PASSED; ep++) {
+				cef[i] = ef;
+				cep[i] = ep;
+				i++;
+			}
+		}
+	}
+
+	private void assertSameAsEval(Heuristic heuristic) {
+		double[] out = HeuristicCalculator.evaluate(heuristic, cef, cep, FAILED, PASSED);
+		for (int i = 0; i < cef.length; i++) {
+			double expected = heuristic.eval(cef[i], FAILED - cef[i], cep[i], PASSED - cep[i]);
+			Assert.assertEquals(heuristic.getClass().getSimpleName() + " cef=" + cef[i] + " cep=" + cep[i],
+					Double.doubleToLongBits(expected), Double.doubleToLongBits(out[i]));
+		}
+	}
+
+	@Test
+	public void builtInHeuristicsMatchEval() {
+		for (Heuristic heuristic : HEURISTICS) {
+			assertSameAsEval(heuristic);
+		}
+	}
+
+	@Test
+	public void defaultImplementationCallsEval() {
+		assertSameAsEval((cef, cnf, cep, cnp) -> cef * 100 + cnf * 10 + cep - cnp);
+	}
+
+}
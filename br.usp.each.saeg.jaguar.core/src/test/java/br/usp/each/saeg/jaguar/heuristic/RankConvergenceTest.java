@@ -0,0 +1,76 @@
+package br.usp.each.saeg.jaguar.heuristic;
+
+import static br.usp.each.saeg.jaguar.RequirementFixtures.line;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import br.usp.each.saeg.jaguar.core.heuristic.OpHeuristic;
+import br.usp.each.saeg.jaguar.core.heuristic.Rank;
+import br.usp.each.saeg.jaguar.core.heuristic.RankConvergence;
+import br.usp.each.saeg.jaguar.core.heuristic.RankEngine;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.AbstractTestRequirement;
+
+public class RankConvergenceTest {
+
+	private static final int FAILED = 2;
+	private static final int PASSED = 4;
+
+	/**
+	 * @param counts
+	 *            the cef and cep of lines 10, 11 and so on
+	 */
+	private static Rank rank(int top, int... counts) {
+		List<AbstractTestRequirement> requirements = new ArrayList<AbstractTestRequirement>();
+		for (int i = 0; i < counts.length; i += 2) {
+			requirements.add(line(10 + i / 2, counts[i], counts[i + 1]));
+		}
+		return new RankEngine(requirements, PASSED, FAILED).rank(new OpHeuristic(), top);
+	}
+
+	@Test
+	public void sameTopConvergesAfterTheWindow() {
+		RankConvergence convergence = new RankConvergence(2, 1, 1);
+		Assert.assertFalse(convergence.checkpoint(rank(0, 2, 0, 1, 1, 0, 4)));
+		Assert.assertEquals(0, convergence.getnStable());
+		Assert.assertFalse(convergence.checkpoint(rank(0, 2, 0, 1, 1, 0, 4)));
+		Assert.assertEquals(1.0, convergence.getOverlap(), 0.0001);
+		Assert.assertEquals(1.0, convergence.getKendallTau(), 0.0001);
+		Assert.assertTrue(convergence.checkpoint(rank(0, 2, 1, 1, 2, 0, 4)));
+		Assert.assertTrue(convergence.hasConverged());
+		Assert.assertEquals(3, convergence.getnCheckpoints());
+	}
+
+	@Test
+	public void newRequirementInTheTopResetsTheWindow() {
+		RankConvergence convergence = new RankConvergence(2, 1, 1);
+		convergence.checkpoint(rank(2, 2, 0, 1, 1, 0, 4));
+		Assert.assertFalse(convergence.checkpoint(rank(2, 2, 0, 1, 1, 0, 4)));
+		Assert.assertEquals(1, convergence.getnStable());
+
+		Assert.assertFalse(convergence.checkpoint(rank(2, 2, 0, 0, 1, 1, 0)));
+		Assert.assertEquals(0.5, convergence.getOverlap(), 0.0001);
+		Assert.assertEquals(0, convergence.getnStable());
+	}
+
+	@Test
+	public void swappedRequirementsLowerTheKendallTau() {
+		RankConvergence convergence = new RankConvergence(1, 1, 0.5);
+		convergence.checkpoint(rank(0, 2, 0, 1, 1, 0, 4));
+		Assert.assertFalse(convergence.checkpoint(rank(0, 1, 1, 2, 0, 0, 4)));
+		Assert.assertEquals(1.0, convergence.getOverlap(), 0.0001);
+		Assert.assertEquals(1.0 / 3, convergence.getKendallTau(), 0.0001);
+	}
+
+	@Test
+	public void orderOfTiesDoesNotCount() {
+		RankConvergence convergence = new RankConvergence(1, 1, 1);
+		convergence.checkpoint(rank(0, 2, 0, 2, 0, 0, 4));
+		Assert.assertTrue(convergence.checkpoint(rank(0, 2, 1, 2, 1, 0, 4)));
+		Assert.assertEquals(1.0, convergence.getKendallTau(), 0.0001);
+	}
+
+}
@@ -0,0 +1,159 @@
+package br.usp.each.saeg.jaguar.heuristic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import br.usp.each.saeg.jaguar.core.heuristic.DRTHeuristic;
+import br.usp.each.saeg.jaguar.core.heuristic.Heuristic;
+import br.usp.each.saeg.jaguar.core.heuristic.HeuristicCalculator;
+import br.usp.each.saeg.jaguar.core.heuristic.OchiaiHeuristic;
+import br.usp.each.saeg.jaguar.core.heuristic.OpHeuristic;
+import br.usp.each.saeg.jaguar.core.heuristic.Rank;
+import br.usp.each.saeg.jaguar.core.heuristic.RankEngine;
+import br.usp.each.saeg.jaguar.core.heuristic.TarantulaHeuristic;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.AbstractTestRequirement;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.DuaTestRequirement;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.LineTestRequirement;
+
+public class RankEngineTest {
+
+	private static final int FAILED = 3;
+	private static final int PASSED = 8;
+
+	private static final Heuristic[] HEURISTICS = new Heuristic[] { new DRTHeuristic(), new OchiaiHeuristic(), new OpHeuristic(),
+			new TarantulaHeuristic() };
+
+	/**
+	 * Few distinct cef/cep values, so there are many ties.
+	 */
+	private static List<AbstractTestRequirement> spectrum() {
+		Random random = new Random(42);
+		List<AbstractTestRequirement> requirements = new ArrayList<AbstractTestRequirement>();
+		for (int i = 0; i < 300; i++) {
+			AbstractTestRequirement requirement = i % 3 == 0 ? new DuaTestRequirement("a/A", i, i, i + 1, -1, "x")
+					: new LineTestRequirement("a/B", i);
+			requirement.setMethodSignature("m" + (i % 5) + "()");
+			requirement.increaseFailed(random.nextInt(FAILED + 1));
+			requirement.increasePassed(random.nextInt(PASSED + 1));
+			requirements.add(requirement);
+		}
+		return requirements;
+	}
+
+	/**
+	 * The rank as HeuristicCalculator used to calculate it, over the
+	 * requirement objects themselves.
+	 */
+	private static ArrayList<AbstractTestRequirement> reference(Heuristic heuristic) {
+		return reference(heuristic, PASSED, FAILED);
+	}
+
+	private static ArrayList<AbstractTestRequirement> reference(Heuristic heuristic, int passed, int failed) {
+		ArrayList<AbstractTestRequirement> rank = new ArrayList<AbstractTestRequirement>(spectrum());
+		for (AbstractTestRequirement requirement : rank) {
+			requirement.setCnf(failed - requirement.getCef());
+			requirement.setCnp(passed - requirement.getCep());
+			requirement.setSuspiciousness(
+					heuristic.eval(requirement.getCef(), requirement.getCnf(), requirement.getCep(), requirement.getCnp()));
+		}
+		Collections.sort(rank);
+		Collections.reverse(rank);
+		new HeuristicCalculator(heuristic, rank, passed, failed).normalize(rank);
+		return rank;
+	}
+
+	private static void assertSameRank(List<AbstractTestRequirement> expected, List<AbstractTestRequirement> actual) {
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertEquals(expected.get(i), actual.get(i));
+			Assert.assertEquals(expected.get(i).getSuspiciousness(), actual.get(i).getSuspiciousness(), 0.0);
+			Assert.assertEquals(expected.get(i).getCnf(), actual.get(i).getCnf());
+			Assert.assertEquals(expected.get(i).getCnp(), actual.get(i).getCnp());
+			Assert.assertEquals(expected.get(i).getMethodSignature(), actual.get(i).getMethodSignature());
+		}
+	}
+
+	@Test
+	public void rankIsTheSameOfHeuristicCalculator() {
+		List<AbstractTestRequirement> requirements = spectrum();
+		RankEngine engine = new RankEngine(requirements, PASSED, FAILED);
+
+		for (Heuristic heuristic : HEURISTICS) {
+			assertSameRank(reference(heuristic), engine.rank(heuristic).toRequirements());
+			assertSameRank(reference(heuristic), new HeuristicCalculator(heuristic, requirements, PASSED, FAILED).calculateRank());
+		}
+		for (AbstractTestRequirement requirement : requirements) {
+			Assert.assertEquals(0.0, requirement.getSuspiciousness(), 0.0);
+		}
+	}
+
+	@Test
+	public void heuristicsAreEvaluatedOncePerPair() {
+		Assert.assertEquals((FAILED + 1) * (PASSED + 1), new RankEngine(spectrum(), PASSED, FAILED).getnPairs());
+	}
+
+	@Test
+	public void pairsOutOfTheTableAreHashed() {
+		// cef up to 3 with 1 failed test, and a table too large to be dense
+		for (int passed : new int[] { PASSED, 1 << 21 }) {
+			RankEngine engine = new RankEngine(spectrum(), passed, 1);
+			Assert.assertEquals((FAILED + 1) * (PASSED + 1), engine.getnPairs());
+			for (Heuristic heuristic : HEURISTICS) {
+				assertSameRank(reference(heuristic, passed, 1), engine.rank(heuristic).toRequirements());
+			}
+		}
+	}
+
+	@Test
+	public void everyHeuristicIsRankedInParallel() throws Exception {
+		RankEngine engine = new RankEngine(spectrum(), PASSED, FAILED);
+		Map<Heuristic, Rank> ranks = new ConcurrentHashMap<Heuristic, Rank>();
+
+		engine.rankAll(HEURISTICS, rank -> ranks.put(rank.getHeuristic(), rank), 4);
+
+		Assert.assertEquals(HEURISTICS.length, ranks.size());
+		for (Heuristic heuristic : HEURISTICS) {
+			assertSameRank(reference(heuristic), ranks.get(heuristic).toRequirements());
+		}
+	}
+
+	@Test
+	public void topIsThePrefixOfTheRankWithItsTies() {
+		RankEngine engine = new RankEngine(spectrum(), PASSED, FAILED);
+
+		for (Heuristic heuristic : HEURISTICS) {
+			List<AbstractTestRequirement> full = reference(heuristic);
+			for (int top : new int[] { 1, 7, 50, 299 }) {
+				List<AbstractTestRequirement> rank = engine.rank(heuristic, top).toRequirements();
+
+				int size = top;
+				while (size < full.size()
+						&& full.get(size).getSuspiciousness() == full.get(top - 1).getSuspiciousness()) {
+					size++;
+				}
+				assertSameRank(full.subList(0, size), rank);
+			}
+			assertSameRank(full, engine.rank(heuristic, full.size() + 1).toRequirements());
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void consumerFailureIsThrown() throws Exception {
+		new RankEngine(spectrum(), PASSED, FAILED).rankAll(HEURISTICS, rank -> {
+			throw new IllegalStateException();
+		}, 2);
+	}
+
+	@Test
+	public void emptySpectrumHasEmptyRank() {
+		Assert.assertTrue(new RankEngine(new ArrayList<AbstractTestRequirement>(), PASSED, FAILED).rank(HEURISTICS[0]).toRequirements().isEmpty());
+	}
+
+}
@@ -0,0 +1,91 @@
+package br.usp.each.saeg.jaguar.heuristic;
+
+import static br.usp.each.saeg.jaguar.RequirementFixtures.line;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import br.usp.each.saeg.jaguar.core.heuristic.OpHeuristic;
+import br.usp.each.saeg.jaguar.core.heuristic.Rank;
+import br.usp.each.saeg.jaguar.core.heuristic.RankEngine;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.AbstractTestRequirement;
+
+public class RankTest {
+
+	private static final int FAILED = 2;
+	private static final int PASSED = 4;
+
+	private List<AbstractTestRequirement> requirements;
+	private Rank rank;
+
+	/**
+	 * Op scores are cef - cep / (totalPassed + 1): 1.6, 2.0, 2.0, -0.8 and 0.8.
+	 */
+	@Before
+	public void setUp() {
+		requirements = new ArrayList<AbstractTestRequirement>();
+		requirements.add(line(10, 2, 2));
+		requirements.add(line(11, 2, 0));
+		requirements.add(line(12, 2, 0));
+		requirements.add(line(13, 0, 4));
+		requirements.add(line(14, 1, 1));
+		rank = new RankEngine(requirements, PASSED, FAILED).rank(new OpHeuristic());
+	}
+
+	@Test
+	public void positionsHaveRequirementIdsAndScores() {
+		Assert.assertEquals(5, rank.size());
+		Assert.assertArrayEquals(new int[] { 2, 1, 0, 4, 3 }, new int[] { rank.getRequirementId(0), rank.getRequirementId(1),
+				rank.getRequirementId(2), rank.getRequirementId(3), rank.getRequirementId(4) });
+		Assert.assertSame(requirements.get(2), rank.getRequirement(0));
+		Assert.assertEquals(2.0, rank.getScore(0), 0.0001);
+		Assert.assertEquals(1.6, rank.getScore(2), 0.0001);
+		Assert.assertEquals(-0.8, rank.getScore(4), 0.0001);
+	}
+
+	@Test
+	public void scoresAreNormalized() {
+		Assert.assertEquals(1.0, rank.getSuspiciousness(0), 0.0001);
+		Assert.assertEquals(1.0, rank.getSuspiciousness(1), 0.0001);
+		Assert.assertEquals(2.4 / 2.8, rank.getSuspiciousness(2), 0.0001);
+		Assert.assertEquals(0.0, rank.getSuspiciousness(4), 0.0001);
+	}
+
+	@Test
+	public void tiesShareTheFirstPosition() {
+		Assert.assertEquals(0, rank.getTiePosition(0));
+		Assert.assertEquals(0, rank.getTiePosition(1));
+		Assert.assertEquals(2, rank.getTiePosition(2));
+		Assert.assertEquals(3, rank.getTiePosition(3));
+		Assert.assertEquals(4, rank.getTiePosition(4));
+	}
+
+	@Test
+	public void requirementsAreCopies() {
+		List<AbstractTestRequirement> copies = rank.toRequirements();
+
+		Assert.assertEquals(requirements.get(2), copies.get(0));
+		Assert.assertNotSame(requirements.get(2), copies.get(0));
+		Assert.assertEquals(1.0, copies.get(0).getSuspiciousness(), 0.0001);
+		Assert.assertEquals(0, copies.get(0).getCnf());
+		Assert.assertEquals(4, copies.get(0).getCnp());
+
+		copies.get(0).setSuspiciousness(0.5);
+		Assert.assertEquals(1.0, rank.getSuspiciousness(0), 0.0001);
+		Assert.assertEquals(1.0, rank.toRequirements().get(0).getSuspiciousness(), 0.0001);
+	}
+
+	@Test
+	public void spectrumIsNotModified() {
+		for (AbstractTestRequirement requirement : requirements) {
+			Assert.assertEquals(0.0, requirement.getSuspiciousness(), 0.0);
+			Assert.assertEquals(0, requirement.getCnf());
+			Assert.assertEquals(0, requirement.getCnp());
+		}
+	}
+
+}
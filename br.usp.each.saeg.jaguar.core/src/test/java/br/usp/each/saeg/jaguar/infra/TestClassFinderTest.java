@@ -0,0 +1,67 @@
+package br.usp.each.saeg.jaguar.infra;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import br.usp.each.saeg.jaguar.core.utils.FileUtils;
+import br.usp.each.saeg.jaguar.core.utils.TestClassFinder;
+
+public class TestClassFinderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final File testDir = FileUtils.findClassDir(getClass());
+
+	@Test
+	public void findsTheSameClassesAsReflection() throws Exception {
+		final TestClassFinder finder = new TestClassFinder(testDir, null);
+
+		Assert.assertArrayEquals(FileUtils.findAnnotatedTestClasses(testDir), finder.findAnnotatedTestClasses());
+		Assert.assertArrayEquals(FileUtils.findTestCaseClasses(testDir), finder.findTestCaseClasses());
+		Assert.assertTrue(Arrays.asList(finder.findAnnotatedTestClasses()).contains(getClass()));
+		Assert.assertEquals(finder.getnClassFiles(), finder.getnRead());
+	}
+
+	@Test
+	public void loadsOnlyTheTestClasses() throws Exception {
+		final TestClassFinder finder = new TestClassFinder(testDir, null);
+		final Class<?>[] classes = finder.findAnnotatedTestClasses();
+
+		Assert.assertEquals(finder.getnLoaded(), (int) Arrays.stream(classes).distinct().count());
+		Assert.assertTrue(finder.getnLoaded() < finder.getnClassFiles());
+	}
+
+	@Test
+	public void readsOnlyTheChangedClassFiles() throws Exception {
+		final File dir = folder.newFolder("classes");
+		final File pkg = new File(dir, "br/usp/each/saeg/jaguar/infra");
+		pkg.mkdirs();
+		for (String name : new String[] { "FileUtilsTest.class", "TestClassFinderTest.class" }) {
+			Files.copy(new File(testDir, "br/usp/each/saeg/jaguar/infra/" + name).toPath(), new File(pkg, name).toPath());
+		}
+		final File index = new File(folder.getRoot(), "tests.index");
+
+		final TestClassFinder first = new TestClassFinder(dir, index);
+		final Class<?>[] classes = first.findAnnotatedTestClasses();
+		Assert.assertEquals(2, first.getnRead());
+		Assert.assertTrue(index.isFile());
+
+		final TestClassFinder second = new TestClassFinder(dir, index);
+		Assert.assertArrayEquals(classes, second.findAnnotatedTestClasses());
+		Assert.assertEquals(0, second.getnRead());
+
+		final File changed = new File(pkg, "FileUtilsTest.class");
+		changed.setLastModified(changed.lastModified() - 10000);
+		final TestClassFinder third = new TestClassFinder(dir, index);
+		Assert.assertArrayEquals(classes, third.findAnnotatedTestClasses());
+		Assert.assertEquals(1, third.getnRead());
+	}
+
+}
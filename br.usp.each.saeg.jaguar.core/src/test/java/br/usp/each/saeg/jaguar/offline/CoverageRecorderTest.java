@@ -0,0 +1,107 @@
+package br.usp.each.saeg.jaguar.offline;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jacoco.core.data.AbstractExecutionDataStore;
+import org.jacoco.core.data.ControlFlowExecutionData;
+import org.jacoco.core.data.ControlFlowExecutionDataStore;
+import org.jacoco.core.data.DataFlowExecutionData;
+import org.jacoco.core.data.DataFlowExecutionDataStore;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import br.usp.each.saeg.jaguar.core.offline.CoverageRecorder;
+import br.usp.each.saeg.jaguar.core.offline.CoverageSegments;
+import br.usp.each.saeg.jaguar.core.offline.RecordedTest;
+
+public class CoverageRecorderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static AbstractExecutionDataStore store(boolean... probes) {
+		AbstractExecutionDataStore store = new ControlFlowExecutionDataStore();
+		store.put(new ControlFlowExecutionData(1, "a/A", probes));
+		store.put(new ControlFlowExecutionData(2, "a/B", new boolean[3]));
+		return store;
+	}
+
+	@Test
+	public void recordedTestsAreReadBackInOrder() throws Exception {
+		File dir = folder.newFolder("record");
+		try (CoverageRecorder recorder = new CoverageRecorder(dir)) {
+			recorder.record("t1", false, store(true, false));
+			recorder.record("t2", true, store(false, true));
+		}
+
+		List<RecordedTest> tests = CoverageSegments.read(dir);
+
+		Assert.assertEquals(2, tests.size());
+		Assert.assertFalse(tests.get(0).isFailed());
+		Assert.assertTrue(tests.get(1).isFailed());
+		AbstractExecutionDataStore second = tests.get(1).read(false);
+		Assert.assertTrue(Arrays.equals(new boolean[] { false, true }, second.get(1).getProbes()));
+		// classes without hits are not recorded
+		Assert.assertNull(second.get(2));
+	}
+
+	@Test
+	public void segmentsRollAndNewRecordersAppend() throws Exception {
+		File dir = folder.newFolder("record");
+		try (CoverageRecorder recorder = new CoverageRecorder(dir, 64)) {
+			for (int i = 0; i < 5; i++) {
+				recorder.record("t" + i, false, store(true));
+			}
+		}
+		int segments = CoverageSegments.list(dir).length;
+		Assert.assertTrue(segments > 1);
+
+		try (CoverageRecorder recorder = new CoverageRecorder(dir)) {
+			recorder.record("t5", true, store(true));
+		}
+
+		Assert.assertEquals(segments + 1, CoverageSegments.list(dir).length);
+		List<RecordedTest> tests = CoverageSegments.read(dir);
+		Assert.assertEquals(6, tests.size());
+		Assert.assertTrue(tests.get(5).isFailed());
+	}
+
+	@Test
+	public void truncatedRecordIsIgnored() throws Exception {
+		File dir = folder.newFolder("record");
+		try (CoverageRecorder recorder = new CoverageRecorder(dir)) {
+			recorder.record("t1", false, store(true));
+			recorder.record("t2", false, store(true));
+		}
+		File segment = CoverageSegments.list(dir)[0];
+		try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+			file.setLength(file.length() - 3);
+		}
+
+		Assert.assertEquals(1, CoverageSegments.read(dir).size());
+	}
+
+	@Test
+	public void dataFlowProbesAreRecordedAsWords() throws Exception {
+		File dir = folder.newFolder("record");
+		AbstractExecutionDataStore store = new DataFlowExecutionDataStore();
+		store.put(new DataFlowExecutionData(1, "a/A", new long[] { 5L, 1L << 63 }));
+		try (CoverageRecorder recorder = new CoverageRecorder(dir)) {
+			recorder.record("t1", false, store);
+		}
+
+		ControlFlowExecutionData data = CoverageSegments.read(dir).get(0).read(true).get(1);
+
+		Assert.assertEquals(128, data.getProbes().length);
+		Assert.assertTrue(data.getProbes()[0]);
+		Assert.assertFalse(data.getProbes()[1]);
+		Assert.assertTrue(data.getProbes()[2]);
+		Assert.assertTrue(data.getProbes()[127]);
+	}
+
+}
@@ -0,0 +1,81 @@
+package br.usp.each.saeg.jaguar.offline;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jacoco.core.data.AbstractExecutionDataStore;
+import org.jacoco.core.data.ControlFlowExecutionData;
+import org.jacoco.core.data.ControlFlowExecutionDataStore;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import br.usp.each.saeg.jaguar.core.Jaguar;
+import br.usp.each.saeg.jaguar.core.offline.CoverageRecorder;
+import br.usp.each.saeg.jaguar.core.offline.CoverageReplayer;
+import br.usp.each.saeg.jaguar.core.offline.CoverageSegments;
+
+public class CoverageReplayerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Counts the hits of the first probe of class 1 in failed tests.
+	 */
+	private static class CountingJaguar extends Jaguar {
+
+		private final AtomicInteger collected = new AtomicInteger();
+		private final AtomicInteger failedHits = new AtomicInteger();
+
+		CountingJaguar() {
+			super(new File("."));
+		}
+
+		@Override
+		public void collect(AbstractExecutionDataStore executionData, boolean currentTestFailed) {
+			collected.incrementAndGet();
+			if (currentTestFailed && executionData.get(1).getProbes()[0]) {
+				failedHits.incrementAndGet();
+			}
+		}
+	}
+
+	@Test
+	public void everyRecordedTestIsCollected() throws Exception {
+		File dir = folder.newFolder("record");
+		try (CoverageRecorder recorder = new CoverageRecorder(dir, 1024)) {
+			for (int i = 0; i < 40; i++) {
+				AbstractExecutionDataStore store = new ControlFlowExecutionDataStore();
+				store.put(new ControlFlowExecutionData(1, "a/A", new boolean[] { i % 2 == 0, true }));
+				recorder.record("t" + i, i % 4 == 0, store);
+			}
+		}
+
+		CountingJaguar jaguar = new CountingJaguar();
+		new CoverageReplayer(jaguar, false, 4).replay(CoverageSegments.read(dir));
+
+		Assert.assertEquals(40, jaguar.collected.get());
+		Assert.assertEquals(40, jaguar.getnTests());
+		Assert.assertEquals(10, jaguar.getnTestsFailed());
+		Assert.assertEquals(10, jaguar.failedHits.get());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void collectFailureIsReported() throws Exception {
+		File dir = folder.newFolder("record");
+		try (CoverageRecorder recorder = new CoverageRecorder(dir)) {
+			recorder.record("t1", false, new ControlFlowExecutionDataStore());
+		}
+		Jaguar jaguar = new Jaguar(new File(".")) {
+			@Override
+			public void collect(AbstractExecutionDataStore executionData, boolean currentTestFailed) {
+				throw new RuntimeException("analysis failed");
+			}
+		};
+
+		new CoverageReplayer(jaguar, false, 2).replay(CoverageSegments.read(dir));
+	}
+
+}
@@ -0,0 +1,73 @@
+package br.usp.each.saeg.jaguar.offline;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+
+import org.jacoco.core.data.ControlFlowExecutionData;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.data.SessionInfo;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import br.usp.each.saeg.jaguar.core.offline.CoverageRecorder;
+import br.usp.each.saeg.jaguar.core.offline.CoverageSegments;
+import br.usp.each.saeg.jaguar.core.offline.ExecFileImporter;
+import br.usp.each.saeg.jaguar.core.offline.RecordedTest;
+
+public class ExecFileImporterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void eachSessionIsOneTest() throws Exception {
+		File exec = folder.newFile("tests.exec");
+		try (OutputStream out = new FileOutputStream(exec)) {
+			ExecutionDataWriter writer = new ExecutionDataWriter(out);
+			writer.visitSessionInfo(new SessionInfo("passing", 0, 1));
+			writer.visitClassExecution(new ControlFlowExecutionData(1, "a/A", new boolean[] { true, false }));
+			writer.visitSessionInfo(new SessionInfo("empty", 0, 1));
+			writer.visitSessionInfo(new SessionInfo("failing", 0, 1));
+			writer.visitClassExecution(new ControlFlowExecutionData(1, "a/A", new boolean[] { false, true }));
+			writer.visitClassExecution(new ControlFlowExecutionData(2, "a/B", new boolean[] { true }));
+			writer.flush();
+		}
+
+		File dir = folder.newFolder("record");
+		try (CoverageRecorder recorder = new CoverageRecorder(dir)) {
+			Assert.assertEquals(3, new ExecFileImporter(recorder, Collections.singleton("failing")).importFile(exec));
+		}
+
+		List<RecordedTest> tests = CoverageSegments.read(dir);
+		Assert.assertEquals(3, tests.size());
+		Assert.assertFalse(tests.get(0).isFailed());
+		Assert.assertTrue(tests.get(1).read(false).getContents().isEmpty());
+		Assert.assertTrue(tests.get(2).isFailed());
+		Assert.assertEquals(2, tests.get(2).read(false).getContents().size());
+	}
+
+	@Test
+	public void dataWithoutSessionIsNamedByTheFile() throws Exception {
+		File exec = folder.newFile("single.exec");
+		try (OutputStream out = new FileOutputStream(exec)) {
+			ExecutionDataWriter writer = new ExecutionDataWriter(out);
+			writer.visitClassExecution(new ControlFlowExecutionData(1, "a/A", new boolean[] { true }));
+			writer.flush();
+		}
+
+		File dir = folder.newFolder("record");
+		try (CoverageRecorder recorder = new CoverageRecorder(dir)) {
+			new ExecFileImporter(recorder, Collections.singleton("single.exec")).importFile(exec);
+		}
+
+		List<RecordedTest> tests = CoverageSegments.read(dir);
+		Assert.assertEquals(1, tests.size());
+		Assert.assertTrue(tests.get(0).isFailed());
+	}
+
+}
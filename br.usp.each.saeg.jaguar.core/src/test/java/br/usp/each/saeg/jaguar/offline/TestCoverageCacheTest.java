@@ -0,0 +1,181 @@
+package br.usp.each.saeg.jaguar.offline;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import org.jacoco.core.data.AbstractExecutionDataStore;
+import org.jacoco.core.data.ControlFlowExecutionData;
+import org.jacoco.core.data.ControlFlowExecutionDataStore;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import br.usp.each.saeg.jaguar.core.offline.RecordedTest;
+import br.usp.each.saeg.jaguar.core.offline.TestCoverageCache;
+
+public class TestCoverageCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File dir;
+	private File classes;
+	private Function<String, File> classFiles;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = new File(folder.getRoot(), "cache");
+		classes = folder.newFolder("classes");
+		classFiles = className -> new File(classes, className + ".class");
+		write("a/A", "A");
+		write("a/B", "B");
+		write("t/T", "T");
+	}
+
+	private void write(String className, String content) throws Exception {
+		File file = classFiles.apply(className);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static AbstractExecutionDataStore store(String className) {
+		AbstractExecutionDataStore store = new ControlFlowExecutionDataStore();
+		store.put(new ControlFlowExecutionData(1, className, new boolean[] { true, false }));
+		store.put(new ControlFlowExecutionData(2, "a/Unused", new boolean[2]));
+		return store;
+	}
+
+	private void firstRun() throws Exception {
+		TestCoverageCache cache = new TestCoverageCache(dir, classFiles);
+		Assert.assertFalse(cache.isFresh("a(t.T)"));
+		cache.put("a(t.T)", "t.T", false, store("a/A"));
+		cache.put("b(t.T)", "t.T", false, store("a/B"));
+		cache.put("f(t.T)", "t.T", true, store("a/A"));
+		cache.save();
+	}
+
+	@Test
+	public void unchangedTestsAreFresh() throws Exception {
+		firstRun();
+
+		TestCoverageCache cache = new TestCoverageCache(dir, classFiles);
+		Assert.assertEquals(3, cache.getnCached());
+		Assert.assertTrue(cache.isFresh("a(t.T)"));
+		Assert.assertTrue(cache.isFresh("b(t.T)"));
+		Assert.assertTrue(cache.isFresh("a(t.T)"));
+		// failed tests always run again
+		Assert.assertFalse(cache.isFresh("f(t.T)"));
+		Assert.assertFalse(cache.isFresh("new(t.T)"));
+
+		List<RecordedTest> reused = cache.getReusedTests();
+		Assert.assertEquals(2, reused.size());
+		Assert.assertFalse(reused.get(0).isFailed());
+		AbstractExecutionDataStore coverage = reused.get(0).read(false);
+		Assert.assertTrue(Arrays.equals(new boolean[] { true, false }, coverage.get(1).getProbes()));
+		Assert.assertNull(coverage.get(2));
+	}
+
+	@Test
+	public void reusedTestsCanBeLimitedToTheClassesOfFailedTests() throws Exception {
+		firstRun();
+
+		TestCoverageCache cache = new TestCoverageCache(dir, classFiles);
+		Assert.assertTrue(cache.isFresh("a(t.T)"));
+		Assert.assertTrue(cache.isFresh("b(t.T)"));
+		Assert.assertFalse(cache.isFresh("f(t.T)"));
+		Assert.assertTrue(cache.getFailedTestsClasses().isEmpty());
+
+		cache.put("f(t.T)", "t.T", true, store("a/B"));
+
+		Assert.assertEquals(Collections.singleton("a/B"), cache.getFailedTestsClasses());
+		Assert.assertEquals(2, cache.getnReused());
+		List<RecordedTest> reused = cache.getReusedTests(cache.getFailedTestsClasses());
+		Assert.assertEquals(1, reused.size());
+		Assert.assertNotNull(reused.get(0).read(false).get(1));
+		Assert.assertEquals("a/B", reused.get(0).read(false).get(1).getName());
+		// the test class is not part of the footprint
+		Assert.assertTrue(cache.getReusedTests(Collections.singleton("t/T")).isEmpty());
+	}
+
+	@Test
+	public void testsOfChangedClassesAreStale() throws Exception {
+		firstRun();
+		write("a/A", "A2");
+
+		TestCoverageCache cache = new TestCoverageCache(dir, classFiles);
+		Assert.assertFalse(cache.isFresh("a(t.T)"));
+		Assert.assertTrue(cache.isFresh("b(t.T)"));
+	}
+
+	@Test
+	public void testsOfChangedTestClassesAreStale() throws Exception {
+		firstRun();
+		write("t/T", "T2");
+
+		TestCoverageCache cache = new TestCoverageCache(dir, classFiles);
+		Assert.assertFalse(cache.isFresh("a(t.T)"));
+		Assert.assertFalse(cache.isFresh("b(t.T)"));
+	}
+
+	@Test
+	public void savedCacheKeepsOnlyReusedAndRunTests() throws Exception {
+		firstRun();
+
+		TestCoverageCache cache = new TestCoverageCache(dir, classFiles);
+		Assert.assertTrue(cache.isFresh("a(t.T)"));
+		cache.put("f(t.T)", "t.T", false, store("a/A"));
+		cache.save();
+
+		cache = new TestCoverageCache(dir, classFiles);
+		Assert.assertEquals(2, cache.getnCached());
+		Assert.assertTrue(cache.isFresh("a(t.T)"));
+		Assert.assertTrue(cache.isFresh("f(t.T)"));
+		Assert.assertFalse(cache.isFresh("b(t.T)"));
+	}
+
+	@Test
+	public void staleTestsAreSelectedByTheirCachedCoverage() throws Exception {
+		firstRun();
+		write("a/A", "A2");
+
+		TestCoverageCache cache = new TestCoverageCache(dir, classFiles);
+		Assert.assertTrue(cache.isCached("a(t.T)"));
+		Assert.assertFalse(cache.isCached("new(t.T)"));
+		Assert.assertTrue(cache.hasFailed("f(t.T)"));
+		Assert.assertFalse(cache.hasFailed("a(t.T)"));
+		Assert.assertFalse(cache.hasFailed("new(t.T)"));
+		// stale, but its cached coverage is still known
+		Assert.assertFalse(cache.isFresh("a(t.T)"));
+		Assert.assertTrue(cache.covered("a(t.T)", Collections.singleton("a/A")));
+		Assert.assertFalse(cache.covered("a(t.T)", Collections.singleton("a/B")));
+		Assert.assertFalse(cache.covered("new(t.T)", Collections.singleton("a/A")));
+	}
+
+	@Test
+	public void testsNotRunKeepTheirCachedCoverage() throws Exception {
+		firstRun();
+		write("a/A", "A2");
+
+		TestCoverageCache cache = new TestCoverageCache(dir, classFiles);
+		Assert.assertTrue(cache.isFresh("b(t.T)"));
+		cache.put("f(t.T)", "t.T", true, store("a/B"));
+		cache.keepNotRun(Arrays.asList("a(t.T)", "f(t.T)", "new(t.T)"));
+		cache.save();
+
+		cache = new TestCoverageCache(dir, classFiles);
+		Assert.assertEquals(3, cache.getnCached());
+		Assert.assertFalse(cache.isFresh("a(t.T)"));
+		Assert.assertTrue(cache.covered("a(t.T)", Collections.singleton("a/A")));
+		// the test that ran keeps its new coverage
+		Assert.assertTrue(cache.covered("f(t.T)", Collections.singleton("a/B")));
+		Assert.assertFalse(cache.covered("f(t.T)", Collections.singleton("a/A")));
+	}
+
+}
@@ -0,0 +1,133 @@
+package br.usp.each.saeg.jaguar.shard;
+
+import static br.usp.each.saeg.jaguar.RequirementFixtures.line;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import br.usp.each.saeg.jaguar.core.model.core.requirement.AbstractTestRequirement;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.DuaTestRequirement;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.LineTestRequirement;
+import br.usp.each.saeg.jaguar.core.shard.ShardMerger;
+import br.usp.each.saeg.jaguar.core.shard.SpectrumShardReader;
+import br.usp.each.saeg.jaguar.core.shard.SpectrumShardWriter;
+
+public class ShardMergerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static AbstractTestRequirement dua(int def, int cef, int cep) {
+		AbstractTestRequirement requirement = new DuaTestRequirement("a/A", 0, def, 11, 12, "x");
+		requirement.increaseFailed(cef);
+		requirement.increasePassed(cep);
+		return requirement;
+	}
+
+	private File shard(int nTests, int nTestsFailed, AbstractTestRequirement... requirements) throws IOException {
+		File file = folder.newFile();
+		SpectrumShardWriter.write(file, nTests, nTestsFailed, Arrays.asList(requirements));
+		return file;
+	}
+
+	private static List<AbstractTestRequirement> readAll(ShardMerger merger) throws IOException {
+		List<AbstractTestRequirement> result = new ArrayList<AbstractTestRequirement>();
+		AbstractTestRequirement requirement;
+		while ((requirement = merger.next()) != null) {
+			result.add(requirement);
+		}
+		return result;
+	}
+
+	@Test
+	public void shardRoundTrip() throws Exception {
+		File file = shard(4, 1, line("b/B", 3, 0, 2), dua(10, 1, 0), line("a/A", 9, 1, 3));
+
+		try (SpectrumShardReader reader = new SpectrumShardReader(file)) {
+			Assert.assertEquals(4, reader.getnTests());
+			Assert.assertEquals(1, reader.getnTestsFailed());
+
+			AbstractTestRequirement first = reader.next();
+			Assert.assertEquals(new LineTestRequirement("a/A", 9), first);
+			Assert.assertEquals(1, first.getCef());
+			Assert.assertEquals(3, first.getCep());
+			Assert.assertEquals("a.A.m()", first.getMethodSignature());
+			Assert.assertEquals(Integer.valueOf(2), first.getMethodLine());
+			Assert.assertEquals(new LineTestRequirement("b/B", 3), reader.next());
+			Assert.assertEquals(new DuaTestRequirement("a/A", 0, 10, 11, 12, "x"), reader.next());
+			Assert.assertNull(reader.next());
+			Assert.assertNull(reader.next());
+		}
+	}
+
+	@Test
+	public void equalRequirementsAreSummed() throws Exception {
+		File first = shard(3, 1, line("a/A", 7, 1, 2), line("a/A", 8, 0, 1), dua(10, 1, 0));
+		File second = shard(2, 1, line("a/A", 7, 1, 1), dua(10, 0, 2), dua(20, 1, 0));
+		File third = shard(1, 0, line("a/A", 8, 0, 1));
+
+		try (ShardMerger merger = new ShardMerger(Arrays.asList(first, second, third))) {
+			Assert.assertEquals(6, merger.getnTests());
+			Assert.assertEquals(2, merger.getnTestsFailed());
+
+			List<AbstractTestRequirement> merged = readAll(merger);
+			Assert.assertEquals(4, merged.size());
+			Assert.assertEquals(new LineTestRequirement("a/A", 7), merged.get(0));
+			Assert.assertEquals(2, merged.get(0).getCef());
+			Assert.assertEquals(3, merged.get(0).getCep());
+			Assert.assertEquals(new LineTestRequirement("a/A", 8), merged.get(1));
+			Assert.assertEquals(0, merged.get(1).getCef());
+			Assert.assertEquals(2, merged.get(1).getCep());
+			Assert.assertEquals(1, merged.get(2).getCef());
+			Assert.assertEquals(2, merged.get(2).getCep());
+			Assert.assertEquals(new DuaTestRequirement("a/A", 0, 20, 11, 12, "x"), merged.get(3));
+			Assert.assertEquals(1, merged.get(3).getCef());
+		}
+	}
+
+	@Test
+	public void mergedShardCanBeMergedAgain() throws Exception {
+		File merged = folder.newFile();
+		try (ShardMerger merger = new ShardMerger(Arrays.asList(shard(2, 1, line("a/A", 7, 1, 1)), shard(1, 0)))) {
+			merger.writeTo(merged);
+		}
+
+		try (ShardMerger merger = new ShardMerger(Arrays.asList(merged, shard(1, 1, line("a/A", 7, 1, 0))))) {
+			Assert.assertEquals(4, merger.getnTests());
+			Assert.assertEquals(2, merger.getnTestsFailed());
+			List<AbstractTestRequirement> requirements = readAll(merger);
+			Assert.assertEquals(1, requirements.size());
+			Assert.assertEquals(2, requirements.get(0).getCef());
+			Assert.assertEquals(1, requirements.get(0).getCep());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void requirementsMustBeSorted() throws Exception {
+		try (SpectrumShardWriter writer = new SpectrumShardWriter(folder.newFile(), 1, 0)) {
+			writer.write(line("a/A", 8, 0, 1));
+			writer.write(line("a/A", 7, 0, 1));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void otherFilesAreRejected() throws Exception {
+		File file = folder.newFile();
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+			out.writeInt(0x4A475253);
+			out.writeChar(1);
+		}
+		new SpectrumShardReader(file).close();
+	}
+
+}
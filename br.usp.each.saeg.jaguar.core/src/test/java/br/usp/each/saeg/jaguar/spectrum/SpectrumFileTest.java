@@ -0,0 +1,135 @@
+package br.usp.each.saeg.jaguar.spectrum;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import br.usp.each.saeg.jaguar.core.heuristic.OchiaiHeuristic;
+import br.usp.each.saeg.jaguar.core.heuristic.RankEngine;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.AbstractTestRequirement;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.DuaTestRequirement;
+import br.usp.each.saeg.jaguar.core.model.core.requirement.LineTestRequirement;
+import br.usp.each.saeg.jaguar.core.spectrum.SpectrumFileReader;
+import br.usp.each.saeg.jaguar.core.spectrum.SpectrumFileWriter;
+
+public class SpectrumFileTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static List<AbstractTestRequirement> spectrum() {
+		List<AbstractTestRequirement> requirements = new ArrayList<AbstractTestRequirement>();
+		for (int i = 0; i < 200; i++) {
+			AbstractTestRequirement requirement;
+			if (i % 4 == 0) {
+				requirement = new DuaTestRequirement("a/A", i % 7, 100 + i, 200 + i, i % 2 == 0 ? -1 : 300 + i, "v" + (i % 3));
+				requirement.setClassFirstLine(0);
+			} else {
+				requirement = new LineTestRequirement(i % 3 == 0 ? "b/B" : "a/A", 1000 - i);
+				requirement.setClassFirstLine(1);
+			}
+			if (i % 5 != 0) {
+				requirement.setMethodId(i % 6);
+				requirement.setMethodLine(i / 10);
+				requirement.setMethodSignature("m" + (i % 6) + "()V");
+			}
+			requirement.increaseFailed(i % 3);
+			requirement.increasePassed(i * 1000);
+			requirements.add(requirement);
+		}
+		return requirements;
+	}
+
+	private static void assertSameSpectrum(List<AbstractTestRequirement> expected, List<AbstractTestRequirement> actual) {
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			AbstractTestRequirement e = expected.get(i);
+			AbstractTestRequirement a = actual.get(i);
+			Assert.assertEquals(e, a);
+			Assert.assertEquals(e.getClassName(), a.getClassName());
+			Assert.assertEquals(e.getClassFirstLine(), a.getClassFirstLine());
+			Assert.assertEquals(e.getMethodId(), a.getMethodId());
+			Assert.assertEquals(e.getMethodLine(), a.getMethodLine());
+			Assert.assertEquals(e.getMethodSignature(), a.getMethodSignature());
+			Assert.assertEquals(e.getCef(), a.getCef());
+			Assert.assertEquals(e.getCep(), a.getCep());
+		}
+	}
+
+	@Test
+	public void spectrumRoundTrip() throws Exception {
+		for (boolean deflate : new boolean[] { false, true }) {
+			File file = new File(folder.getRoot(), "spectrum" + deflate);
+			SpectrumFileWriter.write(file, 90, 3, 1234L, spectrum(), deflate);
+
+			SpectrumFileReader reader = new SpectrumFileReader(file);
+			Assert.assertEquals(90, reader.getnTests());
+			Assert.assertEquals(3, reader.getnTestsFailed());
+			Assert.assertEquals(Long.valueOf(1234), reader.getTimeSpent());
+			assertSameSpectrum(spectrum(), reader.getTestRequirements());
+		}
+	}
+
+	@Test
+	public void deflatedSpectrumIsSmaller() throws Exception {
+		File plain = folder.newFile();
+		File deflated = folder.newFile();
+		SpectrumFileWriter.write(plain, 90, 3, null, spectrum(), false);
+		SpectrumFileWriter.write(deflated, 90, 3, null, spectrum(), true);
+
+		Assert.assertTrue(deflated.length() < plain.length());
+		Assert.assertNull(new SpectrumFileReader(deflated).getTimeSpent());
+	}
+
+	@Test
+	public void savedSpectrumHasTheSameRank() throws Exception {
+		File file = folder.newFile();
+		SpectrumFileWriter.write(file, 90, 3, null, spectrum(), false);
+		SpectrumFileReader reader = new SpectrumFileReader(file);
+
+		List<AbstractTestRequirement> expected = new RankEngine(spectrum(), 87, 3).rank(new OchiaiHeuristic()).toRequirements();
+		List<AbstractTestRequirement> actual = new RankEngine(reader.getTestRequirements(), 87, 3).rank(new OchiaiHeuristic())
+				.toRequirements();
+		assertSameSpectrum(expected, actual);
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertEquals(expected.get(i).getSuspiciousness(), actual.get(i).getSuspiciousness(), 0.0);
+		}
+	}
+
+	@Test
+	public void spectrumIsLocatedWithTheOutput() {
+		Assert.assertEquals(new File(new File(new File("p"), ".jaguar"), "out.spectrum"),
+				SpectrumFileWriter.locate(new File("p"), "out"));
+	}
+
+	@Test(expected = IOException.class)
+	public void otherFilesAreRejected() throws Exception {
+		File file = folder.newFile();
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+			out.writeInt(0x12345678);
+			out.writeChar(1);
+		}
+		new SpectrumFileReader(file);
+	}
+
+	@Test(expected = IOException.class)
+	public void truncatedFilesAreRejected() throws Exception {
+		File file = folder.newFile();
+		SpectrumFileWriter.write(file, 90, 3, null, spectrum(), false);
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			out.write(bytes, 0, bytes.length / 2);
+		}
+		new SpectrumFileReader(file);
+	}
+
+}